@@ -0,0 +1,148 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc;
+
+import org.apache.http.Header;
+import org.apache.http.client.CookieStore;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.routing.HttpRoutePlanner;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.commonjava.util.jhttpc.INTERNAL.conn.AsyncSitePool;
+import org.commonjava.util.jhttpc.INTERNAL.conn.ConnectionManagerTracker;
+import org.commonjava.util.jhttpc.INTERNAL.util.SiteSSLContexts;
+import org.commonjava.util.jhttpc.auth.ClientAuthenticator;
+import org.commonjava.util.jhttpc.model.SiteConfig;
+
+import javax.net.ssl.SSLContext;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Non-blocking clients for the sites of an {@link HttpFactory}, for running many slow requests without a thread per
+ * request. Each site's non-blocking pool runs alongside its blocking pool in the factory: it has the same limits, and
+ * expires or shuts down along with it.
+ *
+ * HttpAsyncClient 4.1 is an optional dependency of jhttpc; add org.apache.httpcomponents:httpasyncclient to use this
+ * class. Clients use the same SSL settings, proxy, passwords, timeouts and cookie policy as
+ * {@link HttpFactory#createClient(SiteConfig)}. Authenticators apply through the credentials they set in
+ * {@link ClientAuthenticator#decoratePrototypeContext} and through {@link ClientAuthenticator#getDefaultHeaders()};
+ * their HttpClient 4 builder hooks aren't used.
+ */
+public class AsyncHttpFactory
+{
+    private final HttpFactory factory;
+
+    public AsyncHttpFactory( final HttpFactory factory )
+    {
+        this.factory = factory;
+    }
+
+    /**
+     * Create a handle on the site's non-blocking client, building its pool and starting its I/O reactor the first
+     * time. Close the handle when done with it.
+     */
+    public AsyncSiteClient createAsyncClient( final SiteConfig location )
+            throws JHttpCException
+    {
+        ConnectionManagerTracker tracker = factory.acquireTracker( location );
+        try
+        {
+            AsyncSitePool pool = (AsyncSitePool) tracker.getCompanionPool( c -> buildAsyncPool( location ) );
+            return new AsyncSiteClient( factory, location, tracker, pool.getClient() );
+        }
+        catch ( JHttpCException | RuntimeException e )
+        {
+            tracker.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Build the site's non-blocking pool, on its own I/O reactor, and the client that runs on it.
+     */
+    private AsyncSitePool buildAsyncPool( final SiteConfig location )
+            throws JHttpCException
+    {
+        SSLContext sslContext = SiteSSLContexts.getSSLContext( location, factory.getPasswordManager() );
+        SSLIOSessionStrategy sslStrategy = sslContext == null ?
+                SSLIOSessionStrategy.getDefaultStrategy() :
+                new SSLIOSessionStrategy( sslContext, factory.hostnameVerifier( location ) );
+
+        Registry<SchemeIOSessionStrategy> registry = RegistryBuilder.<SchemeIOSessionStrategy>create()
+                                                                    .register( "http", NoopIOSessionStrategy.INSTANCE )
+                                                                    .register( "https", sslStrategy )
+                                                                    .build();
+
+        final int timeout = 1000 * location.getRequestTimeoutSeconds();
+        IOReactorConfig reactorConfig =
+                IOReactorConfig.custom().setConnectTimeout( timeout ).setSoTimeout( timeout ).build();
+
+        PoolingNHttpClientConnectionManager connectionManager;
+        try
+        {
+            DefaultConnectingIOReactor ioReactor = new DefaultConnectingIOReactor( reactorConfig );
+            connectionManager = new PoolingNHttpClientConnectionManager( ioReactor, registry );
+        }
+        catch ( IOReactorException e )
+        {
+            throw new JHttpCException( "Failed to start I/O reactor for: %s. Reason: %s", e, location.getId(),
+                                       e.getMessage() );
+        }
+
+        HttpAsyncClientBuilder builder = HttpAsyncClients.custom();
+
+        ClientAuthenticator authenticator = factory.getAuthenticator();
+        if ( authenticator != null )
+        {
+            List<Header> headers = authenticator.getDefaultHeaders();
+            if ( !headers.isEmpty() )
+            {
+                builder.setDefaultHeaders( new ArrayList<>( headers ) );
+            }
+        }
+
+        builder.setConnectionManager( connectionManager );
+
+        CookieStore cookieStore = factory.getCookieStore( location );
+        if ( cookieStore == null )
+        {
+            builder.disableCookieManagement();
+        }
+        else
+        {
+            builder.setDefaultCookieStore( cookieStore );
+        }
+
+        HttpRoutePlanner planner = factory.proxyRoutePlanner( location );
+        if ( planner != null )
+        {
+            builder.setRoutePlanner( planner );
+        }
+
+        builder.setDefaultRequestConfig( factory.defaultRequestConfig( location ) );
+
+        return new AsyncSitePool( connectionManager, builder.build() );
+    }
+}
@@ -0,0 +1,230 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc;
+
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.protocol.HttpAsyncRequestProducer;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
+import org.commonjava.util.jhttpc.INTERNAL.conn.ConnectionManagerTracker;
+import org.commonjava.util.jhttpc.model.SiteConfig;
+
+import javax.net.ssl.SSLException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A handle on a site's non-blocking client, from {@link AsyncHttpFactory#createAsyncClient(SiteConfig)}. Requests wait for
+ * their responses without holding a thread, and their futures complete on one of the site's I/O reactor threads, so
+ * keep dependent stages short or hand them to an executor with the *Async methods of {@link CompletableFuture}.
+ *
+ * Closing the handle cancels its unfinished requests and releases its use of the site's connection pool. The pool
+ * stays up for other handles until it expires, like the blocking one.
+ */
+public final class AsyncSiteClient
+        implements Closeable
+{
+    private static final int RETRIES = 3;
+
+    private final HttpFactory factory;
+
+    private final SiteConfig site;
+
+    private final ConnectionManagerTracker tracker;
+
+    private final CloseableHttpAsyncClient client;
+
+    private final Map<CompletableFuture<?>, Future<?>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean closed = new AtomicBoolean( false );
+
+    AsyncSiteClient( final HttpFactory factory, final SiteConfig site, final ConnectionManagerTracker tracker,
+                     final CloseableHttpAsyncClient client )
+    {
+        this.factory = factory;
+        this.site = site;
+        this.tracker = tracker;
+        this.client = client;
+    }
+
+    /**
+     * Execute a request and buffer the whole response in memory. Like the blocking client, requests without a body are
+     * retried up to three times if their connection fails, e.g. because the server closed it while it sat in the pool.
+     */
+    public CompletableFuture<HttpResponse> execute( final HttpUriRequest request )
+    {
+        CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+        attempt( request, RETRIES, result );
+        return result;
+    }
+
+    private void attempt( final HttpUriRequest request, final int retries, final CompletableFuture<HttpResponse> result )
+    {
+        CompletableFuture<HttpResponse> attempt =
+                execute( HttpAsyncMethods.create( request ), HttpAsyncMethods.createConsumer() );
+
+        result.whenComplete( ( response, error ) -> {
+            if ( result.isCancelled() )
+            {
+                attempt.cancel( false );
+            }
+        } );
+
+        attempt.whenComplete( ( response, error ) -> {
+            if ( error == null )
+            {
+                result.complete( response );
+            }
+            else if ( retries > 0 && !result.isDone() && !closed.get() && isRetriable( request, error ) )
+            {
+                attempt( request, retries - 1, result );
+            }
+            else
+            {
+                result.completeExceptionally( error );
+            }
+        } );
+    }
+
+    /**
+     * The same rules as the blocking client's default retry handler: I/O failures other than timeouts, unknown hosts,
+     * refused connections and SSL errors, on requests without a body.
+     */
+    private static boolean isRetriable( final HttpUriRequest request, Throwable error )
+    {
+        if ( error instanceof CompletionException && error.getCause() != null )
+        {
+            error = error.getCause();
+        }
+
+        return error instanceof IOException && !( error instanceof InterruptedIOException )
+                && !( error instanceof UnknownHostException ) && !( error instanceof ConnectException )
+                && !( error instanceof SSLException ) && !( request instanceof HttpEntityEnclosingRequest )
+                && !request.isAborted();
+    }
+
+    /**
+     * Execute a request and stream the response into the given consumer as it arrives, e.g. a subclass of
+     * {@link org.apache.http.nio.client.methods.AsyncByteConsumer}.
+     */
+    public <T> CompletableFuture<T> execute( final HttpUriRequest request, final HttpAsyncResponseConsumer<T> consumer )
+    {
+        return execute( HttpAsyncMethods.create( request ), consumer );
+    }
+
+    /**
+     * Execute a request whose body is streamed from the given producer, and stream the response into the consumer.
+     * Cancelling the returned future aborts the exchange. Consumers can only be used once, so failed exchanges are not
+     * retried.
+     */
+    public <T> CompletableFuture<T> execute( final HttpAsyncRequestProducer producer,
+                                             final HttpAsyncResponseConsumer<T> consumer )
+    {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        if ( closed.get() )
+        {
+            result.completeExceptionally( new IllegalStateException( "Client for: " + site.getId() + " is closed" ) );
+            return result;
+        }
+
+        final Future<T> future;
+        try
+        {
+            HttpClientContext context = factory.createContext( site );
+            future = client.execute( producer, consumer, context, new FutureCallback<T>()
+            {
+                @Override
+                public void completed( final T response )
+                {
+                    inFlight.remove( result );
+                    result.complete( response );
+                }
+
+                @Override
+                public void failed( final Exception e )
+                {
+                    inFlight.remove( result );
+                    result.completeExceptionally( e );
+                }
+
+                @Override
+                public void cancelled()
+                {
+                    inFlight.remove( result );
+                    result.cancel( false );
+                }
+            } );
+        }
+        catch ( JHttpCException | RuntimeException e )
+        {
+            result.completeExceptionally( e );
+            return result;
+        }
+
+        inFlight.put( result, future );
+        result.whenComplete( ( response, error ) -> {
+            inFlight.remove( result );
+            if ( result.isCancelled() )
+            {
+                future.cancel( true );
+            }
+        } );
+
+        if ( closed.get() )
+        {
+            // closed while this request was being started
+            future.cancel( true );
+        }
+
+        return result;
+    }
+
+    /**
+     * Number of requests executed through this handle that haven't completed yet.
+     */
+    public int getInFlightCount()
+    {
+        return inFlight.size();
+    }
+
+    @Override
+    public void close()
+    {
+        if ( closed.compareAndSet( false, true ) )
+        {
+            for ( Future<?> future : inFlight.values() )
+            {
+                future.cancel( true );
+            }
+
+            tracker.release();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc;
+
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+
+/**
+ * Thrown instead of waiting for a pooled connection when too many requests are already waiting on the site's pool.
+ * The limit counts waiting requests across all of the site's routes, not per route.
+ * Extends {@link ConnectionPoolTimeoutException} so existing handling for lease timeouts still applies.
+ *
+ * @see org.commonjava.util.jhttpc.model.SiteConfig#getMaxPendingLeases()
+ */
+public class ConnectionPoolSaturatedException
+        extends ConnectionPoolTimeoutException
+{
+    private static final long serialVersionUID = 1L;
+
+    private final int pendingLeases;
+
+    public ConnectionPoolSaturatedException( final String message, final int pendingLeases )
+    {
+        super( message );
+        this.pendingLeases = pendingLeases;
+    }
+
+    /**
+     * How many lease requests were already waiting when this one was turned away.
+     */
+    public int getPendingLeases()
+    {
+        return pendingLeases;
+    }
+}
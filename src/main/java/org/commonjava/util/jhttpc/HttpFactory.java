@@ -19,48 +19,57 @@ import org.apache.http.Header;
 import org.apache.http.HttpHost;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.client.CookieStore;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.conn.routing.HttpRoutePlanner;
 import org.apache.http.conn.ssl.DefaultHostnameVerifier;
 import org.apache.http.conn.ssl.NoopHostnameVerifier;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
-import org.apache.http.impl.client.BasicCookieStore;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.DefaultProxyRoutePlanner;
-import org.apache.http.ssl.PrivateKeyStrategy;
-import org.apache.http.ssl.SSLContextBuilder;
-import org.apache.http.ssl.SSLContexts;
+import org.apache.http.protocol.BasicHttpContext;
+import org.commonjava.util.jhttpc.INTERNAL.conn.CloseBlockingConnectionManager;
 import org.commonjava.util.jhttpc.INTERNAL.conn.ConnectionManagerCache;
 import org.commonjava.util.jhttpc.INTERNAL.conn.ConnectionManagerTracker;
 import org.commonjava.util.jhttpc.INTERNAL.conn.SiteConnectionConfig;
 import org.commonjava.util.jhttpc.INTERNAL.conn.TrackedHttpClient;
-import org.commonjava.util.jhttpc.INTERNAL.util.CertEnumerator;
-import org.commonjava.util.jhttpc.INTERNAL.util.MonolithicKeyStrategy;
-import org.commonjava.util.jhttpc.INTERNAL.util.SSLUtils;
+import org.commonjava.util.jhttpc.INTERNAL.conn.TrackedHttpResponse;
+import org.commonjava.util.jhttpc.INTERNAL.util.ConcurrentCookieStore;
+import org.commonjava.util.jhttpc.INTERNAL.util.LayeredCredentialsProvider;
+import org.commonjava.util.jhttpc.INTERNAL.util.PerThreadCookieStore;
+import org.commonjava.util.jhttpc.INTERNAL.util.SiteSSLContexts;
 import org.commonjava.util.jhttpc.auth.BasicAuthenticator;
 import org.commonjava.util.jhttpc.auth.ClientAuthenticator;
-import org.commonjava.util.jhttpc.auth.PasswordKey;
 import org.commonjava.util.jhttpc.auth.PasswordManager;
 import org.commonjava.util.jhttpc.auth.PasswordType;
+import org.commonjava.util.jhttpc.model.DrainReport;
+import org.commonjava.util.jhttpc.model.HttpFactoryConfig;
+import org.commonjava.util.jhttpc.model.HttpFactoryConfigBuilder;
 import org.commonjava.util.jhttpc.model.SiteConfig;
-import org.commonjava.util.jhttpc.model.SiteTrustType;
+import org.commonjava.util.jhttpc.model.SiteCookiePolicy;
+import org.commonjava.util.jhttpc.model.SitePoolStats;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.SSLContext;
 import java.io.IOException;
 import java.net.MalformedURLException;
-import java.security.KeyManagementException;
-import java.security.KeyStore;
-import java.security.KeyStoreException;
-import java.security.NoSuchAlgorithmException;
-import java.security.UnrecoverableKeyException;
-import java.security.cert.CertificateException;
-import java.security.spec.InvalidKeySpecException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.apache.commons.io.IOUtils.closeQuietly;
 
 public class HttpFactory
         implements HttpFactoryIfc
@@ -69,6 +78,10 @@ public class HttpFactory
 
     private static final String COOKIE_STORE = "cookie-store";
 
+    private static final String PER_THREAD_COOKIE_STORE = "cookie-store-per-thread";
+
+    private static final String CONTEXT_TEMPLATE = "context-template";
+
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     private final PasswordManager passwords;
@@ -77,18 +90,30 @@ public class HttpFactory
 
     private final ConnectionManagerCache connectionCache;
 
+    private final ReentrantLock cookieStoreLock = new ReentrantLock();
+
     public HttpFactory( final PasswordManager passwords )
+    {
+        this( passwords, new HttpFactoryConfigBuilder().build() );
+    }
+
+    public HttpFactory( final PasswordManager passwords, final HttpFactoryConfig factoryConfig )
     {
         this.passwords = passwords;
         this.authenticator = new BasicAuthenticator( passwords );
-        this.connectionCache = new ConnectionManagerCache();
+        this.connectionCache = new ConnectionManagerCache( factoryConfig );
     }
 
     public HttpFactory( final ClientAuthenticator authenticator )
+    {
+        this( authenticator, new HttpFactoryConfigBuilder().build() );
+    }
+
+    public HttpFactory( final ClientAuthenticator authenticator, final HttpFactoryConfig factoryConfig )
     {
         this.authenticator = authenticator;
         this.passwords = null;
-        this.connectionCache = new ConnectionManagerCache();
+        this.connectionCache = new ConnectionManagerCache( factoryConfig );
     }
 
     public PasswordManager getPasswordManager()
@@ -117,59 +142,276 @@ public class HttpFactory
         CloseableHttpClient client;
         if ( location != null )
         {
-            HttpClientBuilder builder = HttpClients.custom();
+            logger.debug( "Using site config: {} for advanced client options", location );
+            SiteLease lease = leaseSharedClient( location, defaultHeaders );
+            client = new TrackedHttpClient( lease.client, lease.tracker, lease.shared );
+        }
+        else
+        {
+            int leaseTimeout = (int) TimeUnit.SECONDS.toMillis( SiteConfig.DEFAULT_CONNECTION_POOL_TIMEOUT_SECONDS );
+            client = HttpClients.custom()
+                                .setDefaultRequestConfig(
+                                        RequestConfig.custom().setConnectionRequestTimeout( leaseTimeout ).build() )
+                                .build();
+        }
 
-            if ( authenticator != null )
-            {
-                builder = authenticator.decorateClientBuilder( builder );
-            }
+        return client;
+    }
 
-            logger.debug( "Using site config: {} for advanced client options", location );
-            SiteConnectionConfig connConfig = new SiteConnectionConfig( location );
+    /**
+     * Execute a request against a site and hand the response to a handler, without creating a client or context
+     * handle. The site's shared client and context template are used, and the response entity is consumed and its
+     * connection released to the pool when the handler returns or throws.
+     */
+    public <T> T execute( final SiteConfig location, final HttpUriRequest request,
+                          final ResponseHandler<? extends T> handler )
+            throws JHttpCException, IOException
+    {
+        SiteLease lease = leaseSharedClient( location, null );
+        try
+        {
+            return lease.client.execute( request, handler, createContext( location ) );
+        }
+        finally
+        {
+            lease.release();
+        }
+    }
 
-            final SSLConnectionSocketFactory sslFac = createSSLSocketFactory( location );
-            if ( sslFac != null )
+    /**
+     * Execute a request against a site and return the response for the caller to stream. The response holds a pooled
+     * connection until it is closed or its entity is read to the end, so always close it, e.g. with
+     * try-with-resources.
+     */
+    public CloseableHttpResponse executeStreaming( final SiteConfig location, final HttpUriRequest request )
+            throws JHttpCException, IOException
+    {
+        SiteLease lease = leaseSharedClient( location, null );
+        CloseableHttpResponse response;
+        try
+        {
+            response = lease.client.execute( request, createContext( location ) );
+        }
+        catch ( IOException | RuntimeException e )
+        {
+            lease.release();
+            throw e;
+        }
+
+        AtomicBoolean released = new AtomicBoolean( false );
+        Runnable release = () -> {
+            if ( released.compareAndSet( false, true ) )
             {
-                //                HostnameVerifier verifier = new SSLHostnameVerifierImpl( );
-                //                builder.setSSLHostnameVerifier( verifier );
-                builder.setSSLSocketFactory( sslFac );
-                connConfig.withSSLConnectionSocketFactory( sslFac );
+                lease.release();
             }
+        };
+
+        if ( response.getEntity() == null )
+        {
+            // nothing to stream; the connection is already back in the pool
+            release.run();
+        }
 
-            ConnectionManagerTracker managerWrapper = connectionCache.getTrackerFor( connConfig );
-            logger.debug( "Using the connection manager tracker: {}", managerWrapper );
-            builder.setConnectionManager( managerWrapper.acquire() );
+        return new TrackedHttpResponse( response, release );
+    }
 
-            if ( location.getProxyHost() != null )
-            {
-                logger.debug( "Plan to use proxy for connection: host: {}, port: {}", location.getProxyHost(),
-                              location.getProxyPort() );
-                final HttpRoutePlanner planner = new DefaultProxyRoutePlanner(
-                        new HttpHost( location.getProxyHost(), getProxyPort( location ) ) );
-                builder.setRoutePlanner( planner );
-            }
+    /**
+     * Take a use of the site's connection pool, for {@link AsyncHttpFactory}, which runs its pool alongside it. The
+     * caller must release the tracker when done with it.
+     */
+    ConnectionManagerTracker acquireTracker( final SiteConfig location )
+            throws JHttpCException
+    {
+        SiteConnectionConfig connConfig = new SiteConnectionConfig( location );
+        connConfig.withSSLConnectionSocketFactory( createSSLSocketFactory( location ) );
 
-            final int timeout = 1000 * location.getRequestTimeoutSeconds();
-            logger.debug( "Request timeout value: {}", timeout );
-            builder.setDefaultRequestConfig( RequestConfig.custom()
-//                                                          .setConnectionRequestTimeout( timeout )
-                                                          .setSocketTimeout( timeout )
-                                                          .setConnectTimeout( timeout )
-                                                          .build() );
+        ConnectionManagerTracker managerWrapper;
+        do
+        {
+            managerWrapper = connectionCache.getTrackerFor( connConfig );
+        }
+        while ( managerWrapper.acquire() == null );
 
-            if ( defaultHeaders != null )
+        return managerWrapper;
+    }
+
+    ClientAuthenticator getAuthenticator()
+    {
+        return authenticator;
+    }
+
+    /**
+     * Take a use of the site's connection pool and get its shared client for the given default headers, or a client of
+     * the caller's own if the authenticator's builder decoration can't be shared. The caller must release the lease
+     * when done with the client.
+     */
+    private SiteLease leaseSharedClient( final SiteConfig location, final List<Header> defaultHeaders )
+            throws JHttpCException
+    {
+        SiteConnectionConfig connConfig = new SiteConnectionConfig( location );
+
+        final SSLConnectionSocketFactory sslFac = createSSLSocketFactory( location );
+        if ( sslFac != null )
+        {
+            connConfig.withSSLConnectionSocketFactory( sslFac );
+        }
+
+        ConnectionManagerTracker managerWrapper;
+        CloseBlockingConnectionManager connectionManager;
+        do
+        {
+            managerWrapper = connectionCache.getTrackerFor( connConfig );
+            connectionManager = managerWrapper.acquire();
+        }
+        while ( connectionManager == null );
+
+        logger.debug( "Using the connection manager tracker: {}", managerWrapper );
+
+        try
+        {
+            if ( authenticator != null && !authenticator.isClientBuilderShareable() )
             {
-                builder.setDefaultHeaders( defaultHeaders );
+                return new SiteLease( managerWrapper, buildClient( location, sslFac, connectionManager, defaultHeaders ),
+                                      false );
             }
 
-            client = new TrackedHttpClient( builder.build(), managerWrapper );
+            CloseableHttpClient shared = managerWrapper.getSharedClient(
+                    defaultHeaders, connectionManager, mgr -> buildClient( location, sslFac, mgr, defaultHeaders ) );
+
+            return new SiteLease( managerWrapper, shared, true );
+        }
+        catch ( JHttpCException | RuntimeException e )
+        {
+            managerWrapper.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Build a client on the site's connection manager. Unless the authenticator opts out, it's shared by every
+     * {@link #createClient(SiteConfig, List)} caller for this site and set of default headers; it holds no per-caller
+     * state, so that's safe.
+     */
+    private CloseableHttpClient buildClient( final SiteConfig location, final SSLConnectionSocketFactory sslFac,
+                                             final CloseBlockingConnectionManager connectionManager,
+                                             final List<Header> defaultHeaders )
+            throws JHttpCException
+    {
+        HttpClientBuilder builder = HttpClients.custom();
+
+        if ( authenticator != null )
+        {
+            builder = authenticator.decorateClientBuilder( builder );
+        }
+
+        if ( sslFac != null )
+        {
+            //                HostnameVerifier verifier = new SSLHostnameVerifierImpl( );
+            //                builder.setSSLHostnameVerifier( verifier );
+            builder.setSSLSocketFactory( sslFac );
+        }
+
+        builder.setConnectionManager( connectionManager );
+
+        CookieStore cookieStore = getCookieStore( location );
+        if ( cookieStore == null )
+        {
+            builder.disableCookieManagement();
         }
         else
         {
-            client = HttpClients.createDefault();
+            builder.setDefaultCookieStore( cookieStore );
         }
 
-        return client;
+        HttpRoutePlanner planner = proxyRoutePlanner( location );
+        if ( planner != null )
+        {
+            builder.setRoutePlanner( planner );
+        }
+
+        builder.setDefaultRequestConfig( defaultRequestConfig( location ) );
+
+        if ( defaultHeaders != null )
+        {
+            builder.setDefaultHeaders( new ArrayList<>( defaultHeaders ) );
+        }
+
+        return builder.build();
+    }
+
+    HttpRoutePlanner proxyRoutePlanner( final SiteConfig location )
+    {
+        if ( location.getProxyHost() == null )
+        {
+            return null;
+        }
+
+        logger.debug( "Plan to use proxy for connection: host: {}, port: {}", location.getProxyHost(),
+                      location.getProxyPort() );
+        return new DefaultProxyRoutePlanner( new HttpHost( location.getProxyHost(), getProxyPort( location ) ) );
+    }
+
+    /**
+     * The site's cookie store for its {@link SiteCookiePolicy}, created the first time it's needed, or null when the
+     * site's cookies are disabled. A store put in the site's "cookie-store" attribute by the caller is used as-is.
+     */
+    CookieStore getCookieStore( final SiteConfig location )
+    {
+        final String attribute;
+        switch ( location.getCookiePolicy() )
+        {
+            case DISABLED:
+                return null;
+            case PER_THREAD:
+                attribute = PER_THREAD_COOKIE_STORE;
+                break;
+            default:
+                attribute = COOKIE_STORE;
+        }
+
+        CookieStore cookieStore = (CookieStore) location.getAttribute( attribute );
+        if ( cookieStore == null )
+        {
+            cookieStoreLock.lock();
+            try
+            {
+                cookieStore = (CookieStore) location.getAttribute( attribute );
+                if ( cookieStore == null )
+                {
+                    logger.debug( "Creating {} CookieStore", location.getCookiePolicy() );
+                    cookieStore = location.getCookiePolicy() == SiteCookiePolicy.PER_THREAD ?
+                            new PerThreadCookieStore() :
+                            new ConcurrentCookieStore();
+                    location.setAttribute( attribute, cookieStore );
+                }
+            }
+            finally
+            {
+                cookieStoreLock.unlock();
+            }
+        }
+
+        return cookieStore;
+    }
+
+    /**
+     * Request config for a site that doesn't supply its own: the site's request timeout for connecting and reading,
+     * and its connection-pool timeout for leasing a pooled connection.
+     */
+    RequestConfig defaultRequestConfig( final SiteConfig location )
+    {
+        final int timeout = 1000 * location.getRequestTimeoutSeconds();
+        logger.debug( "Request timeout value: {}", timeout );
+        return RequestConfig.custom()
+                            .setConnectionRequestTimeout( leaseTimeoutMillis( location ) )
+                            .setSocketTimeout( timeout )
+                            .setConnectTimeout( timeout )
+                            .build();
+    }
+
+    private static int leaseTimeoutMillis( final SiteConfig location )
+    {
+        return (int) TimeUnit.SECONDS.toMillis( location.getConnectionPoolTimeoutSeconds() );
     }
 
     private int getProxyPort( final SiteConfig location )
@@ -194,81 +436,135 @@ public class HttpFactory
     public HttpClientContext createContext( final SiteConfig location )
             throws JHttpCException
     {
-        HttpClientContext ctx = HttpClientContext.create();
+        if ( location == null )
+        {
+            return HttpClientContext.create();
+        }
 
-        if ( location != null )
+        ContextTemplate template = getContextTemplate( location );
+        HttpClientContext ctx = HttpClientContext.adapt( new BasicHttpContext( template.context ) );
+
+        CredentialsProvider sharedCreds = template.context.getCredentialsProvider();
+        if ( sharedCreds != null )
         {
-            logger.debug( "Configuring HttpClientContext from SiteConfig" );
-            HttpClientContext prototype = location.getClientContextPrototype();
-            if ( prototype != null )
-            {
-                logger.debug( "Configuring HttpClientContext based on prototype instance" );
-                copyContextPrototype( prototype, ctx );
-            }
+            ctx.setCredentialsProvider( new LayeredCredentialsProvider( sharedCreds ) );
+        }
 
-            RequestConfig reqConf = location.getRequestConfig();
-            if ( reqConf == null )
-            {
-                logger.debug( "Configuring HttpClientContext RequestConfig with connection-pool timeout: {}",
-                              location.getConnectionPoolTimeoutSeconds() );
+        if ( !template.authDecorated )
+        {
+            ctx = decorateAuth( location, template, ctx );
+        }
 
-                reqConf = RequestConfig.copy( RequestConfig.DEFAULT )
-                             .setConnectionRequestTimeout(
-                                     location.getConnectionPoolTimeoutSeconds() )
-                             .build();
-            }
-            else
-            {
-                logger.debug( "Configuring HttpClientContext with SiteLocation's RequestConfig instance" );
-                ctx.setRequestConfig( RequestConfig.copy( reqConf ).build() );
-            }
+        return ctx;
+    }
 
+    /**
+     * The parts of a site's context that are the same for every request (request config, cookie store, auth scopes
+     * and, for authenticators that allow it, credentials) are built once per {@link SiteConfig} instance and kept in
+     * one of its attributes. New contexts read through to the template, so creating one allocates next to nothing.
+     * Rebuilding the SiteConfig gives it a new template.
+     */
+    private ContextTemplate getContextTemplate( final SiteConfig location )
+            throws JHttpCException
+    {
+        ContextTemplate template = location.getAttribute( CONTEXT_TEMPLATE, ContextTemplate.class );
+        if ( template != null && template.site == location )
+        {
+            return template;
+        }
 
-            CookieStore cookieStore = (CookieStore) location.getAttribute( COOKIE_STORE );
-            if ( cookieStore == null )
-            {
-                logger.debug( "Creating CookieStore" );
-                cookieStore = new BasicCookieStore();
-                location.setAttribute( COOKIE_STORE, cookieStore );
-            }
+        logger.debug( "Building HttpClientContext template for SiteConfig: {}", location.getId() );
+        HttpClientContext ctx = HttpClientContext.create();
+
+        HttpClientContext prototype = location.getClientContextPrototype();
+        if ( prototype != null )
+        {
+            logger.debug( "Configuring HttpClientContext based on prototype instance" );
+            copyContextPrototype( prototype, ctx );
+        }
+
+        RequestConfig reqConf = location.getRequestConfig();
+        if ( reqConf == null && prototype != null && prototype.getAttribute( HttpClientContext.REQUEST_CONFIG ) != null )
+        {
+            reqConf = prototype.getRequestConfig();
+        }
+
+        if ( reqConf == null )
+        {
+            logger.debug( "Configuring HttpClientContext RequestConfig with connection-pool timeout: {}s",
+                          location.getConnectionPoolTimeoutSeconds() );
+            reqConf = defaultRequestConfig( location );
+        }
+        else if ( reqConf.getConnectionRequestTimeout() < 0 )
+        {
+            logger.debug( "Adding connection-pool timeout: {}s to SiteLocation's RequestConfig instance",
+                          location.getConnectionPoolTimeoutSeconds() );
+            reqConf = RequestConfig.copy( reqConf )
+                                   .setConnectionRequestTimeout( leaseTimeoutMillis( location ) )
+                                   .build();
+        }
+
+        ctx.setRequestConfig( reqConf );
 
+        CookieStore cookieStore = getCookieStore( location );
+        if ( cookieStore != null )
+        {
             logger.debug( "Setting CookieStore" );
             ctx.setCookieStore( cookieStore );
+        }
+        else
+        {
+            ctx.removeAttribute( HttpClientContext.COOKIE_STORE );
+        }
 
-            final AuthScope as;
-            try
-            {
-                as = new AuthScope( location.getHost(), location.getPort() );
-            }
-            catch ( MalformedURLException e )
-            {
-                throw new JHttpCException( "Failed to parse site URL for host and port: %s (site id: %s). Reason: %s",
-                                           e, location.getUri(), location.getId(), e.getMessage() );
-            }
+        final AuthScope as;
+        try
+        {
+            as = new AuthScope( location.getHost(), location.getPort() );
+        }
+        catch ( MalformedURLException e )
+        {
+            throw new JHttpCException( "Failed to parse site URL for host and port: %s (site id: %s). Reason: %s",
+                                       e, location.getUri(), location.getId(), e.getMessage() );
+        }
 
-            if ( location.getUser() != null )
-            {
-                if ( authenticator != null )
-                {
-                    logger.debug( "Setting up authentication from SiteConfig's user + authenticator: {}",
-                                  authenticator );
+        AuthScope proxyScope = location.getProxyHost() == null ?
+                null :
+                new AuthScope( location.getProxyHost(), getProxyPort( location ) );
 
-                    ctx = authenticator.decoratePrototypeContext( as, location, PasswordType.USER, ctx );
-                }
-            }
+        boolean shareAuth = authenticator == null || authenticator.isContextShareable();
+        template = new ContextTemplate( location, ctx, as, proxyScope, shareAuth );
+        if ( shareAuth )
+        {
+            decorateAuth( location, template, ctx );
+        }
 
-            if ( location.getProxyHost() != null && location.getProxyUser() != null )
-            {
-                if ( authenticator != null )
-                {
-                    logger.debug( "Setting up proxy authentication from SiteConfig's proxy user + authenticator: {}",
-                                  authenticator );
+        location.setAttribute( CONTEXT_TEMPLATE, template );
+        return template;
+    }
 
-                    ctx = authenticator.decoratePrototypeContext(
-                            new AuthScope( location.getProxyHost(), getProxyPort( location ) ), location,
-                            PasswordType.PROXY, ctx );
-                }
-            }
+    private HttpClientContext decorateAuth( final SiteConfig location, final ContextTemplate template,
+                                            HttpClientContext ctx )
+            throws JHttpCException
+    {
+        if ( authenticator == null )
+        {
+            return ctx;
+        }
+
+        if ( location.getUser() != null )
+        {
+            logger.debug( "Setting up authentication from SiteConfig's user + authenticator: {}", authenticator );
+
+            ctx = authenticator.decoratePrototypeContext( template.siteScope, location, PasswordType.USER, ctx );
+        }
+
+        if ( template.proxyScope != null && location.getProxyUser() != null )
+        {
+            logger.debug( "Setting up proxy authentication from SiteConfig's proxy user + authenticator: {}",
+                          authenticator );
+
+            ctx = authenticator.decoratePrototypeContext( template.proxyScope, location, PasswordType.PROXY, ctx );
         }
 
         return ctx;
@@ -294,195 +590,82 @@ public class HttpFactory
             return fac;
         }
 
-        KeyStore ks = null;
-        KeyStore ts = null;
-
-        final String kcPem = location.getKeyCertPem();
-
-        final String kcPass = passwords == null ? null : passwords.lookup( new PasswordKey( location, PasswordType.KEY ) );
-        if ( kcPem != null )
+        SSLContext ctx = SiteSSLContexts.getSSLContext( location, passwords );
+        if ( ctx == null )
         {
-            logger.debug( "Adding client key/certificate from: {}", location );
-            if ( kcPass == null || kcPass.length() < 1 )
-            {
-                logger.error( "Invalid configuration. Location: {} cannot have an empty key password!",
-                              location.getUri() );
-                throw new JHttpCException(
-                        "Location: " + location.getUri() + " is misconfigured! Key password cannot be empty." );
-            }
-
-            try
-            {
-                logger.trace( "Reading Client SSL key from:\n\n{}\n\n", kcPem );
-                ks = SSLUtils.readKeyAndCert( kcPem, kcPass );
-
-                logger.trace( "Keystore contains the following certificates: {}", new CertEnumerator( ks, kcPass ) );
-            }
-            catch ( final CertificateException e )
-            {
-                logger.error( String.format(
-                        "Invalid configuration. Location: %s has an invalid client certificate! Error: %s",
-                        location.getUri(), e.getMessage() ), e );
-                throw new JHttpCException( "Failed to initialize SSL connection for repository: " + location.getUri() );
-            }
-            catch ( final KeyStoreException e )
-            {
-                logger.error( String.format(
-                        "Invalid configuration. Cannot initialize keystore for repository: %s. Error: %s",
-                        location.getUri(), e.getMessage() ), e );
-                throw new JHttpCException( "Failed to initialize SSL connection for repository: " + location.getUri() );
-            }
-            catch ( final NoSuchAlgorithmException e )
-            {
-                logger.error( String.format(
-                        "Invalid configuration. Cannot initialize keystore for repository: %s. Error: %s",
-                        location.getUri(), e.getMessage() ), e );
-                throw new JHttpCException( "Failed to initialize SSL connection for repository: " + location.getUri() );
-            }
-            catch ( final InvalidKeySpecException e )
-            {
-                logger.error( String.format( "Invalid configuration. Invalid client key for repository: %s. Error: %s",
-                                             location.getUri(), e.getMessage() ), e );
-                throw new JHttpCException( "Failed to initialize SSL connection for repository: " + location.getUri() );
-            }
-            catch ( IOException e )
-            {
-                throw new JHttpCException( "Failed to read client SSL key/certificate from: %s. Reason: %s", e,
-                                           location, e.getMessage() );
-            }
-            catch ( JHttpCException e )
-            {
-                throw new JHttpCException( "Failed to read client SSL key/certificate from: %s. Reason: %s", e,
-                                           location, e.getMessage() );
-            }
-        }
-        else
-        {
-            logger.debug( "No client key/certificate found" );
+            return null;
         }
 
-        final String sPem = location.getServerCertPem();
+        fac = new SSLConnectionSocketFactory( ctx, hostnameVerifier( location ) );
+        location.setAttribute( SSL_FACTORY_ATTRIB, fac );
+        return fac;
+    }
 
-        //        logger.debug( "Server certificate PEM:\n{}", sPem );
-        if ( sPem != null )
-        {
-            logger.debug( "Loading TrustStore (server SSL) information from: {}", location );
-            try
-            {
-                logger.trace( "Reading Server SSL cert from:\n\n{}\n\n", sPem );
-                ts = SSLUtils.decodePEMTrustStore( sPem, location.getHost() );
+    HostnameVerifier hostnameVerifier( final SiteConfig location )
+    {
+        return location.isIgnoreHostnameVerification() ? new NoopHostnameVerifier() : new DefaultHostnameVerifier();
+    }
 
-                logger.trace( "Trust store contains the following certificates:\n{}", new CertEnumerator( ts, null ) );
-            }
-            catch ( final CertificateException e )
-            {
-                logger.error( String.format(
-                        "Invalid configuration. Location: %s has an invalid server certificate! Error: %s",
-                        location.getUri(), e.getMessage() ), e );
-                throw new JHttpCException( "Failed to initialize SSL connection for repository: " + location.getUri() );
-            }
-            catch ( final KeyStoreException e )
-            {
-                logger.error( String.format(
-                        "Invalid configuration. Cannot initialize keystore for repository: %s. Error: %s",
-                        location.getUri(), e.getMessage() ), e );
-                throw new JHttpCException( "Failed to initialize SSL connection for repository: " + location.getUri() );
-            }
-            catch ( final NoSuchAlgorithmException e )
-            {
-                logger.error( String.format(
-                        "Invalid configuration. Cannot initialize keystore for repository: %s. Error: %s",
-                        location.getUri(), e.getMessage() ), e );
-                throw new JHttpCException( "Failed to initialize SSL connection for repository: " + location.getUri() );
-            }
-            catch ( IOException e )
-            {
-                throw new JHttpCException(
-                        "Failed to read server SSL certificate(s) (or couldn't parse server hostname) from: %s. Reason: %s",
-                        e, location, e.getMessage() );
-            }
-        }
-        else
-        {
-            logger.debug( "No server certificates found" );
-        }
 
-        // if user set either ks, ts, or want to ignore hostname verification, we know this is a ssl factory and set it accordingly
-        if ( ks != null || ts != null || location.isIgnoreHostnameVerification() )
+    /**
+     * Open connections to each of the given sites ahead of their first requests, so early traffic doesn't pay for
+     * TCP and TLS handshakes. Each site gets {@link SiteConfig#getPrewarmConnections()} connections (at least one),
+     * capped by its pool limits. Connections are opened in the background.
+     *
+     * @return a future that completes when every site's connections have been opened
+     */
+    public CompletableFuture<Void> warmUp( final Collection<SiteConfig> locations )
+            throws JHttpCException
+    {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for ( SiteConfig location : locations )
         {
-            logger.debug( "Setting up SSL context." );
-            try
+            SiteConnectionConfig connConfig = new SiteConnectionConfig( location );
+            final SSLConnectionSocketFactory sslFac = createSSLSocketFactory( location );
+            if ( sslFac != null )
             {
-                SSLContextBuilder sslBuilder = SSLContexts.custom().useProtocol( SSLConnectionSocketFactory.TLS );
-
-                if ( ks != null )
-                {
-                    logger.trace( "Loading key material for SSL context..." );
-                    PrivateKeyStrategy pkStrategy = new MonolithicKeyStrategy();
-                    sslBuilder.loadKeyMaterial( ks, kcPass.toCharArray(), pkStrategy );
-                }
+                connConfig.withSSLConnectionSocketFactory( sslFac );
+            }
 
-                if ( ts != null )
-                {
-                    logger.trace( "Loading trust material for SSL context..." );
+            futures.add( connectionCache.getTrackerFor( connConfig )
+                                        .prewarm( Math.max( 1, location.getPrewarmConnections() ) ) );
+        }
 
-                    SiteTrustType trustType = location.getTrustType();
-                    if ( trustType == null )
-                    {
-                        trustType = SiteTrustType.DEFAULT;
-                    }
+        return CompletableFuture.allOf( futures.toArray( new CompletableFuture<?>[0] ) );
+    }
 
-                    sslBuilder.loadTrustMaterial( ts, trustType.getTrustStrategy() );
-                }
+    /**
+     * @return how long the connection pool for this site is currently kept after its last use. With adaptive pool
+     * expiration this reflects what has been learned about the site's usage so far.
+     */
+    public long getConnectionPoolExpirationMillis( final SiteConfig location )
+    {
+        return connectionCache.getExpirationMillis( new SiteConnectionConfig( location ) );
+    }
 
-                SSLContext ctx = sslBuilder.build();
-                if ( location.isIgnoreHostnameVerification() )
-                {
-                    fac = new SSLConnectionSocketFactory( ctx, new NoopHostnameVerifier() );
-                }
-                else
-                {
-                    fac = new SSLConnectionSocketFactory( ctx, new DefaultHostnameVerifier() );
-                }
+    /**
+     * @return a snapshot of the site's connection pool, or null if the site has no live pool. This is cheap enough to
+     * poll frequently; it doesn't lock the pool.
+     */
+    public SitePoolStats getPoolStats( final SiteConfig location )
+    {
+        return connectionCache.getPoolStats( new SiteConnectionConfig( location ) );
+    }
 
-                location.setAttribute( SSL_FACTORY_ATTRIB, fac );
-                return fac;
-            }
-            catch ( final KeyManagementException e )
-            {
-                logger.error(
-                        "Invalid configuration. Cannot initialize SSL socket factory for repository: {}. Error: {}", e,
-                        location.getUri(), e.getMessage() );
-                throw new JHttpCException( "Failed to initialize SSL connection for repository: " + location.getUri() );
-            }
-            catch ( final UnrecoverableKeyException e )
-            {
-                logger.error(
-                        "Invalid configuration. Cannot initialize SSL socket factory for repository: {}. Error: {}", e,
-                        location.getUri(), e.getMessage() );
-                throw new JHttpCException( "Failed to initialize SSL connection for repository: " + location.getUri() );
-            }
-            catch ( final NoSuchAlgorithmException e )
-            {
-                logger.error(
-                        "Invalid configuration. Cannot initialize SSL socket factory for repository: {}. Error: {}", e,
-                        location.getUri(), e.getMessage() );
-                throw new JHttpCException( "Failed to initialize SSL connection for repository: " + location.getUri() );
-            }
-            catch ( final KeyStoreException e )
-            {
-                logger.error(
-                        "Invalid configuration. Cannot initialize SSL socket factory for repository: {}. Error: {}", e,
-                        location.getUri(), e.getMessage() );
-                throw new JHttpCException( "Failed to initialize SSL connection for repository: " + location.getUri() );
-            }
-        }
-        else
-        {
-            logger.debug( "No SSL configuration present; no SSL context created." );
-        }
+    /**
+     * @return snapshots of every live site connection pool
+     */
+    public List<SitePoolStats> getPoolStats()
+    {
+        return connectionCache.getPoolStats();
+    }
 
-        return null;
+    /**
+     * @return the number of pooled connections closed by the background idle / expired connection reaper
+     */
+    public long getEvictedConnectionCount()
+    {
+        return connectionCache.getEvictedConnectionCount();
     }
 
     @Override
@@ -510,4 +693,67 @@ public class HttpFactory
     {
         return connectionCache.shutdownGracefully( timeoutMillis );
     }
+
+    /**
+     * Shut down gracefully, draining every site's connection pool in parallel against one deadline. Pools shut down
+     * as soon as their last client is closed; new clients are refused. Pools still in use at the deadline are closed
+     * anyway.
+     *
+     * @return which sites drained, and which were closed while clients still held them
+     */
+    public DrainReport drain( final long timeoutMillis )
+            throws InterruptedException
+    {
+        return connectionCache.drain( timeoutMillis );
+    }
+
+    private static final class ContextTemplate
+    {
+        private final SiteConfig site;
+
+        private final HttpClientContext context;
+
+        private final AuthScope siteScope;
+
+        private final AuthScope proxyScope;
+
+        private final boolean authDecorated;
+
+        private ContextTemplate( final SiteConfig site, final HttpClientContext context, final AuthScope siteScope,
+                                 final AuthScope proxyScope, final boolean authDecorated )
+        {
+            this.site = site;
+            this.context = context;
+            this.siteScope = siteScope;
+            this.proxyScope = proxyScope;
+            this.authDecorated = authDecorated;
+        }
+    }
+
+    private static final class SiteLease
+    {
+        private final ConnectionManagerTracker tracker;
+
+        private final CloseableHttpClient client;
+
+        private final boolean shared;
+
+        private SiteLease( final ConnectionManagerTracker tracker, final CloseableHttpClient client,
+                           final boolean shared )
+        {
+            this.tracker = tracker;
+            this.client = client;
+            this.shared = shared;
+        }
+
+        private void release()
+        {
+            if ( !shared )
+            {
+                closeQuietly( client );
+            }
+
+            tracker.release();
+        }
+    }
 }
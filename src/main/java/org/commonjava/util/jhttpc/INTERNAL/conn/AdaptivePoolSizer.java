@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.INTERNAL.conn;
+
+import org.commonjava.util.jhttpc.model.PoolResizeEvent.Reason;
+
+/**
+ * AIMD controller for a site's connection limit, fed one {@link PoolSample} per interval.
+ *
+ * The limit grows additively (by the peak number of waiting requests, at least one) while requests wait noticeably
+ * for connections or time out, and shrinks multiplicatively when the average time connections are held rises well
+ * above its recent baseline, which is the sign of an upstream that's struggling with the load. A pool that stays less
+ * than half used shrinks by one per interval. The baseline follows the observed hold time quickly downward and slowly
+ * upward, so a lasting slowdown is eventually accepted as the new normal.
+ */
+public final class AdaptivePoolSizer
+{
+    static final double LATENCY_TOLERANCE = 2.0;
+
+    static final double DECREASE_FACTOR = 0.75;
+
+    private final int min;
+
+    private final int max;
+
+    private int current;
+
+    private double baselineHoldNanos = -1;
+
+    public AdaptivePoolSizer( final int min, final int max, final int initial )
+    {
+        this.min = Math.max( 1, min );
+        this.max = Math.max( this.min, max );
+        this.current = Math.max( this.min, Math.min( this.max, initial ) );
+    }
+
+    /**
+     * Update the limit from one interval's activity.
+     *
+     * @return why the limit changed, or null if it didn't
+     */
+    public synchronized Reason evaluate( final PoolSample sample )
+    {
+        double hold = sample.getAverageHoldNanos();
+        if ( hold >= 0 )
+        {
+            if ( baselineHoldNanos < 0 )
+            {
+                baselineHoldNanos = hold;
+            }
+            else if ( hold > baselineHoldNanos * LATENCY_TOLERANCE )
+            {
+                baselineHoldNanos += ( hold - baselineHoldNanos ) / 16;
+                if ( current > min )
+                {
+                    current = Math.max( min, (int) ( current * DECREASE_FACTOR ) );
+                    return Reason.UPSTREAM_LATENCY;
+                }
+
+                return null;
+            }
+            else
+            {
+                baselineHoldNanos += ( hold - baselineHoldNanos ) / ( hold < baselineHoldNanos ? 4 : 16 );
+            }
+        }
+
+        if ( sample.getTimeouts() > 0 || sample.getSlowLeases() > 0 )
+        {
+            if ( current < max )
+            {
+                current = Math.min( max, current + Math.max( 1, sample.getPeakPending() ) );
+                return Reason.LEASE_WAIT;
+            }
+
+            return null;
+        }
+
+        if ( current > min && sample.getPeakLeased() < current / 2 )
+        {
+            current--;
+            return Reason.UNDERUSED;
+        }
+
+        return null;
+    }
+
+    public synchronized int getCurrent()
+    {
+        return current;
+    }
+
+    public synchronized double getBaselineHoldNanos()
+    {
+        return baselineHoldNanos;
+    }
+
+    public int getMin()
+    {
+        return min;
+    }
+
+    public int getMax()
+    {
+        return max;
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.INTERNAL.conn;
+
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A site's non-blocking connection pool and the async client running on it. It belongs to the site's
+ * {@link ConnectionManagerTracker}, and shares that tracker's users, limits, expiry and shutdown with the blocking pool.
+ */
+public final class AsyncSitePool
+        implements CompanionPool
+{
+    private final PoolingNHttpClientConnectionManager connectionManager;
+
+    private final CloseableHttpAsyncClient client;
+
+    public AsyncSitePool( final PoolingNHttpClientConnectionManager connectionManager,
+                          final CloseableHttpAsyncClient client )
+    {
+        this.connectionManager = connectionManager;
+        this.client = client;
+    }
+
+    public CloseableHttpAsyncClient getClient()
+    {
+        return client;
+    }
+
+    public PoolingNHttpClientConnectionManager getConnectionManager()
+    {
+        return connectionManager;
+    }
+
+    @Override
+    public void start()
+    {
+        client.start();
+    }
+
+    @Override
+    public void setLimits( final int maxTotal, final int maxPerRoute )
+    {
+        connectionManager.setMaxTotal( maxTotal );
+        connectionManager.setDefaultMaxPerRoute( maxPerRoute );
+    }
+
+    @Override
+    public void evictIdleConnections( final long idleMillis )
+    {
+        connectionManager.closeExpiredConnections();
+        connectionManager.closeIdleConnections( idleMillis, TimeUnit.MILLISECONDS );
+    }
+
+    /**
+     * Stop the client's I/O reactor and close its connections. This waits for the reactor threads to finish, so it
+     * must not run on one of them.
+     */
+    @Override
+    public void shutdown()
+    {
+        try
+        {
+            client.close();
+        }
+        catch ( IOException e )
+        {
+            LoggerFactory.getLogger( getClass() ).warn( "Failed to close non-blocking client", e );
+        }
+    }
+}
@@ -16,16 +16,20 @@
 package org.commonjava.util.jhttpc.INTERNAL.conn;
 
 import org.apache.http.HttpClientConnection;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
 import org.apache.http.conn.ConnectionRequest;
 import org.apache.http.conn.HttpClientConnectionManager;
 import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.protocol.HttpContext;
+import org.commonjava.util.jhttpc.ConnectionPoolSaturatedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class CloseBlockingConnectionManager
         implements HttpClientConnectionManager, Closeable
@@ -37,10 +41,27 @@ public class CloseBlockingConnectionManager
 
     private final HttpClientConnectionManager connectionManager;
 
+    private final AtomicBoolean reallyShutdown = new AtomicBoolean( false );
+
+    private final LeaseWaitHistogram leaseWaits = new LeaseWaitHistogram();
+
+    private final LeakDetector leakDetector;
+
     public CloseBlockingConnectionManager( final SiteConnectionConfig config, final HttpClientConnectionManager connectionManager )
+    {
+        this( config, connectionManager, null );
+    }
+
+    /**
+     * @param leakDetector tracks outstanding leases when leak detection is enabled; null to skip tracking entirely
+     */
+    public CloseBlockingConnectionManager( final SiteConnectionConfig config,
+                                           final HttpClientConnectionManager connectionManager,
+                                           final LeakDetector leakDetector )
     {
         this.config = config;
         this.connectionManager = connectionManager;
+        this.leakDetector = leakDetector;
     }
 
     @Override
@@ -48,11 +69,58 @@ public class CloseBlockingConnectionManager
     {
         logger.trace( "Requesting connection to: {} with state: {}",
                       route, state );
-        ConnectionRequest request = connectionManager.requestConnection( route, state );
+        final ConnectionRequest request = connectionManager.requestConnection( route, state );
         logger.trace( "Connection request is: {}",
                       request );
 
-        return request;
+        return new ConnectionRequest()
+        {
+            @Override
+            public HttpClientConnection get( final long timeout, final TimeUnit tunit )
+                    throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException
+            {
+                long start = System.nanoTime();
+                try
+                {
+                    HttpClientConnection conn = request.get( timeout, tunit );
+                    leaseWaits.record( System.nanoTime() - start );
+                    if ( leakDetector != null )
+                    {
+                        leakDetector.leased( conn, route );
+                    }
+                    return conn;
+                }
+                catch ( ConnectionPoolSaturatedException e )
+                {
+                    // turned away without waiting; counted by the pool as a rejected lease
+                    throw e;
+                }
+                catch ( ConnectionPoolTimeoutException e )
+                {
+                    leaseWaits.recordTimeout();
+                    throw e;
+                }
+            }
+
+            @Override
+            public boolean cancel()
+            {
+                return request.cancel();
+            }
+        };
+    }
+
+    public LeaseWaitHistogram getLeaseWaits()
+    {
+        return leaseWaits;
+    }
+
+    /**
+     * @return this pool's leak detector, or null when leak detection is disabled
+     */
+    public LeakDetector getLeakDetector()
+    {
+        return leakDetector;
     }
 
     @Override
@@ -60,6 +128,10 @@ public class CloseBlockingConnectionManager
                                    final TimeUnit timeUnit )
     {
         logger.trace( "Releasing connection: {} with new state: {}", conn, newState );
+        if ( leakDetector != null )
+        {
+            leakDetector.released( conn );
+        }
         connectionManager.releaseConnection( conn, newState, validDuration, timeUnit );
     }
 
@@ -110,8 +182,16 @@ public class CloseBlockingConnectionManager
 
     public void reallyShutdown()
     {
-        logger.trace( "REALLY shutting down connection manager" );
-        connectionManager.shutdown();
+        if ( reallyShutdown.compareAndSet( false, true ) )
+        {
+            logger.trace( "REALLY shutting down connection manager" );
+            connectionManager.shutdown();
+        }
+    }
+
+    public boolean isReallyShutdown()
+    {
+        return reallyShutdown.get();
     }
 
     @Override
@@ -0,0 +1,40 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.INTERNAL.conn;
+
+/**
+ * A connection pool that runs alongside a site's blocking pool, such as the non-blocking one behind
+ * {@link org.commonjava.util.jhttpc.AsyncHttpFactory}. It belongs to the site's {@link ConnectionManagerTracker}, which
+ * gives it the blocking pool's limits, evicts its idle connections and shuts it down with the blocking pool. The
+ * tracker only knows it through this interface, so the libraries behind it stay optional.
+ */
+public interface CompanionPool
+{
+    /**
+     * Called once, before the pool is handed out.
+     */
+    void start();
+
+    void setLimits( int maxTotal, int maxPerRoute );
+
+    void evictIdleConnections( long idleMillis );
+
+    /**
+     * Close the pool's connections and stop its threads. This may wait for those threads to finish, so the tracker
+     * never calls it on one of them.
+     */
+    void shutdown();
+}
@@ -0,0 +1,212 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.INTERNAL.conn;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Factory-wide cap on pooled connections, shared out between site pools by weighted max-min fairness ("water
+ * filling"). Each site's demand is what it used over the last interval (peak leased plus peak waiting, capped by its
+ * own limit). Sites that need less than their weighted share keep only what they need, and the rest is split among the
+ * sites that need more. When total demand fits in the budget, the slack is handed out by weight as headroom.
+ *
+ * Every live pool keeps at least one connection, so the budget is only exact while there are fewer pools than
+ * connections in it.
+ *
+ * Rebalancing is serialized by a {@link ReentrantLock}, but a new pool's share is read from the other pools' current
+ * shares without it, so creating a pool never waits on a rebalance (which takes each pool's lock as it applies the
+ * shares). A pool created mid-rebalance may see a mix of old and new shares and push the total over the budget until
+ * the next rebalance.
+ */
+public final class ConnectionBudget
+{
+    private final int budget;
+
+    private final ReentrantLock rebalanceLock = new ReentrantLock();
+
+    public ConnectionBudget( final int budget )
+    {
+        this.budget = Math.max( 1, budget );
+    }
+
+    public int getBudget()
+    {
+        return budget;
+    }
+
+    /**
+     * Recompute every pool's share from its last demand, and apply the shares.
+     */
+    public void rebalance( final Collection<ConnectionManagerTracker> trackers )
+    {
+        rebalanceLock.lock();
+        try
+        {
+            doRebalance( trackers );
+        }
+        finally
+        {
+            rebalanceLock.unlock();
+        }
+    }
+
+    private void doRebalance( final Collection<ConnectionManagerTracker> trackers )
+    {
+        List<ConnectionManagerTracker> live = new ArrayList<>( trackers.size() );
+        for ( ConnectionManagerTracker tracker : trackers )
+        {
+            if ( tracker.hasPool() )
+            {
+                live.add( tracker );
+            }
+        }
+
+        int[] demands = new int[live.size()];
+        int[] weights = new int[live.size()];
+        for ( int i = 0; i < demands.length; i++ )
+        {
+            ConnectionManagerTracker tracker = live.get( i );
+            demands[i] = tracker.getBudgetDemand();
+            weights[i] = tracker.getSiteConfig().getConnectionBudgetWeight();
+        }
+
+        int[] shares = allocate( budget, demands, weights );
+        for ( int i = 0; i < shares.length; i++ )
+        {
+            ConnectionManagerTracker tracker = live.get( i );
+            tracker.setBudgetShare( Math.min( tracker.getOwnLimit(), shares[i] ) );
+        }
+    }
+
+    /**
+     * @return the share for a pool that's just being created: whatever isn't allocated to the other pools, up to its
+     * own limit (and at least one connection)
+     */
+    public int initialShare( final ConnectionManagerTracker created,
+                             final Collection<ConnectionManagerTracker> trackers )
+    {
+        int allocated = 0;
+        for ( ConnectionManagerTracker tracker : trackers )
+        {
+            if ( tracker != created && tracker.hasPool() )
+            {
+                allocated += tracker.getBudgetShare();
+            }
+        }
+
+        return Math.max( 1, Math.min( created.getOwnLimit(), budget - allocated ) );
+    }
+
+    /**
+     * Weighted max-min fair allocation of budget between the given demands. Every entry gets at least one.
+     */
+    public static int[] allocate( final int budget, final int[] demands, final int[] weights )
+    {
+        int n = demands.length;
+        int[] shares = new int[n];
+        if ( n == 0 )
+        {
+            return shares;
+        }
+
+        long totalDemand = 0;
+        long totalWeight = 0;
+        for ( int i = 0; i < n; i++ )
+        {
+            totalDemand += Math.max( 1, demands[i] );
+            totalWeight += Math.max( 1, weights[i] );
+        }
+
+        if ( totalDemand <= budget )
+        {
+            long slack = budget - totalDemand;
+            long handedOut = 0;
+            for ( int i = 0; i < n; i++ )
+            {
+                long headroom = slack * Math.max( 1, weights[i] ) / totalWeight;
+                shares[i] = (int) ( Math.max( 1, demands[i] ) + headroom );
+                handedOut += headroom;
+            }
+
+            // hand out what rounding left over, one at a time
+            for ( int i = 0; handedOut < slack; i = ( i + 1 ) % n )
+            {
+                shares[i]++;
+                handedOut++;
+            }
+
+            return shares;
+        }
+
+        boolean[] satisfied = new boolean[n];
+        double remaining = budget;
+        boolean changed;
+        do
+        {
+            changed = false;
+            double level = remaining / totalWeight;
+            for ( int i = 0; i < n; i++ )
+            {
+                int demand = Math.max( 1, demands[i] );
+                int weight = Math.max( 1, weights[i] );
+                if ( !satisfied[i] && demand <= weight * level )
+                {
+                    shares[i] = demand;
+                    satisfied[i] = true;
+                    remaining -= demand;
+                    totalWeight -= weight;
+                    changed = true;
+                }
+            }
+        }
+        while ( changed && totalWeight > 0 );
+
+        if ( totalWeight > 0 )
+        {
+            double level = remaining / totalWeight;
+            int handedOut = 0;
+            for ( int i = 0; i < n; i++ )
+            {
+                if ( !satisfied[i] )
+                {
+                    shares[i] = (int) Math.floor( Math.max( 1, weights[i] ) * level );
+                    handedOut += shares[i];
+                }
+            }
+
+            // hand out what rounding left over, one at a time
+            int leftover = (int) Math.floor( remaining ) - handedOut;
+            for ( int i = 0; i < n && leftover > 0; i++ )
+            {
+                if ( !satisfied[i] && shares[i] < demands[i] )
+                {
+                    shares[i]++;
+                    leftover--;
+                }
+            }
+        }
+
+        for ( int i = 0; i < n; i++ )
+        {
+            shares[i] = Math.max( 1, shares[i] );
+        }
+
+        return shares;
+    }
+}
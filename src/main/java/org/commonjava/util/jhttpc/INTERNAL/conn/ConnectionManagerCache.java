@@ -16,170 +16,570 @@
 package org.commonjava.util.jhttpc.INTERNAL.conn;
 
 import org.commonjava.util.jhttpc.JHttpCException;
+import org.commonjava.util.jhttpc.lifecycle.ConnectionLeakListener;
+import org.commonjava.util.jhttpc.lifecycle.PoolResizeListener;
 import org.commonjava.util.jhttpc.lifecycle.ShutdownEnabled;
+import org.commonjava.util.jhttpc.model.ConnectionLeak;
+import org.commonjava.util.jhttpc.model.DrainReport;
+import org.commonjava.util.jhttpc.model.HttpFactoryConfig;
+import org.commonjava.util.jhttpc.model.HttpFactoryConfigBuilder;
+import org.commonjava.util.jhttpc.model.PoolResizeEvent;
+import org.commonjava.util.jhttpc.model.SiteConfig;
+import org.commonjava.util.jhttpc.model.SiteDrainReport;
+import org.commonjava.util.jhttpc.model.SitePoolStats;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.Function;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by jdcasey on 11/3/15.
+ *
+ * Lookups of existing trackers are lock-free reads against a {@link ConcurrentHashMap}. A missing (or already shut
+ * down) tracker is built outside the map and swapped in through
+ * {@link ConcurrentMap#compute(Object, java.util.function.BiFunction)}, which only compares and exchanges references,
+ * so no tracker lock is ever taken while a map bin is locked. The expiration sweep and shutdown iterate the
+ * weakly-consistent map views without excluding lookups.
  */
 public class ConnectionManagerCache
         implements ShutdownEnabled
 {
-    private static final long EXPIRATION_SECONDS = 30;
+    private static final long SWEEP_INTERVAL_MILLIS = 1000;
+
+    private static final long EVICTION_INTERVAL_MILLIS = 1000;
+
+    private static final long POOL_SIZING_INTERVAL_MILLIS = 1000;
+
+    private static final long REPLACEMENT_THRASH_MILLIS = TimeUnit.MINUTES.toMillis( 1 );
+
+    private final ConcurrentMap<SiteConnectionConfig, ConnectionManagerTracker> cache = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, PoolActivity> activity = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Long> replacedAt = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Long> thrashWarnedAt = new ConcurrentHashMap<>();
 
-    private static final long EXPIRATION_MILLIS = TimeUnit.MILLISECONDS.convert( EXPIRATION_SECONDS, TimeUnit.SECONDS );
+    private final HttpFactoryConfig factoryConfig;
 
-    private final Map<SiteConnectionConfig, ConnectionManagerTracker> cache =
-            new HashMap<SiteConnectionConfig, ConnectionManagerTracker>();
+    private final ConnectionBudget connectionBudget;
 
     private final Timer timer = new Timer( "jhttpc-connection-manager-cache", true );
 
+    private final AtomicLong evictedConnections = new AtomicLong( 0 );
+
+    private final AtomicInteger backgroundThreads = new AtomicInteger( 0 );
+
+    private final ExecutorService backgroundExecutor = Executors.newCachedThreadPool( ( runnable ) -> {
+        Thread t = new Thread( runnable );
+        t.setDaemon( true );
+        t.setName( "jhttpc-background-" + backgroundThreads.getAndIncrement() );
+        return t;
+    } );
+
+    private volatile boolean closed;
+
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     public ConnectionManagerCache()
     {
-        timer.scheduleAtFixedRate( new ExpirationSweeper( this ), EXPIRATION_MILLIS, EXPIRATION_MILLIS );
+        this( new HttpFactoryConfigBuilder().build() );
     }
 
-    public synchronized void expireTrackersOlderThan( long duration, TimeUnit unit )
+    public ConnectionManagerCache( final HttpFactoryConfig factoryConfig )
     {
-        long expiration = System.currentTimeMillis() - TimeUnit.MILLISECONDS.convert( duration, unit );
+        this.factoryConfig = factoryConfig;
+        Integer maxTotal = factoryConfig.getMaxTotalConnections();
+        this.connectionBudget = maxTotal == null ? null : new ConnectionBudget( maxTotal );
+        timer.schedule( new ExpirationSweeper( this ), SWEEP_INTERVAL_MILLIS, SWEEP_INTERVAL_MILLIS );
+        timer.schedule( new IdleConnectionReaper( this ), EVICTION_INTERVAL_MILLIS, EVICTION_INTERVAL_MILLIS );
+        timer.schedule( new PoolSizeAdjuster( this ), POOL_SIZING_INTERVAL_MILLIS, POOL_SIZING_INTERVAL_MILLIS );
+    }
 
-        for ( SiteConnectionConfig config : new HashSet<SiteConnectionConfig>( cache.keySet() ) )
+    /**
+     * Close expired and idle connections in every live pool, using each site's idle-connection timeout.
+     *
+     * @return the number of connections closed
+     */
+    public int evictIdleConnections()
+    {
+        int evicted = 0;
+        for ( ConnectionManagerTracker tracker : cache.values() )
         {
-            ConnectionManagerTracker tracker = cache.get( config );
-            if ( tracker != null && tracker.getLastRetrieval() < expiration )
+            try
+            {
+                evicted += tracker.evictIdleConnections();
+            }
+            catch ( RuntimeException e )
             {
-                if ( tracker.detach() )
+                logger.warn( "Failed to evict idle connections for: " + tracker.getConnectionConfig().getId(), e );
+            }
+        }
+
+        if ( evicted > 0 )
+        {
+            evictedConnections.addAndGet( evicted );
+        }
+
+        return evicted;
+    }
+
+    /**
+     * Report connections held longer than the factory's leak-detection threshold to its
+     * {@link ConnectionLeakListener}, or log them if there is none. Each leaked lease is reported once.
+     *
+     * @return the number of newly detected leaks
+     */
+    public int detectLeaks()
+    {
+        if ( factoryConfig.getLeakDetectionThresholdMillis() == null )
+        {
+            return 0;
+        }
+
+        ConnectionLeakListener listener = factoryConfig.getConnectionLeakListener();
+        long now = System.currentTimeMillis();
+        int found = 0;
+        for ( ConnectionManagerTracker tracker : cache.values() )
+        {
+            for ( ConnectionLeak leak : tracker.detectLeaks( now ) )
+            {
+                found++;
+                if ( listener == null )
                 {
-                    logger.trace( "Detached connection tracker from manager cache: {}", tracker );
+                    logLeak( leak );
+                    continue;
                 }
-                else
+
+                try
                 {
-                    logger.trace( "Detaching did not result in shutdown for: {}. Try shutdownNow() to forcibly shutdown.", tracker );
+                    listener.connectionLeaked( leak );
+                }
+                catch ( RuntimeException e )
+                {
+                    logger.warn( "Connection leak listener failed for: " + leak, e );
                 }
             }
         }
+
+        return found;
+    }
+
+    private void logLeak( final ConnectionLeak leak )
+    {
+        if ( !leak.isSampled() )
+        {
+            logger.warn( "Suspected connection leak: connection to {} (site: {}) leased by thread {} has been held for "
+                                 + "{}ms. This lease was not sampled, so its origin is unknown.", leak.getRoute(),
+                         leak.getSiteId(), leak.getThreadName(), leak.getHeldMillis() );
+            return;
+        }
+
+        Throwable origin = new Throwable( "Connection leased here" );
+        origin.setStackTrace( leak.getAcquisitionTrace() );
+        logger.warn( String.format( "Suspected connection leak: connection to %s (site: %s) leased by thread %s has "
+                                            + "been held for %dms.", leak.getRoute(), leak.getSiteId(),
+                                    leak.getThreadName(), leak.getHeldMillis() ), origin );
     }
 
-    public synchronized ConnectionManagerTracker getTrackerFor( SiteConnectionConfig config )
-            throws JHttpCException
+    /**
+     * Run one round of adaptive pool sizing for every live pool that uses it, notifying the factory's
+     * {@link PoolResizeListener} of each resize, then share the factory-wide connection budget (if any) out again
+     * based on what each pool used.
+     */
+    public void adjustPoolSizes()
+    {
+        PoolResizeListener listener = factoryConfig.getPoolResizeListener();
+        for ( ConnectionManagerTracker tracker : cache.values() )
+        {
+            try
+            {
+                PoolResizeEvent event = tracker.adjustPoolSize( tracker.takeSample() );
+                if ( event != null && listener != null )
+                {
+                    listener.poolResized( event );
+                }
+            }
+            catch ( RuntimeException e )
+            {
+                logger.warn( "Failed to adjust connection pool size for: " + tracker.getConnectionConfig().getId(),
+                             e );
+            }
+        }
+
+        if ( connectionBudget != null )
+        {
+            try
+            {
+                connectionBudget.rebalance( cache.values() );
+            }
+            catch ( RuntimeException e )
+            {
+                logger.warn( "Failed to rebalance the connection budget", e );
+            }
+        }
+    }
+
+    /**
+     * @return the factory-wide connection budget, or null if there isn't one
+     */
+    public ConnectionBudget getConnectionBudget()
+    {
+        return connectionBudget;
+    }
+
+    Collection<ConnectionManagerTracker> getTrackers()
+    {
+        return cache.values();
+    }
+
+    /**
+     * @return the number of connections closed by idle / expired eviction since this cache was created
+     */
+    public long getEvictedConnectionCount()
+    {
+        return evictedConnections.get();
+    }
+
+    /**
+     * @return pool snapshot for the site, or null if it has no live connection pool
+     */
+    public SitePoolStats getPoolStats( final SiteConnectionConfig config )
     {
         ConnectionManagerTracker tracker = cache.get( config );
-        if ( tracker == null )
+        return tracker == null || tracker.isShutdown() ? null : tracker.getPoolStats();
+    }
+
+    /**
+     * @return pool snapshots for every site with a live connection pool
+     */
+    public List<SitePoolStats> getPoolStats()
+    {
+        List<SitePoolStats> result = new ArrayList<>();
+        for ( ConnectionManagerTracker tracker : cache.values() )
         {
-            tracker = new ConnectionManagerTracker( config, this );
-            cache.put( config, tracker );
+            if ( !tracker.isShutdown() )
+            {
+                result.add( tracker.getPoolStats() );
+            }
         }
 
-        return tracker.retrieved();
+        return result;
     }
 
-    @Override
-    public boolean isShutdown()
+    public HttpFactoryConfig getFactoryConfig()
+    {
+        return factoryConfig;
+    }
+
+    /**
+     * Shared executor for work done off the request path, such as pre-warming connections.
+     */
+    public ExecutorService getBackgroundExecutor()
+    {
+        return backgroundExecutor;
+    }
+
+    /**
+     * Detach every tracker that has gone unused for longer than its own expiration (see
+     * {@link #getExpirationMillis(SiteConnectionConfig)}), and forget the usage history of sites that have been gone
+     * for much longer than the maximum adaptive expiration.
+     */
+    public void expireTrackers()
     {
-        if ( !cache.isEmpty() )
+        long now = System.currentTimeMillis();
+        for ( ConnectionManagerTracker tracker : cache.values() )
         {
-            return cache.values().stream().filter( tracker -> tracker.isActive() ).findAny().isPresent();
+            if ( now - tracker.getLastRetrieval() >= tracker.getExpirationMillis() )
+            {
+                detach( tracker );
+            }
         }
 
-        return true;
+        long forgetBefore = now - 4 * TimeUnit.SECONDS.toMillis( factoryConfig.getMaxConnectionPoolExpirationSeconds() );
+        activity.entrySet().removeIf( e -> e.getValue().getLastRetrieval() < forgetBefore );
     }
 
-    @Override
-    public boolean shutdownNow()
+    /**
+     * @return how long this site's pool is kept after its last use, taking adaptive expiration into account
+     */
+    public long getExpirationMillis( final SiteConnectionConfig config )
     {
-        try
+        ConnectionManagerTracker tracker = cache.get( config );
+        if ( tracker != null )
         {
-            return doShutdown( (tracker) -> tracker.shutdownNow() );
+            return tracker.getExpirationMillis();
         }
-        catch ( InterruptedException e )
+
+        return getExpirationMillis( config.getConfig(), activity.get( config.getId() ) );
+    }
+
+    long getExpirationMillis( final SiteConfig site, final PoolActivity siteActivity )
+    {
+        Integer siteSeconds = site.getConnectionPoolExpirationSeconds();
+        long base = TimeUnit.SECONDS.toMillis(
+                siteSeconds == null ? factoryConfig.getConnectionPoolExpirationSeconds() : siteSeconds );
+
+        if ( siteActivity == null )
         {
-            logger.warn( "Interrupted while shutting down connection manager cache." );
+            return base;
         }
 
-        return false;
+        return siteActivity.getExpirationMillis( base, TimeUnit.SECONDS.toMillis(
+                factoryConfig.getMinConnectionPoolExpirationSeconds() ), TimeUnit.SECONDS.toMillis(
+                factoryConfig.getMaxConnectionPoolExpirationSeconds() ) );
     }
 
-    private synchronized boolean doShutdown( Function<ConnectionManagerTracker, Boolean> shutdownAction )
-            throws InterruptedException
+    private PoolActivity activityFor( final SiteConnectionConfig config )
     {
-        AtomicInteger counter = new AtomicInteger( 0 );
-        ExecutorService exec = Executors.newCachedThreadPool( ( runnable ) -> {
-            Thread t = new Thread( runnable );
-            t.setDaemon( true );
-            t.setName( "jHTTPc shutdown-" + ( counter.getAndIncrement() ) + ":" + Thread.currentThread().getName() );
-            t.setPriority( 9 );
+        Boolean adaptive = config.getConfig().getAdaptivePoolExpiration();
+        if ( adaptive == null ? !factoryConfig.isAdaptivePoolExpiration() : !adaptive )
+        {
+            return null;
+        }
 
-            return t;
-        } );
+        return activity.computeIfAbsent( config.getId(), id -> new PoolActivity( System.currentTimeMillis() ) );
+    }
 
-        ExecutorCompletionService<Boolean> svc = new ExecutorCompletionService<>( exec );
-        cache.forEach( ( config, tracker ) -> svc.submit( () -> shutdownAction.apply( tracker ) ) );
+    public void expireTrackersOlderThan( long duration, TimeUnit unit )
+    {
+        long expiration = System.currentTimeMillis() - TimeUnit.MILLISECONDS.convert( duration, unit );
 
-        boolean result = true;
-        while ( counter.getAndDecrement() > 0 )
+        for ( ConnectionManagerTracker tracker : cache.values() )
         {
-            try
+            if ( tracker.getLastRetrieval() < expiration )
             {
-                result = result && svc.take().get();
+                detach( tracker );
             }
-            catch ( ExecutionException e )
+        }
+    }
+
+    private void detach( final ConnectionManagerTracker tracker )
+    {
+        if ( tracker.detach() )
+        {
+            logger.trace( "Detached connection tracker from manager cache: {}", tracker );
+        }
+        else
+        {
+            logger.trace( "Detaching did not result in shutdown for: {}. Try shutdownNow() to forcibly shutdown.", tracker );
+        }
+    }
+
+    /**
+     * Retrieve the live tracker for this site. The tracker may still shut down before the caller acquires it, in which
+     * case {@link ConnectionManagerTracker#acquire()} returns null and the caller should retrieve again.
+     *
+     * If the site's {@link SiteConfig} instance has changed since the tracker was created, any changed limits are
+     * applied to the live pool in place. If the change can't be applied in place (new SSL settings), the tracker is
+     * replaced and the old pool drains, shutting down when its last user releases it. Replacing a site's pool again
+     * within a minute is logged as a warning, since it usually means configs with the same id but different SSL
+     * settings are being used at once.
+     */
+    public ConnectionManagerTracker getTrackerFor( SiteConnectionConfig config )
+            throws JHttpCException
+    {
+        if ( closed )
+        {
+            throw new IllegalStateException( "Connection manager cache is shut down; cannot connect to: "
+                                                     + config.getId() );
+        }
+
+        ConnectionManagerTracker tracker = cache.get( config );
+        if ( tracker != null && !tracker.isShutdown() && tracker.getSiteConfig() == config.getConfig() )
+        {
+            return tracker.retrieved();
+        }
+
+        ConnectionManagerTracker created = null;
+        ConnectionManagerTracker replaced = null;
+        while ( true )
+        {
+            ConnectionManagerTracker existing = cache.get( config );
+            if ( existing != null && !existing.isShutdown() )
+            {
+                if ( existing.getSiteConfig() == config.getConfig()
+                        || existing.getConnectionConfig().canShareConnectionsWith( config ) )
+                {
+                    // takes the tracker's lock, so stay out of the map while doing it
+                    existing.reconfigure( config );
+                    tracker = existing;
+                    break;
+                }
+            }
+
+            if ( created == null )
+            {
+                created = new ConnectionManagerTracker( config, this, activityFor( config ) );
+            }
+
+            // trackers are equal by site id, so swap only if the instance we looked at is still there
+            final ConnectionManagerTracker expected = existing;
+            final ConnectionManagerTracker candidate = created;
+            if ( cache.compute( config, ( c, current ) -> current == expected ? candidate : current ) == created )
             {
-                logger.warn( "Error executing shutdown of connection managers." );
-                result = false;
+                tracker = created;
+                replaced = existing == null || existing.isShutdown() ? null : existing;
+                break;
             }
         }
 
-        timer.cancel();
+        if ( replaced != null )
+        {
+            logReplacement( config.getId() );
+            replaced.drain();
+        }
 
-        return result;
+        return tracker.retrieved();
+    }
+
+    private void logReplacement( final String siteId )
+    {
+        long now = System.currentTimeMillis();
+        Long previous = replacedAt.put( siteId, now );
+        if ( previous == null || now - previous >= REPLACEMENT_THRASH_MILLIS )
+        {
+            logger.info( "Connection settings changed for: {}; draining its old connection pool.", siteId );
+            return;
+        }
+
+        // a pool that can't be shared can't be kept either, but say once in a while why pools keep being rebuilt
+        Long warned = thrashWarnedAt.get( siteId );
+        boolean warn = warned == null ?
+                thrashWarnedAt.putIfAbsent( siteId, now ) == null :
+                now - warned >= REPLACEMENT_THRASH_MILLIS && thrashWarnedAt.replace( siteId, warned, now );
+
+        if ( warn )
+        {
+            logger.warn( "Connection pool for: {} replaced again {}ms after the last time. SiteConfigs with this id but "
+                                 + "different SSL settings seem to be in use at once; each switch between them drains "
+                                 + "the pool and opens new connections.", siteId, now - previous );
+        }
+        else
+        {
+            logger.debug( "Connection settings changed for: {}; draining its old connection pool.", siteId );
+        }
     }
 
     @Override
-    public boolean shutdownGracefully( final long timeoutMillis )
-            throws InterruptedException
+    public boolean isShutdown()
+    {
+        return closed && cache.values().stream().allMatch( ConnectionManagerTracker::isShutdown );
+    }
+
+    @Override
+    public boolean shutdownNow()
     {
-        AtomicBoolean interrupted = new AtomicBoolean( false );
-        boolean result = doShutdown( ( tracker ) -> {
+        closed = true;
+        for ( ConnectionManagerTracker tracker : cache.values() )
+        {
             try
             {
-                return tracker.shutdownGracefully( timeoutMillis );
+                tracker.shutdownNow();
             }
-            catch ( InterruptedException e )
+            catch ( RuntimeException e )
             {
-                interrupted.set( true );
+                logger.warn( "Failed to shut down connection pool for: " + tracker.getConnectionConfig().getId(), e );
             }
+        }
+
+        stopBackgroundTasks();
+        return true;
+    }
+
+    @Override
+    public boolean shutdownGracefully( final long timeoutMillis )
+            throws InterruptedException
+    {
+        return drain( timeoutMillis ).isClean();
+    }
 
-            return false;
-        } );
+    /**
+     * Stop handing out connection pools, and drain every site's pool in parallel: each refuses new leases and shuts
+     * down the moment its last user releases it. Pools still held by users at the deadline are closed anyway.
+     *
+     * @param timeoutMillis deadline for all pools, measured from the start of the drain
+     */
+    public DrainReport drain( final long timeoutMillis )
+            throws InterruptedException
+    {
+        closed = true;
+        final long start = System.nanoTime();
 
-        if ( interrupted.get() )
+        List<ConnectionManagerTracker> trackers = new ArrayList<>( cache.values() );
+        int[] usersAtStart = new int[trackers.size()];
+        long[] finished = new long[trackers.size()];
+        CompletableFuture<?>[] terminations = new CompletableFuture<?>[trackers.size()];
+        for ( int i = 0; i < trackers.size(); i++ )
         {
-            throw new InterruptedException();
+            final int idx = i;
+            ConnectionManagerTracker tracker = trackers.get( i );
+            usersAtStart[i] = tracker.getUsers();
+            tracker.drain();
+            terminations[i] = tracker.getTermination().thenRun( () -> finished[idx] = System.nanoTime() );
         }
 
-        return result;
+        try
+        {
+            CompletableFuture.allOf( terminations ).get( timeoutMillis, TimeUnit.MILLISECONDS );
+        }
+        catch ( TimeoutException e )
+        {
+            logger.debug( "Not every connection pool drained within {}ms", timeoutMillis );
+        }
+        catch ( ExecutionException e )
+        {
+            logger.warn( "Error waiting for connection pools to drain", e );
+        }
+
+        List<SiteDrainReport> reports = new ArrayList<>( trackers.size() );
+        for ( int i = 0; i < trackers.size(); i++ )
+        {
+            ConnectionManagerTracker tracker = trackers.get( i );
+            String siteId = tracker.getConnectionConfig().getId();
+            if ( terminations[i].isDone() )
+            {
+                reports.add( new SiteDrainReport( siteId, usersAtStart[i], true, 0,
+                                                  TimeUnit.NANOSECONDS.toMillis( finished[i] - start ) ) );
+            }
+            else
+            {
+                int users = tracker.getUsers();
+                logger.warn( "Closing connection pool for: {} with {} users still holding it", siteId, users );
+                tracker.shutdownNow();
+                reports.add( new SiteDrainReport( siteId, usersAtStart[i], false, users,
+                                                  TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start ) ) );
+            }
+        }
+
+        stopBackgroundTasks();
+        return new DrainReport( reports, TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start ) );
+    }
+
+    private void stopBackgroundTasks()
+    {
+        timer.cancel();
+        backgroundExecutor.shutdown();
     }
 
-    synchronized void remove( final SiteConnectionConfig config )
+    void remove( final SiteConnectionConfig config, final ConnectionManagerTracker tracker )
     {
-        cache.remove( config );
+        // trackers are equal by site id, so compare instances to avoid removing a replacement tracker
+        cache.computeIfPresent( config, ( c, existing ) -> existing == tracker ? null : existing );
     }
 
     static final class ExpirationSweeper
@@ -198,7 +598,50 @@ public class ConnectionManagerCache
         {
             Logger logger = LoggerFactory.getLogger( getClass() );
             logger.trace( "Sweeping for old connection trackers." );
-            cache.expireTrackersOlderThan( EXPIRATION_SECONDS, TimeUnit.SECONDS );
+            cache.expireTrackers();
+        }
+    }
+
+    static final class IdleConnectionReaper
+            extends TimerTask
+    {
+
+        private ConnectionManagerCache cache;
+
+        public IdleConnectionReaper( ConnectionManagerCache cache )
+        {
+            this.cache = cache;
+        }
+
+        @Override
+        public void run()
+        {
+            Logger logger = LoggerFactory.getLogger( getClass() );
+            int evicted = cache.evictIdleConnections();
+            if ( evicted > 0 )
+            {
+                logger.debug( "Evicted {} idle / expired pooled connections.", evicted );
+            }
+
+            cache.detectLeaks();
+        }
+    }
+
+    static final class PoolSizeAdjuster
+            extends TimerTask
+    {
+
+        private ConnectionManagerCache cache;
+
+        public PoolSizeAdjuster( ConnectionManagerCache cache )
+        {
+            this.cache = cache;
+        }
+
+        @Override
+        public void run()
+        {
+            cache.adjustPoolSizes();
         }
     }
 }
@@ -15,47 +15,168 @@
  */
 package org.commonjava.util.jhttpc.INTERNAL.conn;
 
+import org.apache.http.Header;
+import org.apache.http.HttpClientConnection;
 import org.apache.http.HttpResponse;
+import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.config.ConnectionConfig;
 import org.apache.http.config.MessageConstraints;
 import org.apache.http.config.SocketConfig;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.conn.ManagedHttpClientConnectionFactory;
-import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.impl.io.DefaultHttpResponseParser;
 import org.apache.http.io.HttpMessageParser;
 import org.apache.http.io.HttpMessageParserFactory;
 import org.apache.http.io.SessionInputBuffer;
+import org.commonjava.util.jhttpc.JHttpCException;
 import org.commonjava.util.jhttpc.lifecycle.ShutdownEnabled;
+import org.commonjava.util.jhttpc.model.ConnectionLeak;
+import org.commonjava.util.jhttpc.model.HttpFactoryConfig;
+import org.commonjava.util.jhttpc.model.PoolResizeEvent;
 import org.commonjava.util.jhttpc.model.SiteConfig;
+import org.commonjava.util.jhttpc.model.SitePoolStats;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.ReentrantLock;
+
 /**
  * Created by jdcasey on 11/3/15.
+ *
+ * Lease count and lifecycle flags are packed into a single {@link AtomicLong} and only ever change by CAS, so
+ * {@link #acquire()} and {@link #release()} never take a lock and a detach can never race a lease. The pool is shut
+ * down exactly once, by whichever transition sets {@link #SHUTDOWN}: the last release after a detach, a detach with no
+ * users, or an explicit shutdown. Once shut down, {@link #acquire()} returns null and the caller must look up a fresh
+ * tracker. A tracker that has been replaced is put into {@link #DRAINING}, which refuses new leases (unlike a detach,
+ * which the next lease cancels) and shuts the pool down after the last release.
+ *
+ * Pool creation and reconfiguration are serialized by a {@link ReentrantLock} rather than this object's monitor, so a
+ * virtual thread waiting for the first caller to build the pool parks instead of pinning its carrier.
  */
 public class ConnectionManagerTracker
         implements ShutdownEnabled
 {
-    private SiteConnectionConfig config;
+    private static final long USERS_MASK = 0xFFFFFFFFL;
+
+    private static final long DETACHED = 1L << 32;
+
+    private static final long SHUTDOWN = 1L << 33;
+
+    private static final long DRAINING = 1L << 34;
+
+    static final int MAX_SHARED_CLIENTS = 32;
+
+    private static final AtomicReferenceFieldUpdater<ConnectionManagerTracker, SiteConnectionConfig> CONFIG =
+            AtomicReferenceFieldUpdater.newUpdater( ConnectionManagerTracker.class, SiteConnectionConfig.class,
+                                                    "config" );
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private volatile SiteConnectionConfig config;
+
+    private final ConnectionManagerCache managerCache;
+
+    private final AtomicLong state = new AtomicLong();
+
+    private volatile CloseBlockingConnectionManager manager;
+
+    private volatile SitePoolingConnectionManager pool;
+
+    private volatile CompanionPool companionPool;
+
+    private final PoolActivity activity;
+
+    private volatile long lastRetrieval;
+
+    private final AtomicReference<CompletableFuture<Void>> prewarming = new AtomicReference<>();
+
+    private volatile AdaptivePoolSizer sizer;
+
+    private final AtomicLong poolResizes = new AtomicLong( 0 );
+
+    private volatile int budgetShare = Integer.MAX_VALUE;
+
+    private volatile int budgetDemand = 1;
 
-    private ConnectionManagerCache managerCache;
+    private final CompletableFuture<Void> termination = new CompletableFuture<>();
 
-    private CloseBlockingConnectionManager manager;
-    private int users = 0;
-    private boolean detached;
-    private long lastRetrieval;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private volatile ConcurrentMap<List<String>, CloseableHttpClient> sharedClients = new ConcurrentHashMap<>();
 
     public ConnectionManagerTracker( SiteConnectionConfig config, ConnectionManagerCache managerCache )
+    {
+        this( config, managerCache, null );
+    }
+
+    ConnectionManagerTracker( SiteConnectionConfig config, ConnectionManagerCache managerCache,
+                              PoolActivity activity )
     {
         this.config = config;
         this.managerCache = managerCache;
+        this.activity = activity;
+    }
+
+    /**
+     * Lease the connection manager, clearing any pending detach.
+     *
+     * @return the manager, or null if this tracker has already shut down
+     */
+    public CloseBlockingConnectionManager acquire()
+    {
+        long current;
+        do
+        {
+            current = state.get();
+            if ( ( current & ( SHUTDOWN | DRAINING ) ) != 0 )
+            {
+                return null;
+            }
+        }
+        while ( !state.compareAndSet( current, ( current & ~DETACHED ) + 1 ) );
+
+        CloseBlockingConnectionManager mgr = manager;
+        if ( mgr == null )
+        {
+            mgr = createManager();
+        }
+
+        return mgr;
+    }
+
+    private CloseBlockingConnectionManager createManager()
+    {
+        lock.lock();
+        try
+        {
+            return doCreateManager();
+        }
+        finally
+        {
+            lock.unlock();
+        }
     }
 
-    public synchronized CloseBlockingConnectionManager acquire()
+    private CloseBlockingConnectionManager doCreateManager()
     {
         if ( manager == null )
         {
-            Logger logger = LoggerFactory.getLogger( getClass() );
             logger.info( "Creating connection pool for: {} with {} connections.", config.getId(),
                          config.getMaxConnections() );
 
@@ -65,53 +186,729 @@ public class ConnectionManagerTracker
             ManagedHttpClientConnectionFactory fac =
                     new ManagedHttpClientConnectionFactory( new ResponseParserFactory() );
 
-            PoolingHttpClientConnectionManager poolingMgr =
-                    new PoolingHttpClientConnectionManager( config.getSocketFactoryRegistry(), fac );
+            SitePoolingConnectionManager poolingMgr =
+                    new SitePoolingConnectionManager( config.getSocketFactoryRegistry(), fac );
 
 //            PoolingHttpClientConnectionManager poolingMgr =
 //                    new PoolingHttpClientConnectionManager( config.getSocketFactoryRegistry() );
 
-            poolingMgr.setMaxTotal( config.getMaxConnections() );
-            poolingMgr.setDefaultMaxPerRoute( config.getMaxPerRoute() );
+            ConnectionBudget budget = managerCache.getConnectionBudget();
+            if ( budget != null )
+            {
+                budgetShare = budget.initialShare( this, managerCache.getTrackers() );
+            }
+
+            applyPoolSettings( poolingMgr, config );
+
+            pool = poolingMgr;
+            HttpFactoryConfig factoryConfig = managerCache.getFactoryConfig();
+            Long leakThreshold = factoryConfig.getLeakDetectionThresholdMillis();
+            LeakDetector leakDetector = leakThreshold == null ?
+                    null :
+                    new LeakDetector( config.getId(), leakThreshold, factoryConfig.getLeakDetectionSampleRate() );
+
+            manager = new CloseBlockingConnectionManager( config, poolingMgr, leakDetector );
+            if ( isShutdown() )
+            {
+                // lost a race with shutdownNow(), which may not have seen this manager
+                manager.reallyShutdown();
+            }
+            else if ( config.getPrewarmConnections() > 0 )
+            {
+                prewarm( config.getPrewarmConnections() );
+            }
+        }
+
+        return manager;
+    }
+
+    private void applyPoolSettings( final SitePoolingConnectionManager poolingMgr, final SiteConnectionConfig config )
+    {
+        SiteConfig site = config.getConfig();
+        if ( site.isAdaptivePoolSizing() )
+        {
+            AdaptivePoolSizer newSizer =
+                    new AdaptivePoolSizer( site.getAdaptivePoolMinConnections(), site.getAdaptivePoolMaxConnections(),
+                                           config.getMaxConnections() );
+
+            sizer = newSizer;
+        }
+        else
+        {
+            sizer = null;
+        }
+
+        applyLimit( poolingMgr, config );
+        poolingMgr.setRouteLimits( new RouteLimits( site.getRouteLimits() ) );
+
+        int validationMillis = site.getConnectionValidationMillis();
+        switch ( site.getConnectionValidationPolicy() )
+        {
+            case NEVER:
+                poolingMgr.setValidateAfterInactivity( 0 );
+                poolingMgr.setBackgroundValidation( 0 );
+                break;
+            case BACKGROUND:
+                poolingMgr.setValidateAfterInactivity( 0 );
+                poolingMgr.setBackgroundValidation( validationMillis );
+                break;
+            default:
+                poolingMgr.setValidateAfterInactivity( validationMillis );
+                poolingMgr.setBackgroundValidation( 0 );
+        }
+
+        poolingMgr.setConnectionRetirement(
+                TimeUnit.SECONDS.toMillis( site.getMaxConnectionLifetimeSeconds() ), site.getMaxRequestsPerConnection() );
+        poolingMgr.setMaxPendingLeases( site.getMaxPendingLeases() );
+
+        ConnectionConfig connectionConfig = config.getConnectionConfig();
+        if ( connectionConfig != null )
+        {
+            poolingMgr.setDefaultConnectionConfig( connectionConfig );
+        }
+
+        SocketConfig socketConfig = config.getSocketConfig();
+        if ( socketConfig != null )
+        {
+            poolingMgr.setDefaultSocketConfig( socketConfig );
+        }
+    }
+
+    /**
+     * Set the pool's max-total to the lower of the site's own limit and its share of the factory-wide budget.
+     */
+    private void applyLimit( final SitePoolingConnectionManager poolingMgr, final SiteConnectionConfig config )
+    {
+        int own = getOwnLimit();
+        int maxTotal = Math.min( own, budgetShare );
+
+        // keep the configured per-route share of the total
+        int perRoute = (int) Math.round( maxTotal * config.getMaxPerRoute() / (double) config.getMaxConnections() );
+        perRoute = Math.max( 1, Math.min( maxTotal, perRoute ) );
+        poolingMgr.setBudgetLimited( maxTotal < own );
+        poolingMgr.setMaxTotal( maxTotal );
+        poolingMgr.setDefaultMaxPerRoute( perRoute );
+
+        CompanionPool companion = companionPool;
+        if ( companion != null )
+        {
+            companion.setLimits( maxTotal, perRoute );
+        }
+    }
+
+    /**
+     * @return the pool size this site would have without a factory-wide budget: its adaptive size, or its configured
+     * max connections
+     */
+    public int getOwnLimit()
+    {
+        AdaptivePoolSizer s = sizer;
+        return s == null ? config.getMaxConnections() : s.getCurrent();
+    }
+
+    public boolean hasPool()
+    {
+        return pool != null && !isShutdown();
+    }
+
+    public int getBudgetShare()
+    {
+        return budgetShare;
+    }
 
-            ConnectionConfig connectionConfig = config.getConnectionConfig();
-            if ( connectionConfig != null )
+    /**
+     * @return how many connections this site used over the last sampling interval (peak leased plus peak waiting),
+     * capped by its own limit
+     */
+    public int getBudgetDemand()
+    {
+        return budgetDemand;
+    }
+
+    /**
+     * Apply a new share of the factory-wide budget, closing available connections above it right away. Takes this
+     * tracker's lock, like every other change to the pool's limits.
+     */
+    public void setBudgetShare( final int share )
+    {
+        SitePoolingConnectionManager p;
+        lock.lock();
+        try
+        {
+            p = pool;
+            if ( share == budgetShare || p == null )
             {
-                poolingMgr.setDefaultConnectionConfig( connectionConfig );
+                budgetShare = share;
+                return;
             }
 
-            SocketConfig socketConfig = config.getSocketConfig();
-            if ( socketConfig != null )
+            budgetShare = share;
+            applyLimit( p, config );
+        }
+        finally
+        {
+            lock.unlock();
+        }
+
+        int closed = p.closeExcessAvailable();
+        logger.debug( "Connection budget share for: {} is now {} ({} excess connections closed)", config.getId(),
+                      share, closed );
+    }
+
+    /**
+     * @return pool activity since the previous sample, or null if there is no live pool
+     */
+    public PoolSample takeSample()
+    {
+        SitePoolingConnectionManager p = pool;
+        if ( p == null || isShutdown() )
+        {
+            return null;
+        }
+
+        PoolSample sample = p.takeSample();
+        budgetDemand = Math.max( 1, Math.min( getOwnLimit(), sample.getPeakLeased() + sample.getPeakPending() ) );
+        return sample;
+    }
+
+    /**
+     * Feed one interval's pool activity to this site's adaptive sizer, if it has one, and apply any new limit.
+     *
+     * @return the resize, or null if the limit didn't change
+     */
+    public PoolResizeEvent adjustPoolSize( final PoolSample sample )
+    {
+        AdaptivePoolSizer s = sizer;
+        SitePoolingConnectionManager p = pool;
+        if ( s == null || p == null || sample == null || isShutdown() )
+        {
+            return null;
+        }
+
+        int previous = s.getCurrent();
+        PoolResizeEvent.Reason reason = s.evaluate( sample );
+        if ( reason == null )
+        {
+            return null;
+        }
+
+        lock.lock();
+        try
+        {
+            if ( s != sizer )
             {
-                poolingMgr.setDefaultSocketConfig( socketConfig );
+                // reconfigured meanwhile; the new sizer's limit wins
+                return null;
             }
 
-            manager = new CloseBlockingConnectionManager( config, poolingMgr );
+            applyLimit( p, config );
+        }
+        finally
+        {
+            lock.unlock();
         }
 
-        detached = false;
-        users++;
-        return manager;
+        poolResizes.incrementAndGet();
+
+        PoolResizeEvent event = new PoolResizeEvent( config.getId(), previous, s.getCurrent(), reason,
+                                                     sample.getPeakPending(),
+                                                     sample.getAverageLeaseWaitNanos() / 1000000.0,
+                                                     Math.max( 0, sample.getAverageHoldNanos() ) / 1000000.0,
+                                                     Math.max( 0, s.getBaselineHoldNanos() ) / 1000000.0 );
+
+        logger.debug( "Resized connection pool: {}", event );
+        return event;
+    }
+
+    /**
+     * Switch this tracker to a rebuilt {@link SiteConfig} for the same site, applying its pool limits and connection
+     * settings to the live pool without dropping pooled connections. Settings that didn't change are left alone. An
+     * equal config rebuilt for every request is still compared setting by setting, but without taking the lock. Only
+     * valid when {@link SiteConnectionConfig#canShareConnectionsWith(SiteConnectionConfig)} holds for the new config.
+     */
+    public void reconfigure( final SiteConnectionConfig newConfig )
+    {
+        SiteConnectionConfig current = config;
+        if ( newConfig.getConfig() == current.getConfig() )
+        {
+            return;
+        }
+
+        // nothing to apply, so just switch to it, unless another reconfigure switched first
+        if ( current.hasSameClientSettings( newConfig ) && current.hasSamePoolSettings( newConfig )
+                && CONFIG.compareAndSet( this, current, newConfig ) )
+        {
+            return;
+        }
+
+        lock.lock();
+        try
+        {
+            SiteConnectionConfig old = config;
+            if ( newConfig.getConfig() == old.getConfig() )
+            {
+                return;
+            }
+
+            config = newConfig;
+
+            if ( !old.hasSameClientSettings( newConfig ) )
+            {
+                // clients were built from the old config
+                sharedClients = new ConcurrentHashMap<>();
+            }
+
+            SitePoolingConnectionManager p = pool;
+            if ( p != null && !old.hasSamePoolSettings( newConfig ) )
+            {
+                logger.info( "Resizing connection pool for: {} to {} connections ({} per route).", config.getId(),
+                             config.getMaxConnections(), config.getMaxPerRoute() );
+
+                applyPoolSettings( p, newConfig );
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get this site's {@link CompanionPool}, building and starting it the first time. The caller must hold a use of
+     * this tracker (see {@link #acquire()}); the companion pool follows the blocking pool's limits and is shut down
+     * with it.
+     */
+    public CompanionPool getCompanionPool( final CompanionPoolBuilder builder )
+            throws JHttpCException
+    {
+        CompanionPool companion = companionPool;
+        if ( companion != null )
+        {
+            return companion;
+        }
+
+        lock.lock();
+        try
+        {
+            companion = companionPool;
+            if ( companion == null )
+            {
+                logger.info( "Creating companion connection pool for: {} with {} connections.", config.getId(),
+                             config.getMaxConnections() );
+
+                companion = builder.build( config );
+                companion.start();
+                companionPool = companion;
+
+                SitePoolingConnectionManager p = pool;
+                if ( p != null )
+                {
+                    applyLimit( p, config );
+                }
+
+                if ( isShutdown() )
+                {
+                    // lost a race with doShutdown(), which may not have seen this pool
+                    shutdownCompanionPool( companion );
+                }
+            }
+
+            return companion;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    private void shutdownCompanionPool( final CompanionPool companion )
+    {
+        // shutting down may join the companion's own threads, and the last release may come from one of them
+        try
+        {
+            managerCache.getBackgroundExecutor().execute( companion::shutdown );
+        }
+        catch ( RejectedExecutionException e )
+        {
+            companion.shutdown();
+        }
+    }
+
+    /**
+     * Get the client shared by every caller of this site that uses the same default headers, building it the first
+     * time. Shared clients are immutable and thread-safe; callers wrap them in a handle that releases this tracker on
+     * close without closing the client. Past {@link #MAX_SHARED_CLIENTS} distinct header sets, clients are built but
+     * not kept.
+     *
+     * @param manager this tracker's connection manager, as returned from {@link #acquire()}
+     */
+    public CloseableHttpClient getSharedClient( final List<Header> defaultHeaders,
+                                                final CloseBlockingConnectionManager manager,
+                                                final ClientBuilder builder )
+            throws JHttpCException
+    {
+        ConcurrentMap<List<String>, CloseableHttpClient> clients = sharedClients;
+        List<String> key = headerKey( defaultHeaders );
+
+        CloseableHttpClient client = clients.get( key );
+        if ( client == null )
+        {
+            client = builder.build( manager );
+            if ( clients.size() < MAX_SHARED_CLIENTS )
+            {
+                CloseableHttpClient existing = clients.putIfAbsent( key, client );
+                if ( existing != null )
+                {
+                    client = existing;
+                }
+            }
+        }
+
+        return client;
     }
 
-    public synchronized void release()
+    private static List<String> headerKey( final List<Header> headers )
     {
-        users--;
-        tryShutdown();
+        if ( headers == null || headers.isEmpty() )
+        {
+            return Collections.emptyList();
+        }
+
+        List<String> key = new ArrayList<>( headers.size() );
+        headers.forEach( header -> key.add( header.getName() + ": " + header.getValue() ) );
+        return key;
     }
 
-    private boolean tryShutdown()
+    /**
+     * Refuse any further leases and shut the pool down as soon as the last current user releases it. Used when this
+     * tracker has been replaced in the cache by one with incompatible connection settings.
+     *
+     * @return true if the tracker had no users and was shut down by this call
+     */
+    public boolean drain()
     {
-        if ( detached && !isActive() )
+        long current;
+        long next;
+        do
+        {
+            current = state.get();
+            if ( ( current & SHUTDOWN ) != 0 )
+            {
+                return false;
+            }
+
+            next = current | DRAINING;
+            if ( ( next & USERS_MASK ) == 0 )
+            {
+                next |= SHUTDOWN;
+            }
+        }
+        while ( !state.compareAndSet( current, next ) );
+
+        if ( ( next & SHUTDOWN ) != 0 )
         {
-            manager.reallyShutdown();
-            managerCache.remove( config );
+            doShutdown();
             return true;
         }
 
         return false;
     }
 
+    /**
+     * Open connections to the site in the background, including the TLS handshake where the site uses one, and
+     * return them to the pool ready for use. Only one warm-up runs per pool; later calls get the same future unless
+     * the earlier warm-up failed.
+     *
+     * @param connections how many connections to open, capped by the pool's per-route limit
+     * @return a future that completes when the connections are pooled, or completes exceptionally if any of them
+     * could not be opened
+     */
+    public CompletableFuture<Void> prewarm( final int connections )
+    {
+        CompletableFuture<Void> existing = prewarming.get();
+        if ( existing != null && !existing.isCompletedExceptionally() )
+        {
+            return existing;
+        }
+
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if ( !prewarming.compareAndSet( existing, future ) )
+        {
+            return prewarming.get();
+        }
+
+        try
+        {
+            managerCache.getBackgroundExecutor().execute( () -> doPrewarm( connections, future ) );
+        }
+        catch ( RejectedExecutionException e )
+        {
+            future.completeExceptionally( e );
+        }
+
+        return future;
+    }
+
+    private void doPrewarm( final int connections, final CompletableFuture<Void> future )
+    {
+        CloseBlockingConnectionManager mgr = acquire();
+        if ( mgr == null )
+        {
+            future.completeExceptionally(
+                    new IllegalStateException( "Connection pool for: " + config.getId() + " has been shut down." ) );
+            return;
+        }
+
+        final HttpRoute route;
+        final List<HttpClientConnection> leased = new ArrayList<>();
+        try
+        {
+            route = config.getSiteRoute();
+            if ( route == null )
+            {
+                logger.debug( "Not pre-warming connections for: {}; its route needs a proxy tunnel.", config.getId() );
+                finishPrewarm( mgr, leased, null, future );
+                return;
+            }
+
+            int count = Math.min( connections, Math.min( pool.getRecordedMaxPerRoute( route ), pool.getRecordedMaxTotal() ) );
+            logger.debug( "Pre-warming {} connections to: {} for: {}", count, route, config.getId() );
+
+            long leaseTimeout = TimeUnit.SECONDS.toMillis( config.getConnectionPoolTimeoutSeconds() );
+            for ( int i = 0; i < count; i++ )
+            {
+                leased.add( mgr.requestConnection( route, null ).get( leaseTimeout, TimeUnit.MILLISECONDS ) );
+            }
+        }
+        catch ( Exception e )
+        {
+            logger.warn( "Failed to lease connections to pre-warm for: " + config.getId(), e );
+            finishPrewarm( mgr, leased, e, future );
+            return;
+        }
+
+        // connect them all at once, holding every lease until they're done so each one opens its own socket
+        int connectTimeout = (int) TimeUnit.SECONDS.toMillis( config.getConfig().getRequestTimeoutSeconds() );
+        List<CompletableFuture<Void>> connects = new ArrayList<>();
+        RuntimeException failed = null;
+        try
+        {
+            for ( HttpClientConnection conn : leased )
+            {
+                if ( !conn.isOpen() )
+                {
+                    connects.add( CompletableFuture.runAsync( () -> connect( mgr, conn, route, connectTimeout ),
+                                                              managerCache.getBackgroundExecutor() ) );
+                }
+            }
+        }
+        catch ( RuntimeException e )
+        {
+            // e.g. the background executor was shut down; still wait for the connects already started
+            failed = e;
+        }
+
+        final RuntimeException fanOutError = failed;
+        CompletableFuture.allOf( connects.toArray( new CompletableFuture<?>[0] ) ).whenComplete( ( result, error ) -> {
+            Throwable cause = error == null ? fanOutError : error;
+            if ( cause != null )
+            {
+                logger.warn( "Failed to pre-warm connections for: " + config.getId(), cause );
+            }
+
+            finishPrewarm( mgr, leased, cause, future );
+        } );
+    }
+
+    private void connect( final CloseBlockingConnectionManager mgr, final HttpClientConnection conn,
+                          final HttpRoute route, final int connectTimeout )
+    {
+        try
+        {
+            HttpClientContext context = HttpClientContext.create();
+            mgr.connect( conn, route, connectTimeout, context );
+            mgr.routeComplete( conn, route, context );
+        }
+        catch ( IOException e )
+        {
+            throw new CompletionException( e );
+        }
+    }
+
+    private void finishPrewarm( final CloseBlockingConnectionManager mgr, final List<HttpClientConnection> leased,
+                                final Throwable error, final CompletableFuture<Void> future )
+    {
+        for ( HttpClientConnection conn : leased )
+        {
+            // connections that failed to open are discarded by the pool rather than returned to it
+            mgr.releaseConnection( conn, null, 0, TimeUnit.MILLISECONDS );
+        }
+
+        release();
+
+        if ( error == null )
+        {
+            future.complete( null );
+        }
+        else
+        {
+            future.completeExceptionally( error );
+        }
+    }
+
+    public void release()
+    {
+        long current;
+        long next;
+        do
+        {
+            current = state.get();
+            if ( ( current & USERS_MASK ) == 0 )
+            {
+                logger.warn( "Unbalanced release of connection tracker: {}", this );
+                return;
+            }
+
+            next = current - 1;
+            if ( ( next & USERS_MASK ) == 0 && ( next & ( DETACHED | DRAINING ) ) != 0 )
+            {
+                next |= SHUTDOWN;
+            }
+        }
+        while ( !state.compareAndSet( current, next ) );
+
+        if ( ( current & SHUTDOWN ) == 0 && ( next & SHUTDOWN ) != 0 )
+        {
+            doShutdown();
+        }
+    }
+
+    /**
+     * Set {@link #SHUTDOWN} if it isn't already set and, when requireIdle is true, there are no users.
+     *
+     * @return true if this call made the transition, and therefore owns the pool shutdown
+     */
+    private boolean markShutdown( final boolean requireIdle )
+    {
+        long current;
+        do
+        {
+            current = state.get();
+            if ( ( current & SHUTDOWN ) != 0 || ( requireIdle && ( current & USERS_MASK ) != 0 ) )
+            {
+                return false;
+            }
+        }
+        while ( !state.compareAndSet( current, current | SHUTDOWN ) );
+
+        return true;
+    }
+
+    private void doShutdown()
+    {
+        try
+        {
+            CloseBlockingConnectionManager mgr = manager;
+            if ( mgr != null )
+            {
+                mgr.reallyShutdown();
+            }
+
+            CompanionPool companion = companionPool;
+            if ( companion != null )
+            {
+                shutdownCompanionPool( companion );
+            }
+
+            managerCache.remove( config, this );
+            sharedClients = new ConcurrentHashMap<>();
+        }
+        finally
+        {
+            termination.complete( null );
+        }
+    }
+
+    /**
+     * @return a future that completes as soon as this tracker's pool has been shut down, however that happens
+     */
+    public CompletableFuture<Void> getTermination()
+    {
+        return termination;
+    }
+
+    /**
+     * Close this site's expired connections, and those idle past the site's idle-connection timeout.
+     *
+     * @return the number of connections closed
+     */
+    public int evictIdleConnections()
+    {
+        SitePoolingConnectionManager p = pool;
+        if ( p == null || isShutdown() )
+        {
+            return 0;
+        }
+
+        long idleMillis = TimeUnit.MILLISECONDS.convert( config.getIdleConnectionTimeoutSeconds(), TimeUnit.SECONDS );
+        CompanionPool companion = companionPool;
+        if ( companion != null )
+        {
+            companion.evictIdleConnections( idleMillis );
+        }
+
+        return p.evictIdleAndExpired( idleMillis );
+    }
+
+    /**
+     * @return connections held longer than the factory's leak-detection threshold and not reported before; empty when
+     *         leak detection is off
+     */
+    public List<ConnectionLeak> detectLeaks( final long now )
+    {
+        CloseBlockingConnectionManager mgr = manager;
+        LeakDetector detector = mgr == null ? null : mgr.getLeakDetector();
+        if ( detector == null || isShutdown() )
+        {
+            return Collections.emptyList();
+        }
+
+        return detector.detect( now );
+    }
+
+    public long getEvictedConnections()
+    {
+        SitePoolingConnectionManager p = pool;
+        return p == null ? 0 : p.getEvictedConnections();
+    }
+
+    /**
+     * @return a snapshot of this tracker's pool, taken without locking the pool
+     */
+    public SitePoolStats getPoolStats()
+    {
+        SitePoolingConnectionManager p = pool;
+        CloseBlockingConnectionManager mgr = manager;
+        long age = lastRetrieval > 0 ? System.currentTimeMillis() - lastRetrieval : -1;
+
+        if ( p == null || mgr == null )
+        {
+            return new SitePoolStats( config.getId(), getUsers(), age, 0, config.getMaxConnections(),
+                                      Collections.emptyList(), new LeaseWaitHistogram().getStats(),
+                                      poolResizes.get(), budgetShareForStats(), 0, 0, 0, 0 );
+        }
+
+        return new SitePoolStats( config.getId(), getUsers(), age, p.getEvictedConnections(),
+                                  p.getRecordedMaxTotal(), p.getRouteStats(), mgr.getLeaseWaits().getStats(),
+                                  poolResizes.get(), budgetShareForStats(), p.getBudgetLimitedLeases(),
+                                  p.getValidationRejects(), p.getRetiredConnections(), p.getRejectedLeases() );
+    }
+
+    private int budgetShareForStats()
+    {
+        return managerCache.getConnectionBudget() == null ? -1 : budgetShare;
+    }
+
     public long getLastRetrieval()
     {
         return lastRetrieval;
@@ -119,14 +916,57 @@ public class ConnectionManagerTracker
 
     public ConnectionManagerTracker retrieved()
     {
-        lastRetrieval = System.currentTimeMillis();
+        long now = System.currentTimeMillis();
+        lastRetrieval = now;
+        if ( activity != null )
+        {
+            activity.retrieved( now );
+        }
+
         return this;
     }
 
+    /**
+     * @return how long this tracker's pool is kept after its last retrieval before the sweeper detaches it
+     */
+    public long getExpirationMillis()
+    {
+        return managerCache.getExpirationMillis( config.getConfig(), activity );
+    }
+
+    /**
+     * Mark this tracker for shutdown once its last user releases it. A subsequent {@link #acquire()} that wins the
+     * race cancels the detach.
+     *
+     * @return true if the tracker had no users and was shut down by this call
+     */
     public boolean detach()
     {
-        this.detached = true;
-        return tryShutdown();
+        long current;
+        long next;
+        do
+        {
+            current = state.get();
+            if ( ( current & SHUTDOWN ) != 0 )
+            {
+                return false;
+            }
+
+            next = current | DETACHED;
+            if ( ( next & USERS_MASK ) == 0 )
+            {
+                next |= SHUTDOWN;
+            }
+        }
+        while ( !state.compareAndSet( current, next ) );
+
+        if ( ( next & SHUTDOWN ) != 0 )
+        {
+            doShutdown();
+            return true;
+        }
+
+        return false;
     }
 
     @Override
@@ -174,38 +1014,76 @@ public class ConnectionManagerTracker
     @Override
     public boolean isShutdown()
     {
-        return users < 1;
+        return ( state.get() & SHUTDOWN ) != 0;
     }
 
     @Override
-    public synchronized boolean shutdownNow()
+    public boolean shutdownNow()
     {
-        manager.reallyShutdown();
+        if ( markShutdown( false ) )
+        {
+            doShutdown();
+        }
+
         return true;
     }
 
+    /**
+     * {@link #drain()} the pool and wait for its last user to release it, then shut it down. If users still hold the
+     * pool when the timeout expires, it's shut down anyway, closing their connections.
+     *
+     * @return true if the pool drained before the timeout
+     */
     @Override
-    public synchronized boolean shutdownGracefully( final long timeoutMillis )
+    public boolean shutdownGracefully( final long timeoutMillis )
             throws InterruptedException
     {
-        long expires = System.currentTimeMillis() + timeoutMillis;
-        while ( isActive() && System.currentTimeMillis() < expires )
+        drain();
+        try
         {
-            Thread.sleep( 100 );
+            termination.get( timeoutMillis, TimeUnit.MILLISECONDS );
+            return true;
         }
-
-        if ( !isActive() )
+        catch ( TimeoutException e )
         {
-            manager.reallyShutdown();
-            return true;
+            logger.warn( "{} users still held the connection pool for: {} after {}ms; closing it anyway.", getUsers(),
+                         config.getId(), timeoutMillis );
+            shutdownNow();
+            return false;
+        }
+        catch ( ExecutionException e )
+        {
+            // the termination future is never completed exceptionally
+            return isShutdown();
         }
-
-        return false;
     }
 
     public boolean isActive()
     {
-        return users > 0;
+        return ( state.get() & USERS_MASK ) > 0;
+    }
+
+    public int getUsers()
+    {
+        return (int) ( state.get() & USERS_MASK );
+    }
+
+    /**
+     * Builds a client around this tracker's connection manager.
+     */
+    public interface ClientBuilder
+    {
+        CloseableHttpClient build( CloseBlockingConnectionManager manager )
+                throws JHttpCException;
+    }
+
+    /**
+     * Builds the companion pool for this tracker's site.
+     */
+    public interface CompanionPoolBuilder
+    {
+        CompanionPool build( SiteConnectionConfig config )
+                throws JHttpCException;
     }
 
     private class ResponseParserFactory
@@ -0,0 +1,132 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.INTERNAL.conn;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.commonjava.util.jhttpc.model.ConnectionLeak;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Keeps the outstanding leases of one site's pool so that those held past a threshold can be reported. Only a sampled
+ * fraction of leases pay for capturing the acquiring stack; the rest cost a map insert and removal.
+ */
+public final class LeakDetector
+{
+    private static final String OWN_PACKAGE = LeakDetector.class.getPackage().getName();
+
+    private final String siteId;
+
+    private final long thresholdMillis;
+
+    private final double sampleRate;
+
+    private final Map<HttpClientConnection, Lease> leases = new ConcurrentHashMap<>();
+
+    public LeakDetector( final String siteId, final long thresholdMillis, final double sampleRate )
+    {
+        this.siteId = siteId;
+        this.thresholdMillis = thresholdMillis;
+        this.sampleRate = sampleRate;
+    }
+
+    void leased( final HttpClientConnection conn, final HttpRoute route )
+    {
+        Throwable trace = null;
+        if ( sampleRate >= 1 || ( sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate ) )
+        {
+            trace = new Throwable( "Connection leased here" );
+        }
+
+        leases.put( conn, new Lease( route, Thread.currentThread().getName(), System.currentTimeMillis(), trace ) );
+    }
+
+    void released( final HttpClientConnection conn )
+    {
+        leases.remove( conn );
+    }
+
+    public int getOutstandingLeases()
+    {
+        return leases.size();
+    }
+
+    /**
+     * Find leases held longer than the threshold that have not been reported yet. Each lease is reported at most once.
+     */
+    public List<ConnectionLeak> detect( final long now )
+    {
+        List<ConnectionLeak> leaks = null;
+        for ( Lease lease : leases.values() )
+        {
+            long held = now - lease.leasedAt;
+            if ( held > thresholdMillis && !lease.reported )
+            {
+                lease.reported = true;
+                if ( leaks == null )
+                {
+                    leaks = new ArrayList<>();
+                }
+
+                StackTraceElement[] stack = null;
+                if ( lease.trace != null )
+                {
+                    StackTraceElement[] full = lease.trace.getStackTrace();
+                    // drop the frames inside the detector and the connection manager wrapper
+                    int skip = 0;
+                    while ( skip < full.length && full[skip].getClassName().startsWith( OWN_PACKAGE ) )
+                    {
+                        skip++;
+                    }
+                    stack = new StackTraceElement[full.length - skip];
+                    System.arraycopy( full, skip, stack, 0, stack.length );
+                }
+
+                leaks.add( new ConnectionLeak( siteId, String.valueOf( lease.route ), lease.threadName, lease.leasedAt,
+                                               held, stack ) );
+            }
+        }
+
+        return leaks == null ? Collections.emptyList() : leaks;
+    }
+
+    private static final class Lease
+    {
+        private final HttpRoute route;
+
+        private final String threadName;
+
+        private final long leasedAt;
+
+        private final Throwable trace;
+
+        private volatile boolean reported;
+
+        private Lease( final HttpRoute route, final String threadName, final long leasedAt, final Throwable trace )
+        {
+            this.route = route;
+            this.threadName = threadName;
+            this.leasedAt = leasedAt;
+            this.trace = trace;
+        }
+    }
+}
@@ -0,0 +1,276 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.INTERNAL.conn;
+
+import org.apache.http.conn.routing.HttpRoute;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Admits leases to a {@link SitePoolingConnectionManager} only while its pool has room for them, overall and on the
+ * requested route. HttpCore 4 waits for a free connection on a condition while holding a monitor, which pins a virtual
+ * thread to its carrier. A caller that has been admitted here finds room without waiting, so callers that do have to
+ * wait park on this gate's {@link ReentrantLock} instead.
+ *
+ * Each route has its own condition, so a release wakes one waiter for its route rather than every waiter in the pool.
+ */
+final class LeaseGate
+{
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Map<HttpRoute, Slots> routes = new HashMap<>();
+
+    private final ToIntFunction<HttpRoute> maxPerRoute;
+
+    private int maxTotal;
+
+    private int granted;
+
+    private boolean closed;
+
+    LeaseGate( final int maxTotal, final ToIntFunction<HttpRoute> maxPerRoute )
+    {
+        this.maxTotal = maxTotal;
+        this.maxPerRoute = maxPerRoute;
+    }
+
+    /**
+     * Take room in the pool for a lease on this route if there is some and nobody is already waiting for it, without
+     * waiting. A true result must be matched by {@link #leave(HttpRoute)}.
+     */
+    boolean tryEnter( final HttpRoute route )
+    {
+        lock.lock();
+        try
+        {
+            Slots slots = slotsFor( route );
+            if ( closed || slots.waiting > 0 || granted >= maxTotal
+                    || slots.granted >= maxPerRoute.applyAsInt( route ) )
+            {
+                return false;
+            }
+
+            granted++;
+            slots.granted++;
+            return true;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait for room in the pool for a lease on this route. Every successful entry must be matched by
+     * {@link #leave(HttpRoute)}.
+     *
+     * @param timeoutNanos how long to wait; zero or less waits indefinitely, like HttpCore's lease
+     * @param cancelled checked each time this caller wakes; see {@link #wake(HttpRoute)}
+     * @return false if the timeout passed first
+     * @throws CancellationException if the lease was cancelled while waiting
+     */
+    boolean enter( final HttpRoute route, final long timeoutNanos, final BooleanSupplier cancelled )
+            throws InterruptedException
+    {
+        lock.lockInterruptibly();
+        try
+        {
+            Slots slots = slotsFor( route );
+            long remaining = timeoutNanos;
+            boolean admitted = false;
+            slots.waiting++;
+            try
+            {
+                while ( granted >= maxTotal || slots.granted >= maxPerRoute.applyAsInt( route ) )
+                {
+                    if ( closed )
+                    {
+                        throw new IllegalStateException( "Connection pool shut down" );
+                    }
+
+                    if ( cancelled.getAsBoolean() )
+                    {
+                        throw new CancellationException( "Operation aborted" );
+                    }
+
+                    if ( timeoutNanos <= 0 )
+                    {
+                        slots.ready.await();
+                    }
+                    else if ( remaining <= 0 )
+                    {
+                        return false;
+                    }
+                    else
+                    {
+                        remaining = slots.ready.awaitNanos( remaining );
+                    }
+                }
+
+                granted++;
+                slots.granted++;
+                admitted = true;
+                return true;
+            }
+            finally
+            {
+                slots.waiting--;
+                if ( !admitted && slots.waiting > 0 )
+                {
+                    // this caller may have taken a release's signal; hand it on
+                    slots.ready.signal();
+                }
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Give back the room taken by {@link #enter(HttpRoute, long, BooleanSupplier)}, once the pool has its connection
+     * back.
+     */
+    void leave( final HttpRoute route )
+    {
+        lock.lock();
+        try
+        {
+            Slots slots = slotsFor( route );
+            boolean wasFull = granted >= maxTotal;
+            granted--;
+            slots.granted--;
+
+            if ( slots.waiting > 0 )
+            {
+                slots.ready.signal();
+            }
+
+            if ( wasFull )
+            {
+                // the pool-wide room may be what waiters on other routes need
+                routes.forEach( ( r, other ) -> {
+                    if ( other != slots && other.waiting > 0 )
+                    {
+                        other.ready.signal();
+                    }
+                } );
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    void setMaxTotal( final int max )
+    {
+        lock.lock();
+        try
+        {
+            maxTotal = max;
+            wakeAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Re-check waiters against per-route limits that have just changed.
+     */
+    void routeLimitsChanged()
+    {
+        lock.lock();
+        try
+        {
+            wakeAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wake the waiters for a route so a cancelled one can give up.
+     */
+    void wake( final HttpRoute route )
+    {
+        lock.lock();
+        try
+        {
+            Slots slots = routes.get( route );
+            if ( slots != null )
+            {
+                slots.ready.signalAll();
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Fail every current and future waiter, as the pool does once it's shut down.
+     */
+    void close()
+    {
+        lock.lock();
+        try
+        {
+            closed = true;
+            wakeAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    private void wakeAll()
+    {
+        routes.values().forEach( slots -> slots.ready.signalAll() );
+    }
+
+    private Slots slotsFor( final HttpRoute route )
+    {
+        return routes.computeIfAbsent( route, r -> new Slots( lock.newCondition() ) );
+    }
+
+    private static final class Slots
+    {
+        private final Condition ready;
+
+        private int granted;
+
+        private int waiting;
+
+        private Slots( final Condition ready )
+        {
+            this.ready = ready;
+        }
+    }
+}
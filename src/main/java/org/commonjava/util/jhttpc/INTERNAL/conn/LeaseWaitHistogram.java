@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.INTERNAL.conn;
+
+import org.commonjava.util.jhttpc.model.LeaseWaitStats;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of how long requests wait to lease a pooled connection. Waits are bucketed by microsecond
+ * magnitude with four sub-buckets per power of two, so recording is a couple of bit operations and one atomic
+ * increment, and reported percentiles are within 25% of the true value.
+ */
+public final class LeaseWaitHistogram
+{
+    private static final int SUB_BUCKET_BITS = 2;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray( BUCKETS );
+
+    private final AtomicLong maxMicros = new AtomicLong( 0 );
+
+    private final AtomicLong timeouts = new AtomicLong( 0 );
+
+    public void record( final long nanos )
+    {
+        long micros = TimeUnit.NANOSECONDS.toMicros( Math.max( 0, nanos ) );
+        counts.incrementAndGet( indexOf( micros ) );
+
+        long max;
+        do
+        {
+            max = maxMicros.get();
+        }
+        while ( micros > max && !maxMicros.compareAndSet( max, micros ) );
+    }
+
+    public void recordTimeout()
+    {
+        timeouts.incrementAndGet();
+    }
+
+    public LeaseWaitStats getStats()
+    {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for ( int i = 0; i < BUCKETS; i++ )
+        {
+            snapshot[i] = counts.get( i );
+            total += snapshot[i];
+        }
+
+        long max = maxMicros.get();
+        return new LeaseWaitStats( total, timeouts.get(), toMillis( percentile( snapshot, total, 0.5, max ) ),
+                                   toMillis( percentile( snapshot, total, 0.99, max ) ), toMillis( max ) );
+    }
+
+    static int indexOf( final long micros )
+    {
+        if ( micros < SUB_BUCKETS )
+        {
+            return (int) micros;
+        }
+
+        int magnitude = 63 - Long.numberOfLeadingZeros( micros );
+        int sub = (int) ( micros >>> ( magnitude - SUB_BUCKET_BITS ) ) & ( SUB_BUCKETS - 1 );
+        return ( magnitude - SUB_BUCKET_BITS + 1 ) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBoundOf( final int index )
+    {
+        if ( index < SUB_BUCKETS )
+        {
+            return index;
+        }
+
+        int shift = index / SUB_BUCKETS - 1;
+        int sub = index % SUB_BUCKETS;
+        return ( (long) ( SUB_BUCKETS + sub + 1 ) << shift ) - 1;
+    }
+
+    private static long percentile( final long[] snapshot, final long total, final double fraction, final long max )
+    {
+        if ( total == 0 )
+        {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil( total * fraction );
+        long seen = 0;
+        for ( int i = 0; i < snapshot.length; i++ )
+        {
+            seen += snapshot[i];
+            if ( seen >= rank )
+            {
+                return Math.min( upperBoundOf( i ), max );
+            }
+        }
+
+        return max;
+    }
+
+    private static double toMillis( final long micros )
+    {
+        return micros / 1000.0;
+    }
+}
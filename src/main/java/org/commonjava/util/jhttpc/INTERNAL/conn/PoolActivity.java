@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.INTERNAL.conn;
+
+/**
+ * Usage history for one site, kept by {@link ConnectionManagerCache} across successive trackers so that adaptive pool
+ * expiration can learn how often the site comes back. Only pauses of at least {@link #GAP_THRESHOLD_MILLIS} are
+ * recorded, so a busy site writes here at most once per millisecond and a steady one almost never.
+ */
+final class PoolActivity
+{
+    static final long GAP_THRESHOLD_MILLIS = 1000;
+
+    private final long firstRetrieval;
+
+    private volatile long lastRetrieval;
+
+    private volatile long averageGapMillis;
+
+    PoolActivity( final long now )
+    {
+        this.firstRetrieval = now;
+        this.lastRetrieval = now;
+    }
+
+    void retrieved( final long now )
+    {
+        long previous = lastRetrieval;
+        if ( now <= previous )
+        {
+            return;
+        }
+
+        lastRetrieval = now;
+
+        long gap = now - previous;
+        if ( gap >= GAP_THRESHOLD_MILLIS )
+        {
+            // racing updates lose a sample at worst; this is a rough moving average either way
+            long average = averageGapMillis;
+            averageGapMillis = average == 0 ? gap : average + ( gap - average ) / 4;
+        }
+    }
+
+    long getLastRetrieval()
+    {
+        return lastRetrieval;
+    }
+
+    long getAverageGapMillis()
+    {
+        return averageGapMillis;
+    }
+
+    /**
+     * Sites that return at a steady interval keep their pool for one and a half of those intervals, so a periodic
+     * job finds it warm. Sites never seen again after their first burst of use get the minimum. Everything else gets
+     * the base expiration.
+     */
+    long getExpirationMillis( final long baseMillis, final long minMillis, final long maxMillis )
+    {
+        long average = averageGapMillis;
+        if ( average == 0 )
+        {
+            return lastRetrieval - firstRetrieval < minMillis ? Math.min( minMillis, baseMillis ) : baseMillis;
+        }
+
+        return Math.max( baseMillis, Math.min( maxMillis, average + average / 2 ) );
+    }
+}
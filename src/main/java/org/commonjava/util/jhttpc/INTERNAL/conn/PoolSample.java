@@ -0,0 +1,112 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.INTERNAL.conn;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool activity over one sampling interval, as collected by
+ * {@link SitePoolingConnectionManager#takeSample()}.
+ */
+public final class PoolSample
+{
+    public static final long SLOW_LEASE_NANOS = TimeUnit.MILLISECONDS.toNanos( 5 );
+
+    private final long leases;
+
+    private final long leaseWaitNanos;
+
+    private final long slowLeases;
+
+    private final long timeouts;
+
+    private final long releases;
+
+    private final long holdNanos;
+
+    private final int peakPending;
+
+    private final int peakLeased;
+
+    public PoolSample( final long leases, final long leaseWaitNanos, final long slowLeases, final long timeouts,
+                       final long releases, final long holdNanos, final int peakPending, final int peakLeased )
+    {
+        this.leases = leases;
+        this.leaseWaitNanos = leaseWaitNanos;
+        this.slowLeases = slowLeases;
+        this.timeouts = timeouts;
+        this.releases = releases;
+        this.holdNanos = holdNanos;
+        this.peakPending = peakPending;
+        this.peakLeased = peakLeased;
+    }
+
+    public long getLeases()
+    {
+        return leases;
+    }
+
+    public long getLeaseWaitNanos()
+    {
+        return leaseWaitNanos;
+    }
+
+    /**
+     * Leases that had to wait for a connection longer than {@link #SLOW_LEASE_NANOS}.
+     */
+    public long getSlowLeases()
+    {
+        return slowLeases;
+    }
+
+    public long getTimeouts()
+    {
+        return timeouts;
+    }
+
+    public long getReleases()
+    {
+        return releases;
+    }
+
+    public long getHoldNanos()
+    {
+        return holdNanos;
+    }
+
+    public int getPeakPending()
+    {
+        return peakPending;
+    }
+
+    public int getPeakLeased()
+    {
+        return peakLeased;
+    }
+
+    public double getAverageLeaseWaitNanos()
+    {
+        return leases == 0 ? 0 : leaseWaitNanos / (double) leases;
+    }
+
+    /**
+     * @return average time connections were held before release, or -1 if none were released
+     */
+    public double getAverageHoldNanos()
+    {
+        return releases == 0 ? -1 : holdNanos / (double) releases;
+    }
+}
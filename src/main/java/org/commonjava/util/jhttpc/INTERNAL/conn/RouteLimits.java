@@ -0,0 +1,140 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.INTERNAL.conn;
+
+import org.apache.http.HttpHost;
+import org.apache.http.conn.routing.HttpRoute;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Matches routes against a site's per-route limit patterns. An exact host beats a wildcard, a pattern with a port
+ * beats one without, and between wildcards the longest suffix wins.
+ */
+public final class RouteLimits
+{
+    public static final RouteLimits NONE = new RouteLimits( Collections.emptyMap() );
+
+    private final List<Pattern> patterns;
+
+    public RouteLimits( final Map<String, Integer> limits )
+    {
+        patterns = new ArrayList<>( limits.size() );
+        limits.forEach( ( pattern, max ) -> patterns.add( new Pattern( pattern, max ) ) );
+    }
+
+    public boolean isEmpty()
+    {
+        return patterns.isEmpty();
+    }
+
+    /**
+     * @return the most specific pattern matching the route's target host, or null if none does
+     */
+    public Pattern match( final HttpRoute route )
+    {
+        HttpHost target = route.getTargetHost();
+        String host = target.getHostName().toLowerCase( Locale.ROOT );
+        int port = target.getPort();
+        if ( port < 0 )
+        {
+            port = "https".equalsIgnoreCase( target.getSchemeName() ) ? 443 : 80;
+        }
+
+        Pattern best = null;
+        for ( Pattern pattern : patterns )
+        {
+            if ( pattern.matches( host, port ) && ( best == null || pattern.rank() > best.rank() ) )
+            {
+                best = pattern;
+            }
+        }
+
+        return best;
+    }
+
+    public static final class Pattern
+    {
+        private final String pattern;
+
+        private final int max;
+
+        private final String host;
+
+        private final int port;
+
+        private final boolean wildcard;
+
+        private Pattern( final String pattern, final int max )
+        {
+            this.pattern = pattern;
+            this.max = max;
+
+            String hostPart = pattern.toLowerCase( Locale.ROOT );
+            int colon = hostPart.lastIndexOf( ':' );
+            if ( colon > hostPart.lastIndexOf( ']' ) && colon == hostPart.indexOf( ':' ) )
+            {
+                try
+                {
+                    port = Integer.parseInt( hostPart.substring( colon + 1 ) );
+                }
+                catch ( NumberFormatException e )
+                {
+                    throw new IllegalArgumentException( "Invalid port in route limit pattern: " + pattern, e );
+                }
+                hostPart = hostPart.substring( 0, colon );
+            }
+            else
+            {
+                port = -1;
+            }
+
+            wildcard = hostPart.startsWith( "*" );
+            host = wildcard ? hostPart.substring( 1 ) : hostPart;
+        }
+
+        private boolean matches( final String targetHost, final int targetPort )
+        {
+            if ( port > -1 && port != targetPort )
+            {
+                return false;
+            }
+
+            return wildcard ? targetHost.endsWith( host ) && targetHost.length() > host.length() :
+                    targetHost.equals( host );
+        }
+
+        private int rank()
+        {
+            // exact hosts first, then ports, then the longest wildcard suffix
+            return ( wildcard ? 0 : 1 << 30 ) + ( port > -1 ? 1 << 29 : 0 ) + host.length();
+        }
+
+        public String getPattern()
+        {
+            return pattern;
+        }
+
+        public int getMax()
+        {
+            return max;
+        }
+    }
+}
@@ -15,15 +15,21 @@
  */
 package org.commonjava.util.jhttpc.INTERNAL.conn;
 
+import org.apache.http.HttpHost;
 import org.apache.http.config.ConnectionConfig;
 import org.apache.http.config.Registry;
 import org.apache.http.config.RegistryBuilder;
 import org.apache.http.config.SocketConfig;
+import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.conn.socket.ConnectionSocketFactory;
 import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.commonjava.util.jhttpc.model.SiteConfig;
 
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Objects;
+
 /**
  * Created by jdcasey on 11/3/15.
  */
@@ -51,6 +57,86 @@ public class SiteConnectionConfig
         return this;
     }
 
+    /**
+     * Whether a pool built from the other config can keep serving this one. Pool limits can change in place; socket
+     * factories can't, so this holds only when both configs use the same SSL factory, or agree on everything the SSL
+     * factory is built from: key and server certificates, trust type, host and hostname verification. (The key
+     * password is looked up by site id, which is the same for both.)
+     */
+    public boolean canShareConnectionsWith( final SiteConnectionConfig other )
+    {
+        if ( sslFactory == other.sslFactory )
+        {
+            return true;
+        }
+
+        SiteConfig otherConfig = other.getConfig();
+        return Objects.equals( config.getKeyCertPem(), otherConfig.getKeyCertPem() )
+                && Objects.equals( config.getServerCertPem(), otherConfig.getServerCertPem() )
+                && config.getTrustType() == otherConfig.getTrustType()
+                && Objects.equals( hostOf( config ), hostOf( otherConfig ) )
+                && config.isIgnoreHostnameVerification() == otherConfig.isIgnoreHostnameVerification();
+    }
+
+    private static String hostOf( final SiteConfig config )
+    {
+        try
+        {
+            return config.getHost();
+        }
+        catch ( MalformedURLException e )
+        {
+            return config.getUri();
+        }
+    }
+
+    /**
+     * Whether the other config asks the same of a live pool: the same limits, lease timeout and pending-lease cap,
+     * expiration, validation and retirement, and budget weight. If so, switching to it needs no change to the pool.
+     */
+    public boolean hasSamePoolSettings( final SiteConnectionConfig other )
+    {
+        SiteConfig otherConfig = other.getConfig();
+        return config.getMaxConnections() == otherConfig.getMaxConnections()
+                && config.getMaxPerRoute() == otherConfig.getMaxPerRoute()
+                && Objects.equals( config.getRouteLimits(), otherConfig.getRouteLimits() )
+                && config.isAdaptivePoolSizing() == otherConfig.isAdaptivePoolSizing()
+                && config.getAdaptivePoolMinConnections() == otherConfig.getAdaptivePoolMinConnections()
+                && Objects.equals( config.getAdaptivePoolMaxConnections(), otherConfig.getAdaptivePoolMaxConnections() )
+                && config.getConnectionPoolTimeoutSeconds() == otherConfig.getConnectionPoolTimeoutSeconds()
+                && config.getMaxPendingLeases() == otherConfig.getMaxPendingLeases()
+                && Objects.equals( config.getConnectionPoolExpirationSeconds(),
+                                   otherConfig.getConnectionPoolExpirationSeconds() )
+                && Objects.equals( config.getAdaptivePoolExpiration(), otherConfig.getAdaptivePoolExpiration() )
+                && config.getIdleConnectionTimeoutSeconds() == otherConfig.getIdleConnectionTimeoutSeconds()
+                && config.getConnectionValidationPolicy() == otherConfig.getConnectionValidationPolicy()
+                && config.getConnectionValidationMillis() == otherConfig.getConnectionValidationMillis()
+                && config.getMaxConnectionLifetimeSeconds() == otherConfig.getMaxConnectionLifetimeSeconds()
+                && config.getMaxRequestsPerConnection() == otherConfig.getMaxRequestsPerConnection()
+                && config.getConnectionBudgetWeight() == otherConfig.getConnectionBudgetWeight()
+                && sameSettings( config.getConnectionConfig(), otherConfig.getConnectionConfig() )
+                && sameSettings( config.getSocketConfig(), otherConfig.getSocketConfig() );
+    }
+
+    /**
+     * Whether clients built from the other config would behave the same: the same timeouts, proxy and cookie policy.
+     */
+    public boolean hasSameClientSettings( final SiteConnectionConfig other )
+    {
+        SiteConfig otherConfig = other.getConfig();
+        return config.getRequestTimeoutSeconds() == otherConfig.getRequestTimeoutSeconds()
+                && config.getConnectionPoolTimeoutSeconds() == otherConfig.getConnectionPoolTimeoutSeconds()
+                && Objects.equals( config.getProxyHost(), otherConfig.getProxyHost() )
+                && config.getProxyPort() == otherConfig.getProxyPort()
+                && config.getCookiePolicy() == otherConfig.getCookiePolicy();
+    }
+
+    private static boolean sameSettings( final Object mine, final Object theirs )
+    {
+        // ConnectionConfig and SocketConfig don't define equals, but print every setting
+        return mine == theirs || ( mine != null && theirs != null && mine.toString().equals( theirs.toString() ) );
+    }
+
     public Registry<ConnectionSocketFactory> getSocketFactoryRegistry()
     {
         return RegistryBuilder.<ConnectionSocketFactory>create()
@@ -112,6 +198,42 @@ public class SiteConnectionConfig
         return config.getConnectionPoolTimeoutSeconds();
     }
 
+    public int getIdleConnectionTimeoutSeconds()
+    {
+        return config.getIdleConnectionTimeoutSeconds();
+    }
+
+    public int getPrewarmConnections()
+    {
+        return config.getPrewarmConnections();
+    }
+
+    /**
+     * The route HttpClient will plan for requests to the site's base URI, or null if that route needs a proxy tunnel
+     * (which can only be established as part of a request).
+     */
+    public HttpRoute getSiteRoute()
+            throws MalformedURLException
+    {
+        URL url = new URL( config.getUri() );
+        int port = url.getPort() < 1 ? url.getDefaultPort() : url.getPort();
+        HttpHost target = new HttpHost( url.getHost(), port, url.getProtocol() );
+        boolean secure = "https".equalsIgnoreCase( url.getProtocol() );
+
+        if ( config.getProxyHost() == null )
+        {
+            return new HttpRoute( target, null, secure );
+        }
+
+        if ( secure )
+        {
+            return null;
+        }
+
+        int proxyPort = config.getProxyPort() < 1 ? -1 : config.getProxyPort();
+        return new HttpRoute( target, null, new HttpHost( config.getProxyHost(), proxyPort ), false );
+    }
+
     public ConnectionConfig getConnectionConfig()
     {
         return config.getConnectionConfig();
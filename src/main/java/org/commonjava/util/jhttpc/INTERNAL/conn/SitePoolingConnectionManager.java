@@ -0,0 +1,661 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.INTERNAL.conn;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.config.Registry;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.HttpConnectionFactory;
+import org.apache.http.conn.ManagedHttpClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolEntry;
+import org.apache.http.protocol.HttpContext;
+import org.commonjava.util.jhttpc.ConnectionPoolSaturatedException;
+import org.commonjava.util.jhttpc.model.RoutePoolStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link PoolingHttpClientConnectionManager} for a single site, adding the housekeeping hooks jHTTPc needs on top of
+ * the pool (such as counting the connections it evicts).
+ *
+ * Leased and pending counts are kept per route in lock-free counters as connections are leased and released, and
+ * pool limits are recorded as they're set, so {@link #getRouteStats()} never takes the pool lock. Available counts
+ * are refreshed by {@link #evictIdleAndExpired(long)}, which already walks the available connections.
+ *
+ * Leases wait for room in a {@link LeaseGate} before they reach the pool, so a caller never waits for a connection
+ * inside HttpCore's lease, which holds a monitor while it waits.
+ */
+public class SitePoolingConnectionManager
+        extends PoolingHttpClientConnectionManager
+{
+    static final int MAX_PROBES_PER_PASS = 16;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final AtomicLong evictedConnections = new AtomicLong( 0 );
+
+    private final ConcurrentMap<HttpRoute, RouteCounters> routes = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<HttpClientConnection, Lease> leased = new ConcurrentHashMap<>();
+
+    private final AtomicInteger totalLeased = new AtomicInteger( 0 );
+
+    private final AtomicInteger totalPending = new AtomicInteger( 0 );
+
+    private final AtomicInteger peakLeased = new AtomicInteger( 0 );
+
+    private final AtomicInteger peakPending = new AtomicInteger( 0 );
+
+    private final LongAdder sampleLeases = new LongAdder();
+
+    private final LongAdder sampleLeaseWaitNanos = new LongAdder();
+
+    private final LongAdder sampleSlowLeases = new LongAdder();
+
+    private final LongAdder sampleTimeouts = new LongAdder();
+
+    private final LongAdder sampleReleases = new LongAdder();
+
+    private final LongAdder sampleHoldNanos = new LongAdder();
+
+    private final ConcurrentMap<HttpRoute, Integer> maxPerRoute = new ConcurrentHashMap<>();
+
+    private volatile int maxTotal;
+
+    private volatile int defaultMaxPerRoute;
+
+    private volatile boolean budgetLimited;
+
+    private volatile RouteLimits routeLimits = RouteLimits.NONE;
+
+    private final AtomicLong budgetLimitedLeases = new AtomicLong( 0 );
+
+    private final AtomicLong validationRejects;
+
+    private volatile int backgroundValidationMillis;
+
+    private volatile long maxConnectionLifetimeMillis;
+
+    private volatile int maxRequestsPerConnection;
+
+    private final AtomicLong retiredConnections = new AtomicLong( 0 );
+
+    private volatile int maxPendingLeases;
+
+    private final AtomicLong rejectedLeases = new AtomicLong( 0 );
+
+    private final LeaseGate gate;
+
+    public SitePoolingConnectionManager( final Registry<ConnectionSocketFactory> socketFactoryRegistry,
+                                         final HttpConnectionFactory<HttpRoute, ManagedHttpClientConnection> connFactory )
+    {
+        this( socketFactoryRegistry, connFactory, new AtomicLong( 0 ) );
+    }
+
+    private SitePoolingConnectionManager( final Registry<ConnectionSocketFactory> socketFactoryRegistry,
+                                          final HttpConnectionFactory<HttpRoute, ManagedHttpClientConnection> connFactory,
+                                          final AtomicLong validationRejects )
+    {
+        super( socketFactoryRegistry, ( route, config ) -> new TrackedConnection( connFactory.create( route, config ),
+                                                                                  validationRejects ) );
+        this.validationRejects = validationRejects;
+        maxTotal = super.getMaxTotal();
+        defaultMaxPerRoute = super.getDefaultMaxPerRoute();
+        gate = new LeaseGate( maxTotal, this::getRecordedMaxPerRoute );
+    }
+
+    @Override
+    public ConnectionRequest requestConnection( final HttpRoute route, final Object state )
+    {
+        // apply any per-route limit before the pool sees the route for the first time
+        final RouteCounters counters = routes.computeIfAbsent( route, this::newRoute );
+        final ConnectionRequest request = super.requestConnection( route, state );
+        final AtomicBoolean cancelled = new AtomicBoolean( false );
+
+        return new ConnectionRequest()
+        {
+            @Override
+            public HttpClientConnection get( final long timeout, final TimeUnit tunit )
+                    throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException
+            {
+                long start = System.nanoTime();
+                long timeoutNanos = timeout > 0 ? tunit.toNanos( timeout ) : 0;
+                try
+                {
+                    // a lease the pool has room for goes straight through, and never counts as pending
+                    if ( !gate.tryEnter( route ) )
+                    {
+                        awaitRoom( route, counters, request, timeoutNanos, cancelled );
+                    }
+
+                    HttpClientConnection conn;
+                    try
+                    {
+                        // the gate saw room, so this only waits if a limit was lowered meanwhile
+                        long remaining =
+                                timeoutNanos > 0 ? Math.max( 1, timeoutNanos - ( System.nanoTime() - start ) ) : 0;
+                        conn = request.get( remaining, TimeUnit.NANOSECONDS );
+                    }
+                    catch ( InterruptedException | ExecutionException | ConnectionPoolTimeoutException
+                                    | RuntimeException e )
+                    {
+                        gate.leave( route );
+                        throw e;
+                    }
+
+                    TrackedConnection tracked = trackedConnection( conn );
+                    if ( tracked != null )
+                    {
+                        tracked.markLeased();
+                    }
+
+                    long now = System.nanoTime();
+                    counters.leased.incrementAndGet();
+                    peakLeased.accumulateAndGet( totalLeased.incrementAndGet(), Math::max );
+                    leased.put( conn, new Lease( route, counters, now ) );
+
+                    long wait = now - start;
+                    sampleLeases.increment();
+                    sampleLeaseWaitNanos.add( wait );
+                    if ( wait > PoolSample.SLOW_LEASE_NANOS )
+                    {
+                        sampleSlowLeases.increment();
+                        if ( budgetLimited )
+                        {
+                            budgetLimitedLeases.incrementAndGet();
+                        }
+                    }
+
+                    return conn;
+                }
+                catch ( ConnectionPoolSaturatedException e )
+                {
+                    // already counted as a rejection
+                    throw e;
+                }
+                catch ( ConnectionPoolTimeoutException e )
+                {
+                    sampleTimeouts.increment();
+                    if ( budgetLimited )
+                    {
+                        budgetLimitedLeases.incrementAndGet();
+                    }
+                    throw e;
+                }
+                catch ( CancellationException e )
+                {
+                    throw new ExecutionException( e );
+                }
+            }
+
+            @Override
+            public boolean cancel()
+            {
+                cancelled.set( true );
+                gate.wake( route );
+                return request.cancel();
+            }
+        };
+    }
+
+    /**
+     * Wait at the gate for room in the pool, counting this caller as pending meanwhile, unless too many callers are
+     * already waiting.
+     */
+    private void awaitRoom( final HttpRoute route, final RouteCounters counters, final ConnectionRequest request,
+                            final long timeoutNanos, final AtomicBoolean cancelled )
+            throws InterruptedException, ConnectionPoolTimeoutException
+    {
+        int pending = totalPending.incrementAndGet();
+        int maxPending = maxPendingLeases;
+        if ( maxPending > 0 && pending > maxPending )
+        {
+            totalPending.decrementAndGet();
+            request.cancel();
+            rejectedLeases.incrementAndGet();
+            // same pressure signal as a lease timeout, as far as adaptive sizing is concerned
+            sampleTimeouts.increment();
+            throw new ConnectionPoolSaturatedException(
+                    "Connection pool saturated: " + ( pending - 1 )
+                            + " requests already waiting on this site's pool (requested route: " + route + ")",
+                    pending - 1 );
+        }
+
+        counters.pending.incrementAndGet();
+        peakPending.accumulateAndGet( pending, Math::max );
+        try
+        {
+            if ( !gate.enter( route, timeoutNanos, cancelled::get ) )
+            {
+                throw new ConnectionPoolTimeoutException( "Timeout waiting for connection from pool" );
+            }
+        }
+        finally
+        {
+            counters.pending.decrementAndGet();
+            totalPending.decrementAndGet();
+        }
+    }
+
+    @Override
+    public void releaseConnection( final HttpClientConnection managedConn, final Object state, final long keepalive,
+                                   final TimeUnit tunit )
+    {
+        try
+        {
+            retireIfDue( managedConn );
+
+            TrackedConnection tracked = trackedConnection( managedConn );
+            if ( tracked != null )
+            {
+                tracked.markReleased();
+            }
+
+            super.releaseConnection( managedConn, state, keepalive, tunit );
+        }
+        finally
+        {
+            Lease lease = leased.remove( managedConn );
+            if ( lease != null )
+            {
+                lease.counters.leased.decrementAndGet();
+                totalLeased.decrementAndGet();
+                sampleReleases.increment();
+                sampleHoldNanos.add( System.nanoTime() - lease.leasedAt );
+                gate.leave( lease.route );
+            }
+        }
+    }
+
+    @Override
+    public void setMaxTotal( final int max )
+    {
+        super.setMaxTotal( max );
+        maxTotal = max;
+        gate.setMaxTotal( max );
+    }
+
+    @Override
+    public void setDefaultMaxPerRoute( final int max )
+    {
+        super.setDefaultMaxPerRoute( max );
+        defaultMaxPerRoute = max;
+        gate.routeLimitsChanged();
+    }
+
+    @Override
+    public void setMaxPerRoute( final HttpRoute route, final int max )
+    {
+        super.setMaxPerRoute( route, max );
+        if ( max < 0 )
+        {
+            maxPerRoute.remove( route );
+        }
+        else
+        {
+            maxPerRoute.put( route, max );
+        }
+
+        gate.routeLimitsChanged();
+    }
+
+    @Override
+    public void shutdown()
+    {
+        gate.close();
+        super.shutdown();
+    }
+
+    /**
+     * Set the site's per-route limit patterns, re-applying them to the routes this pool has already seen. Routes that
+     * no longer match a pattern go back to the default max-per-route.
+     */
+    public void setRouteLimits( final RouteLimits limits )
+    {
+        routeLimits = limits;
+        routes.forEach( ( route, counters ) -> {
+            RouteLimits.Pattern match = limits.match( route );
+            if ( match != null )
+            {
+                setMaxPerRoute( route, match.getMax() );
+                counters.limitSource = match.getPattern();
+            }
+            else if ( counters.limitSource != null )
+            {
+                setMaxPerRoute( route, -1 );
+                counters.limitSource = null;
+            }
+        } );
+    }
+
+    private RouteCounters newRoute( final HttpRoute route )
+    {
+        RouteCounters counters = new RouteCounters();
+        RouteLimits.Pattern match = routeLimits.match( route );
+        if ( match != null )
+        {
+            setMaxPerRoute( route, match.getMax() );
+            counters.limitSource = match.getPattern();
+        }
+
+        return counters;
+    }
+
+    /**
+     * Mark whether the factory-wide connection budget is currently holding this pool below its own limit, so slow
+     * leases can be attributed to the budget.
+     */
+    public void setBudgetLimited( final boolean budgetLimited )
+    {
+        this.budgetLimited = budgetLimited;
+    }
+
+    public long getBudgetLimitedLeases()
+    {
+        return budgetLimitedLeases.get();
+    }
+
+    /**
+     * Close the least recently used available connections that put the pool over its max-total, so that lowering the
+     * limit frees sockets right away rather than on the next lease.
+     *
+     * @return the number of connections closed
+     */
+    public int closeExcessAvailable()
+    {
+        final int allowed = maxTotal - totalLeased.get();
+        final int[] seen = { 0 };
+        final int[] closed = { 0 };
+
+        // available connections are listed most recently released first
+        enumAvailable( entry -> {
+            if ( ++seen[0] > allowed )
+            {
+                entry.close();
+                closed[0]++;
+            }
+        } );
+
+        return closed[0];
+    }
+
+    /**
+     * @return the last max-total value set on this pool, read without taking the pool lock
+     */
+    public int getRecordedMaxTotal()
+    {
+        return maxTotal;
+    }
+
+    /**
+     * @return the last per-route limit set for this route (or the default), read without taking the pool lock
+     */
+    public int getRecordedMaxPerRoute( final HttpRoute route )
+    {
+        Integer max = maxPerRoute.get( route );
+        return max == null ? defaultMaxPerRoute : max;
+    }
+
+    /**
+     * @return the pool's activity since the previous sample, resetting the interval counters
+     */
+    public PoolSample takeSample()
+    {
+        return new PoolSample( sampleLeases.sumThenReset(), sampleLeaseWaitNanos.sumThenReset(),
+                               sampleSlowLeases.sumThenReset(), sampleTimeouts.sumThenReset(),
+                               sampleReleases.sumThenReset(), sampleHoldNanos.sumThenReset(),
+                               peakPending.getAndSet( totalPending.get() ), peakLeased.getAndSet( totalLeased.get() ) );
+    }
+
+    /**
+     * @return a snapshot of each route this pool has leased connections for, without taking the pool lock
+     */
+    public List<RoutePoolStats> getRouteStats()
+    {
+        List<RoutePoolStats> result = new ArrayList<>( routes.size() );
+        routes.forEach( ( route, counters ) -> result.add(
+                new RoutePoolStats( route, Math.max( 0, counters.leased.get() ), counters.available,
+                                    Math.max( 0, counters.pending.get() ), getRecordedMaxPerRoute( route ),
+                                    counters.limitSource ) ) );
+
+        return result;
+    }
+
+    /**
+     * Retire connections once they reach the given age or request count (each jittered per connection) instead of
+     * returning them to the pool.
+     *
+     * @param maxLifetimeMillis zero or less for no lifetime limit
+     * @param maxRequests zero or less for no request limit
+     */
+    public void setConnectionRetirement( final long maxLifetimeMillis, final int maxRequests )
+    {
+        maxConnectionLifetimeMillis = maxLifetimeMillis;
+        maxRequestsPerConnection = maxRequests;
+    }
+
+    /**
+     * Fail lease requests straight away once more than this many are waiting; zero or less lets them all queue.
+     */
+    public void setMaxPendingLeases( final int maxPendingLeases )
+    {
+        this.maxPendingLeases = maxPendingLeases;
+    }
+
+    /**
+     * @return how many lease requests were turned away because too many were already waiting
+     */
+    public long getRejectedLeases()
+    {
+        return rejectedLeases.get();
+    }
+
+    /**
+     * @return how many connections were closed for reaching their lifetime or request limit
+     */
+    public long getRetiredConnections()
+    {
+        return retiredConnections.get();
+    }
+
+    /**
+     * Close a connection that's being released if it has reached its retirement limits. The pool discards closed
+     * connections on release rather than keeping them.
+     */
+    private void retireIfDue( final HttpClientConnection managedConn )
+    {
+        if ( !( managedConn instanceof HttpContext ) || !managedConn.isOpen() || !isDueForRetirement(
+                ( (HttpContext) managedConn ).getAttribute( TrackedConnection.ATTRIBUTE ),
+                System.currentTimeMillis() ) )
+        {
+            return;
+        }
+
+        try
+        {
+            managedConn.close();
+            retiredConnections.incrementAndGet();
+        }
+        catch ( IOException e )
+        {
+            logger.debug( "Failed to close retired connection: " + managedConn, e );
+        }
+    }
+
+    private static TrackedConnection trackedConnection( final HttpClientConnection managedConn )
+    {
+        if ( !( managedConn instanceof HttpContext ) )
+        {
+            return null;
+        }
+
+        Object conn = ( (HttpContext) managedConn ).getAttribute( TrackedConnection.ATTRIBUTE );
+        return conn instanceof TrackedConnection ? (TrackedConnection) conn : null;
+    }
+
+    private boolean isDueForRetirement( final Object conn, final long now )
+    {
+        return conn instanceof TrackedConnection && ( (TrackedConnection) conn ).isDueForRetirement(
+                maxConnectionLifetimeMillis, maxRequestsPerConnection, now );
+    }
+
+    /**
+     * Probe idle connections for staleness from {@link #evictIdleAndExpired(long)} instead of when they're leased.
+     * Each available connection is probed once it has been idle (or unprobed) for the given interval.
+     *
+     * @param millis probe interval; zero or less turns background validation off
+     */
+    public void setBackgroundValidation( final int millis )
+    {
+        backgroundValidationMillis = millis;
+    }
+
+    /**
+     * @return how many connections a stale check has rejected, on lease or in the background
+     */
+    public long getValidationRejects()
+    {
+        return validationRejects.get();
+    }
+
+    /**
+     * Close available connections that are past their keep-alive expiry, or that have been idle for at least
+     * idleMillis. This is what {@link #closeExpiredConnections()} and {@link #closeIdleConnections(long,
+     * java.util.concurrent.TimeUnit)} do, but in one pass over the pool and with a count of what was closed.
+     *
+     * With background validation on, the same pass also picks up to {@link #MAX_PROBES_PER_PASS} idle connections to
+     * probe, and closes the stale ones so they're rarely handed to a request. The probes run after the pool lock is
+     * released, so leases don't wait on them; a connection leased meanwhile is skipped, or its lease waits for the
+     * probe to finish. A live connection costs a 1ms read timeout, hence the cap.
+     *
+     * @param idleMillis idle threshold; zero or less only closes expired connections
+     * @return the number of connections closed
+     */
+    public int evictIdleAndExpired( final long idleMillis )
+    {
+        final long now = System.currentTimeMillis();
+        final long idleCutoff = now - idleMillis;
+        final int validationMillis = backgroundValidationMillis;
+        final int[] evicted = { 0 };
+        final Map<TrackedConnection, HttpRoute> probes = new LinkedHashMap<>();
+        final Map<HttpRoute, Integer> available = new HashMap<>();
+
+        enumAvailable( entry -> {
+            if ( entry.isExpired( now ) || ( idleMillis > 0 && entry.getUpdated() <= idleCutoff ) )
+            {
+                entry.close();
+                evicted[0]++;
+            }
+            else if ( isDueForRetirement( entry.getConnection(), now ) )
+            {
+                entry.close();
+                retiredConnections.incrementAndGet();
+            }
+            else
+            {
+                if ( probes.size() < MAX_PROBES_PER_PASS && isDueForProbe( entry, now, validationMillis ) )
+                {
+                    probes.put( (TrackedConnection) entry.getConnection(), entry.getRoute() );
+                }
+
+                available.merge( entry.getRoute(), 1, Integer::sum );
+            }
+        } );
+
+        // the pool drops closed connections the next time it sees them
+        probes.forEach( ( conn, route ) -> {
+            if ( conn.probeIfIdle() )
+            {
+                available.merge( route, -1, Integer::sum );
+            }
+        } );
+
+        routes.forEach( ( route, counters ) -> counters.available = available.getOrDefault( route, 0 ) );
+
+        if ( evicted[0] > 0 )
+        {
+            evictedConnections.addAndGet( evicted[0] );
+        }
+
+        return evicted[0];
+    }
+
+    private static boolean isDueForProbe( final PoolEntry<HttpRoute, ManagedHttpClientConnection> entry, final long now,
+                                          final int validationMillis )
+    {
+        if ( validationMillis <= 0 || !( entry.getConnection() instanceof TrackedConnection ) )
+        {
+            return false;
+        }
+
+        long lastActive =
+                Math.max( entry.getUpdated(), ( (TrackedConnection) entry.getConnection() ).getLastValidated() );
+
+        return now - lastActive >= validationMillis;
+    }
+
+    public long getEvictedConnections()
+    {
+        return evictedConnections.get();
+    }
+
+    private static final class Lease
+    {
+        private final HttpRoute route;
+
+        private final RouteCounters counters;
+
+        private final long leasedAt;
+
+        private Lease( final HttpRoute route, final RouteCounters counters, final long leasedAt )
+        {
+            this.route = route;
+            this.counters = counters;
+            this.leasedAt = leasedAt;
+        }
+    }
+
+    private static final class RouteCounters
+    {
+        private final AtomicInteger leased = new AtomicInteger( 0 );
+
+        private final AtomicInteger pending = new AtomicInteger( 0 );
+
+        private volatile int available;
+
+        private volatile String limitSource;
+    }
+}
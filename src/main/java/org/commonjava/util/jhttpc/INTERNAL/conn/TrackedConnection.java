@@ -0,0 +1,329 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.INTERNAL.conn;
+
+import org.apache.http.HttpConnectionMetrics;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.ManagedHttpClientConnection;
+import org.apache.http.protocol.HttpContext;
+
+import javax.net.ssl.SSLSession;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.apache.commons.io.IOUtils.closeQuietly;
+
+/**
+ * Pooled connection wrapper that counts the times a stale check rejects it, whether the check comes from the pool's
+ * validate-after-inactivity on lease or from jHTTPc's background validation. It also remembers when it was last
+ * checked, so background validation doesn't probe the same idle connection on every pass.
+ *
+ * Background probes run outside the pool lock, so the wrapper also knows whether it's leased: a probe skips a leased
+ * connection, and a lease that picks up a connection mid-probe waits for the probe in {@link #markLeased()}.
+ *
+ * It also tracks its age and the requests it has carried, for retirement. Each connection draws its own jitter, so
+ * connections opened together don't all retire together. The wrapper is reachable through the pool's connection
+ * proxy as the {@link #ATTRIBUTE} connection attribute.
+ */
+final class TrackedConnection
+        implements ManagedHttpClientConnection, HttpContext
+{
+    static final String ATTRIBUTE = TrackedConnection.class.getName();
+
+    /**
+     * Connections retire up to this fraction early, spread evenly.
+     */
+    private static final double RETIREMENT_JITTER = 0.2;
+
+    private final ManagedHttpClientConnection delegate;
+
+    private final long createdAt = System.currentTimeMillis();
+
+    private final double jitter = ThreadLocalRandom.current().nextDouble() * RETIREMENT_JITTER;
+
+    private volatile int requests;
+
+    private final AtomicLong validationRejects;
+
+    private volatile long lastValidated;
+
+    private final ReentrantLock probeLock = new ReentrantLock();
+
+    private boolean leased;
+
+    TrackedConnection( final ManagedHttpClientConnection delegate, final AtomicLong validationRejects )
+    {
+        this.delegate = delegate;
+        this.validationRejects = validationRejects;
+    }
+
+    long getLastValidated()
+    {
+        return lastValidated;
+    }
+
+    /**
+     * Probe this connection for staleness, and close it if it is, unless it's leased or another probe is running.
+     *
+     * @return true if the connection was stale and has been closed
+     */
+    boolean probeIfIdle()
+    {
+        if ( !probeLock.tryLock() )
+        {
+            return false;
+        }
+
+        try
+        {
+            if ( leased || !isOpen() || !isStale() )
+            {
+                return false;
+            }
+
+            closeQuietly( delegate );
+            return true;
+        }
+        finally
+        {
+            probeLock.unlock();
+        }
+    }
+
+    void markLeased()
+    {
+        probeLock.lock();
+        try
+        {
+            leased = true;
+        }
+        finally
+        {
+            probeLock.unlock();
+        }
+    }
+
+    void markReleased()
+    {
+        probeLock.lock();
+        try
+        {
+            leased = false;
+        }
+        finally
+        {
+            probeLock.unlock();
+        }
+    }
+
+    /**
+     * @param maxLifetimeMillis zero or less for no lifetime limit
+     * @param maxRequests zero or less for no request limit
+     * @return true if this connection has reached its (jittered) lifetime or request limit
+     */
+    boolean isDueForRetirement( final long maxLifetimeMillis, final int maxRequests, final long now )
+    {
+        if ( maxLifetimeMillis > 0 && now - createdAt >= (long) ( maxLifetimeMillis * ( 1 - jitter ) ) )
+        {
+            return true;
+        }
+
+        return maxRequests > 0 && requests >= Math.max( 1, (int) Math.ceil( maxRequests * ( 1 - jitter ) ) );
+    }
+
+    @Override
+    public boolean isStale()
+    {
+        boolean stale = delegate.isStale();
+        lastValidated = System.currentTimeMillis();
+        if ( stale )
+        {
+            validationRejects.incrementAndGet();
+        }
+
+        return stale;
+    }
+
+    @Override
+    public String getId()
+    {
+        return delegate.getId();
+    }
+
+    @Override
+    public void bind( final Socket socket )
+            throws IOException
+    {
+        delegate.bind( socket );
+    }
+
+    @Override
+    public Socket getSocket()
+    {
+        return delegate.getSocket();
+    }
+
+    @Override
+    public SSLSession getSSLSession()
+    {
+        return delegate.getSSLSession();
+    }
+
+    @Override
+    public boolean isResponseAvailable( final int timeout )
+            throws IOException
+    {
+        return delegate.isResponseAvailable( timeout );
+    }
+
+    @Override
+    public void sendRequestHeader( final HttpRequest request )
+            throws HttpException, IOException
+    {
+        // only the thread holding the lease uses the connection, and the pool hands leases over under its lock
+        requests++;
+        delegate.sendRequestHeader( request );
+    }
+
+    @Override
+    public void sendRequestEntity( final HttpEntityEnclosingRequest request )
+            throws HttpException, IOException
+    {
+        delegate.sendRequestEntity( request );
+    }
+
+    @Override
+    public HttpResponse receiveResponseHeader()
+            throws HttpException, IOException
+    {
+        return delegate.receiveResponseHeader();
+    }
+
+    @Override
+    public void receiveResponseEntity( final HttpResponse response )
+            throws HttpException, IOException
+    {
+        delegate.receiveResponseEntity( response );
+    }
+
+    @Override
+    public void flush()
+            throws IOException
+    {
+        delegate.flush();
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        delegate.close();
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+        return delegate.isOpen();
+    }
+
+    @Override
+    public void setSocketTimeout( final int timeout )
+    {
+        delegate.setSocketTimeout( timeout );
+    }
+
+    @Override
+    public int getSocketTimeout()
+    {
+        return delegate.getSocketTimeout();
+    }
+
+    @Override
+    public void shutdown()
+            throws IOException
+    {
+        delegate.shutdown();
+    }
+
+    @Override
+    public HttpConnectionMetrics getMetrics()
+    {
+        return delegate.getMetrics();
+    }
+
+    @Override
+    public InetAddress getLocalAddress()
+    {
+        return delegate.getLocalAddress();
+    }
+
+    @Override
+    public int getLocalPort()
+    {
+        return delegate.getLocalPort();
+    }
+
+    @Override
+    public InetAddress getRemoteAddress()
+    {
+        return delegate.getRemoteAddress();
+    }
+
+    @Override
+    public int getRemotePort()
+    {
+        return delegate.getRemotePort();
+    }
+
+    @Override
+    public Object getAttribute( final String id )
+    {
+        if ( ATTRIBUTE.equals( id ) )
+        {
+            return this;
+        }
+
+        return delegate instanceof HttpContext ? ( (HttpContext) delegate ).getAttribute( id ) : null;
+    }
+
+    @Override
+    public void setAttribute( final String id, final Object obj )
+    {
+        if ( delegate instanceof HttpContext )
+        {
+            ( (HttpContext) delegate ).setAttribute( id, obj );
+        }
+    }
+
+    @Override
+    public Object removeAttribute( final String id )
+    {
+        return delegate instanceof HttpContext ? ( (HttpContext) delegate ).removeAttribute( id ) : null;
+    }
+
+    @Override
+    public String toString()
+    {
+        return delegate.toString();
+    }
+}
@@ -19,23 +19,33 @@ import org.apache.http.HttpHost;
 import org.apache.http.HttpRequest;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.AbstractExecutionAwareRequest;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.conn.ClientConnectionManager;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.params.HttpParams;
 import org.apache.http.protocol.HttpContext;
-import org.commonjava.util.jhttpc.INTERNAL.util.HttpUtils;
+import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.lang.ref.WeakReference;
-import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.apache.commons.io.IOUtils.closeQuietly;
 
 /**
  * Created by jdcasey on 10/28/15.
+ *
+ * A lightweight handle on a site's client. When the delegate is shared between handles (see
+ * {@link ConnectionManagerTracker#getSharedClient}), closing the handle cleans up its own requests and responses and
+ * releases the tracker, but leaves the delegate open for other handles.
+ *
+ * In-flight exchanges are kept in a concurrent registry and leave it as soon as their response is closed or its entity
+ * is fully read, so the registry only ever holds what is actually still open.
  */
 public class TrackedHttpClient
         extends CloseableHttpClient
@@ -44,14 +54,23 @@ public class TrackedHttpClient
 
     private final ConnectionManagerTracker managerWrapper;
 
-    private Set<WeakReference<HttpRequest>> requests = new HashSet<WeakReference<HttpRequest>>();
+    private final boolean sharedDelegate;
 
-    private Set<WeakReference<CloseableHttpResponse>> responses = new HashSet<WeakReference<CloseableHttpResponse>>();
+    private final Set<Exchange> inFlight = ConcurrentHashMap.newKeySet();
+
+    private final AtomicBoolean closed = new AtomicBoolean( false );
 
     public TrackedHttpClient( CloseableHttpClient delegate, ConnectionManagerTracker managerWrapper )
+    {
+        this( delegate, managerWrapper, false );
+    }
+
+    public TrackedHttpClient( CloseableHttpClient delegate, ConnectionManagerTracker managerWrapper,
+                              boolean sharedDelegate )
     {
         this.delegate = delegate;
         this.managerWrapper = managerWrapper;
+        this.sharedDelegate = sharedDelegate;
     }
 
     @Override
@@ -60,12 +79,38 @@ public class TrackedHttpClient
     {
         Logger logger = LoggerFactory.getLogger( getClass() );
         logger.trace( "Tracking request/response" );
-        requests.add( new WeakReference<HttpRequest>( request ) );
 
-        CloseableHttpResponse response = delegate.execute( target, request, context );
-        responses.add( new WeakReference<CloseableHttpResponse>( response ) );
+        Exchange exchange = new Exchange( request );
+        inFlight.add( exchange );
 
-        return response;
+        CloseableHttpResponse response;
+        try
+        {
+            response = delegate.execute( target, request, context );
+        }
+        catch ( IOException | RuntimeException e )
+        {
+            inFlight.remove( exchange );
+            throw e;
+        }
+
+        if ( response.getEntity() == null )
+        {
+            // nothing left to stream; the connection has already gone back to the pool
+            inFlight.remove( exchange );
+            return response;
+        }
+
+        exchange.response = new TrackedHttpResponse( response, exchange );
+        return exchange.response;
+    }
+
+    /**
+     * Number of exchanges executed through this handle whose responses have been neither closed nor fully consumed.
+     */
+    public int getInFlightCount()
+    {
+        return inFlight.size();
     }
 
 //    @Override
@@ -131,12 +176,62 @@ public class TrackedHttpClient
     public void close()
             throws IOException
     {
-        HttpUtils.cleanupResources( delegate, requests, responses );
+        // a second close must not release the tracker again; that would drop another handle's use of the pool
+        if ( !closed.compareAndSet( false, true ) )
+        {
+            return;
+        }
+
+        for ( Exchange exchange : inFlight )
+        {
+            exchange.cleanup();
+        }
+
         if ( managerWrapper != null )
         {
             managerWrapper.release();
         }
-        delegate.close();
+
+        if ( !sharedDelegate )
+        {
+            delegate.close();
+        }
+    }
+
+    private final class Exchange
+            implements Runnable
+    {
+        private final HttpRequest request;
+
+        private volatile CloseableHttpResponse response;
+
+        private Exchange( final HttpRequest request )
+        {
+            this.request = request;
+        }
+
+        @Override
+        public void run()
+        {
+            inFlight.remove( this );
+        }
+
+        private void cleanup()
+        {
+            CloseableHttpResponse resp = response;
+            if ( resp != null )
+            {
+                EntityUtils.consumeQuietly( resp.getEntity() );
+                closeQuietly( resp );
+            }
+
+            if ( request instanceof AbstractExecutionAwareRequest )
+            {
+                ( (AbstractExecutionAwareRequest) request ).reset();
+            }
+
+            inFlight.remove( this );
+        }
     }
 
     @Override
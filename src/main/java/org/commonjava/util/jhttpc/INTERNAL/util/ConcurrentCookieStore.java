@@ -0,0 +1,280 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.INTERNAL.util;
+
+import org.apache.http.client.CookieStore;
+import org.apache.http.cookie.Cookie;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cookie store for many threads talking to the same site. Cookies are sharded by domain and path into concurrent maps,
+ * so adding and reading them never takes a store-wide lock, and cookies with an expiry date are also kept in an index
+ * ordered by expiry, so {@link #clearExpired(Date)} only visits cookies that have expired. An empty store answers
+ * {@link #getCookies()} without allocating.
+ */
+public final class ConcurrentCookieStore
+        implements CookieStore
+{
+    private final ConcurrentMap<ShardKey, ConcurrentMap<String, Entry>> shards = new ConcurrentHashMap<>();
+
+    private final NavigableSet<Expiry> expiries = new ConcurrentSkipListSet<>();
+
+    private final AtomicInteger size = new AtomicInteger( 0 );
+
+    private final AtomicLong sequence = new AtomicLong( 0 );
+
+    @Override
+    public void addCookie( final Cookie cookie )
+    {
+        if ( cookie == null )
+        {
+            return;
+        }
+
+        ShardKey key = new ShardKey( cookie );
+        if ( cookie.isExpired( new Date() ) )
+        {
+            // an expired cookie from the server deletes the one it replaces
+            ConcurrentMap<String, Entry> shard = shards.get( key );
+            if ( shard != null )
+            {
+                forget( shard.remove( cookie.getName() ) );
+                prune( key );
+            }
+            return;
+        }
+
+        Date expiryDate = cookie.getExpiryDate();
+        Entry entry = new Entry( cookie );
+        if ( expiryDate != null )
+        {
+            entry.expiry = new Expiry( expiryDate.getTime(), sequence.incrementAndGet(), key, entry );
+        }
+
+        // put the entry in its shard under the shard's map bin, so pruning an empty shard can't drop it
+        Entry[] previous = new Entry[1];
+        ConcurrentMap<String, Entry> shard = shards.compute( key, ( k, existing ) -> {
+            ConcurrentMap<String, Entry> target = existing == null ? new ConcurrentHashMap<>() : existing;
+            previous[0] = target.put( cookie.getName(), entry );
+            return target;
+        } );
+
+        if ( previous[0] == null )
+        {
+            size.incrementAndGet();
+        }
+        else if ( previous[0].expiry != null )
+        {
+            expiries.remove( previous[0].expiry );
+        }
+
+        // index the expiry only once the entry can be found, so clearExpired() can't pass it by
+        if ( entry.expiry != null )
+        {
+            expiries.add( entry.expiry );
+            if ( shard.get( cookie.getName() ) != entry )
+            {
+                // replaced or cleared meanwhile, before its expiry could be removed from the index
+                expiries.remove( entry.expiry );
+            }
+        }
+    }
+
+    @Override
+    public List<Cookie> getCookies()
+    {
+        int count = size.get();
+        if ( count == 0 )
+        {
+            return Collections.emptyList();
+        }
+
+        List<Cookie> cookies = new ArrayList<>( count );
+        for ( Map<String, Entry> shard : shards.values() )
+        {
+            for ( Entry entry : shard.values() )
+            {
+                cookies.add( entry.cookie );
+            }
+        }
+        return cookies;
+    }
+
+    @Override
+    public boolean clearExpired( final Date date )
+    {
+        if ( date == null )
+        {
+            return false;
+        }
+
+        boolean removed = false;
+        long now = date.getTime();
+        Iterator<Expiry> it = expiries.iterator();
+        while ( it.hasNext() )
+        {
+            Expiry next = it.next();
+            if ( next.expiresAt > now )
+            {
+                break;
+            }
+
+            it.remove();
+
+            // the cookie may have been replaced since it was indexed; only remove the indexed entry
+            ConcurrentMap<String, Entry> shard = shards.get( next.key );
+            if ( shard != null && shard.remove( next.entry.cookie.getName(), next.entry ) )
+            {
+                size.decrementAndGet();
+                removed = true;
+                prune( next.key );
+            }
+        }
+
+        return removed;
+    }
+
+    @Override
+    public void clear()
+    {
+        for ( Map.Entry<ShardKey, ConcurrentMap<String, Entry>> shard : shards.entrySet() )
+        {
+            for ( String name : shard.getValue().keySet() )
+            {
+                forget( shard.getValue().remove( name ) );
+            }
+
+            prune( shard.getKey() );
+        }
+    }
+
+    /**
+     * Drop the shard for this domain and path if it's empty, so the store doesn't keep one for every domain and path
+     * it has ever seen.
+     */
+    private void prune( final ShardKey key )
+    {
+        shards.computeIfPresent( key, ( k, shard ) -> shard.isEmpty() ? null : shard );
+    }
+
+    private void forget( final Entry entry )
+    {
+        if ( entry != null )
+        {
+            size.decrementAndGet();
+            if ( entry.expiry != null )
+            {
+                expiries.remove( entry.expiry );
+            }
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return getCookies().toString();
+    }
+
+    private static final class Entry
+    {
+        private final Cookie cookie;
+
+        private Expiry expiry;
+
+        private Entry( final Cookie cookie )
+        {
+            this.cookie = cookie;
+        }
+    }
+
+    private static final class ShardKey
+    {
+        private final String domain;
+
+        private final String path;
+
+        private final int hash;
+
+        private ShardKey( final Cookie cookie )
+        {
+            this.domain = cookie.getDomain() == null ? "" : cookie.getDomain().toLowerCase( Locale.ROOT );
+            this.path = cookie.getPath() == null ? "/" : cookie.getPath();
+            this.hash = Objects.hash( domain, path );
+        }
+
+        @Override
+        public boolean equals( final Object o )
+        {
+            if ( this == o )
+            {
+                return true;
+            }
+            if ( !( o instanceof ShardKey ) )
+            {
+                return false;
+            }
+            ShardKey that = (ShardKey) o;
+            return domain.equals( that.domain ) && path.equals( that.path );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+    }
+
+    private static final class Expiry
+            implements Comparable<Expiry>
+    {
+        private final long expiresAt;
+
+        private final long sequence;
+
+        private final ShardKey key;
+
+        private final Entry entry;
+
+        private Expiry( final long expiresAt, final long sequence, final ShardKey key, final Entry entry )
+        {
+            this.expiresAt = expiresAt;
+            this.sequence = sequence;
+            this.key = key;
+            this.entry = entry;
+        }
+
+        @Override
+        public int compareTo( final Expiry other )
+        {
+            int c = Long.compare( expiresAt, other.expiresAt );
+            return c != 0 ? c : Long.compare( sequence, other.sequence );
+        }
+    }
+}
@@ -15,16 +15,12 @@
  */
 package org.commonjava.util.jhttpc.INTERNAL.util;
 
-import org.apache.http.HttpRequest;
 import org.apache.http.client.methods.AbstractExecutionAwareRequest;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.util.EntityUtils;
 
-import java.lang.ref.WeakReference;
-import java.util.Set;
-
 import static org.apache.commons.io.IOUtils.closeQuietly;
 
 public final class HttpUtils
@@ -56,58 +52,4 @@ public final class HttpUtils
             closeQuietly( client );
         }
     }
-
-    public static void cleanupResources( CloseableHttpClient client, Set<WeakReference<HttpRequest>> requests,
-                                         Set<WeakReference<CloseableHttpResponse>> responses )
-    {
-        if ( responses != null )
-        {
-            for ( WeakReference<CloseableHttpResponse> ref : responses )
-            {
-                if ( ref == null )
-                {
-                    continue;
-                }
-
-                CloseableHttpResponse response = ref.get();
-                if ( response == null )
-                {
-                    continue;
-                }
-
-                if ( response.getEntity() != null )
-                {
-                    EntityUtils.consumeQuietly( response.getEntity() );
-                    closeQuietly( response );
-                }
-            }
-        }
-
-        if ( requests != null )
-        {
-            for ( WeakReference<HttpRequest> ref : requests )
-            {
-                if ( ref == null )
-                {
-                    continue;
-                }
-
-                HttpRequest request = ref.get();
-                if ( request == null )
-                {
-                    continue;
-                }
-
-                if ( request instanceof AbstractExecutionAwareRequest )
-                {
-                    ( (AbstractExecutionAwareRequest) request ).reset();
-                }
-            }
-        }
-
-        if ( client != null )
-        {
-            closeQuietly( client );
-        }
-    }
 }
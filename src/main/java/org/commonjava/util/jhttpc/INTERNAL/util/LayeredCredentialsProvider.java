@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.INTERNAL.util;
+
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.Credentials;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+
+/**
+ * Per-context view of a site's shared credentials. Reads fall through to the shared provider; credentials set on this
+ * view stay local to it, so one caller can't change what every other context of the site sees.
+ */
+public final class LayeredCredentialsProvider
+        implements CredentialsProvider
+{
+    private final CredentialsProvider shared;
+
+    private volatile CredentialsProvider local;
+
+    private volatile boolean cleared;
+
+    public LayeredCredentialsProvider( final CredentialsProvider shared )
+    {
+        this.shared = shared;
+    }
+
+    @Override
+    public synchronized void setCredentials( final AuthScope authscope, final Credentials credentials )
+    {
+        if ( local == null )
+        {
+            local = new BasicCredentialsProvider();
+        }
+        local.setCredentials( authscope, credentials );
+    }
+
+    @Override
+    public Credentials getCredentials( final AuthScope authscope )
+    {
+        CredentialsProvider l = local;
+        Credentials credentials = l == null ? null : l.getCredentials( authscope );
+        if ( credentials == null && !cleared )
+        {
+            credentials = shared.getCredentials( authscope );
+        }
+        return credentials;
+    }
+
+    @Override
+    public synchronized void clear()
+    {
+        cleared = true;
+        local = null;
+    }
+}
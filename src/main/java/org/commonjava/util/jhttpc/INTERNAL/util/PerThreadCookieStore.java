@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.INTERNAL.util;
+
+import org.apache.http.client.CookieStore;
+import org.apache.http.cookie.Cookie;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Cookie store that keeps a separate set of cookies for each thread using it. Every call, including {@link #clear()},
+ * only sees the calling thread's cookies. Threads that never receive a cookie never get a store of their own.
+ */
+public final class PerThreadCookieStore
+        implements CookieStore
+{
+    private final ThreadLocal<CookieStore> stores = new ThreadLocal<>();
+
+    @Override
+    public void addCookie( final Cookie cookie )
+    {
+        CookieStore store = stores.get();
+        if ( store == null )
+        {
+            store = new ConcurrentCookieStore();
+            stores.set( store );
+        }
+        store.addCookie( cookie );
+    }
+
+    @Override
+    public List<Cookie> getCookies()
+    {
+        CookieStore store = stores.get();
+        return store == null ? Collections.emptyList() : store.getCookies();
+    }
+
+    @Override
+    public boolean clearExpired( final Date date )
+    {
+        CookieStore store = stores.get();
+        return store != null && store.clearExpired( date );
+    }
+
+    @Override
+    public void clear()
+    {
+        stores.remove();
+    }
+}
@@ -0,0 +1,249 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.INTERNAL.util;
+
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.ssl.PrivateKeyStrategy;
+import org.apache.http.ssl.SSLContextBuilder;
+import org.apache.http.ssl.SSLContexts;
+import org.commonjava.util.jhttpc.JHttpCException;
+import org.commonjava.util.jhttpc.auth.PasswordKey;
+import org.commonjava.util.jhttpc.auth.PasswordManager;
+import org.commonjava.util.jhttpc.auth.PasswordType;
+import org.commonjava.util.jhttpc.model.SiteConfig;
+import org.commonjava.util.jhttpc.model.SiteTrustType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.security.KeyManagementException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.UnrecoverableKeyException;
+import java.security.cert.CertificateException;
+import java.security.spec.InvalidKeySpecException;
+
+/**
+ * Builds the SSL context for a site's client key and server certificates. It is built once per {@link SiteConfig}
+ * instance and kept in one of its attributes, so every client for the site (blocking, non-blocking and HTTP/2) shares
+ * it.
+ */
+public final class SiteSSLContexts
+{
+    private static final String SSL_CONTEXT_ATTRIB = "ssl-context";
+
+    private static final Logger logger = LoggerFactory.getLogger( SiteSSLContexts.class );
+
+    private SiteSSLContexts()
+    {
+    }
+
+    /**
+     * The site's SSL context, or null if the site has no SSL settings of its own.
+     */
+    public static SSLContext getSSLContext( final SiteConfig location, final PasswordManager passwords )
+            throws JHttpCException
+    {
+        SSLContext sslContext = (SSLContext) location.getAttribute( SSL_CONTEXT_ATTRIB );
+        if ( sslContext != null )
+        {
+            return sslContext;
+        }
+
+        KeyStore ks = null;
+        KeyStore ts = null;
+
+        final String kcPem = location.getKeyCertPem();
+
+        final String kcPass = passwords == null ? null : passwords.lookup( new PasswordKey( location, PasswordType.KEY ) );
+        if ( kcPem != null )
+        {
+            logger.debug( "Adding client key/certificate from: {}", location );
+            if ( kcPass == null || kcPass.length() < 1 )
+            {
+                logger.error( "Invalid configuration. Location: {} cannot have an empty key password!",
+                              location.getUri() );
+                throw new JHttpCException( "Location: %s is misconfigured! Key password cannot be empty.", null,
+                                           location.getUri() );
+            }
+
+            try
+            {
+                logger.trace( "Reading Client SSL key from:\n\n{}\n\n", kcPem );
+                ks = SSLUtils.readKeyAndCert( kcPem, kcPass );
+
+                logger.trace( "Keystore contains the following certificates: {}", new CertEnumerator( ks, kcPass ) );
+            }
+            catch ( final CertificateException e )
+            {
+                logger.error( String.format(
+                        "Invalid configuration. Location: %s has an invalid client certificate! Error: %s",
+                        location.getUri(), e.getMessage() ), e );
+                throw new JHttpCException( "Failed to initialize SSL connection for repository: %s", e, location.getUri() );
+            }
+            catch ( final KeyStoreException e )
+            {
+                logger.error( String.format(
+                        "Invalid configuration. Cannot initialize keystore for repository: %s. Error: %s",
+                        location.getUri(), e.getMessage() ), e );
+                throw new JHttpCException( "Failed to initialize SSL connection for repository: %s", e, location.getUri() );
+            }
+            catch ( final NoSuchAlgorithmException e )
+            {
+                logger.error( String.format(
+                        "Invalid configuration. Cannot initialize keystore for repository: %s. Error: %s",
+                        location.getUri(), e.getMessage() ), e );
+                throw new JHttpCException( "Failed to initialize SSL connection for repository: %s", e, location.getUri() );
+            }
+            catch ( final InvalidKeySpecException e )
+            {
+                logger.error( String.format( "Invalid configuration. Invalid client key for repository: %s. Error: %s",
+                                             location.getUri(), e.getMessage() ), e );
+                throw new JHttpCException( "Failed to initialize SSL connection for repository: %s", e, location.getUri() );
+            }
+            catch ( IOException e )
+            {
+                throw new JHttpCException( "Failed to read client SSL key/certificate from: %s. Reason: %s", e,
+                                           location, e.getMessage() );
+            }
+            catch ( JHttpCException e )
+            {
+                throw new JHttpCException( "Failed to read client SSL key/certificate from: %s. Reason: %s", e,
+                                           location, e.getMessage() );
+            }
+        }
+        else
+        {
+            logger.debug( "No client key/certificate found" );
+        }
+
+        final String sPem = location.getServerCertPem();
+
+        //        logger.debug( "Server certificate PEM:\n{}", sPem );
+        if ( sPem != null )
+        {
+            logger.debug( "Loading TrustStore (server SSL) information from: {}", location );
+            try
+            {
+                logger.trace( "Reading Server SSL cert from:\n\n{}\n\n", sPem );
+                ts = SSLUtils.decodePEMTrustStore( sPem, location.getHost() );
+
+                logger.trace( "Trust store contains the following certificates:\n{}", new CertEnumerator( ts, null ) );
+            }
+            catch ( final CertificateException e )
+            {
+                logger.error( String.format(
+                        "Invalid configuration. Location: %s has an invalid server certificate! Error: %s",
+                        location.getUri(), e.getMessage() ), e );
+                throw new JHttpCException( "Failed to initialize SSL connection for repository: %s", e, location.getUri() );
+            }
+            catch ( final KeyStoreException e )
+            {
+                logger.error( String.format(
+                        "Invalid configuration. Cannot initialize keystore for repository: %s. Error: %s",
+                        location.getUri(), e.getMessage() ), e );
+                throw new JHttpCException( "Failed to initialize SSL connection for repository: %s", e, location.getUri() );
+            }
+            catch ( final NoSuchAlgorithmException e )
+            {
+                logger.error( String.format(
+                        "Invalid configuration. Cannot initialize keystore for repository: %s. Error: %s",
+                        location.getUri(), e.getMessage() ), e );
+                throw new JHttpCException( "Failed to initialize SSL connection for repository: %s", e, location.getUri() );
+            }
+            catch ( IOException e )
+            {
+                throw new JHttpCException(
+                        "Failed to read server SSL certificate(s) (or couldn't parse server hostname) from: %s. Reason: %s",
+                        e, location, e.getMessage() );
+            }
+        }
+        else
+        {
+            logger.debug( "No server certificates found" );
+        }
+
+        // if user set either ks, ts, or want to ignore hostname verification, we know this is a ssl factory and set it accordingly
+        if ( ks != null || ts != null || location.isIgnoreHostnameVerification() )
+        {
+            logger.debug( "Setting up SSL context." );
+            try
+            {
+                SSLContextBuilder sslBuilder = SSLContexts.custom().useProtocol( SSLConnectionSocketFactory.TLS );
+
+                if ( ks != null )
+                {
+                    logger.trace( "Loading key material for SSL context..." );
+                    PrivateKeyStrategy pkStrategy = new MonolithicKeyStrategy();
+                    sslBuilder.loadKeyMaterial( ks, kcPass.toCharArray(), pkStrategy );
+                }
+
+                if ( ts != null )
+                {
+                    logger.trace( "Loading trust material for SSL context..." );
+
+                    SiteTrustType trustType = location.getTrustType();
+                    if ( trustType == null )
+                    {
+                        trustType = SiteTrustType.DEFAULT;
+                    }
+
+                    sslBuilder.loadTrustMaterial( ts, trustType.getTrustStrategy() );
+                }
+
+                sslContext = sslBuilder.build();
+                location.setAttribute( SSL_CONTEXT_ATTRIB, sslContext );
+                return sslContext;
+            }
+            catch ( final KeyManagementException e )
+            {
+                logger.error(
+                        "Invalid configuration. Cannot initialize SSL socket factory for repository: {}. Error: {}", e,
+                        location.getUri(), e.getMessage() );
+                throw new JHttpCException( "Failed to initialize SSL connection for repository: %s", e, location.getUri() );
+            }
+            catch ( final UnrecoverableKeyException e )
+            {
+                logger.error(
+                        "Invalid configuration. Cannot initialize SSL socket factory for repository: {}. Error: {}", e,
+                        location.getUri(), e.getMessage() );
+                throw new JHttpCException( "Failed to initialize SSL connection for repository: %s", e, location.getUri() );
+            }
+            catch ( final NoSuchAlgorithmException e )
+            {
+                logger.error(
+                        "Invalid configuration. Cannot initialize SSL socket factory for repository: {}. Error: {}", e,
+                        location.getUri(), e.getMessage() );
+                throw new JHttpCException( "Failed to initialize SSL connection for repository: %s", e, location.getUri() );
+            }
+            catch ( final KeyStoreException e )
+            {
+                logger.error(
+                        "Invalid configuration. Cannot initialize SSL socket factory for repository: {}. Error: {}", e,
+                        location.getUri(), e.getMessage() );
+                throw new JHttpCException( "Failed to initialize SSL connection for repository: %s", e, location.getUri() );
+            }
+        }
+        else
+        {
+            logger.debug( "No SSL configuration present; no SSL context created." );
+        }
+
+        return null;
+    }
+}
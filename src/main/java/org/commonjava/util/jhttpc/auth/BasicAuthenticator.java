@@ -16,13 +16,14 @@
 package org.commonjava.util.jhttpc.auth;
 
 import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.auth.BasicUserPrincipal;
+import org.apache.http.auth.Credentials;
 import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.commonjava.util.jhttpc.model.SiteConfig;
 
-import java.net.URL;
+import java.security.Principal;
 
 public class BasicAuthenticator
         extends ClientAuthenticator
@@ -47,16 +48,67 @@ public class BasicAuthenticator
 
         if ( PasswordType.USER == type )
         {
-            final String password = passwords.lookup( new PasswordKey( location, PasswordType.USER ) );
-            creds.setCredentials( scope, new UsernamePasswordCredentials( location.getUser(), password ) );
+            creds.setCredentials( scope, new PasswordLookupCredentials( location.getUser(),
+                                                                        new PasswordKey( location, type ) ) );
         }
         else if ( PasswordType.PROXY == type )
         {
-            final String password = passwords.lookup( new PasswordKey( location, PasswordType.PROXY ) );
-            creds.setCredentials( scope, new UsernamePasswordCredentials( location.getProxyUser(), password ) );
+            creds.setCredentials( scope, new PasswordLookupCredentials( location.getProxyUser(),
+                                                                        new PasswordKey( location, type ) ) );
         }
 
         return ctx;
     }
 
+    /**
+     * Passwords are looked up when a request needs them, not when the context is decorated, so a site's context
+     * template stays valid when its passwords are re-bound.
+     */
+    @Override
+    public boolean isContextShareable()
+    {
+        return true;
+    }
+
+    /**
+     * The client builder isn't decorated at all.
+     */
+    @Override
+    public boolean isClientBuilderShareable()
+    {
+        return true;
+    }
+
+    private final class PasswordLookupCredentials
+            implements Credentials
+    {
+        private final BasicUserPrincipal principal;
+
+        private final PasswordKey key;
+
+        private PasswordLookupCredentials( final String user, final PasswordKey key )
+        {
+            this.principal = new BasicUserPrincipal( user );
+            this.key = key;
+        }
+
+        @Override
+        public Principal getUserPrincipal()
+        {
+            return principal;
+        }
+
+        @Override
+        public String getPassword()
+        {
+            return passwords.lookup( key );
+        }
+
+        @Override
+        public String toString()
+        {
+            return principal.toString();
+        }
+    }
+
 }
@@ -15,6 +15,7 @@
  */
 package org.commonjava.util.jhttpc.auth;
 
+import org.apache.http.Header;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.impl.client.HttpClientBuilder;
@@ -22,6 +23,8 @@ import org.commonjava.util.jhttpc.JHttpCException;
 import org.commonjava.util.jhttpc.model.SiteConfig;
 
 import java.net.URL;
+import java.util.Collections;
+import java.util.List;
 
 public abstract class ClientAuthenticator
 {
@@ -33,10 +36,38 @@ public abstract class ClientAuthenticator
         return ctx;
     }
 
+    /**
+     * Whether {@link #decoratePrototypeContext} gives the same result every time for a given site and scope, so it
+     * can be applied once to the site's shared context template instead of to every new context. Off by default.
+     */
+    public boolean isContextShareable()
+    {
+        return false;
+    }
+
+    /**
+     * Whether {@link #decorateClientBuilder(HttpClientBuilder)} gives an equivalent builder every time, so one client
+     * per site can serve every caller instead of a new client being built for each one. Off by default.
+     */
+    public boolean isClientBuilderShareable()
+    {
+        return false;
+    }
+
     public HttpClientBuilder decorateClientBuilder( final HttpClientBuilder builder )
             throws JHttpCException
     {
         return builder;
     }
 
+    /**
+     * Headers to send with every request, for clients that aren't built from an HttpClient 4 builder, such as those
+     * from {@link org.commonjava.util.jhttpc.h2.H2HttpFactory} and {@link org.commonjava.util.jhttpc.AsyncHttpFactory}.
+     * None by default.
+     */
+    public List<Header> getDefaultHeaders()
+    {
+        return Collections.emptyList();
+    }
+
 }
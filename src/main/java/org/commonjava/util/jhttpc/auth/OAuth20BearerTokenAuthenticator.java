@@ -22,6 +22,7 @@ import org.commonjava.util.jhttpc.JHttpCException;
 
 import java.net.URL;
 import java.util.Collections;
+import java.util.List;
 
 public class OAuth20BearerTokenAuthenticator
         extends ClientAuthenticator
@@ -38,12 +39,27 @@ public class OAuth20BearerTokenAuthenticator
         this.token = token;
     }
 
+    /**
+     * The token is fixed for the life of the authenticator, so every decorated builder is the same.
+     */
+    @Override
+    public boolean isClientBuilderShareable()
+    {
+        return true;
+    }
+
     @Override
     public HttpClientBuilder decorateClientBuilder( final HttpClientBuilder builder )
             throws JHttpCException
+    {
+        return builder.setDefaultHeaders( getDefaultHeaders() );
+    }
+
+    @Override
+    public List<Header> getDefaultHeaders()
     {
         final Header header = new BasicHeader( AUTHORIZATION_HEADER, String.format( BEARER_FORMAT, token ) );
-        return builder.setDefaultHeaders( Collections.<Header> singleton( header ) );
+        return Collections.singletonList( header );
     }
 
 }
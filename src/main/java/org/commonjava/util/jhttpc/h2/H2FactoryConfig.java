@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.h2;
+
+/**
+ * Settings for {@link H2HttpFactory}, applied to every site. Build instances with {@link H2FactoryConfigBuilder}.
+ */
+public final class H2FactoryConfig
+{
+
+    public static final int DEFAULT_CONNECTIONS_PER_SITE = 1;
+
+    public static final int DEFAULT_MAX_CONCURRENT_STREAMS = 100;
+
+    public static final int DEFAULT_INITIAL_WINDOW_SIZE = 65535;
+
+    private final Integer connectionsPerSite;
+
+    private final Integer maxConcurrentStreams;
+
+    private final Integer initialWindowSize;
+
+    H2FactoryConfig( Integer connectionsPerSite, Integer maxConcurrentStreams, Integer initialWindowSize )
+    {
+        this.connectionsPerSite = connectionsPerSite;
+        this.maxConcurrentStreams = maxConcurrentStreams;
+        this.initialWindowSize = initialWindowSize;
+    }
+
+    /**
+     * How many HTTP/2 connections each site's requests are spread over. Every request is a stream on one of them, so
+     * a few are enough; more only help when a single connection's flow-control window or I/O thread is the limit.
+     */
+    public int getConnectionsPerSite()
+    {
+        return connectionsPerSite == null ? DEFAULT_CONNECTIONS_PER_SITE : connectionsPerSite;
+    }
+
+    /**
+     * The SETTINGS_MAX_CONCURRENT_STREAMS this client advertises. The server's own setting caps how many requests
+     * can be in flight on one connection; requests beyond it wait for a free stream.
+     */
+    public int getMaxConcurrentStreams()
+    {
+        return maxConcurrentStreams == null ? DEFAULT_MAX_CONCURRENT_STREAMS : maxConcurrentStreams;
+    }
+
+    /**
+     * The flow-control window, in bytes, each stream starts with (SETTINGS_INITIAL_WINDOW_SIZE). Raise it for large
+     * downloads over high-latency links, so the server isn't held up waiting for window updates.
+     */
+    public int getInitialWindowSize()
+    {
+        return initialWindowSize == null ? DEFAULT_INITIAL_WINDOW_SIZE : initialWindowSize;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "H2FactoryConfig{" +
+                "connectionsPerSite=" + getConnectionsPerSite() +
+                ", maxConcurrentStreams=" + getMaxConcurrentStreams() +
+                ", initialWindowSize=" + getInitialWindowSize() +
+                '}';
+    }
+}
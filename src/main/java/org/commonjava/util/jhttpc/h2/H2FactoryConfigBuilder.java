@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.h2;
+
+public class H2FactoryConfigBuilder
+{
+
+    private Integer connectionsPerSite;
+
+    private Integer maxConcurrentStreams;
+
+    private Integer initialWindowSize;
+
+    public H2FactoryConfigBuilder()
+    {
+    }
+
+    public H2FactoryConfig build()
+    {
+        return new H2FactoryConfig( connectionsPerSite, maxConcurrentStreams, initialWindowSize );
+    }
+
+    public H2FactoryConfigBuilder withConnectionsPerSite( Integer connectionsPerSite )
+    {
+        if ( connectionsPerSite != null && connectionsPerSite < 1 )
+        {
+            throw new IllegalArgumentException( "Connections per site must be at least 1: " + connectionsPerSite );
+        }
+        this.connectionsPerSite = connectionsPerSite;
+        return this;
+    }
+
+    public H2FactoryConfigBuilder withMaxConcurrentStreams( Integer maxConcurrentStreams )
+    {
+        if ( maxConcurrentStreams != null && maxConcurrentStreams < 1 )
+        {
+            throw new IllegalArgumentException( "Max concurrent streams must be at least 1: " + maxConcurrentStreams );
+        }
+        this.maxConcurrentStreams = maxConcurrentStreams;
+        return this;
+    }
+
+    public H2FactoryConfigBuilder withInitialWindowSize( Integer initialWindowSize )
+    {
+        if ( initialWindowSize != null && initialWindowSize < 1 )
+        {
+            throw new IllegalArgumentException( "Initial window size must be at least 1: " + initialWindowSize );
+        }
+        this.initialWindowSize = initialWindowSize;
+        return this;
+    }
+}
@@ -0,0 +1,422 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.h2;
+
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestProducer;
+import org.apache.hc.client5.http.async.methods.SimpleResponseConsumer;
+import org.apache.hc.client5.http.auth.CredentialsProvider;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.cookie.BasicCookieStore;
+import org.apache.hc.client5.http.cookie.CookieStore;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.H2AsyncClientBuilder;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.ssl.ClientTlsStrategyBuilder;
+import org.apache.hc.client5.http.ssl.DefaultHostnameVerifier;
+import org.apache.hc.client5.http.ssl.NoopHostnameVerifier;
+import org.apache.hc.core5.concurrent.DefaultThreadFactory;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.message.BasicHeader;
+import org.apache.hc.core5.http.nio.AsyncRequestProducer;
+import org.apache.hc.core5.http.nio.AsyncResponseConsumer;
+import org.apache.hc.core5.http.nio.ssl.TlsStrategy;
+import org.apache.hc.core5.http2.config.H2Config;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.reactor.IOReactorConfig;
+import org.apache.hc.core5.ssl.SSLContexts;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.commonjava.util.jhttpc.INTERNAL.util.SiteSSLContexts;
+import org.commonjava.util.jhttpc.JHttpCException;
+import org.commonjava.util.jhttpc.auth.BasicAuthenticator;
+import org.commonjava.util.jhttpc.auth.ClientAuthenticator;
+import org.commonjava.util.jhttpc.auth.PasswordManager;
+import org.commonjava.util.jhttpc.auth.PasswordType;
+import org.commonjava.util.jhttpc.model.SiteConfig;
+import org.commonjava.util.jhttpc.model.SiteCookiePolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLContext;
+import java.io.Closeable;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An HTTP/2 engine on Apache HttpClient 5, for sites that speak HTTP/2. It takes the same {@link SiteConfig},
+ * {@link PasswordManager} and {@link ClientAuthenticator} as {@link org.commonjava.util.jhttpc.HttpFactory}, but
+ * instead of a pool of HTTP/1.1 connections each site gets {@link H2FactoryConfig#getConnectionsPerSite()} connections
+ * (one by default), and concurrent requests are multiplexed over them as streams. HTTPS sites negotiate h2 through
+ * ALPN; plain HTTP sites are spoken to with prior knowledge, so they must accept cleartext HTTP/2.
+ *
+ * HttpClient 5 is an optional dependency of jhttpc; add org.apache.httpcomponents.client5:httpclient5 to use this
+ * class. Sites keep their SSL key and certificates, hostname verification, request timeout, idle connection timeout
+ * and cookie policy ({@link SiteCookiePolicy#PER_THREAD} gets one store per site here). Authenticators apply through
+ * the credentials they set in {@link ClientAuthenticator#decoratePrototypeContext} and through
+ * {@link ClientAuthenticator#getDefaultHeaders()}; their HttpClient 4 builder hooks aren't used. Proxies aren't
+ * supported.
+ *
+ * A site's connections stay open until the factory is closed, or until the site is used with a {@link SiteConfig}
+ * whose connection settings differ, which replaces them once the streams already running on them have finished.
+ */
+public class H2HttpFactory
+        implements Closeable
+{
+    private static final String COOKIE_STORE = "h2-cookie-store";
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final PasswordManager passwords;
+
+    private final ClientAuthenticator authenticator;
+
+    private final H2FactoryConfig config;
+
+    private final ConcurrentMap<String, H2SitePool> pools = new ConcurrentHashMap<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private volatile boolean closed;
+
+    public H2HttpFactory( final PasswordManager passwords )
+    {
+        this( passwords, new H2FactoryConfigBuilder().build() );
+    }
+
+    public H2HttpFactory( final PasswordManager passwords, final H2FactoryConfig config )
+    {
+        this.passwords = passwords;
+        this.authenticator = new BasicAuthenticator( passwords );
+        this.config = config;
+    }
+
+    public H2HttpFactory( final ClientAuthenticator authenticator )
+    {
+        this( authenticator, new H2FactoryConfigBuilder().build() );
+    }
+
+    public H2HttpFactory( final ClientAuthenticator authenticator, final H2FactoryConfig config )
+    {
+        this.authenticator = authenticator;
+        this.passwords = null;
+        this.config = config;
+    }
+
+    public H2FactoryConfig getConfig()
+    {
+        return config;
+    }
+
+    /**
+     * Execute a request on one of the site's connections and buffer the whole response in memory.
+     */
+    public CompletableFuture<SimpleHttpResponse> execute( final SiteConfig site, final SimpleHttpRequest request )
+            throws JHttpCException
+    {
+        return execute( site, SimpleRequestProducer.create( request ), SimpleResponseConsumer.create() );
+    }
+
+    /**
+     * Execute a request whose body is streamed from the given producer, and stream the response into the consumer.
+     * The returned future completes on one of the site's I/O threads; cancelling it resets the stream.
+     */
+    public <T> CompletableFuture<T> execute( final SiteConfig site, final AsyncRequestProducer producer,
+                                             final AsyncResponseConsumer<T> consumer )
+            throws JHttpCException
+    {
+        H2SitePool pool;
+        do
+        {
+            pool = getPool( site );
+        }
+        while ( !pool.acquire() );
+
+        final H2SitePool used = pool;
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<T> future;
+        try
+        {
+            future = used.nextClient().execute( producer, consumer, new FutureCallback<T>()
+            {
+                @Override
+                public void completed( final T response )
+                {
+                    result.complete( response );
+                }
+
+                @Override
+                public void failed( final Exception e )
+                {
+                    result.completeExceptionally( e );
+                }
+
+                @Override
+                public void cancelled()
+                {
+                    result.cancel( false );
+                }
+            } );
+        }
+        catch ( RuntimeException e )
+        {
+            used.release();
+            throw e;
+        }
+
+        result.whenComplete( ( response, error ) -> {
+            if ( result.isCancelled() )
+            {
+                future.cancel( true );
+            }
+
+            used.release();
+        } );
+
+        return result;
+    }
+
+    /**
+     * Close every site's connections. Streams still in flight are given a few seconds to finish.
+     */
+    @Override
+    public void close()
+    {
+        List<H2SitePool> closing;
+        lock.lock();
+        try
+        {
+            closed = true;
+            closing = new ArrayList<>( pools.values() );
+            pools.clear();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+
+        for ( H2SitePool pool : closing )
+        {
+            pool.close( CloseMode.GRACEFUL );
+        }
+    }
+
+    public boolean isClosed()
+    {
+        return closed;
+    }
+
+    private H2SitePool getPool( final SiteConfig site )
+            throws JHttpCException
+    {
+        H2SitePool pool = pools.get( site.getId() );
+        if ( pool != null && pool.hasSameSettings( site ) )
+        {
+            return pool;
+        }
+
+        H2SitePool replaced = null;
+        lock.lock();
+        try
+        {
+            if ( closed )
+            {
+                throw new IllegalStateException( "HTTP/2 factory is closed; cannot connect to: " + site.getId() );
+            }
+
+            pool = pools.get( site.getId() );
+            if ( pool == null || !pool.hasSameSettings( site ) )
+            {
+                replaced = pool;
+                pool = buildPool( site );
+                pools.put( site.getId(), pool );
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+
+        if ( replaced != null )
+        {
+            logger.debug( "Settings for: {} changed; replacing its HTTP/2 connections once their streams finish",
+                          site.getId() );
+            replaced.retire();
+        }
+
+        return pool;
+    }
+
+    private H2SitePool buildPool( final SiteConfig site )
+            throws JHttpCException
+    {
+        if ( site.getProxyHost() != null )
+        {
+            throw new JHttpCException( "Site: %s uses a proxy, which the HTTP/2 engine doesn't support.", null,
+                                       site.getId() );
+        }
+
+        logger.debug( "Opening {} HTTP/2 connection(s) for: {} with {}", config.getConnectionsPerSite(),
+                      site.getId(), config );
+
+        SSLContext sslContext = SiteSSLContexts.getSSLContext( site, passwords );
+        TlsStrategy tlsStrategy = ClientTlsStrategyBuilder.create()
+                                                          .setSslContext( sslContext == null ?
+                                                                                  SSLContexts.createSystemDefault() :
+                                                                                  sslContext )
+                                                          .setHostnameVerifier(
+                                                                  site.isIgnoreHostnameVerification() ?
+                                                                          NoopHostnameVerifier.INSTANCE :
+                                                                          new DefaultHostnameVerifier() )
+                                                          .build();
+
+        H2Config h2Config = H2Config.custom()
+                                    .setPushEnabled( false )
+                                    .setMaxConcurrentStreams( config.getMaxConcurrentStreams() )
+                                    .setInitialWindowSize( config.getInitialWindowSize() )
+                                    .build();
+
+        Timeout timeout = Timeout.ofSeconds( site.getRequestTimeoutSeconds() );
+        ConnectionConfig connectionConfig = ConnectionConfig.custom().setConnectTimeout( timeout ).build();
+        RequestConfig requestConfig = RequestConfig.custom().setResponseTimeout( timeout ).build();
+        IOReactorConfig reactorConfig = IOReactorConfig.custom().setIoThreadCount( 1 ).build();
+
+        CredentialsProvider credentials = credentialsFor( site );
+        List<Header> defaultHeaders = defaultHeaders();
+        CookieStore cookieStore = getCookieStore( site );
+
+        List<CloseableHttpAsyncClient> clients = new ArrayList<>( config.getConnectionsPerSite() );
+        try
+        {
+            for ( int i = 0; i < config.getConnectionsPerSite(); i++ )
+            {
+                H2AsyncClientBuilder builder = HttpAsyncClients.customHttp2()
+                                                               .setTlsStrategy( tlsStrategy )
+                                                               .setH2Config( h2Config )
+                                                               .setIOReactorConfig( reactorConfig )
+                                                               .setDefaultConnectionConfig( connectionConfig )
+                                                               .setDefaultRequestConfig( requestConfig )
+                                                               .setDefaultHeaders( defaultHeaders )
+                                                               .setThreadFactory( new DefaultThreadFactory(
+                                                                       "jhttpc-h2-" + site.getId() + "-" + i,
+                                                                       true ) );
+
+                if ( credentials != null )
+                {
+                    builder.setDefaultCredentialsProvider( credentials );
+                }
+
+                if ( cookieStore == null )
+                {
+                    builder.disableCookieManagement();
+                }
+                else
+                {
+                    builder.setDefaultCookieStore( cookieStore );
+                }
+
+                if ( site.getIdleConnectionTimeoutSeconds() > 0 )
+                {
+                    builder.evictIdleConnections( TimeValue.ofSeconds( site.getIdleConnectionTimeoutSeconds() ) );
+                }
+
+                CloseableHttpAsyncClient client = builder.build();
+                clients.add( client );
+                client.start();
+            }
+        }
+        catch ( RuntimeException e )
+        {
+            new H2SitePool( site, clients ).close( CloseMode.IMMEDIATE );
+            throw e;
+        }
+
+        return new H2SitePool( site, clients );
+    }
+
+    /**
+     * Run the authenticator over an HttpClient 4 context for the site, as {@link org.commonjava.util.jhttpc.HttpFactory}
+     * does, and serve whatever credentials it sets to the HttpClient 5 client.
+     */
+    private CredentialsProvider credentialsFor( final SiteConfig site )
+            throws JHttpCException
+    {
+        if ( authenticator == null || site.getUser() == null )
+        {
+            return null;
+        }
+
+        final AuthScope scope;
+        try
+        {
+            scope = new AuthScope( site.getHost(), site.getPort() );
+        }
+        catch ( MalformedURLException e )
+        {
+            throw new JHttpCException( "Failed to parse site URL for host and port: %s (site id: %s). Reason: %s", e,
+                                       site.getUri(), site.getId(), e.getMessage() );
+        }
+
+        HttpClientContext ctx =
+                authenticator.decoratePrototypeContext( scope, site, PasswordType.USER, HttpClientContext.create() );
+
+        return ctx == null || ctx.getCredentialsProvider() == null ?
+                null :
+                new SiteCredentialsProvider( ctx.getCredentialsProvider() );
+    }
+
+    private List<Header> defaultHeaders()
+    {
+        List<Header> headers = new ArrayList<>();
+        if ( authenticator != null )
+        {
+            for ( org.apache.http.Header header : authenticator.getDefaultHeaders() )
+            {
+                headers.add( new BasicHeader( header.getName(), header.getValue() ) );
+            }
+        }
+
+        return headers;
+    }
+
+    private CookieStore getCookieStore( final SiteConfig site )
+    {
+        if ( site.getCookiePolicy() == SiteCookiePolicy.DISABLED )
+        {
+            return null;
+        }
+
+        CookieStore cookieStore = site.getAttribute( COOKIE_STORE, CookieStore.class );
+        if ( cookieStore == null )
+        {
+            cookieStore = new BasicCookieStore();
+            site.setAttribute( COOKIE_STORE, cookieStore );
+        }
+
+        return cookieStore;
+    }
+}
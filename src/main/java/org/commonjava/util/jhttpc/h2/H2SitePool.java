@@ -0,0 +1,146 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.h2;
+
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.core5.io.CloseMode;
+import org.commonjava.util.jhttpc.model.SiteConfig;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A site's HTTP/2 clients. Each keeps one multiplexed connection to the site, and requests are handed to them in turn.
+ *
+ * Each exchange holds a use of the pool from before it picks a client until it completes. A pool that has been
+ * replaced is retired: it refuses new uses and closes once the last one is released, so no exchange ever runs on a
+ * client that is being closed.
+ */
+final class H2SitePool
+{
+    private final SiteConfig site;
+
+    private final List<CloseableHttpAsyncClient> clients;
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    private final AtomicInteger users = new AtomicInteger();
+
+    private final AtomicBoolean retired = new AtomicBoolean();
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    H2SitePool( final SiteConfig site, final List<CloseableHttpAsyncClient> clients )
+    {
+        this.site = site;
+        this.clients = clients;
+    }
+
+    SiteConfig getSite()
+    {
+        return site;
+    }
+
+    /**
+     * Whether these clients were built from the same settings as the given config would give them: SSL, hostname
+     * verification, timeouts, proxy, cookie policy, and the users that USER and PROXY passwords are looked up for. The
+     * passwords themselves are looked up by site id on each use, so re-binding one doesn't need new clients.
+     */
+    boolean hasSameSettings( final SiteConfig other )
+    {
+        return site == other || ( Objects.equals( site.getUri(), other.getUri() )
+                && Objects.equals( site.getKeyCertPem(), other.getKeyCertPem() )
+                && Objects.equals( site.getServerCertPem(), other.getServerCertPem() )
+                && site.getTrustType() == other.getTrustType()
+                && site.isIgnoreHostnameVerification() == other.isIgnoreHostnameVerification()
+                && site.getRequestTimeoutSeconds() == other.getRequestTimeoutSeconds()
+                && site.getIdleConnectionTimeoutSeconds() == other.getIdleConnectionTimeoutSeconds()
+                && Objects.equals( site.getUser(), other.getUser() )
+                && Objects.equals( site.getProxyHost(), other.getProxyHost() )
+                && site.getProxyPort() == other.getProxyPort()
+                && Objects.equals( site.getProxyUser(), other.getProxyUser() )
+                && site.getCookiePolicy() == other.getCookiePolicy() );
+    }
+
+    /**
+     * Take a use of this pool for one exchange.
+     *
+     * @return false if the pool has been retired, in which case the caller should look up the site's new pool
+     */
+    boolean acquire()
+    {
+        users.incrementAndGet();
+        if ( retired.get() )
+        {
+            release();
+            return false;
+        }
+
+        return true;
+    }
+
+    void release()
+    {
+        if ( users.decrementAndGet() == 0 && retired.get() )
+        {
+            closeLater();
+        }
+    }
+
+    CloseableHttpAsyncClient nextClient()
+    {
+        return clients.get( Math.floorMod( next.getAndIncrement(), clients.size() ) );
+    }
+
+    /**
+     * Refuse new exchanges and close the clients gracefully once the ones in flight have finished.
+     */
+    void retire()
+    {
+        retired.set( true );
+        if ( users.get() == 0 )
+        {
+            closeLater();
+        }
+    }
+
+    void close( final CloseMode mode )
+    {
+        retired.set( true );
+        if ( closed.compareAndSet( false, true ) )
+        {
+            for ( CloseableHttpAsyncClient client : clients )
+            {
+                client.close( mode );
+            }
+        }
+    }
+
+    private void closeLater()
+    {
+        if ( closed.get() )
+        {
+            return;
+        }
+
+        // closing joins the clients' I/O threads, and the last release usually comes from one of them
+        Thread closer = new Thread( () -> close( CloseMode.GRACEFUL ), "jhttpc-h2-close-" + site.getId() );
+        closer.setDaemon( true );
+        closer.start();
+    }
+}
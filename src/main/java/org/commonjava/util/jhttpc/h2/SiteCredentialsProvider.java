@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.h2;
+
+import org.apache.hc.client5.http.auth.AuthScope;
+import org.apache.hc.client5.http.auth.Credentials;
+import org.apache.hc.client5.http.auth.CredentialsProvider;
+import org.apache.hc.client5.http.auth.UsernamePasswordCredentials;
+import org.apache.hc.core5.http.protocol.HttpContext;
+
+/**
+ * Serves the credentials a {@link org.commonjava.util.jhttpc.auth.ClientAuthenticator} put in a site's HttpClient 4
+ * context to an HttpClient 5 client. Credentials are read on each lookup, so passwords re-bound in the
+ * {@link org.commonjava.util.jhttpc.auth.PasswordManager} are picked up.
+ */
+final class SiteCredentialsProvider
+        implements CredentialsProvider
+{
+    private final org.apache.http.client.CredentialsProvider delegate;
+
+    SiteCredentialsProvider( final org.apache.http.client.CredentialsProvider delegate )
+    {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Credentials getCredentials( final AuthScope scope, final HttpContext context )
+    {
+        org.apache.http.auth.Credentials credentials = delegate.getCredentials(
+                new org.apache.http.auth.AuthScope( scope.getHost(), scope.getPort(), scope.getRealm(),
+                                                    scope.getSchemeName() ) );
+        if ( credentials == null || credentials.getUserPrincipal() == null )
+        {
+            return null;
+        }
+
+        String password = credentials.getPassword();
+        return new UsernamePasswordCredentials( credentials.getUserPrincipal().getName(),
+                                                password == null ? null : password.toCharArray() );
+    }
+}
@@ -0,0 +1,29 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.lifecycle;
+
+import org.commonjava.util.jhttpc.model.ConnectionLeak;
+
+/**
+ * Notified once for each pooled connection held longer than the factory's leak-detection threshold. Called from a
+ * background thread; keep it quick.
+ *
+ * @see org.commonjava.util.jhttpc.model.HttpFactoryConfig#getLeakDetectionThresholdMillis()
+ */
+public interface ConnectionLeakListener
+{
+    void connectionLeaked( ConnectionLeak leak );
+}
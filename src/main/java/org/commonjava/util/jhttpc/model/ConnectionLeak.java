@@ -0,0 +1,109 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.model;
+
+/**
+ * A connection that has been leased from a site's pool for longer than the leak-detection threshold, usually because
+ * a response was never closed or its entity never consumed.
+ *
+ * @see HttpFactoryConfig#getLeakDetectionThresholdMillis()
+ */
+public final class ConnectionLeak
+{
+    private static final StackTraceElement[] NO_TRACE = new StackTraceElement[0];
+
+    private final String siteId;
+
+    private final String route;
+
+    private final String threadName;
+
+    private final long leasedAt;
+
+    private final long heldMillis;
+
+    private final StackTraceElement[] acquisitionTrace;
+
+    public ConnectionLeak( final String siteId, final String route, final String threadName, final long leasedAt,
+                           final long heldMillis, final StackTraceElement[] acquisitionTrace )
+    {
+        this.siteId = siteId;
+        this.route = route;
+        this.threadName = threadName;
+        this.leasedAt = leasedAt;
+        this.heldMillis = heldMillis;
+        this.acquisitionTrace = acquisitionTrace == null ? NO_TRACE : acquisitionTrace;
+    }
+
+    public String getSiteId()
+    {
+        return siteId;
+    }
+
+    public String getRoute()
+    {
+        return route;
+    }
+
+    /**
+     * Name of the thread that leased the connection.
+     */
+    public String getThreadName()
+    {
+        return threadName;
+    }
+
+    /**
+     * When the connection was leased, in milliseconds since the epoch.
+     */
+    public long getLeasedAt()
+    {
+        return leasedAt;
+    }
+
+    public long getHeldMillis()
+    {
+        return heldMillis;
+    }
+
+    /**
+     * Whether this lease was picked by the sampler, so {@link #getAcquisitionTrace()} shows who leased it.
+     */
+    public boolean isSampled()
+    {
+        return acquisitionTrace.length > 0;
+    }
+
+    /**
+     * Stack of the code that leased the connection, or an empty array if this lease was not sampled.
+     */
+    public StackTraceElement[] getAcquisitionTrace()
+    {
+        return acquisitionTrace.clone();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ConnectionLeak{" +
+                "siteId='" + siteId + '\'' +
+                ", route='" + route + '\'' +
+                ", threadName='" + threadName + '\'' +
+                ", heldMillis=" + heldMillis +
+                ", sampled=" + isSampled() +
+                '}';
+    }
+}
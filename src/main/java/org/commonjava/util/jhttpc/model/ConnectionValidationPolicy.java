@@ -0,0 +1,41 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.model;
+
+/**
+ * When a site's pooled connections are checked for staleness (closed by the server while idle in the pool).
+ *
+ * @see SiteConfig#getConnectionValidationMillis()
+ */
+public enum ConnectionValidationPolicy
+{
+    /**
+     * Never check. A connection the server has closed fails the request that gets it.
+     */
+    NEVER,
+
+    /**
+     * Check on lease, if the connection has been idle for the validation interval. This is HttpClient's default, and
+     * costs the leasing request a socket read (up to 1ms) per check.
+     */
+    AFTER_INACTIVITY,
+
+    /**
+     * Probe idle connections from a background thread once they've been idle for the validation interval, closing the
+     * stale ones before they can be leased. Leases don't check at all.
+     */
+    BACKGROUND
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.model;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Outcome of draining every site's connection pool against a shared deadline.
+ */
+public final class DrainReport
+{
+    private final List<SiteDrainReport> sites;
+
+    private final long elapsedMillis;
+
+    public DrainReport( final List<SiteDrainReport> sites, final long elapsedMillis )
+    {
+        this.sites = Collections.unmodifiableList( sites );
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public List<SiteDrainReport> getSites()
+    {
+        return sites;
+    }
+
+    /**
+     * Sites whose pools were closed at the deadline while clients still held them.
+     */
+    public List<SiteDrainReport> getForced()
+    {
+        return sites.stream().filter( site -> !site.isDrained() ).collect( Collectors.toList() );
+    }
+
+    /**
+     * True if every site drained before the deadline.
+     */
+    public boolean isClean()
+    {
+        return sites.stream().allMatch( SiteDrainReport::isDrained );
+    }
+
+    public long getElapsedMillis()
+    {
+        return elapsedMillis;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "DrainReport{" +
+                "sites=" + sites +
+                ", elapsedMillis=" + elapsedMillis +
+                '}';
+    }
+}
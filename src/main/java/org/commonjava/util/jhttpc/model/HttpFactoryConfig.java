@@ -0,0 +1,160 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.model;
+
+import org.commonjava.util.jhttpc.lifecycle.ConnectionLeakListener;
+import org.commonjava.util.jhttpc.lifecycle.PoolResizeListener;
+
+/**
+ * Factory-wide settings for {@link org.commonjava.util.jhttpc.HttpFactory}, applied to every site unless the
+ * {@link SiteConfig} overrides them. Build instances with {@link HttpFactoryConfigBuilder}.
+ */
+public final class HttpFactoryConfig
+{
+
+    public static final int DEFAULT_CONNECTION_POOL_EXPIRATION_SECONDS = 30;
+
+    public static final int DEFAULT_MIN_CONNECTION_POOL_EXPIRATION_SECONDS = 5;
+
+    public static final int DEFAULT_MAX_CONNECTION_POOL_EXPIRATION_SECONDS = 600;
+
+    public static final double DEFAULT_LEAK_DETECTION_SAMPLE_RATE = 0.01;
+
+    private final Integer connectionPoolExpirationSeconds;
+
+    private final boolean adaptivePoolExpiration;
+
+    private final Integer minConnectionPoolExpirationSeconds;
+
+    private final Integer maxConnectionPoolExpirationSeconds;
+
+    private final PoolResizeListener poolResizeListener;
+
+    private final Integer maxTotalConnections;
+
+    private final Long leakDetectionThresholdMillis;
+
+    private final Double leakDetectionSampleRate;
+
+    private final ConnectionLeakListener connectionLeakListener;
+
+    HttpFactoryConfig( Integer connectionPoolExpirationSeconds, boolean adaptivePoolExpiration,
+                       Integer minConnectionPoolExpirationSeconds, Integer maxConnectionPoolExpirationSeconds,
+                       PoolResizeListener poolResizeListener, Integer maxTotalConnections,
+                       Long leakDetectionThresholdMillis, Double leakDetectionSampleRate,
+                       ConnectionLeakListener connectionLeakListener )
+    {
+        this.connectionPoolExpirationSeconds = connectionPoolExpirationSeconds;
+        this.adaptivePoolExpiration = adaptivePoolExpiration;
+        this.minConnectionPoolExpirationSeconds = minConnectionPoolExpirationSeconds;
+        this.maxConnectionPoolExpirationSeconds = maxConnectionPoolExpirationSeconds;
+        this.poolResizeListener = poolResizeListener;
+        this.maxTotalConnections = maxTotalConnections;
+        this.leakDetectionThresholdMillis = leakDetectionThresholdMillis;
+        this.leakDetectionSampleRate = leakDetectionSampleRate;
+        this.connectionLeakListener = connectionLeakListener;
+    }
+
+    /**
+     * How long a site's connection pool is kept after its last use before it is shut down.
+     */
+    public int getConnectionPoolExpirationSeconds()
+    {
+        return connectionPoolExpirationSeconds == null ?
+                DEFAULT_CONNECTION_POOL_EXPIRATION_SECONDS :
+                connectionPoolExpirationSeconds;
+    }
+
+    /**
+     * When enabled, pool expiration stretches (up to {@link #getMaxConnectionPoolExpirationSeconds()}) for sites that
+     * come back at a steady interval, and shrinks (down to {@link #getMinConnectionPoolExpirationSeconds()}) for
+     * sites that were only used once.
+     */
+    public boolean isAdaptivePoolExpiration()
+    {
+        return adaptivePoolExpiration;
+    }
+
+    public int getMinConnectionPoolExpirationSeconds()
+    {
+        return minConnectionPoolExpirationSeconds == null ?
+                DEFAULT_MIN_CONNECTION_POOL_EXPIRATION_SECONDS :
+                minConnectionPoolExpirationSeconds;
+    }
+
+    public int getMaxConnectionPoolExpirationSeconds()
+    {
+        return maxConnectionPoolExpirationSeconds == null ?
+                DEFAULT_MAX_CONNECTION_POOL_EXPIRATION_SECONDS :
+                maxConnectionPoolExpirationSeconds;
+    }
+
+    /**
+     * Notified whenever adaptive pool sizing resizes a site's pool. May be null.
+     */
+    public PoolResizeListener getPoolResizeListener()
+    {
+        return poolResizeListener;
+    }
+
+    /**
+     * Budget of pooled connections shared by all sites, or null for no factory-wide limit. Sites get weighted fair
+     * shares of it (see {@link SiteConfig#getConnectionBudgetWeight()}), rebalanced every second from what each one
+     * is using, so idle sites lend their share to busy ones.
+     */
+    public Integer getMaxTotalConnections()
+    {
+        return maxTotalConnections;
+    }
+
+    /**
+     * How long a connection may stay leased before it is reported as a suspected leak, or null (the default) to turn
+     * leak detection off. Leases are checked once a second.
+     */
+    public Long getLeakDetectionThresholdMillis()
+    {
+        return leakDetectionThresholdMillis;
+    }
+
+    /**
+     * Fraction of leases, between 0 and 1, that capture the stack of the code leasing the connection so a leak report
+     * can say where it came from. Capturing a stack is the expensive part of leak detection; keep this low in
+     * production.
+     */
+    public double getLeakDetectionSampleRate()
+    {
+        return leakDetectionSampleRate == null ? DEFAULT_LEAK_DETECTION_SAMPLE_RATE : leakDetectionSampleRate;
+    }
+
+    /**
+     * Notified of each suspected leak. May be null, in which case leaks are logged as warnings.
+     */
+    public ConnectionLeakListener getConnectionLeakListener()
+    {
+        return connectionLeakListener;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "HttpFactoryConfig{" +
+                "connectionPoolExpirationSeconds=" + getConnectionPoolExpirationSeconds() +
+                ", adaptivePoolExpiration=" + adaptivePoolExpiration +
+                ", maxTotalConnections=" + maxTotalConnections +
+                ", leakDetectionThresholdMillis=" + leakDetectionThresholdMillis +
+                '}';
+    }
+}
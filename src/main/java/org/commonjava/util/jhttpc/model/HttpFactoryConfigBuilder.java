@@ -0,0 +1,112 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.model;
+
+import org.commonjava.util.jhttpc.lifecycle.ConnectionLeakListener;
+import org.commonjava.util.jhttpc.lifecycle.PoolResizeListener;
+
+public class HttpFactoryConfigBuilder
+{
+
+    private Integer connectionPoolExpirationSeconds;
+
+    private boolean adaptivePoolExpiration;
+
+    private Integer minConnectionPoolExpirationSeconds;
+
+    private Integer maxConnectionPoolExpirationSeconds;
+
+    private PoolResizeListener poolResizeListener;
+
+    private Integer maxTotalConnections;
+
+    private Long leakDetectionThresholdMillis;
+
+    private Double leakDetectionSampleRate;
+
+    private ConnectionLeakListener connectionLeakListener;
+
+    public HttpFactoryConfigBuilder()
+    {
+    }
+
+    public HttpFactoryConfig build()
+    {
+        return new HttpFactoryConfig( connectionPoolExpirationSeconds, adaptivePoolExpiration,
+                                      minConnectionPoolExpirationSeconds, maxConnectionPoolExpirationSeconds,
+                                      poolResizeListener, maxTotalConnections, leakDetectionThresholdMillis,
+                                      leakDetectionSampleRate, connectionLeakListener );
+    }
+
+    public HttpFactoryConfigBuilder withConnectionPoolExpirationSeconds( Integer connectionPoolExpirationSeconds )
+    {
+        this.connectionPoolExpirationSeconds = connectionPoolExpirationSeconds;
+        return this;
+    }
+
+    public HttpFactoryConfigBuilder withAdaptivePoolExpiration( boolean adaptivePoolExpiration )
+    {
+        this.adaptivePoolExpiration = adaptivePoolExpiration;
+        return this;
+    }
+
+    public HttpFactoryConfigBuilder withMinConnectionPoolExpirationSeconds( Integer minConnectionPoolExpirationSeconds )
+    {
+        this.minConnectionPoolExpirationSeconds = minConnectionPoolExpirationSeconds;
+        return this;
+    }
+
+    public HttpFactoryConfigBuilder withMaxConnectionPoolExpirationSeconds( Integer maxConnectionPoolExpirationSeconds )
+    {
+        this.maxConnectionPoolExpirationSeconds = maxConnectionPoolExpirationSeconds;
+        return this;
+    }
+
+    public HttpFactoryConfigBuilder withPoolResizeListener( PoolResizeListener poolResizeListener )
+    {
+        this.poolResizeListener = poolResizeListener;
+        return this;
+    }
+
+    public HttpFactoryConfigBuilder withMaxTotalConnections( Integer maxTotalConnections )
+    {
+        this.maxTotalConnections = maxTotalConnections;
+        return this;
+    }
+
+    public HttpFactoryConfigBuilder withLeakDetectionThresholdMillis( Long leakDetectionThresholdMillis )
+    {
+        this.leakDetectionThresholdMillis = leakDetectionThresholdMillis;
+        return this;
+    }
+
+    public HttpFactoryConfigBuilder withLeakDetectionSampleRate( Double leakDetectionSampleRate )
+    {
+        if ( leakDetectionSampleRate != null && ( leakDetectionSampleRate < 0 || leakDetectionSampleRate > 1 ) )
+        {
+            throw new IllegalArgumentException( "Leak detection sample rate must be between 0 and 1: "
+                                                        + leakDetectionSampleRate );
+        }
+        this.leakDetectionSampleRate = leakDetectionSampleRate;
+        return this;
+    }
+
+    public HttpFactoryConfigBuilder withConnectionLeakListener( ConnectionLeakListener connectionLeakListener )
+    {
+        this.connectionLeakListener = connectionLeakListener;
+        return this;
+    }
+}
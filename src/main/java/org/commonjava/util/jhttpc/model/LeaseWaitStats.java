@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.model;
+
+/**
+ * How long requests have waited to lease a pooled connection from a site's pool. Consistently high waits (or any
+ * timeouts) mean the site's max connections are too low for its load.
+ *
+ * @see SitePoolStats#getLeaseWait()
+ */
+public final class LeaseWaitStats
+{
+    private final long leases;
+
+    private final long timeouts;
+
+    private final double p50Millis;
+
+    private final double p99Millis;
+
+    private final double maxMillis;
+
+    public LeaseWaitStats( final long leases, final long timeouts, final double p50Millis, final double p99Millis,
+                           final double maxMillis )
+    {
+        this.leases = leases;
+        this.timeouts = timeouts;
+        this.p50Millis = p50Millis;
+        this.p99Millis = p99Millis;
+        this.maxMillis = maxMillis;
+    }
+
+    /**
+     * Connections leased successfully.
+     */
+    public long getLeases()
+    {
+        return leases;
+    }
+
+    /**
+     * Lease attempts that gave up waiting for a connection.
+     */
+    public long getTimeouts()
+    {
+        return timeouts;
+    }
+
+    public double getP50Millis()
+    {
+        return p50Millis;
+    }
+
+    public double getP99Millis()
+    {
+        return p99Millis;
+    }
+
+    public double getMaxMillis()
+    {
+        return maxMillis;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "LeaseWaitStats{" +
+                "leases=" + leases +
+                ", timeouts=" + timeouts +
+                ", p50Millis=" + p50Millis +
+                ", p99Millis=" + p99Millis +
+                ", maxMillis=" + maxMillis +
+                '}';
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.model;
+
+/**
+ * A change to a site's connection limit made by adaptive pool sizing, with the measurements it was based on.
+ *
+ * @see SiteConfig#getAdaptivePoolMaxConnections()
+ */
+public final class PoolResizeEvent
+{
+    public enum Reason
+    {
+        /** Requests waited for connections (or timed out waiting), so the pool grew. */
+        LEASE_WAIT,
+
+        /** The upstream got markedly slower than its recent baseline, so the pool shrank to ease off. */
+        UPSTREAM_LATENCY,
+
+        /** Less than half of the pool was in use, so it shrank. */
+        UNDERUSED
+    }
+
+    private final String siteId;
+
+    private final int previousMax;
+
+    private final int newMax;
+
+    private final Reason reason;
+
+    private final int peakPending;
+
+    private final double averageLeaseWaitMillis;
+
+    private final double averageHoldMillis;
+
+    private final double baselineHoldMillis;
+
+    public PoolResizeEvent( final String siteId, final int previousMax, final int newMax, final Reason reason,
+                            final int peakPending, final double averageLeaseWaitMillis,
+                            final double averageHoldMillis, final double baselineHoldMillis )
+    {
+        this.siteId = siteId;
+        this.previousMax = previousMax;
+        this.newMax = newMax;
+        this.reason = reason;
+        this.peakPending = peakPending;
+        this.averageLeaseWaitMillis = averageLeaseWaitMillis;
+        this.averageHoldMillis = averageHoldMillis;
+        this.baselineHoldMillis = baselineHoldMillis;
+    }
+
+    public String getSiteId()
+    {
+        return siteId;
+    }
+
+    public int getPreviousMax()
+    {
+        return previousMax;
+    }
+
+    public int getNewMax()
+    {
+        return newMax;
+    }
+
+    public Reason getReason()
+    {
+        return reason;
+    }
+
+    /**
+     * Most requests waiting for a connection at once during the sampling interval.
+     */
+    public int getPeakPending()
+    {
+        return peakPending;
+    }
+
+    public double getAverageLeaseWaitMillis()
+    {
+        return averageLeaseWaitMillis;
+    }
+
+    /**
+     * Average time a connection was held per request during the sampling interval, which tracks upstream latency.
+     */
+    public double getAverageHoldMillis()
+    {
+        return averageHoldMillis;
+    }
+
+    public double getBaselineHoldMillis()
+    {
+        return baselineHoldMillis;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "PoolResizeEvent{" +
+                "siteId='" + siteId + '\'' +
+                ", previousMax=" + previousMax +
+                ", newMax=" + newMax +
+                ", reason=" + reason +
+                ", peakPending=" + peakPending +
+                ", averageLeaseWaitMillis=" + averageLeaseWaitMillis +
+                ", averageHoldMillis=" + averageHoldMillis +
+                ", baselineHoldMillis=" + baselineHoldMillis +
+                '}';
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.model;
+
+import org.apache.http.conn.routing.HttpRoute;
+
+/**
+ * Point-in-time connection counts for one route of a site's connection pool.
+ *
+ * @see SitePoolStats
+ */
+public final class RoutePoolStats
+{
+    private final HttpRoute route;
+
+    private final int leased;
+
+    private final int available;
+
+    private final int pending;
+
+    private final int max;
+
+    private final String limitSource;
+
+    public RoutePoolStats( final HttpRoute route, final int leased, final int available, final int pending,
+                           final int max, final String limitSource )
+    {
+        this.route = route;
+        this.leased = leased;
+        this.available = available;
+        this.pending = pending;
+        this.max = max;
+        this.limitSource = limitSource;
+    }
+
+    public HttpRoute getRoute()
+    {
+        return route;
+    }
+
+    /**
+     * Connections currently handed out to requests.
+     */
+    public int getLeased()
+    {
+        return leased;
+    }
+
+    /**
+     * Idle connections kept in the pool, as of the last background reaper pass (at most a second or so old).
+     */
+    public int getAvailable()
+    {
+        return available;
+    }
+
+    /**
+     * Requests currently waiting for a connection.
+     */
+    public int getPending()
+    {
+        return pending;
+    }
+
+    public int getMax()
+    {
+        return max;
+    }
+
+    /**
+     * The route limit pattern (from {@link SiteConfig#getRouteLimits()}) that set {@link #getMax()}, or null if the
+     * route uses the site's default max-per-route.
+     */
+    public String getLimitSource()
+    {
+        return limitSource;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "RoutePoolStats{" +
+                "route=" + route +
+                ", leased=" + leased +
+                ", available=" + available +
+                ", pending=" + pending +
+                ", max=" + max +
+                ", limitSource=" + limitSource +
+                '}';
+    }
+}
@@ -22,7 +22,9 @@ import org.apache.http.config.SocketConfig;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
@@ -40,6 +42,10 @@ public final class SiteConfig
 
     public static final int DEFAULT_CONNECTION_POOL_TIMEOUT_SECONDS = 60;
 
+    public static final int DEFAULT_IDLE_CONNECTION_TIMEOUT_SECONDS = 30;
+
+    public static final int DEFAULT_CONNECTION_VALIDATION_MILLIS = 2000;
+
     private final String id;
 
     private final String uri;
@@ -90,6 +96,34 @@ public final class SiteConfig
 
     private final Integer baseSampleRate;
 
+    private final Integer idleConnectionTimeoutSeconds;
+
+    private final Integer connectionPoolExpirationSeconds;
+
+    private final Boolean adaptivePoolExpiration;
+
+    private final Integer prewarmConnections;
+
+    private final Integer adaptivePoolMinConnections;
+
+    private final Integer adaptivePoolMaxConnections;
+
+    private final Integer connectionBudgetWeight;
+
+    private final Map<String, Integer> routeLimits;
+
+    private final ConnectionValidationPolicy connectionValidationPolicy;
+
+    private final Integer connectionValidationMillis;
+
+    private final Integer maxConnectionLifetimeSeconds;
+
+    private final Integer maxRequestsPerConnection;
+
+    private final Integer maxPendingLeases;
+
+    private final SiteCookiePolicy cookiePolicy;
+
     SiteConfig( String id, String uri, String user, String proxyHost, Integer proxyPort, String proxyUser,
                 String proxyAllowHttpJobTypes, String egressSites, SiteTrustType trustType, String keyCertPem,
                 String serverCertPem, Integer requestTimeoutSeconds, Integer connectionPoolTimeoutSeconds,
@@ -97,7 +131,13 @@ public final class SiteConfig
                 final SocketConfig socketConfig, final RequestConfig requestConfig,
                 HttpClientContext clientContextPrototype, boolean ignoreHostnameVerification,
                 Map<String, Object> attributes, Boolean metricEnabled, String honeycombDataset,
-                String honeycombWriteKey, Integer baseSampleRate )
+                String honeycombWriteKey, Integer baseSampleRate, Integer idleConnectionTimeoutSeconds,
+                Integer connectionPoolExpirationSeconds, Boolean adaptivePoolExpiration, Integer prewarmConnections,
+                Integer adaptivePoolMinConnections, Integer adaptivePoolMaxConnections,
+                Integer connectionBudgetWeight, Map<String, Integer> routeLimits,
+                ConnectionValidationPolicy connectionValidationPolicy, Integer connectionValidationMillis,
+                Integer maxConnectionLifetimeSeconds, Integer maxRequestsPerConnection, Integer maxPendingLeases,
+                SiteCookiePolicy cookiePolicy )
     {
         this.id = id;
         this.uri = uri;
@@ -124,6 +164,21 @@ public final class SiteConfig
         this.honeycombDataset = honeycombDataset;
         this.honeycombWriteKey = honeycombWriteKey;
         this.baseSampleRate = baseSampleRate;
+        this.idleConnectionTimeoutSeconds = idleConnectionTimeoutSeconds;
+        this.connectionPoolExpirationSeconds = connectionPoolExpirationSeconds;
+        this.adaptivePoolExpiration = adaptivePoolExpiration;
+        this.prewarmConnections = prewarmConnections;
+        this.adaptivePoolMinConnections = adaptivePoolMinConnections;
+        this.adaptivePoolMaxConnections = adaptivePoolMaxConnections;
+        this.connectionBudgetWeight = connectionBudgetWeight;
+        this.routeLimits = routeLimits == null ? Collections.emptyMap() :
+                Collections.unmodifiableMap( new LinkedHashMap<>( routeLimits ) );
+        this.connectionValidationPolicy = connectionValidationPolicy;
+        this.connectionValidationMillis = connectionValidationMillis;
+        this.maxConnectionLifetimeSeconds = maxConnectionLifetimeSeconds;
+        this.maxRequestsPerConnection = maxRequestsPerConnection;
+        this.maxPendingLeases = maxPendingLeases;
+        this.cookiePolicy = cookiePolicy;
 
     }
 
@@ -211,6 +266,137 @@ public final class SiteConfig
         return requestTimeoutSeconds == null ? DEFAULT_REQUEST_TIMEOUT_SECONDS : requestTimeoutSeconds;
     }
 
+    /**
+     * Pooled connections idle for longer than this are closed in the background, so they are never leased after the
+     * server has dropped its side of the keep-alive. Zero or less disables idle eviction.
+     */
+    public int getIdleConnectionTimeoutSeconds()
+    {
+        return idleConnectionTimeoutSeconds == null ?
+                DEFAULT_IDLE_CONNECTION_TIMEOUT_SECONDS :
+                idleConnectionTimeoutSeconds;
+    }
+
+    /**
+     * How long this site's connection pool is kept after its last use. Null means the factory default applies.
+     */
+    public Integer getConnectionPoolExpirationSeconds()
+    {
+        return connectionPoolExpirationSeconds;
+    }
+
+    /**
+     * Whether this site's pool expiration adapts to its usage pattern. Null means the factory default applies.
+     */
+    public Boolean getAdaptivePoolExpiration()
+    {
+        return adaptivePoolExpiration;
+    }
+
+    /**
+     * Number of connections (including any TLS handshake) to open in the background as soon as this site's
+     * connection pool is created, so the first requests don't pay for them.
+     */
+    public int getPrewarmConnections()
+    {
+        return prewarmConnections == null ? 0 : prewarmConnections;
+    }
+
+    /**
+     * Lower bound for adaptive pool sizing. Only used when {@link #getAdaptivePoolMaxConnections()} is set.
+     */
+    public int getAdaptivePoolMinConnections()
+    {
+        return adaptivePoolMinConnections == null ? 1 : adaptivePoolMinConnections;
+    }
+
+    /**
+     * Upper bound for adaptive pool sizing. When set, the site's pool starts at {@link #getMaxConnections()} and is
+     * resized between {@link #getAdaptivePoolMinConnections()} and this value, growing while requests wait for
+     * connections and shrinking when the upstream slows down or the pool sits underused.
+     */
+    public Integer getAdaptivePoolMaxConnections()
+    {
+        return adaptivePoolMaxConnections;
+    }
+
+    public boolean isAdaptivePoolSizing()
+    {
+        return adaptivePoolMaxConnections != null && adaptivePoolMaxConnections > getAdaptivePoolMinConnections();
+    }
+
+    /**
+     * This site's weight when a factory-wide connection budget is shared out between sites under contention. A site
+     * with weight 2 gets twice the share of a site with weight 1.
+     */
+    public int getConnectionBudgetWeight()
+    {
+        return connectionBudgetWeight == null ? 1 : connectionBudgetWeight;
+    }
+
+    /**
+     * Per-route connection limits that override the default max-per-route, keyed by host pattern: an exact
+     * <code>host</code> or <code>host:port</code>, or a wildcard such as <code>*.cdn.example.com</code> (optionally
+     * with <code>:port</code>). Never null.
+     */
+    public Map<String, Integer> getRouteLimits()
+    {
+        return routeLimits;
+    }
+
+    public ConnectionValidationPolicy getConnectionValidationPolicy()
+    {
+        return connectionValidationPolicy == null ?
+                ConnectionValidationPolicy.AFTER_INACTIVITY :
+                connectionValidationPolicy;
+    }
+
+    /**
+     * Idle time after which a pooled connection is checked for staleness, on lease or in the background depending on
+     * {@link #getConnectionValidationPolicy()}.
+     */
+    public int getConnectionValidationMillis()
+    {
+        return connectionValidationMillis == null ? DEFAULT_CONNECTION_VALIDATION_MILLIS : connectionValidationMillis;
+    }
+
+    /**
+     * How long a pooled connection may be reused after it was opened, so load-balanced upstreams see connections
+     * move between backends. Zero (the default) means no limit.
+     */
+    public int getMaxConnectionLifetimeSeconds()
+    {
+        return maxConnectionLifetimeSeconds == null ? 0 : maxConnectionLifetimeSeconds;
+    }
+
+    /**
+     * How many requests a pooled connection may carry before it's retired. Zero (the default) means no limit.
+     */
+    public int getMaxRequestsPerConnection()
+    {
+        return maxRequestsPerConnection == null ? 0 : maxRequestsPerConnection;
+    }
+
+    /**
+     * Most lease requests allowed to wait on this site's pool at once, counted across all of its routes. Past that, new
+     * requests fail straight away with {@link org.commonjava.util.jhttpc.ConnectionPoolSaturatedException} instead of
+     * queueing. Zero (the default) means no limit; requests then wait up to
+     * {@link #getConnectionPoolTimeoutSeconds()}.
+     */
+    public int getMaxPendingLeases()
+    {
+        return maxPendingLeases == null ? 0 : maxPendingLeases;
+    }
+
+    /**
+     * How cookies from this site are kept: in one store shared by all requests (the default), per thread, or not at
+     * all.
+     */
+    public SiteCookiePolicy getCookiePolicy()
+    {
+        return cookiePolicy == null ? SiteCookiePolicy.SHARED : cookiePolicy;
+    }
+
     public <T> T getAttribute( String key, Class<T> type )
     {
         Object value = getAttribute( key );
@@ -23,9 +23,11 @@ import org.apache.http.config.SocketConfig;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import static org.commonjava.util.jhttpc.model.SiteConfig.DEFAULT_CONNECTION_POOL_TIMEOUT_SECONDS;
+import static org.commonjava.util.jhttpc.model.SiteConfig.DEFAULT_IDLE_CONNECTION_TIMEOUT_SECONDS;
 import static org.commonjava.util.jhttpc.model.SiteConfig.DEFAULT_MAX_CONNECTIONS;
 import static org.commonjava.util.jhttpc.model.SiteConfig.DEFAULT_PROXY_PORT;
 import static org.commonjava.util.jhttpc.model.SiteConfig.DEFAULT_REQUEST_TIMEOUT_SECONDS;
@@ -86,6 +88,34 @@ public class SiteConfigBuilder
 
     private Integer baseSampleRate;
 
+    private Integer idleConnectionTimeoutSeconds;
+
+    private Integer connectionPoolExpirationSeconds;
+
+    private Boolean adaptivePoolExpiration;
+
+    private Integer prewarmConnections;
+
+    private Integer adaptivePoolMinConnections;
+
+    private Integer adaptivePoolMaxConnections;
+
+    private Integer connectionBudgetWeight;
+
+    private Map<String, Integer> routeLimits;
+
+    private ConnectionValidationPolicy connectionValidationPolicy;
+
+    private Integer connectionValidationMillis;
+
+    private Integer maxConnectionLifetimeSeconds;
+
+    private Integer maxRequestsPerConnection;
+
+    private Integer maxPendingLeases;
+
+    private SiteCookiePolicy cookiePolicy;
+
     public Map<String, Object> getAttributes()
     {
         return attributes;
@@ -107,7 +137,12 @@ public class SiteConfigBuilder
                                trustType, keyCertPem, serverCertPem, requestTimeoutSeconds,
                                connectionPoolTimeoutSeconds, maxConnections, maxPerRoute, connectionConfig,
                                socketConfig, requestConfig, clientContextProtoype, ignoreHostnameVerification,
-                               attributes, metricEnabled, honeycombDataset, honeycombWriteKey, baseSampleRate );
+                               attributes, metricEnabled, honeycombDataset, honeycombWriteKey, baseSampleRate,
+                               idleConnectionTimeoutSeconds, connectionPoolExpirationSeconds,
+                               adaptivePoolExpiration, prewarmConnections, adaptivePoolMinConnections,
+                               adaptivePoolMaxConnections, connectionBudgetWeight, routeLimits,
+                               connectionValidationPolicy, connectionValidationMillis, maxConnectionLifetimeSeconds,
+                               maxRequestsPerConnection, maxPendingLeases, cookiePolicy );
     }
 
     public String getId()
@@ -191,6 +226,13 @@ public class SiteConfigBuilder
                 connectionPoolTimeoutSeconds;
     }
 
+    public int getIdleConnectionTimeoutSeconds()
+    {
+        return idleConnectionTimeoutSeconds == null ?
+                DEFAULT_IDLE_CONNECTION_TIMEOUT_SECONDS :
+                idleConnectionTimeoutSeconds;
+    }
+
     public synchronized Object setAttribute( String key, Object value )
     {
         if ( attributes == null )
@@ -290,6 +332,180 @@ public class SiteConfigBuilder
         return this;
     }
 
+    public SiteConfigBuilder withIdleConnectionTimeoutSeconds( Integer idleConnectionTimeoutSeconds )
+    {
+        this.idleConnectionTimeoutSeconds = idleConnectionTimeoutSeconds;
+        return this;
+    }
+
+    public Integer getConnectionPoolExpirationSeconds()
+    {
+        return connectionPoolExpirationSeconds;
+    }
+
+    public SiteConfigBuilder withConnectionPoolExpirationSeconds( Integer connectionPoolExpirationSeconds )
+    {
+        this.connectionPoolExpirationSeconds = connectionPoolExpirationSeconds;
+        return this;
+    }
+
+    public Boolean getAdaptivePoolExpiration()
+    {
+        return adaptivePoolExpiration;
+    }
+
+    public SiteConfigBuilder withAdaptivePoolExpiration( Boolean adaptivePoolExpiration )
+    {
+        this.adaptivePoolExpiration = adaptivePoolExpiration;
+        return this;
+    }
+
+    public int getPrewarmConnections()
+    {
+        return prewarmConnections == null ? 0 : prewarmConnections;
+    }
+
+    public SiteConfigBuilder withPrewarmConnections( Integer prewarmConnections )
+    {
+        this.prewarmConnections = prewarmConnections;
+        return this;
+    }
+
+    public Integer getAdaptivePoolMinConnections()
+    {
+        return adaptivePoolMinConnections;
+    }
+
+    public SiteConfigBuilder withAdaptivePoolMinConnections( Integer adaptivePoolMinConnections )
+    {
+        this.adaptivePoolMinConnections = adaptivePoolMinConnections;
+        return this;
+    }
+
+    public Integer getAdaptivePoolMaxConnections()
+    {
+        return adaptivePoolMaxConnections;
+    }
+
+    public SiteConfigBuilder withAdaptivePoolMaxConnections( Integer adaptivePoolMaxConnections )
+    {
+        this.adaptivePoolMaxConnections = adaptivePoolMaxConnections;
+        return this;
+    }
+
+    public int getConnectionBudgetWeight()
+    {
+        return connectionBudgetWeight == null ? 1 : connectionBudgetWeight;
+    }
+
+    public SiteConfigBuilder withConnectionBudgetWeight( Integer connectionBudgetWeight )
+    {
+        this.connectionBudgetWeight = connectionBudgetWeight;
+        return this;
+    }
+
+    public Map<String, Integer> getRouteLimits()
+    {
+        return routeLimits;
+    }
+
+    public SiteConfigBuilder withRouteLimits( Map<String, Integer> routeLimits )
+    {
+        this.routeLimits = routeLimits == null ? null : new LinkedHashMap<>( routeLimits );
+        return this;
+    }
+
+    /**
+     * Limit the connections to routes matching the given host pattern, instead of using the site's default
+     * max-per-route. The pattern is an exact <code>host</code> or <code>host:port</code>, or a wildcard such as
+     * <code>*.cdn.example.com</code> (optionally with <code>:port</code>).
+     */
+    public SiteConfigBuilder withRouteLimit( String hostPattern, int maxConnections )
+    {
+        if ( hostPattern == null || hostPattern.trim().isEmpty() )
+        {
+            throw new IllegalArgumentException( "Route limit host pattern cannot be empty" );
+        }
+        if ( maxConnections < 1 )
+        {
+            throw new IllegalArgumentException(
+                    "Route limit for: " + hostPattern + " must be at least 1, was: " + maxConnections );
+        }
+
+        if ( routeLimits == null )
+        {
+            routeLimits = new LinkedHashMap<>();
+        }
+        routeLimits.put( hostPattern.trim(), maxConnections );
+        return this;
+    }
+
+    public ConnectionValidationPolicy getConnectionValidationPolicy()
+    {
+        return connectionValidationPolicy;
+    }
+
+    public SiteConfigBuilder withConnectionValidationPolicy( ConnectionValidationPolicy connectionValidationPolicy )
+    {
+        this.connectionValidationPolicy = connectionValidationPolicy;
+        return this;
+    }
+
+    public Integer getConnectionValidationMillis()
+    {
+        return connectionValidationMillis;
+    }
+
+    public SiteConfigBuilder withConnectionValidationMillis( Integer connectionValidationMillis )
+    {
+        this.connectionValidationMillis = connectionValidationMillis;
+        return this;
+    }
+
+    public Integer getMaxConnectionLifetimeSeconds()
+    {
+        return maxConnectionLifetimeSeconds;
+    }
+
+    public SiteConfigBuilder withMaxConnectionLifetimeSeconds( Integer maxConnectionLifetimeSeconds )
+    {
+        this.maxConnectionLifetimeSeconds = maxConnectionLifetimeSeconds;
+        return this;
+    }
+
+    public Integer getMaxRequestsPerConnection()
+    {
+        return maxRequestsPerConnection;
+    }
+
+    public SiteConfigBuilder withMaxRequestsPerConnection( Integer maxRequestsPerConnection )
+    {
+        this.maxRequestsPerConnection = maxRequestsPerConnection;
+        return this;
+    }
+
+    public Integer getMaxPendingLeases()
+    {
+        return maxPendingLeases;
+    }
+
+    public SiteConfigBuilder withMaxPendingLeases( Integer maxPendingLeases )
+    {
+        this.maxPendingLeases = maxPendingLeases;
+        return this;
+    }
+
+    public SiteCookiePolicy getCookiePolicy()
+    {
+        return cookiePolicy;
+    }
+
+    public SiteConfigBuilder withCookiePolicy( SiteCookiePolicy cookiePolicy )
+    {
+        this.cookiePolicy = cookiePolicy;
+        return this;
+    }
+
     public int getMaxConnections()
     {
         return maxConnections == null ? DEFAULT_MAX_CONNECTIONS : maxConnections;
@@ -0,0 +1,33 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.model;
+
+/**
+ * How cookies set by a site are kept and sent back to it.
+ *
+ * @see SiteConfig#getCookiePolicy()
+ */
+public enum SiteCookiePolicy
+{
+    /** One cookie store for every request to the site, whichever thread sends it. */
+    SHARED,
+
+    /** Each thread keeps its own cookies for the site, e.g. so worker threads hold separate sessions. */
+    PER_THREAD,
+
+    /** Cookies are neither stored nor sent. */
+    DISABLED
+}
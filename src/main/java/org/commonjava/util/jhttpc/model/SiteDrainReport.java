@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.model;
+
+/**
+ * What happened to one site's connection pool during a graceful drain.
+ *
+ * @see DrainReport
+ */
+public final class SiteDrainReport
+{
+    private final String siteId;
+
+    private final int usersAtStart;
+
+    private final boolean drained;
+
+    private final int forcedUsers;
+
+    private final long drainMillis;
+
+    public SiteDrainReport( final String siteId, final int usersAtStart, final boolean drained, final int forcedUsers,
+                            final long drainMillis )
+    {
+        this.siteId = siteId;
+        this.usersAtStart = usersAtStart;
+        this.drained = drained;
+        this.forcedUsers = forcedUsers;
+        this.drainMillis = drainMillis;
+    }
+
+    public String getSiteId()
+    {
+        return siteId;
+    }
+
+    /**
+     * Clients holding the pool when the drain started.
+     */
+    public int getUsersAtStart()
+    {
+        return usersAtStart;
+    }
+
+    /**
+     * True if every client released the pool before the deadline; false if it had to be closed under them.
+     */
+    public boolean isDrained()
+    {
+        return drained;
+    }
+
+    /**
+     * Clients still holding the pool when it was forced closed at the deadline.
+     */
+    public int getForcedUsers()
+    {
+        return forcedUsers;
+    }
+
+    /**
+     * How long the pool took to shut down after the drain started.
+     */
+    public long getDrainMillis()
+    {
+        return drainMillis;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SiteDrainReport{" +
+                "siteId='" + siteId + '\'' +
+                ", usersAtStart=" + usersAtStart +
+                ", drained=" + drained +
+                ", forcedUsers=" + forcedUsers +
+                ", drainMillis=" + drainMillis +
+                '}';
+    }
+}
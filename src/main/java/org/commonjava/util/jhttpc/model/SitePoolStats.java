@@ -0,0 +1,204 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Point-in-time view of a site's connection pool, from {@link org.commonjava.util.jhttpc.HttpFactory#getPoolStats(
+ * SiteConfig)}. Snapshots are built from lock-free counters, so they're cheap to take often, but the counts aren't
+ * captured atomically with respect to each other.
+ */
+public final class SitePoolStats
+{
+    private final String siteId;
+
+    private final int users;
+
+    private final long lastRetrievalAgeMillis;
+
+    private final long evictedConnections;
+
+    private final int maxTotal;
+
+    private final List<RoutePoolStats> routes;
+
+    private final LeaseWaitStats leaseWait;
+
+    private final long poolResizes;
+
+    private final int budgetShare;
+
+    private final long budgetLimitedLeases;
+
+    private final long validationRejects;
+
+    private final long retiredConnections;
+
+    private final long rejectedLeases;
+
+    public SitePoolStats( final String siteId, final int users, final long lastRetrievalAgeMillis,
+                          final long evictedConnections, final int maxTotal, final List<RoutePoolStats> routes,
+                          final LeaseWaitStats leaseWait, final long poolResizes, final int budgetShare,
+                          final long budgetLimitedLeases, final long validationRejects,
+                          final long retiredConnections, final long rejectedLeases )
+    {
+        this.siteId = siteId;
+        this.users = users;
+        this.lastRetrievalAgeMillis = lastRetrievalAgeMillis;
+        this.evictedConnections = evictedConnections;
+        this.maxTotal = maxTotal;
+        this.routes = Collections.unmodifiableList( routes );
+        this.leaseWait = leaseWait;
+        this.poolResizes = poolResizes;
+        this.budgetShare = budgetShare;
+        this.budgetLimitedLeases = budgetLimitedLeases;
+        this.validationRejects = validationRejects;
+        this.retiredConnections = retiredConnections;
+        this.rejectedLeases = rejectedLeases;
+    }
+
+    public String getSiteId()
+    {
+        return siteId;
+    }
+
+    /**
+     * Clients currently holding this site's connection pool open.
+     */
+    public int getUsers()
+    {
+        return users;
+    }
+
+    /**
+     * Time since a client was last created for this site.
+     */
+    public long getLastRetrievalAgeMillis()
+    {
+        return lastRetrievalAgeMillis;
+    }
+
+    public long getEvictedConnections()
+    {
+        return evictedConnections;
+    }
+
+    public int getMaxTotal()
+    {
+        return maxTotal;
+    }
+
+    public List<RoutePoolStats> getRoutes()
+    {
+        return routes;
+    }
+
+    /**
+     * How long requests have waited for connections from this pool since it was created.
+     */
+    public LeaseWaitStats getLeaseWait()
+    {
+        return leaseWait;
+    }
+
+    /**
+     * Number of times adaptive pool sizing has changed {@link #getMaxTotal()}.
+     */
+    public long getPoolResizes()
+    {
+        return poolResizes;
+    }
+
+    /**
+     * This site's current share of the factory-wide connection budget, or -1 if there's no budget.
+     */
+    public int getBudgetShare()
+    {
+        return budgetShare;
+    }
+
+    /**
+     * Leases that waited (or timed out) while the pool was held below its own limit by the factory-wide connection
+     * budget, rather than by the site's own limit.
+     */
+    public long getBudgetLimitedLeases()
+    {
+        return budgetLimitedLeases;
+    }
+
+    /**
+     * Pooled connections found stale and closed by connection validation, either when leased or by background probes.
+     */
+    public long getValidationRejects()
+    {
+        return validationRejects;
+    }
+
+    /**
+     * Connections closed for reaching the site's max connection lifetime or max requests per connection.
+     */
+    public long getRetiredConnections()
+    {
+        return retiredConnections;
+    }
+
+    /**
+     * Lease requests failed straight away because the site's pending-lease limit was reached.
+     *
+     * @see SiteConfig#getMaxPendingLeases()
+     */
+    public long getRejectedLeases()
+    {
+        return rejectedLeases;
+    }
+
+    public int getLeased()
+    {
+        return routes.stream().mapToInt( RoutePoolStats::getLeased ).sum();
+    }
+
+    public int getAvailable()
+    {
+        return routes.stream().mapToInt( RoutePoolStats::getAvailable ).sum();
+    }
+
+    public int getPending()
+    {
+        return routes.stream().mapToInt( RoutePoolStats::getPending ).sum();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SitePoolStats{" +
+                "siteId='" + siteId + '\'' +
+                ", users=" + users +
+                ", lastRetrievalAgeMillis=" + lastRetrievalAgeMillis +
+                ", evictedConnections=" + evictedConnections +
+                ", maxTotal=" + maxTotal +
+                ", routes=" + routes +
+                ", leaseWait=" + leaseWait +
+                ", poolResizes=" + poolResizes +
+                ", budgetShare=" + budgetShare +
+                ", budgetLimitedLeases=" + budgetLimitedLeases +
+                ", validationRejects=" + validationRejects +
+                ", retiredConnections=" + retiredConnections +
+                ", rejectedLeases=" + rejectedLeases +
+                '}';
+    }
+}
@@ -0,0 +1,193 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.bench;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+import org.commonjava.util.jhttpc.AsyncHttpFactory;
+import org.commonjava.util.jhttpc.AsyncSiteClient;
+import org.commonjava.util.jhttpc.HttpFactory;
+import org.commonjava.util.jhttpc.JHttpCException;
+import org.commonjava.util.jhttpc.auth.MemoryPasswordManager;
+import org.commonjava.util.jhttpc.model.SiteConfig;
+import org.commonjava.util.jhttpc.model.SiteConfigBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wall time to complete a burst of concurrent requests against a local server that holds every response for a fixed
+ * delay, through {@link AsyncHttpFactory#createAsyncClient(SiteConfig)} and through
+ * {@link HttpFactory#execute(SiteConfig, org.apache.http.client.methods.HttpUriRequest,
+ * org.apache.http.client.ResponseHandler)} on a fixed pool of caller threads. The async client keeps every request in
+ * flight on its I/O reactor threads; the blocking client can only have as many in flight as it has threads.
+ *
+ * Each request holds two sockets (client and server) in this JVM, so the default burst needs an open-file limit above
+ * 20000.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.SingleShotTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 2 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class AsyncSlowResponseBenchmark
+{
+    private static final byte[] CONTENT = "This is a slow test.".getBytes( StandardCharsets.UTF_8 );
+
+    @Param( "10000" )
+    public int requests;
+
+    @Param( "200" )
+    public long delayMillis;
+
+    @Param( "200" )
+    public int blockingThreads;
+
+    private HttpServer server;
+
+    private ScheduledExecutorService responders;
+
+    private HttpFactory factory;
+
+    private SiteConfig site;
+
+    private AsyncSiteClient asyncClient;
+
+    private ExecutorService callers;
+
+    private String url;
+
+    @Setup
+    public void setup()
+            throws IOException, JHttpCException
+    {
+        System.setProperty( "sun.net.httpserver.nodelay", "true" );
+        // the JDK server closes idle connections past 200, which the client's pool would then try to reuse
+        System.setProperty( "sun.net.httpserver.maxIdleConnections", String.valueOf( requests ) );
+        responders = Executors.newScheduledThreadPool( 4 );
+        server = HttpServer.create( new InetSocketAddress( InetAddress.getLoopbackAddress(), 0 ), requests );
+        server.createContext( "/", exchange -> responders.schedule( () -> {
+            try (OutputStream out = exchange.getResponseBody())
+            {
+                exchange.sendResponseHeaders( 200, CONTENT.length );
+                out.write( CONTENT );
+            }
+            return null;
+        }, delayMillis, TimeUnit.MILLISECONDS ) );
+        server.start();
+
+        String base = "http://127.0.0.1:" + server.getAddress().getPort();
+        url = base + "/path/to/slow";
+        factory = new HttpFactory( new MemoryPasswordManager() );
+        site = new SiteConfigBuilder( "slow-bench", base ).withMaxConnections( requests )
+                                                           .withMaxPerRoute( requests )
+                                                           .build();
+
+        asyncClient = new AsyncHttpFactory( factory ).createAsyncClient( site );
+        callers = Executors.newFixedThreadPool( blockingThreads );
+    }
+
+    @TearDown
+    public void teardown()
+    {
+        asyncClient.close();
+        callers.shutdownNow();
+        factory.shutdownNow();
+        server.stop( 0 );
+        responders.shutdownNow();
+    }
+
+    @Benchmark
+    public int asyncClient()
+            throws InterruptedException, ExecutionException
+    {
+        List<CompletableFuture<HttpResponse>> results = new ArrayList<>( requests );
+        for ( int i = 0; i < requests; i++ )
+        {
+            results.add( asyncClient.execute( new HttpGet( url ) ) );
+        }
+
+        int ok = 0;
+        for ( CompletableFuture<HttpResponse> result : results )
+        {
+            if ( result.get().getStatusLine().getStatusCode() == 200 )
+            {
+                ok++;
+            }
+        }
+        return ok;
+    }
+
+    @Benchmark
+    public int blockingClient()
+            throws InterruptedException, ExecutionException
+    {
+        List<Future<Integer>> results = new ArrayList<>( requests );
+        for ( int i = 0; i < requests; i++ )
+        {
+            results.add( callers.submit( () -> factory.execute( site, new HttpGet( url ), response -> {
+                EntityUtils.consume( response.getEntity() );
+                return response.getStatusLine().getStatusCode();
+            } ) ) );
+        }
+
+        int ok = 0;
+        for ( Future<Integer> result : results )
+        {
+            if ( result.get() == 200 )
+            {
+                ok++;
+            }
+        }
+        return ok;
+    }
+
+    public static void main( String[] args )
+            throws RunnerException
+    {
+        new Runner( new OptionsBuilder().include( AsyncSlowResponseBenchmark.class.getSimpleName() ).build() ).run();
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.bench;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.HttpClients;
+import org.commonjava.util.jhttpc.HttpFactory;
+import org.commonjava.util.jhttpc.INTERNAL.conn.CloseBlockingConnectionManager;
+import org.commonjava.util.jhttpc.INTERNAL.conn.ConnectionManagerCache;
+import org.commonjava.util.jhttpc.INTERNAL.conn.ConnectionManagerTracker;
+import org.commonjava.util.jhttpc.INTERNAL.conn.SiteConnectionConfig;
+import org.commonjava.util.jhttpc.INTERNAL.conn.TrackedHttpClient;
+import org.commonjava.util.jhttpc.JHttpCException;
+import org.commonjava.util.jhttpc.auth.MemoryPasswordManager;
+import org.commonjava.util.jhttpc.model.SiteConfig;
+import org.commonjava.util.jhttpc.model.SiteConfigBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link HttpFactory#createClient(SiteConfig)} plus close, the per-request pattern some callers use. The
+ * shared path hands out a handle on the site's cached client; {@link #rebuiltClient()} replays the previous path,
+ * which built a new client (builder, request config and execution chain) on every call. Run with
+ * <code>-prof gc</code> to compare allocation too.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Threads( 4 )
+@Fork( 1 )
+public class ClientCreationBenchmark
+{
+    private HttpFactory factory;
+
+    private SiteConfig site;
+
+    private ConnectionManagerCache cache;
+
+    private SiteConnectionConfig connConfig;
+
+    @Setup
+    public void setup()
+    {
+        factory = new HttpFactory( new MemoryPasswordManager() );
+        site = new SiteConfigBuilder( "bench", "http://bench.example.com/" ).build();
+
+        cache = new ConnectionManagerCache();
+        connConfig = new SiteConnectionConfig( site );
+    }
+
+    @TearDown
+    public void teardown()
+    {
+        factory.shutdownNow();
+        cache.shutdownNow();
+    }
+
+    @Benchmark
+    public CloseableHttpClient sharedClient()
+            throws JHttpCException, IOException
+    {
+        CloseableHttpClient client = factory.createClient( site );
+        client.close();
+        return client;
+    }
+
+    @Benchmark
+    public CloseableHttpClient rebuiltClient()
+            throws JHttpCException, IOException
+    {
+        ConnectionManagerTracker tracker;
+        CloseBlockingConnectionManager manager;
+        do
+        {
+            tracker = cache.getTrackerFor( connConfig );
+            manager = tracker.acquire();
+        }
+        while ( manager == null );
+
+        HttpClientBuilder builder = HttpClients.custom().setConnectionManager( manager );
+        int timeout = 1000 * site.getRequestTimeoutSeconds();
+        builder.setDefaultRequestConfig(
+                RequestConfig.custom().setSocketTimeout( timeout ).setConnectTimeout( timeout ).build() );
+
+        CloseableHttpClient client = new TrackedHttpClient( builder.build(), tracker );
+        client.close();
+        return client;
+    }
+
+    public static void main( String[] args )
+            throws RunnerException
+    {
+        new Runner( new OptionsBuilder().include( ClientCreationBenchmark.class.getSimpleName() ).build() ).run();
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.bench;
+
+import org.commonjava.util.jhttpc.INTERNAL.conn.ConnectionManagerCache;
+import org.commonjava.util.jhttpc.INTERNAL.conn.ConnectionManagerTracker;
+import org.commonjava.util.jhttpc.INTERNAL.conn.SiteConnectionConfig;
+import org.commonjava.util.jhttpc.JHttpCException;
+import org.commonjava.util.jhttpc.model.SiteConfigBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Contention benchmark for {@link ConnectionManagerCache#getTrackerFor(SiteConnectionConfig)}. Lookup threads spread
+ * over a few hundred sites while one thread sweeps continuously, mirroring the request threads and the
+ * expiration sweeper in production. {@link SynchronizedTrackerCache} reproduces the previous monitor-guarded
+ * {@link HashMap} implementation as the baseline.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class ConnectionManagerCacheBenchmark
+{
+    @Param( { "300" } )
+    public int siteCount;
+
+    private SiteConnectionConfig[] configs;
+
+    private ConnectionManagerCache concurrentCache;
+
+    private SynchronizedTrackerCache synchronizedCache;
+
+    @State( Scope.Thread )
+    public static class Cursor
+    {
+        int next;
+    }
+
+    @Setup
+    public void setup()
+            throws JHttpCException
+    {
+        concurrentCache = new ConnectionManagerCache();
+        synchronizedCache = new SynchronizedTrackerCache( concurrentCache );
+
+        configs = new SiteConnectionConfig[siteCount];
+        for ( int i = 0; i < siteCount; i++ )
+        {
+            configs[i] = new SiteConnectionConfig(
+                    new SiteConfigBuilder( "site-" + i, "http://site-" + i + ".example.com/" ).build() );
+
+            concurrentCache.getTrackerFor( configs[i] );
+            synchronizedCache.getTrackerFor( configs[i] );
+        }
+    }
+
+    @TearDown
+    public void teardown()
+    {
+        concurrentCache.shutdownNow();
+    }
+
+    @Benchmark
+    @Group( "concurrent" )
+    @GroupThreads( 15 )
+    public ConnectionManagerTracker concurrentLookup( final Cursor cursor )
+            throws JHttpCException
+    {
+        return concurrentCache.getTrackerFor( configs[cursor.next++ % siteCount] );
+    }
+
+    @Benchmark
+    @Group( "concurrent" )
+    @GroupThreads( 1 )
+    public void concurrentSweep()
+    {
+        concurrentCache.expireTrackersOlderThan( 1, TimeUnit.HOURS );
+    }
+
+    @Benchmark
+    @Group( "synchronized" )
+    @GroupThreads( 15 )
+    public ConnectionManagerTracker synchronizedLookup( final Cursor cursor )
+    {
+        return synchronizedCache.getTrackerFor( configs[cursor.next++ % siteCount] );
+    }
+
+    @Benchmark
+    @Group( "synchronized" )
+    @GroupThreads( 1 )
+    public void synchronizedSweep()
+    {
+        synchronizedCache.expireTrackersOlderThan( 1, TimeUnit.HOURS );
+    }
+
+    public static void main( String[] args )
+            throws RunnerException
+    {
+        new Runner( new OptionsBuilder().include( ConnectionManagerCacheBenchmark.class.getSimpleName() ).build() ).run();
+    }
+
+    /**
+     * The cache as it was before the switch to {@link java.util.concurrent.ConcurrentHashMap}: every lookup and
+     * every sweep holds the same monitor.
+     */
+    static final class SynchronizedTrackerCache
+    {
+        private final Map<SiteConnectionConfig, ConnectionManagerTracker> cache =
+                new HashMap<SiteConnectionConfig, ConnectionManagerTracker>();
+
+        private final ConnectionManagerCache owner;
+
+        SynchronizedTrackerCache( final ConnectionManagerCache owner )
+        {
+            this.owner = owner;
+        }
+
+        synchronized ConnectionManagerTracker getTrackerFor( final SiteConnectionConfig config )
+        {
+            ConnectionManagerTracker tracker = cache.get( config );
+            if ( tracker == null )
+            {
+                tracker = new ConnectionManagerTracker( config, owner );
+                cache.put( config, tracker );
+            }
+
+            return tracker.retrieved();
+        }
+
+        synchronized void expireTrackersOlderThan( final long duration, final TimeUnit unit )
+        {
+            long expiration = System.currentTimeMillis() - TimeUnit.MILLISECONDS.convert( duration, unit );
+
+            for ( SiteConnectionConfig config : new HashSet<SiteConnectionConfig>( cache.keySet() ) )
+            {
+                ConnectionManagerTracker tracker = cache.get( config );
+                if ( tracker != null && tracker.getLastRetrieval() < expiration )
+                {
+                    tracker.detach();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.bench;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How many sockets a site pool keeps open under bursty load, depending on the order idle connections are reused in.
+ * Site pools reuse LIFO (HttpCore's pool always hands out the most recently released connection, see
+ * ConnectionReuseOrderTest), which the 4.x pool doesn't let us change, so both orders are replayed here against the
+ * same free-list model: a steady trickle of requests with periodic bursts, over ten simulated minutes, with the
+ * background reaper closing connections idle past the site's idle timeout.
+ *
+ * With FIFO the trickle rotates through every socket a burst ever opened, so none of them goes idle long enough to be
+ * reaped. With LIFO the trickle stays on a few hot sockets and the rest are reaped between bursts, at the cost of
+ * reconnecting for the next burst. The aux counters report average and peak open sockets and sockets opened, summed
+ * over the measured iterations.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.SingleShotTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 2 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class ConnectionReuseBenchmark
+{
+    private static final long STEP_MILLIS = 10;
+
+    private static final long RUN_MILLIS = TimeUnit.MINUTES.toMillis( 10 );
+
+    private static final long REAP_INTERVAL_MILLIS = 1000;
+
+    public enum Order
+    {
+        LIFO, FIFO
+    }
+
+    @Param( { "LIFO", "FIFO" } )
+    public Order order;
+
+    @Param( { "4" } )
+    public int steadyConcurrency;
+
+    @Param( { "64" } )
+    public int burstConcurrency;
+
+    @Param( { "30" } )
+    public int idleTimeoutSeconds;
+
+    @AuxCounters( AuxCounters.Type.EVENTS )
+    @State( Scope.Thread )
+    public static class Sockets
+    {
+        public double averageOpen;
+
+        public long peakOpen;
+
+        public long opened;
+
+        @Setup( Level.Iteration )
+        public void reset()
+        {
+            averageOpen = 0;
+            peakOpen = 0;
+            opened = 0;
+        }
+    }
+
+    @Benchmark
+    public void burstyLoad( final Sockets sockets )
+    {
+        Random random = new Random( 42 );
+        long idleTimeout = TimeUnit.SECONDS.toMillis( idleTimeoutSeconds );
+
+        // free list ordered most recently released first, as in HttpCore's route pool; values are last-use times
+        Deque<long[]> free = new ArrayDeque<>();
+        List<long[]> leased = new ArrayList<>();
+        long openSum = 0;
+        long steps = 0;
+        long burstEnds = -1;
+        long nextBurst = nextBurst( random, 0 );
+
+        for ( long now = 0; now < RUN_MILLIS; now += STEP_MILLIS )
+        {
+            if ( now >= nextBurst )
+            {
+                burstEnds = now + 200 + random.nextInt( 800 );
+                nextBurst = nextBurst( random, now );
+            }
+
+            int demand = now < burstEnds ? burstConcurrency : steadyConcurrency;
+            for ( int i = 0; i < demand; i++ )
+            {
+                long[] conn = order == Order.LIFO ? free.pollFirst() : free.pollLast();
+                if ( conn == null )
+                {
+                    conn = new long[1];
+                    sockets.opened++;
+                }
+
+                leased.add( conn );
+            }
+
+            int open = free.size() + leased.size();
+            sockets.peakOpen = Math.max( sockets.peakOpen, open );
+            openSum += open;
+            steps++;
+
+            for ( long[] conn : leased )
+            {
+                conn[0] = now;
+                free.addFirst( conn );
+            }
+            leased.clear();
+
+            if ( now % REAP_INTERVAL_MILLIS == 0 )
+            {
+                for ( Iterator<long[]> it = free.iterator(); it.hasNext(); )
+                {
+                    if ( now - it.next()[0] >= idleTimeout )
+                    {
+                        it.remove();
+                    }
+                }
+            }
+        }
+
+        sockets.averageOpen = openSum / (double) steps;
+    }
+
+    private static long nextBurst( final Random random, final long now )
+    {
+        return now + TimeUnit.SECONDS.toMillis( 45 + random.nextInt( 90 ) );
+    }
+
+    public static void main( String[] args )
+            throws RunnerException
+    {
+        new Runner( new OptionsBuilder().include( ConnectionReuseBenchmark.class.getSimpleName() ).build() ).run();
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.bench;
+
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.CookieStore;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.impl.client.BasicCookieStore;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.commonjava.util.jhttpc.HttpFactory;
+import org.commonjava.util.jhttpc.JHttpCException;
+import org.commonjava.util.jhttpc.auth.MemoryPasswordManager;
+import org.commonjava.util.jhttpc.auth.PasswordKey;
+import org.commonjava.util.jhttpc.auth.PasswordType;
+import org.commonjava.util.jhttpc.model.SiteConfig;
+import org.commonjava.util.jhttpc.model.SiteConfigBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.net.MalformedURLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Contexts created per second for a site with basic auth. {@link #templateContext()} is
+ * {@link HttpFactory#createContext(SiteConfig)}, which reads through to the site's prebuilt template;
+ * {@link #rebuiltContext()} replays the previous path, which copied the request config, parsed the site URL twice,
+ * looked up the password and built a new credentials provider on every call. Run with <code>-prof gc</code> to compare
+ * allocation too.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Threads( 4 )
+@Fork( 1 )
+public class ContextCreationBenchmark
+{
+    private MemoryPasswordManager passwords;
+
+    private HttpFactory factory;
+
+    private SiteConfig site;
+
+    private CookieStore cookieStore;
+
+    @Setup
+    public void setup()
+    {
+        passwords = new MemoryPasswordManager();
+        factory = new HttpFactory( passwords );
+        site = new SiteConfigBuilder( "bench", "http://bench.example.com/" ).withUser( "user" )
+                                                                           .withRequestConfig( RequestConfig.DEFAULT )
+                                                                           .build();
+        passwords.bind( "secret", site, PasswordType.USER );
+        cookieStore = new BasicCookieStore();
+    }
+
+    @TearDown
+    public void teardown()
+    {
+        factory.shutdownNow();
+    }
+
+    @Benchmark
+    public HttpClientContext templateContext()
+            throws JHttpCException
+    {
+        return factory.createContext( site );
+    }
+
+    @Benchmark
+    public HttpClientContext rebuiltContext()
+            throws MalformedURLException
+    {
+        HttpClientContext ctx = HttpClientContext.create();
+        ctx.setRequestConfig( RequestConfig.copy( site.getRequestConfig() ).build() );
+        ctx.setCookieStore( cookieStore );
+
+        AuthScope scope = new AuthScope( site.getHost(), site.getPort() );
+        CredentialsProvider creds = new BasicCredentialsProvider();
+        ctx.setCredentialsProvider( creds );
+        String password = passwords.lookup( new PasswordKey( site, PasswordType.USER ) );
+        creds.setCredentials( scope, new UsernamePasswordCredentials( site.getUser(), password ) );
+        return ctx;
+    }
+
+    public static void main( String[] args )
+            throws RunnerException
+    {
+        new Runner( new OptionsBuilder().include( ContextCreationBenchmark.class.getSimpleName() ).build() ).run();
+    }
+}
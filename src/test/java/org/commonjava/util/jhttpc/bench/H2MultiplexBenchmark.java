@@ -0,0 +1,198 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.bench;
+
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+import org.commonjava.util.jhttpc.HttpFactory;
+import org.commonjava.util.jhttpc.JHttpCException;
+import org.commonjava.util.jhttpc.auth.MemoryPasswordManager;
+import org.commonjava.util.jhttpc.h2.H2FactoryConfigBuilder;
+import org.commonjava.util.jhttpc.h2.H2HttpFactory;
+import org.commonjava.util.jhttpc.model.SiteConfig;
+import org.commonjava.util.jhttpc.model.SiteConfigBuilder;
+import org.commonjava.util.jhttpc.unit.EmbeddedH2Server;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wall time to complete a burst of concurrent HTTPS requests against a local server that holds every response for a
+ * fixed delay, through {@link H2HttpFactory} (streams multiplexed over a few HTTP/2 connections) and through
+ * {@link HttpFactory#execute(SiteConfig, org.apache.http.client.methods.HttpUriRequest,
+ * org.apache.http.client.ResponseHandler)} on a fixed pool of caller threads (one HTTP/1.1 connection per request in
+ * flight). The "sockets" counter adds up, over the measured iterations, how many connections the server had open when
+ * each burst finished.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.SingleShotTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 2 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class H2MultiplexBenchmark
+{
+    @Param( "2000" )
+    public int requests;
+
+    @Param( "50" )
+    public long delayMillis;
+
+    @Param( "200" )
+    public int http1Connections;
+
+    @Param( "2" )
+    public int h2Connections;
+
+    private EmbeddedH2Server server;
+
+    private HttpFactory http1Factory;
+
+    private H2HttpFactory h2Factory;
+
+    private SiteConfig http1Site;
+
+    private SiteConfig h2Site;
+
+    private ExecutorService callers;
+
+    private String url;
+
+    @State( Scope.Thread )
+    @AuxCounters( AuxCounters.Type.EVENTS )
+    public static class Sockets
+    {
+        public int sockets;
+
+        @Setup( Level.Iteration )
+        public void reset()
+        {
+            sockets = 0;
+        }
+    }
+
+    @Setup
+    public void setup()
+            throws Exception
+    {
+        server = new EmbeddedH2Server( HttpVersionPolicy.NEGOTIATE ).start();
+        server.setResponseDelayMillis( delayMillis );
+        url = server.formatUrl( EmbeddedH2Server.SLOW );
+
+        MemoryPasswordManager passwords = new MemoryPasswordManager();
+        http1Factory = new HttpFactory( passwords );
+        http1Site = new SiteConfigBuilder( "http1-bench", server.formatUrl() ).withServerCertPem(
+                server.getServerCertPem() ).withMaxConnections( http1Connections ).withMaxPerRoute( http1Connections )
+                                                                             .build();
+
+        h2Factory = new H2HttpFactory( passwords,
+                                       new H2FactoryConfigBuilder().withConnectionsPerSite( h2Connections ).build() );
+        h2Site = new SiteConfigBuilder( "h2-bench", server.formatUrl() ).withServerCertPem( server.getServerCertPem() )
+                                                                        .build();
+
+        callers = Executors.newFixedThreadPool( http1Connections );
+    }
+
+    @TearDown
+    public void teardown()
+    {
+        callers.shutdownNow();
+        h2Factory.close();
+        http1Factory.shutdownNow();
+        server.close();
+    }
+
+    @Benchmark
+    public int h2( final Sockets sockets )
+            throws InterruptedException, ExecutionException, JHttpCException
+    {
+        List<CompletableFuture<SimpleHttpResponse>> results = new ArrayList<>( requests );
+        for ( int i = 0; i < requests; i++ )
+        {
+            results.add( h2Factory.execute( h2Site, SimpleRequestBuilder.get( url ).build() ) );
+        }
+
+        int ok = 0;
+        for ( CompletableFuture<SimpleHttpResponse> result : results )
+        {
+            if ( result.get().getCode() == 200 )
+            {
+                ok++;
+            }
+        }
+
+        sockets.sockets = server.getOpenConnections();
+        return ok;
+    }
+
+    @Benchmark
+    public int http1( final Sockets sockets )
+            throws InterruptedException, ExecutionException
+    {
+        List<Future<Integer>> results = new ArrayList<>( requests );
+        for ( int i = 0; i < requests; i++ )
+        {
+            results.add( callers.submit( () -> http1Factory.execute( http1Site, new HttpGet( url ), response -> {
+                EntityUtils.consume( response.getEntity() );
+                return response.getStatusLine().getStatusCode();
+            } ) ) );
+        }
+
+        int ok = 0;
+        for ( Future<Integer> result : results )
+        {
+            if ( result.get() == 200 )
+            {
+                ok++;
+            }
+        }
+
+        sockets.sockets = server.getOpenConnections();
+        return ok;
+    }
+
+    public static void main( String[] args )
+            throws RunnerException
+    {
+        new Runner( new OptionsBuilder().include( H2MultiplexBenchmark.class.getSimpleName() ).build() ).run();
+    }
+}
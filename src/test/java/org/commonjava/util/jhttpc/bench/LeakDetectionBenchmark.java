@@ -0,0 +1,163 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.bench;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.DefaultBHttpClientConnection;
+import org.apache.http.protocol.HttpContext;
+import org.commonjava.util.jhttpc.INTERNAL.conn.CloseBlockingConnectionManager;
+import org.commonjava.util.jhttpc.INTERNAL.conn.LeakDetector;
+import org.commonjava.util.jhttpc.INTERNAL.conn.SiteConnectionConfig;
+import org.commonjava.util.jhttpc.model.SiteConfigBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead leak detection adds to a lease and release through {@link CloseBlockingConnectionManager}, measured
+ * against a pool stub that hands back a fixed connection so only the wrapper's bookkeeping is timed. A sample rate
+ * of -1 stands for leak detection being off.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Threads( 4 )
+@Fork( 1 )
+public class LeakDetectionBenchmark
+{
+    private static final HttpRoute ROUTE = new HttpRoute( new HttpHost( "bench.example.com", 80 ) );
+
+    @Param( { "-1", "0", "0.01", "1" } )
+    public double sampleRate;
+
+    private CloseBlockingConnectionManager manager;
+
+    @State( Scope.Thread )
+    public static class Lease
+    {
+        final HttpClientConnection conn = new DefaultBHttpClientConnection( 8192 );
+    }
+
+    @Setup
+    public void setup()
+    {
+        SiteConnectionConfig config =
+                new SiteConnectionConfig( new SiteConfigBuilder( "bench", "http://bench.example.com/" ).build() );
+        LeakDetector detector = sampleRate < 0 ? null : new LeakDetector( "bench", 60000, sampleRate );
+        manager = new CloseBlockingConnectionManager( config, new FixedConnectionManager(), detector );
+    }
+
+    @Benchmark
+    public HttpClientConnection leaseAndRelease( final Lease lease )
+            throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException
+    {
+        HttpClientConnection conn = manager.requestConnection( ROUTE, lease.conn ).get( 1, TimeUnit.SECONDS );
+        manager.releaseConnection( conn, null, -1, TimeUnit.MILLISECONDS );
+        return conn;
+    }
+
+    public static void main( String[] args )
+            throws RunnerException
+    {
+        new Runner( new OptionsBuilder().include( LeakDetectionBenchmark.class.getSimpleName() ).build() ).run();
+    }
+
+    /**
+     * Leases whatever connection is passed as the request state.
+     */
+    private static final class FixedConnectionManager
+            implements HttpClientConnectionManager
+    {
+        @Override
+        public ConnectionRequest requestConnection( final HttpRoute route, final Object state )
+        {
+            return new ConnectionRequest()
+            {
+                @Override
+                public HttpClientConnection get( final long timeout, final TimeUnit tunit )
+                {
+                    return (HttpClientConnection) state;
+                }
+
+                @Override
+                public boolean cancel()
+                {
+                    return false;
+                }
+            };
+        }
+
+        @Override
+        public void releaseConnection( final HttpClientConnection conn, final Object newState,
+                                       final long validDuration, final TimeUnit timeUnit )
+        {
+        }
+
+        @Override
+        public void connect( final HttpClientConnection conn, final HttpRoute route, final int connectTimeout,
+                             final HttpContext context )
+        {
+        }
+
+        @Override
+        public void upgrade( final HttpClientConnection conn, final HttpRoute route, final HttpContext context )
+        {
+        }
+
+        @Override
+        public void routeComplete( final HttpClientConnection conn, final HttpRoute route,
+                                   final HttpContext context )
+        {
+        }
+
+        @Override
+        public void closeIdleConnections( final long idletime, final TimeUnit tunit )
+        {
+        }
+
+        @Override
+        public void closeExpiredConnections()
+        {
+        }
+
+        @Override
+        public void shutdown()
+        {
+        }
+    }
+}
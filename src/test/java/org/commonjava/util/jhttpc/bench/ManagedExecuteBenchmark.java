@@ -0,0 +1,141 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.bench;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.commonjava.util.jhttpc.HttpFactory;
+import org.commonjava.util.jhttpc.JHttpCException;
+import org.commonjava.util.jhttpc.auth.MemoryPasswordManager;
+import org.commonjava.util.jhttpc.model.SiteConfig;
+import org.commonjava.util.jhttpc.model.SiteConfigBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trips per second to a local server through {@link HttpFactory#execute(SiteConfig,
+ * org.apache.http.client.methods.HttpUriRequest, org.apache.http.client.ResponseHandler)}, compared with the manual
+ * pattern from ResourceCleanupLoadTest: create a client and context, execute, read the entity and close the client.
+ * Run with <code>-prof gc</code> to compare allocation too.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Threads( 4 )
+@Fork( 1 )
+public class ManagedExecuteBenchmark
+{
+    private static final byte[] CONTENT = "This is a test.".getBytes( StandardCharsets.UTF_8 );
+
+    private HttpServer server;
+
+    private ExecutorService serverThreads;
+
+    private HttpFactory factory;
+
+    private SiteConfig site;
+
+    private String url;
+
+    @Setup
+    public void setup()
+            throws IOException
+    {
+        // without this the JDK server's delayed ACKs, not the client, dominate every round trip
+        System.setProperty( "sun.net.httpserver.nodelay", "true" );
+        server = HttpServer.create( new InetSocketAddress( InetAddress.getLoopbackAddress(), 0 ), 0 );
+        server.createContext( "/", exchange -> {
+            exchange.sendResponseHeaders( 200, CONTENT.length );
+            try (OutputStream out = exchange.getResponseBody())
+            {
+                out.write( CONTENT );
+            }
+        } );
+        serverThreads = Executors.newFixedThreadPool( 8 );
+        server.setExecutor( serverThreads );
+        server.start();
+
+        String base = "http://127.0.0.1:" + server.getAddress().getPort();
+        url = base + "/path/to/test";
+        factory = new HttpFactory( new MemoryPasswordManager() );
+        site = new SiteConfigBuilder( "bench", base ).withMaxConnections( 8 ).build();
+    }
+
+    @TearDown
+    public void teardown()
+    {
+        factory.shutdownNow();
+        server.stop( 0 );
+        serverThreads.shutdownNow();
+    }
+
+    @Benchmark
+    public String managedExecute()
+            throws JHttpCException, IOException
+    {
+        return factory.execute( site, new HttpGet( url ), response -> EntityUtils.toString( response.getEntity() ) );
+    }
+
+    @Benchmark
+    public String manualPattern()
+            throws JHttpCException, IOException
+    {
+        CloseableHttpClient client = factory.createClient( site );
+        try
+        {
+            CloseableHttpResponse response = client.execute( new HttpGet( url ), factory.createContext( site ) );
+            return IOUtils.toString( response.getEntity().getContent(), StandardCharsets.UTF_8 );
+        }
+        finally
+        {
+            IOUtils.closeQuietly( client );
+        }
+    }
+
+    public static void main( String[] args )
+            throws RunnerException
+    {
+        new Runner( new OptionsBuilder().include( ManagedExecuteBenchmark.class.getSimpleName() ).build() ).run();
+    }
+}
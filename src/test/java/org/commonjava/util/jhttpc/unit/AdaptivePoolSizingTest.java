@@ -0,0 +1,209 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.unit;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.commonjava.test.http.junit4.expect.ExpectationServerWrapper;
+import org.commonjava.util.jhttpc.HttpFactory;
+import org.commonjava.util.jhttpc.INTERNAL.conn.AdaptivePoolSizer;
+import org.commonjava.util.jhttpc.INTERNAL.conn.PoolSample;
+import org.commonjava.util.jhttpc.auth.MemoryPasswordManager;
+import org.commonjava.util.jhttpc.model.HttpFactoryConfigBuilder;
+import org.commonjava.util.jhttpc.model.PoolResizeEvent;
+import org.commonjava.util.jhttpc.model.PoolResizeEvent.Reason;
+import org.commonjava.util.jhttpc.model.SiteConfig;
+import org.commonjava.util.jhttpc.model.SiteConfigBuilder;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptivePoolSizingTest
+{
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos( 1 );
+
+    @Rule
+    public ExpectationServerWrapper server = new ExpectationServerWrapper();
+
+    private HttpFactory factory;
+
+    @After
+    public void teardown()
+    {
+        if ( factory != null )
+        {
+            factory.shutdownNow();
+        }
+    }
+
+    @Test
+    public void growsWhileLeasesWait()
+    {
+        AdaptivePoolSizer sizer = new AdaptivePoolSizer( 2, 10, 4 );
+
+        assertThat( sizer.evaluate( sample( 20, 3, 0, 20, 20 * MS, 3, 4 ) ), equalTo( Reason.LEASE_WAIT ) );
+        assertThat( sizer.getCurrent(), equalTo( 7 ) );
+
+        assertThat( sizer.evaluate( sample( 20, 5, 0, 20, 20 * MS, 5, 7 ) ), equalTo( Reason.LEASE_WAIT ) );
+        assertThat( sizer.getCurrent(), equalTo( 10 ) );
+
+        assertThat( sizer.evaluate( sample( 20, 5, 1, 20, 20 * MS, 5, 10 ) ), nullValue() );
+        assertThat( sizer.getCurrent(), equalTo( 10 ) );
+    }
+
+    @Test
+    public void backsOffWhenUpstreamSlowsDown()
+    {
+        AdaptivePoolSizer sizer = new AdaptivePoolSizer( 2, 10, 8 );
+
+        assertThat( sizer.evaluate( sample( 20, 0, 0, 20, 20 * 10 * MS, 0, 8 ) ), nullValue() );
+        assertThat( sizer.evaluate( sample( 20, 4, 0, 20, 20 * 50 * MS, 4, 8 ) ), equalTo( Reason.UPSTREAM_LATENCY ) );
+        assertThat( sizer.getCurrent(), equalTo( 6 ) );
+
+        assertThat( sizer.evaluate( sample( 20, 4, 0, 20, 20 * 50 * MS, 4, 6 ) ), equalTo( Reason.UPSTREAM_LATENCY ) );
+        assertThat( sizer.getCurrent(), equalTo( 4 ) );
+    }
+
+    @Test
+    public void shrinksWhenUnderusedButNotBelowMin()
+    {
+        AdaptivePoolSizer sizer = new AdaptivePoolSizer( 2, 10, 4 );
+
+        assertThat( sizer.evaluate( sample( 0, 0, 0, 0, 0, 0, 1 ) ), equalTo( Reason.UNDERUSED ) );
+        assertThat( sizer.evaluate( sample( 0, 0, 0, 0, 0, 0, 0 ) ), equalTo( Reason.UNDERUSED ) );
+        assertThat( sizer.getCurrent(), equalTo( 2 ) );
+        assertThat( sizer.evaluate( sample( 0, 0, 0, 0, 0, 0, 0 ) ), nullValue() );
+    }
+
+    @Test
+    public void poolFollowsInjectedUpstreamLatency()
+            throws Exception
+    {
+        final String path = "/path/to/adaptive";
+        final AtomicLong latency = new AtomicLong( 20 );
+        server.expect( "GET", server.formatUrl( path ), ( req, resp ) -> {
+            try
+            {
+                Thread.sleep( latency.get() );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+            }
+            resp.setStatus( 200 );
+            resp.getOutputStream().write( "OK".getBytes() );
+        } );
+
+        List<PoolResizeEvent> events = new CopyOnWriteArrayList<>();
+        factory = new HttpFactory( new MemoryPasswordManager(),
+                                   new HttpFactoryConfigBuilder().withPoolResizeListener( events::add ).build() );
+
+        SiteConfig config = new SiteConfigBuilder( "adaptive", server.formatUrl() ).withMaxConnections( 2 )
+                                                                                  .withAdaptivePoolMinConnections( 1 )
+                                                                                  .withAdaptivePoolMaxConnections( 8 )
+                                                                                  .build();
+
+        AtomicBoolean running = new AtomicBoolean( true );
+        ExecutorService executor = Executors.newFixedThreadPool( 8 );
+        for ( int i = 0; i < 8; i++ )
+        {
+            executor.execute( () -> {
+                CloseableHttpClient client = null;
+                try
+                {
+                    client = factory.createClient( config );
+                    while ( running.get() )
+                    {
+                        try (CloseableHttpResponse response = client.execute(
+                                new HttpGet( server.formatUrl( path ) ) ))
+                        {
+                            EntityUtils.consume( response.getEntity() );
+                        }
+                    }
+                }
+                catch ( Exception e )
+                {
+                    e.printStackTrace();
+                }
+                finally
+                {
+                    IOUtils.closeQuietly( client );
+                }
+            } );
+        }
+
+        try
+        {
+            waitFor( () -> events.stream().anyMatch( e -> e.getReason() == Reason.LEASE_WAIT ) );
+            assertTrue( "pool didn't grow: " + events,
+                        events.stream().anyMatch( e -> e.getReason() == Reason.LEASE_WAIT ) );
+            assertTrue( factory.getPoolStats( config ).getMaxTotal() > 2 );
+
+            // let the sizer learn the upstream's normal latency, then slow it down by an order of magnitude
+            Thread.sleep( 3000 );
+            latency.set( 200 );
+            waitFor( () -> events.stream().anyMatch( e -> e.getReason() == Reason.UPSTREAM_LATENCY ) );
+            assertTrue( "pool didn't back off: " + events,
+                        events.stream().anyMatch( e -> e.getReason() == Reason.UPSTREAM_LATENCY ) );
+            assertTrue( factory.getPoolStats( config ).getPoolResizes() >= 2 );
+        }
+        finally
+        {
+            running.set( false );
+            executor.shutdown();
+            executor.awaitTermination( 10, TimeUnit.SECONDS );
+        }
+    }
+
+    private PoolSample sample( long leases, long slowLeases, long timeouts, long releases, long holdNanos,
+                               int peakPending, int peakLeased )
+    {
+        return new PoolSample( leases, slowLeases * 10 * MS, slowLeases, timeouts, releases, holdNanos, peakPending,
+                               peakLeased );
+    }
+
+    private void waitFor( final Condition condition )
+            throws InterruptedException
+    {
+        long expires = System.currentTimeMillis() + 10000;
+        while ( !condition.met() && System.currentTimeMillis() < expires )
+        {
+            Thread.sleep( 100 );
+        }
+    }
+
+    private interface Condition
+    {
+        boolean met();
+    }
+}
@@ -0,0 +1,241 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.unit;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.client.methods.AsyncByteConsumer;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+import org.commonjava.test.http.junit4.expect.ExpectationServerWrapper;
+import org.commonjava.util.jhttpc.AsyncHttpFactory;
+import org.commonjava.util.jhttpc.AsyncSiteClient;
+import org.commonjava.util.jhttpc.HttpFactory;
+import org.commonjava.util.jhttpc.auth.MemoryPasswordManager;
+import org.commonjava.util.jhttpc.auth.PasswordType;
+import org.commonjava.util.jhttpc.model.SiteConfig;
+import org.commonjava.util.jhttpc.model.SiteConfigBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AsyncClientTest
+{
+
+    private static final String PATH = "/path/to/async";
+
+    private static final String SECURED = "/path/to/secured";
+
+    private static final String SLOW = "/path/to/slow";
+
+    private static final String STALLED = "/path/to/stalled";
+
+    private static final String CONTENT = "async content";
+
+    @Rule
+    public ExpectationServerWrapper server = new ExpectationServerWrapper();
+
+    private final MemoryPasswordManager passwords = new MemoryPasswordManager();
+
+    private HttpFactory factory;
+
+    private AsyncHttpFactory asyncFactory;
+
+    @Before
+    public void setup()
+    {
+        factory = new HttpFactory( passwords );
+        asyncFactory = new AsyncHttpFactory( factory );
+        server.expect( "GET", server.formatUrl( PATH ), 200, CONTENT );
+        server.expect( "GET", server.formatUrl( SECURED ), ( req, resp ) -> {
+            String auth = req.getHeader( "Authorization" );
+            if ( auth == null )
+            {
+                resp.setStatus( 401 );
+                resp.setHeader( "WWW-Authenticate", "Basic realm=\"test\"" );
+                return;
+            }
+
+            resp.setStatus( 200 );
+            resp.getOutputStream().write( Base64.getDecoder().decode( auth.substring( "Basic ".length() ) ) );
+        } );
+        server.expect( "GET", server.formatUrl( SLOW ), ( req, resp ) -> respondAfter( 100, resp ) );
+        server.expect( "GET", server.formatUrl( STALLED ), ( req, resp ) -> respondAfter( 2000, resp ) );
+    }
+
+    private static void respondAfter( final long delay, final HttpServletResponse resp )
+            throws IOException
+    {
+        try
+        {
+            Thread.sleep( delay );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        resp.setStatus( 200 );
+        resp.getOutputStream().write( CONTENT.getBytes() );
+    }
+
+    @After
+    public void teardown()
+    {
+        factory.shutdownNow();
+    }
+
+    @Test
+    public void bufferedAndStreamedResponses()
+            throws Exception
+    {
+        SiteConfig config = new SiteConfigBuilder( "async", server.formatUrl() ).build();
+        try (AsyncSiteClient client = asyncFactory.createAsyncClient( config ))
+        {
+            HttpResponse response = client.execute( new HttpGet( server.formatUrl( PATH ) ) ).get( 10, TimeUnit.SECONDS );
+            assertThat( response.getStatusLine().getStatusCode(), equalTo( 200 ) );
+            assertThat( EntityUtils.toString( response.getEntity() ), equalTo( CONTENT ) );
+
+            int streamed = client.execute( new HttpGet( server.formatUrl( PATH ) ), new ByteCounter() )
+                                 .get( 10, TimeUnit.SECONDS );
+            assertThat( streamed, equalTo( CONTENT.length() ) );
+
+            assertThat( factory.getPoolStats( config ).getUsers(), equalTo( 1 ) );
+            assertThat( client.getInFlightCount(), equalTo( 0 ) );
+        }
+
+        assertThat( factory.getPoolStats( config ).getUsers(), equalTo( 0 ) );
+    }
+
+    @Test
+    public void siteCredentialsAreUsed()
+            throws Exception
+    {
+        SiteConfig config = new SiteConfigBuilder( "async-secured", server.formatUrl() ).withUser( "user" ).build();
+        passwords.bind( "secret", config, PasswordType.USER );
+
+        try (AsyncSiteClient client = asyncFactory.createAsyncClient( config ))
+        {
+            HttpResponse response =
+                    client.execute( new HttpGet( server.formatUrl( SECURED ) ) ).get( 10, TimeUnit.SECONDS );
+            assertThat( EntityUtils.toString( response.getEntity() ), equalTo( "user:secret" ) );
+        }
+    }
+
+    @Test
+    public void concurrentSlowResponsesShareThePool()
+            throws Exception
+    {
+        SiteConfig config = new SiteConfigBuilder( "async-slow", server.formatUrl() ).withMaxConnections( 20 ).build();
+        try (AsyncSiteClient client = asyncFactory.createAsyncClient( config ))
+        {
+            List<CompletableFuture<HttpResponse>> results = new ArrayList<>();
+            for ( int i = 0; i < 40; i++ )
+            {
+                results.add( client.execute( new HttpGet( server.formatUrl( SLOW ) ) ) );
+            }
+
+            CompletableFuture.allOf( results.toArray( new CompletableFuture[0] ) ).get( 30, TimeUnit.SECONDS );
+            for ( CompletableFuture<HttpResponse> result : results )
+            {
+                assertThat( EntityUtils.toString( result.get().getEntity() ), equalTo( CONTENT ) );
+            }
+            assertThat( client.getInFlightCount(), equalTo( 0 ) );
+        }
+    }
+
+    @Test
+    public void closingHandleCancelsUnfinishedRequests()
+            throws Exception
+    {
+        SiteConfig config = new SiteConfigBuilder( "async-cancel", server.formatUrl() ).build();
+        AsyncSiteClient client = asyncFactory.createAsyncClient( config );
+        CompletableFuture<HttpResponse> result = client.execute( new HttpGet( server.formatUrl( STALLED ) ) );
+        assertThat( client.getInFlightCount(), equalTo( 1 ) );
+
+        client.close();
+        assertTrue( result.isCancelled() );
+        assertThat( client.getInFlightCount(), equalTo( 0 ) );
+        assertThat( factory.getPoolStats( config ).getUsers(), equalTo( 0 ) );
+
+        assertTrue( client.execute( new HttpGet( server.formatUrl( PATH ) ) ).isCompletedExceptionally() );
+    }
+
+    @Test
+    public void factoryShutdownStopsTheReactor()
+            throws Exception
+    {
+        SiteConfig config = new SiteConfigBuilder( "async-shutdown", server.formatUrl() ).build();
+        try (AsyncSiteClient client = asyncFactory.createAsyncClient( config ))
+        {
+            client.execute( new HttpGet( server.formatUrl( PATH ) ) ).get( 10, TimeUnit.SECONDS );
+            assertTrue( reactorThreadsRunning() );
+        }
+
+        factory.shutdownNow();
+        long deadline = System.currentTimeMillis() + 10000;
+        while ( reactorThreadsRunning() && System.currentTimeMillis() < deadline )
+        {
+            Thread.sleep( 50 );
+        }
+        assertFalse( reactorThreadsRunning() );
+    }
+
+    private static boolean reactorThreadsRunning()
+    {
+        return Thread.getAllStackTraces().keySet().stream().anyMatch( t -> t.getName().startsWith( "I/O dispatcher" ) );
+    }
+
+    private static final class ByteCounter
+            extends AsyncByteConsumer<Integer>
+    {
+        private int count;
+
+        @Override
+        protected void onByteReceived( final ByteBuffer buf, final IOControl ioctrl )
+        {
+            count += buf.remaining();
+            buf.position( buf.limit() );
+        }
+
+        @Override
+        protected void onResponseReceived( final HttpResponse response )
+        {
+        }
+
+        @Override
+        protected Integer buildResult( final HttpContext context )
+        {
+            return count;
+        }
+    }
+}
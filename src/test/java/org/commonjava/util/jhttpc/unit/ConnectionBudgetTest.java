@@ -0,0 +1,135 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.unit;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.commonjava.test.http.junit4.expect.ExpectationServerWrapper;
+import org.commonjava.util.jhttpc.HttpFactory;
+import org.commonjava.util.jhttpc.INTERNAL.conn.ConnectionBudget;
+import org.commonjava.util.jhttpc.auth.MemoryPasswordManager;
+import org.commonjava.util.jhttpc.model.HttpFactoryConfigBuilder;
+import org.commonjava.util.jhttpc.model.SiteConfig;
+import org.commonjava.util.jhttpc.model.SiteConfigBuilder;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConnectionBudgetTest
+{
+
+    @Rule
+    public ExpectationServerWrapper server = new ExpectationServerWrapper();
+
+    private HttpFactory factory;
+
+    @After
+    public void teardown()
+    {
+        if ( factory != null )
+        {
+            factory.shutdownNow();
+        }
+    }
+
+    @Test
+    public void slackIsSharedByWeightWhenDemandFits()
+    {
+        int[] shares = ConnectionBudget.allocate( 20, new int[] { 2, 4 }, new int[] { 1, 3 } );
+        assertArrayEquals( new int[] { 6, 14 }, shares );
+    }
+
+    @Test
+    public void quietSitesLendWhatTheyDontUse()
+    {
+        int[] shares = ConnectionBudget.allocate( 10, new int[] { 1, 20, 20 }, new int[] { 1, 1, 1 } );
+        assertArrayEquals( new int[] { 1, 5, 4 }, shares );
+    }
+
+    @Test
+    public void busySitesSplitByWeight()
+    {
+        int[] shares = ConnectionBudget.allocate( 12, new int[] { 20, 20 }, new int[] { 1, 2 } );
+        assertArrayEquals( new int[] { 4, 8 }, shares );
+    }
+
+    @Test
+    public void everyPoolKeepsOneConnection()
+    {
+        int[] shares = ConnectionBudget.allocate( 2, new int[] { 5, 5, 5 }, new int[] { 1, 1, 1 } );
+        for ( int share : shares )
+        {
+            assertTrue( share >= 1 );
+        }
+    }
+
+    @Test
+    public void sitePoolsStayWithinTheBudget()
+            throws Exception
+    {
+        final String path = "/path/to/budget";
+        server.expect( "GET", server.formatUrl( path ), 200, "budget" );
+
+        factory = new HttpFactory( new MemoryPasswordManager(),
+                                   new HttpFactoryConfigBuilder().withMaxTotalConnections( 6 ).build() );
+
+        SiteConfig first = new SiteConfigBuilder( "first", server.formatUrl() ).withMaxConnections( 10 ).build();
+        SiteConfig second = new SiteConfigBuilder( "second", server.formatUrl() ).withMaxConnections( 10 ).build();
+
+        CloseableHttpClient firstClient = null;
+        CloseableHttpClient secondClient = null;
+        try
+        {
+            firstClient = factory.createClient( first );
+            assertThat( factory.getPoolStats( first ).getBudgetShare(), equalTo( 6 ) );
+
+            secondClient = factory.createClient( second );
+            assertThat( factory.getPoolStats( second ).getBudgetShare(), equalTo( 1 ) );
+
+            try (CloseableHttpResponse response = secondClient.execute( new HttpGet( server.formatUrl( path ) ) ))
+            {
+                EntityUtils.consume( response.getEntity() );
+            }
+
+            // the background rebalance lends the second site part of the first site's unused share
+            long expires = System.currentTimeMillis() + 5000;
+            while ( factory.getPoolStats( second ).getBudgetShare() < 3 && System.currentTimeMillis() < expires )
+            {
+                Thread.sleep( 100 );
+            }
+
+            int firstShare = factory.getPoolStats( first ).getBudgetShare();
+            int secondShare = factory.getPoolStats( second ).getBudgetShare();
+            assertTrue( "second share: " + secondShare, secondShare >= 3 );
+            assertThat( firstShare + secondShare, equalTo( 6 ) );
+            assertThat( factory.getPoolStats( first ).getMaxTotal() + factory.getPoolStats( second ).getMaxTotal(),
+                        equalTo( 6 ) );
+        }
+        finally
+        {
+            IOUtils.closeQuietly( firstClient );
+            IOUtils.closeQuietly( secondClient );
+        }
+    }
+}
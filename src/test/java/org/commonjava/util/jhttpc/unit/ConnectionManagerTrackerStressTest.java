@@ -0,0 +1,202 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.unit;
+
+import org.commonjava.util.jhttpc.INTERNAL.conn.CloseBlockingConnectionManager;
+import org.commonjava.util.jhttpc.INTERNAL.conn.ConnectionManagerCache;
+import org.commonjava.util.jhttpc.INTERNAL.conn.ConnectionManagerTracker;
+import org.commonjava.util.jhttpc.INTERNAL.conn.SiteConnectionConfig;
+import org.commonjava.util.jhttpc.model.SiteConfigBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Races acquire, release and detach across many threads against a handful of sites, checking that no thread is ever
+ * handed (or keeps using) a pool that has been shut down, and that every pool is shut down once it is idle and
+ * detached.
+ */
+public class ConnectionManagerTrackerStressTest
+{
+
+    private static final int LEASE_THREADS = 32;
+
+    private static final int DETACH_THREADS = 4;
+
+    private static final int ITERATIONS = 5000;
+
+    private static final int SITES = 16;
+
+    private ConnectionManagerCache cache;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setup()
+    {
+        cache = new ConnectionManagerCache();
+        executor = Executors.newFixedThreadPool( LEASE_THREADS + DETACH_THREADS );
+    }
+
+    @After
+    public void teardown()
+    {
+        executor.shutdownNow();
+        cache.shutdownNow();
+    }
+
+    @Test
+    public void raceAcquireReleaseAndDetach()
+            throws Exception
+    {
+        final SiteConnectionConfig[] configs = new SiteConnectionConfig[SITES];
+        for ( int i = 0; i < SITES; i++ )
+        {
+            configs[i] = new SiteConnectionConfig(
+                    new SiteConfigBuilder( "stress-" + i, "http://stress-" + i + ".example.com/" ).build() );
+        }
+
+        final Set<ConnectionManagerTracker> seen = Collections.newSetFromMap( new ConcurrentHashMap<>() );
+        final AtomicInteger violations = new AtomicInteger( 0 );
+        final AtomicInteger leases = new AtomicInteger( 0 );
+        final AtomicInteger shutdowns = new AtomicInteger( 0 );
+        final AtomicBoolean leasing = new AtomicBoolean( true );
+        final CountDownLatch start = new CountDownLatch( 1 );
+        final CountDownLatch leasersDone = new CountDownLatch( LEASE_THREADS );
+        final CountDownLatch detachersDone = new CountDownLatch( DETACH_THREADS );
+
+        for ( int t = 0; t < LEASE_THREADS; t++ )
+        {
+            executor.execute( () -> {
+                try
+                {
+                    start.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for ( int i = 0; i < ITERATIONS; i++ )
+                    {
+                        SiteConnectionConfig config = configs[random.nextInt( SITES )];
+                        ConnectionManagerTracker tracker;
+                        CloseBlockingConnectionManager manager;
+                        do
+                        {
+                            tracker = cache.getTrackerFor( config );
+                            manager = tracker.acquire();
+                        }
+                        while ( manager == null );
+
+                        seen.add( tracker );
+                        leases.incrementAndGet();
+
+                        if ( manager.isReallyShutdown() )
+                        {
+                            violations.incrementAndGet();
+                        }
+
+                        if ( random.nextInt( 8 ) == 0 )
+                        {
+                            Thread.sleep( 0, 100 );
+                        }
+
+                        if ( manager.isReallyShutdown() )
+                        {
+                            violations.incrementAndGet();
+                        }
+
+                        tracker.release();
+                    }
+                }
+                catch ( Exception e )
+                {
+                    e.printStackTrace();
+                    violations.incrementAndGet();
+                }
+                finally
+                {
+                    leasersDone.countDown();
+                }
+            } );
+        }
+
+        for ( int t = 0; t < DETACH_THREADS; t++ )
+        {
+            executor.execute( () -> {
+                try
+                {
+                    start.await();
+                    while ( leasing.get() )
+                    {
+                        for ( ConnectionManagerTracker tracker : seen )
+                        {
+                            if ( tracker.detach() )
+                            {
+                                shutdowns.incrementAndGet();
+                            }
+                        }
+                        Thread.yield();
+                    }
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                }
+                finally
+                {
+                    detachersDone.countDown();
+                }
+            } );
+        }
+
+        start.countDown();
+        assertThat( "Lease threads did not finish", leasersDone.await( 2, TimeUnit.MINUTES ), equalTo( true ) );
+        leasing.set( false );
+        detachersDone.await( 1, TimeUnit.MINUTES );
+
+        assertThat( "Leases observed a shut-down pool", violations.get(), equalTo( 0 ) );
+        assertThat( leases.get(), equalTo( LEASE_THREADS * ITERATIONS ) );
+        assertThat( "Detach never shut down an idle pool", shutdowns.get() > 0, equalTo( true ) );
+
+        for ( ConnectionManagerTracker tracker : seen )
+        {
+            assertThat( "Tracker still has users: " + tracker, tracker.getUsers(), equalTo( 0 ) );
+        }
+
+        // once idle, one more detach must shut down every remaining pool
+        for ( ConnectionManagerTracker tracker : seen )
+        {
+            tracker.detach();
+        }
+
+        for ( ConnectionManagerTracker tracker : seen )
+        {
+            assertThat( "Tracker not shut down: " + tracker, tracker.isShutdown(), equalTo( true ) );
+        }
+    }
+
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.unit;
+
+import org.commonjava.test.http.junit4.expect.ExpectationServerWrapper;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.commonjava.util.jhttpc.HttpFactory;
+import org.commonjava.util.jhttpc.INTERNAL.conn.CloseBlockingConnectionManager;
+import org.commonjava.util.jhttpc.INTERNAL.conn.ConnectionManagerCache;
+import org.commonjava.util.jhttpc.INTERNAL.conn.ConnectionManagerTracker;
+import org.commonjava.util.jhttpc.INTERNAL.conn.SiteConnectionConfig;
+import org.commonjava.util.jhttpc.auth.MemoryPasswordManager;
+import org.commonjava.util.jhttpc.model.SiteConfig;
+import org.commonjava.util.jhttpc.model.SiteConfigBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ConnectionPrewarmTest
+{
+
+    @Rule
+    public ExpectationServerWrapper server = new ExpectationServerWrapper();
+
+    private HttpFactory factory;
+
+    @Before
+    public void setup()
+    {
+        factory = new HttpFactory( new MemoryPasswordManager() );
+    }
+
+    @After
+    public void teardown()
+    {
+        factory.shutdownNow();
+    }
+
+    @Test
+    public void warmUpPoolsRequestedConnections()
+            throws Exception
+    {
+        SiteConfig config = new SiteConfigBuilder( "prewarm", server.formatUrl() ).withPrewarmConnections( 3 )
+                                                                                 .withIdleConnectionTimeoutSeconds( 1 )
+                                                                                 .build();
+
+        factory.warmUp( Collections.singleton( config ) ).get( 10, TimeUnit.SECONDS );
+
+        // the pre-warmed connections sit idle in the pool until the reaper closes them
+        long expires = System.currentTimeMillis() + 5000;
+        while ( factory.getEvictedConnectionCount() < 3 && System.currentTimeMillis() < expires )
+        {
+            Thread.sleep( 100 );
+        }
+
+        assertThat( factory.getEvictedConnectionCount(), equalTo( 3L ) );
+    }
+
+    @Test
+    public void rejectedConnectsFailTheWarmUpAndReleaseThePool()
+            throws Exception
+    {
+        SiteConfig config = new SiteConfigBuilder( "prewarm-rejected", server.formatUrl() ).withMaxConnections( 1 )
+                                                                                          .build();
+        SiteConnectionConfig connConfig = new SiteConnectionConfig( config );
+
+        ConnectionManagerCache cache = new ConnectionManagerCache();
+        try
+        {
+            ConnectionManagerTracker tracker = cache.getTrackerFor( connConfig );
+            CloseBlockingConnectionManager manager = tracker.acquire();
+            HttpRoute route = connConfig.getSiteRoute();
+            HttpClientConnection held = manager.requestConnection( route, null ).get( 5, TimeUnit.SECONDS );
+
+            // the warm-up waits for the held connection, and the background executor stops meanwhile
+            CompletableFuture<Void> warm = tracker.prewarm( 1 );
+            long expires = System.currentTimeMillis() + 5000;
+            while ( tracker.getPoolStats().getPending() < 1 && System.currentTimeMillis() < expires )
+            {
+                Thread.sleep( 10 );
+            }
+
+            cache.getBackgroundExecutor().shutdown();
+            manager.releaseConnection( held, null, 0, TimeUnit.MILLISECONDS );
+
+            try
+            {
+                warm.get( 10, TimeUnit.SECONDS );
+                fail( "Warm-up should have failed" );
+            }
+            catch ( ExecutionException e )
+            {
+                assertTrue( e.getCause() instanceof RejectedExecutionException );
+            }
+
+            assertThat( tracker.getUsers(), equalTo( 1 ) );
+            assertThat( tracker.getPoolStats().getLeased(), equalTo( 0 ) );
+            tracker.release();
+        }
+        finally
+        {
+            cache.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.unit;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.commonjava.test.http.junit4.expect.ExpectationServerWrapper;
+import org.commonjava.util.jhttpc.HttpFactory;
+import org.commonjava.util.jhttpc.auth.MemoryPasswordManager;
+import org.commonjava.util.jhttpc.model.SiteConfig;
+import org.commonjava.util.jhttpc.model.SiteConfigBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class ConnectionRetirementTest
+{
+
+    @Rule
+    public ExpectationServerWrapper server = new ExpectationServerWrapper();
+
+    private HttpFactory factory;
+
+    @Before
+    public void setup()
+    {
+        factory = new HttpFactory( new MemoryPasswordManager() );
+    }
+
+    @After
+    public void teardown()
+    {
+        factory.shutdownNow();
+    }
+
+    @Test
+    public void connectionsRetireAfterMaxRequests()
+            throws Exception
+    {
+        final String path = "/path/to/retire";
+        server.expect( "GET", server.formatUrl( path ), 200, "retire" );
+
+        SiteConfig config =
+                new SiteConfigBuilder( "requests", server.formatUrl() ).withMaxRequestsPerConnection( 5 ).build();
+
+        CloseableHttpClient client = null;
+        try
+        {
+            client = factory.createClient( config );
+            for ( int i = 0; i < 20; i++ )
+            {
+                try (CloseableHttpResponse response = client.execute( new HttpGet( server.formatUrl( path ) ) ))
+                {
+                    EntityUtils.consume( response.getEntity() );
+                }
+            }
+
+            // each connection retires after 4 or 5 requests, depending on its jitter
+            long retired = factory.getPoolStats( config ).getRetiredConnections();
+            assertTrue( "retired: " + retired, retired >= 4 && retired <= 5 );
+        }
+        finally
+        {
+            IOUtils.closeQuietly( client );
+        }
+    }
+
+    @Test
+    public void idleConnectionsRetireAfterMaxLifetime()
+            throws Exception
+    {
+        final String path = "/path/to/lifetime";
+        server.expect( "GET", server.formatUrl( path ), 200, "lifetime" );
+
+        SiteConfig config =
+                new SiteConfigBuilder( "lifetime", server.formatUrl() ).withMaxConnectionLifetimeSeconds( 1 ).build();
+
+        CloseableHttpClient client = null;
+        try
+        {
+            client = factory.createClient( config );
+            try (CloseableHttpResponse response = client.execute( new HttpGet( server.formatUrl( path ) ) ))
+            {
+                EntityUtils.consume( response.getEntity() );
+            }
+
+            assertThat( factory.getPoolStats( config ).getRetiredConnections(), equalTo( 0L ) );
+
+            // the background reaper retires the idle connection once it reaches its lifetime
+            long expires = System.currentTimeMillis() + 5000;
+            while ( factory.getPoolStats( config ).getRetiredConnections() < 1
+                    && System.currentTimeMillis() < expires )
+            {
+                Thread.sleep( 100 );
+            }
+
+            assertThat( factory.getPoolStats( config ).getRetiredConnections(), equalTo( 1L ) );
+        }
+        finally
+        {
+            IOUtils.closeQuietly( client );
+        }
+    }
+}
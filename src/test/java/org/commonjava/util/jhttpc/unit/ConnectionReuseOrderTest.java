@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.unit;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ManagedHttpClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.impl.conn.ManagedHttpClientConnectionFactory;
+import org.apache.http.protocol.BasicHttpContext;
+import org.commonjava.test.http.junit4.expect.ExpectationServerWrapper;
+import org.commonjava.util.jhttpc.INTERNAL.conn.SitePoolingConnectionManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Site pools hand out the most recently released connection first (LIFO), so a small set of hot connections serves
+ * steady traffic and the rest go idle and get reaped. HttpCore's pool does this on its own; this guards it across
+ * HttpCore upgrades.
+ */
+public class ConnectionReuseOrderTest
+{
+
+    @Rule
+    public ExpectationServerWrapper server = new ExpectationServerWrapper();
+
+    private SitePoolingConnectionManager pool;
+
+    private HttpRoute route;
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        pool = new SitePoolingConnectionManager( RegistryBuilder.<ConnectionSocketFactory>create()
+                                                                .register( "http",
+                                                                           PlainConnectionSocketFactory.getSocketFactory() )
+                                                                .build(), ManagedHttpClientConnectionFactory.INSTANCE );
+        pool.setMaxTotal( 5 );
+        pool.setDefaultMaxPerRoute( 5 );
+
+        route = new HttpRoute( new HttpHost( new URL( server.formatUrl() ).getHost(), server.getPort() ) );
+    }
+
+    @After
+    public void teardown()
+    {
+        pool.shutdown();
+    }
+
+    @Test
+    public void mostRecentlyReleasedConnectionIsReusedFirst()
+            throws Exception
+    {
+        HttpClientConnection first = lease();
+        HttpClientConnection second = lease();
+        HttpClientConnection third = lease();
+
+        int firstPort = port( first );
+        int thirdPort = port( third );
+
+        release( second );
+        release( first );
+        release( third );
+
+        HttpClientConnection reused = lease();
+        assertThat( port( reused ), equalTo( thirdPort ) );
+        release( reused );
+
+        // a burst takes the hot connection first, then the next most recently released
+        HttpClientConnection hot = lease();
+        HttpClientConnection warm = lease();
+        assertThat( port( hot ), equalTo( thirdPort ) );
+        assertThat( port( warm ), equalTo( firstPort ) );
+        release( hot );
+        release( warm );
+    }
+
+    private HttpClientConnection lease()
+            throws Exception
+    {
+        HttpClientConnection conn = pool.requestConnection( route, null ).get( 5, TimeUnit.SECONDS );
+        if ( !conn.isOpen() )
+        {
+            pool.connect( conn, route, 5000, new BasicHttpContext() );
+            pool.routeComplete( conn, route, new BasicHttpContext() );
+        }
+
+        return conn;
+    }
+
+    private void release( final HttpClientConnection conn )
+    {
+        pool.releaseConnection( conn, null, 30, TimeUnit.SECONDS );
+    }
+
+    private static int port( final HttpClientConnection conn )
+    {
+        return ( (ManagedHttpClientConnection) conn ).getLocalPort();
+    }
+}
@@ -0,0 +1,184 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.unit;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.commonjava.util.jhttpc.HttpFactory;
+import org.commonjava.util.jhttpc.auth.MemoryPasswordManager;
+import org.commonjava.util.jhttpc.model.ConnectionValidationPolicy;
+import org.commonjava.util.jhttpc.model.SiteConfig;
+import org.commonjava.util.jhttpc.model.SiteConfigBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ConnectionValidationTest
+{
+
+    private ServerSocket server;
+
+    private Thread serverThread;
+
+    private HttpFactory factory;
+
+    @Before
+    public void setup()
+            throws IOException
+    {
+        // answers one keep-alive request per connection, then closes it, leaving a stale connection in the pool
+        server = new ServerSocket( 0, 50, InetAddress.getLoopbackAddress() );
+        serverThread = new Thread( () -> {
+            while ( !server.isClosed() )
+            {
+                try (Socket socket = server.accept())
+                {
+                    BufferedReader in = new BufferedReader(
+                            new InputStreamReader( socket.getInputStream(), StandardCharsets.US_ASCII ) );
+                    String line;
+                    while ( ( line = in.readLine() ) != null && !line.isEmpty() )
+                    {
+                    }
+
+                    OutputStream out = socket.getOutputStream();
+                    out.write( "HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nOK".getBytes( StandardCharsets.US_ASCII ) );
+                    out.flush();
+                }
+                catch ( IOException e )
+                {
+                    // server closed
+                }
+            }
+        }, "closing-server" );
+        serverThread.setDaemon( true );
+        serverThread.start();
+
+        factory = new HttpFactory( new MemoryPasswordManager() );
+    }
+
+    @After
+    public void teardown()
+            throws Exception
+    {
+        factory.shutdownNow();
+        server.close();
+        serverThread.join( 1000 );
+    }
+
+    @Test
+    public void backgroundValidationClosesStaleIdleConnections()
+            throws Exception
+    {
+        SiteConfig config = site( "background", ConnectionValidationPolicy.BACKGROUND );
+        CloseableHttpClient client = null;
+        try
+        {
+            client = factory.createClient( config );
+            get( client );
+
+            // the background reaper probes the idle connection once it has been idle for the validation interval
+            long expires = System.currentTimeMillis() + 5000;
+            while ( factory.getPoolStats( config ).getValidationRejects() < 1
+                    && System.currentTimeMillis() < expires )
+            {
+                Thread.sleep( 100 );
+            }
+
+            assertThat( factory.getPoolStats( config ).getValidationRejects(), equalTo( 1L ) );
+            assertThat( factory.getPoolStats( config ).getAvailable(), equalTo( 0 ) );
+        }
+        finally
+        {
+            IOUtils.closeQuietly( client );
+        }
+    }
+
+    @Test
+    public void leaseValidationRejectsStaleConnectionAfterInactivity()
+            throws Exception
+    {
+        SiteConfig config = site( "inactivity", ConnectionValidationPolicy.AFTER_INACTIVITY );
+        CloseableHttpClient client = null;
+        try
+        {
+            client = factory.createClient( config );
+            get( client );
+            Thread.sleep( 300 );
+            get( client );
+
+            assertThat( factory.getPoolStats( config ).getValidationRejects(), equalTo( 1L ) );
+        }
+        finally
+        {
+            IOUtils.closeQuietly( client );
+        }
+    }
+
+    @Test
+    public void noValidationWhenDisabled()
+            throws Exception
+    {
+        SiteConfig config = site( "never", ConnectionValidationPolicy.NEVER );
+        CloseableHttpClient client = null;
+        try
+        {
+            client = factory.createClient( config );
+            get( client );
+            Thread.sleep( 300 );
+
+            // the stale connection isn't checked on lease; the request is retried on a fresh one
+            get( client );
+
+            assertThat( factory.getPoolStats( config ).getValidationRejects(), equalTo( 0L ) );
+        }
+        finally
+        {
+            IOUtils.closeQuietly( client );
+        }
+    }
+
+    private SiteConfig site( final String id, final ConnectionValidationPolicy policy )
+    {
+        return new SiteConfigBuilder( id, "http://localhost:" + server.getLocalPort() ).withConnectionValidationPolicy(
+                policy ).withConnectionValidationMillis( 100 ).build();
+    }
+
+    private void get( final CloseableHttpClient client )
+            throws IOException
+    {
+        try (CloseableHttpResponse response = client.execute(
+                new HttpGet( "http://localhost:" + server.getLocalPort() + "/validate" ) ))
+        {
+            assertThat( response.getStatusLine().getStatusCode(), equalTo( 200 ) );
+            EntityUtils.consume( response.getEntity() );
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.unit;
+
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.commonjava.test.http.junit4.expect.ExpectationServerWrapper;
+import org.commonjava.util.jhttpc.HttpFactory;
+import org.commonjava.util.jhttpc.auth.MemoryPasswordManager;
+import org.commonjava.util.jhttpc.auth.PasswordType;
+import org.commonjava.util.jhttpc.model.SiteConfig;
+import org.commonjava.util.jhttpc.model.SiteConfigBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.Base64;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ContextTemplateTest
+{
+
+    private static final String PATH = "/path/to/secured";
+
+    @Rule
+    public ExpectationServerWrapper server = new ExpectationServerWrapper();
+
+    private final MemoryPasswordManager passwords = new MemoryPasswordManager();
+
+    private HttpFactory factory;
+
+    private AuthScope scope;
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        factory = new HttpFactory( passwords );
+        server.expect( "GET", server.formatUrl( PATH ), ( req, resp ) -> {
+            String auth = req.getHeader( "Authorization" );
+            if ( auth == null )
+            {
+                resp.setStatus( 401 );
+                resp.setHeader( "WWW-Authenticate", "Basic realm=\"test\"" );
+                return;
+            }
+
+            resp.setStatus( 200 );
+            resp.getOutputStream()
+                .write( Base64.getDecoder().decode( auth.substring( "Basic ".length() ) ) );
+        } );
+    }
+
+    @After
+    public void teardown()
+    {
+        factory.shutdownNow();
+    }
+
+    @Test
+    public void contextsShareSiteStateButNotCallerCredentials()
+            throws Exception
+    {
+        SiteConfig config = new SiteConfigBuilder( "secured", server.formatUrl() ).withUser( "user" ).build();
+        passwords.bind( "secret", config, PasswordType.USER );
+        scope = new AuthScope( config.getHost(), config.getPort() );
+
+        HttpClientContext first = factory.createContext( config );
+        HttpClientContext second = factory.createContext( config );
+
+        assertThat( first.getCookieStore(), sameInstance( second.getCookieStore() ) );
+        assertThat( first.getCredentialsProvider().getCredentials( scope ).getPassword(), equalTo( "secret" ) );
+
+        AuthScope other = new AuthScope( "other.example.com", 80 );
+        first.getCredentialsProvider().setCredentials( other, new UsernamePasswordCredentials( "me", "mine" ) );
+        assertThat( first.getCredentialsProvider().getCredentials( other ).getPassword(), equalTo( "mine" ) );
+        assertThat( second.getCredentialsProvider().getCredentials( other ), nullValue() );
+        assertThat( factory.createContext( config ).getCredentialsProvider().getCredentials( other ), nullValue() );
+    }
+
+    @Test
+    public void rebindingPasswordOrRebuildingSiteIsPickedUp()
+            throws Exception
+    {
+        SiteConfigBuilder builder = new SiteConfigBuilder( "secured", server.formatUrl() ).withUser( "user" );
+        SiteConfig config = builder.build();
+        passwords.bind( "secret", config, PasswordType.USER );
+
+        assertThat( get( config ), equalTo( "user:secret" ) );
+
+        passwords.bind( "changed", config, PasswordType.USER );
+        assertThat( get( config ), equalTo( "user:changed" ) );
+
+        SiteConfig rebuilt = builder.withUser( "other" ).build();
+        assertThat( get( rebuilt ), equalTo( "other:changed" ) );
+    }
+
+    private String get( final SiteConfig config )
+            throws Exception
+    {
+        try (CloseableHttpClient client = factory.createClient( config );
+             CloseableHttpResponse response = client.execute( new HttpGet( server.formatUrl( PATH ) ),
+                                                              factory.createContext( config ) ))
+        {
+            assertThat( response.getStatusLine().getStatusCode(), equalTo( 200 ) );
+            return EntityUtils.toString( response.getEntity() );
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.unit;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.cookie.BasicClientCookie;
+import org.apache.http.util.EntityUtils;
+import org.commonjava.test.http.junit4.expect.ExpectationServerWrapper;
+import org.commonjava.util.jhttpc.HttpFactory;
+import org.commonjava.util.jhttpc.INTERNAL.util.ConcurrentCookieStore;
+import org.commonjava.util.jhttpc.auth.MemoryPasswordManager;
+import org.commonjava.util.jhttpc.model.SiteConfig;
+import org.commonjava.util.jhttpc.model.SiteConfigBuilder;
+import org.commonjava.util.jhttpc.model.SiteCookiePolicy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class CookiePolicyTest
+{
+
+    private static final String LOGIN = "/login";
+
+    private static final String ECHO = "/echo";
+
+    @Rule
+    public ExpectationServerWrapper server = new ExpectationServerWrapper();
+
+    private HttpFactory factory;
+
+    @Before
+    public void setup()
+    {
+        factory = new HttpFactory( new MemoryPasswordManager() );
+        server.expect( "GET", server.formatUrl( LOGIN ), ( req, resp ) -> {
+            resp.setStatus( 200 );
+            resp.addHeader( "Set-Cookie", "session=abc; Path=/" );
+        } );
+        server.expect( "GET", server.formatUrl( ECHO ), ( req, resp ) -> {
+            String cookie = req.getHeader( "Cookie" );
+            resp.setStatus( 200 );
+            resp.getOutputStream().write( ( cookie == null ? "none" : cookie ).getBytes() );
+        } );
+    }
+
+    @After
+    public void teardown()
+    {
+        factory.shutdownNow();
+    }
+
+    @Test
+    public void sharedCookiesAreSeenFromOtherThreads()
+            throws Exception
+    {
+        SiteConfig config = new SiteConfigBuilder( "cookies", server.formatUrl() ).build();
+        get( config, LOGIN );
+        assertThat( get( config, ECHO ), equalTo( "session=abc" ) );
+        assertThat( CompletableFuture.supplyAsync( () -> getQuietly( config, ECHO ) ).get( 10, TimeUnit.SECONDS ),
+                    equalTo( "session=abc" ) );
+    }
+
+    @Test
+    public void perThreadCookiesStayOnTheirThread()
+            throws Exception
+    {
+        SiteConfig config =
+                new SiteConfigBuilder( "cookies", server.formatUrl() ).withCookiePolicy( SiteCookiePolicy.PER_THREAD )
+                                                                      .build();
+        get( config, LOGIN );
+        assertThat( get( config, ECHO ), equalTo( "session=abc" ) );
+        assertThat( CompletableFuture.supplyAsync( () -> getQuietly( config, ECHO ) ).get( 10, TimeUnit.SECONDS ),
+                    equalTo( "none" ) );
+    }
+
+    @Test
+    public void disabledCookiesAreNeverSent()
+            throws Exception
+    {
+        SiteConfig config =
+                new SiteConfigBuilder( "cookies", server.formatUrl() ).withCookiePolicy( SiteCookiePolicy.DISABLED )
+                                                                      .build();
+        get( config, LOGIN );
+        assertThat( get( config, ECHO ), equalTo( "none" ) );
+    }
+
+    @Test
+    public void concurrentStoreReplacesExpiresAndStaysConsistent()
+            throws Exception
+    {
+        ConcurrentCookieStore store = new ConcurrentCookieStore();
+        assertThat( store.getCookies(), sameInstance( Collections.emptyList() ) );
+
+        store.addCookie( cookie( "a", "1", 60000 ) );
+        store.addCookie( cookie( "a", "2", 60000 ) );
+        store.addCookie( cookie( "b", "1", 1000 ) );
+        assertThat( store.getCookies().size(), equalTo( 2 ) );
+
+        assertThat( store.clearExpired( new Date( System.currentTimeMillis() + 5000 ) ), equalTo( true ) );
+        assertThat( store.getCookies().size(), equalTo( 1 ) );
+        assertThat( store.getCookies().get( 0 ).getValue(), equalTo( "2" ) );
+
+        // a replaced cookie's old expiry doesn't remove its replacement
+        store.addCookie( cookie( "c", "old", 1000 ) );
+        store.addCookie( cookie( "c", "new", 60000 ) );
+        store.clearExpired( new Date( System.currentTimeMillis() + 5000 ) );
+        assertThat( store.getCookies().size(), equalTo( 2 ) );
+
+        ExecutorService executor = Executors.newFixedThreadPool( 4 );
+        try
+        {
+            List<Future<?>> writers = new ArrayList<>();
+            for ( int t = 0; t < 4; t++ )
+            {
+                int thread = t;
+                writers.add( executor.submit( () -> {
+                    for ( int i = 0; i < 1000; i++ )
+                    {
+                        store.addCookie( cookie( "t" + thread + "-" + ( i % 50 ), String.valueOf( i ), 60000 ) );
+                        store.getCookies();
+                    }
+                } ) );
+            }
+            for ( Future<?> writer : writers )
+            {
+                writer.get( 30, TimeUnit.SECONDS );
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        assertThat( store.getCookies().size(), equalTo( 2 + 4 * 50 ) );
+        store.clear();
+        assertThat( store.getCookies().size(), equalTo( 0 ) );
+    }
+
+    @Test
+    public void cookiesAddedWhileExpiredOnesAreClearedCanStillExpire()
+            throws Exception
+    {
+        ConcurrentCookieStore store = new ConcurrentCookieStore();
+        Date later = new Date( System.currentTimeMillis() + 3600000 );
+        AtomicBoolean writing = new AtomicBoolean( true );
+
+        ExecutorService executor = Executors.newFixedThreadPool( 3 );
+        try
+        {
+            List<Future<?>> writers = new ArrayList<>();
+            for ( int t = 0; t < 2; t++ )
+            {
+                int thread = t;
+                writers.add( executor.submit( () -> {
+                    for ( int i = 0; i < 20000; i++ )
+                    {
+                        store.addCookie( cookie( "t" + thread, String.valueOf( i ), "/" + ( i % 100 ), 60000 ) );
+                    }
+                } ) );
+            }
+
+            Future<?> cleaner = executor.submit( () -> {
+                while ( writing.get() )
+                {
+                    store.clearExpired( later );
+                }
+            } );
+
+            for ( Future<?> writer : writers )
+            {
+                writer.get( 60, TimeUnit.SECONDS );
+            }
+            writing.set( false );
+            cleaner.get( 10, TimeUnit.SECONDS );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        // every cookie added is indexed by the time its add returns, so none can outlive its expiry
+        store.clearExpired( later );
+        assertThat( store.getCookies().size(), equalTo( 0 ) );
+    }
+
+    private static BasicClientCookie cookie( final String name, final String value, final long ttlMillis )
+    {
+        return cookie( name, value, "/", ttlMillis );
+    }
+
+    private static BasicClientCookie cookie( final String name, final String value, final String path,
+                                             final long ttlMillis )
+    {
+        BasicClientCookie cookie = new BasicClientCookie( name, value );
+        cookie.setDomain( "example.com" );
+        cookie.setPath( path );
+        cookie.setExpiryDate( new Date( System.currentTimeMillis() + ttlMillis ) );
+        return cookie;
+    }
+
+    private String getQuietly( final SiteConfig config, final String path )
+    {
+        try
+        {
+            return get( config, path );
+        }
+        catch ( Exception e )
+        {
+            throw new IllegalStateException( e );
+        }
+    }
+
+    private String get( final SiteConfig config, final String path )
+            throws Exception
+    {
+        try (CloseableHttpClient client = factory.createClient( config );
+             CloseableHttpResponse response = client.execute( new HttpGet( server.formatUrl( path ) ),
+                                                              factory.createContext( config ) ))
+        {
+            return EntityUtils.toString( response.getEntity() );
+        }
+    }
+}
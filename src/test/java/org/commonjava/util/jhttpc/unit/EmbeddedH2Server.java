@@ -0,0 +1,318 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.unit;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.Message;
+import org.apache.hc.core5.http.URIScheme;
+import org.apache.hc.core5.http.impl.bootstrap.HttpAsyncServer;
+import org.apache.hc.core5.http.message.BasicHttpResponse;
+import org.apache.hc.core5.http.nio.AsyncServerRequestHandler;
+import org.apache.hc.core5.http.nio.entity.StringAsyncEntityConsumer;
+import org.apache.hc.core5.http.nio.entity.StringAsyncEntityProducer;
+import org.apache.hc.core5.http.nio.support.BasicRequestConsumer;
+import org.apache.hc.core5.http.nio.support.BasicResponseProducer;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.http2.config.H2Config;
+import org.apache.hc.core5.http2.impl.nio.bootstrap.H2ServerBootstrap;
+import org.apache.hc.core5.http2.ssl.H2ServerTlsStrategy;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.reactor.IOReactorConfig;
+import org.apache.hc.core5.reactor.IOSession;
+import org.apache.hc.core5.reactor.IOSessionListener;
+import org.apache.hc.core5.reactor.ListenerEndpoint;
+import org.apache.hc.core5.ssl.SSLContexts;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+
+import javax.net.ssl.SSLContext;
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A local HTTPS server on HttpCore 5 that negotiates HTTP/2 or HTTP/1.1 through ALPN, with a self-signed certificate
+ * for localhost. It counts the connections it accepts, so tests can compare how many sockets each client needs.
+ *
+ * Paths: {@link #SLOW} answers after {@link #getResponseDelayMillis()}, {@link #SECURED} wants Basic credentials
+ * user:secret, {@link #AUTHORIZATION} echoes the Authorization header, and anything else answers "ok" right away.
+ */
+public final class EmbeddedH2Server
+        implements Closeable
+{
+    public static final String SLOW = "/slow";
+
+    public static final String SECURED = "/secured";
+
+    public static final String AUTHORIZATION = "/authorization";
+
+    private static final char[] KEY_PASSWORD = "changeit".toCharArray();
+
+    private final HttpVersionPolicy versionPolicy;
+
+    private final AtomicInteger accepted = new AtomicInteger();
+
+    private final AtomicInteger open = new AtomicInteger();
+
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool( 1, r -> {
+        Thread t = new Thread( r, "embedded-h2-server-delay" );
+        t.setDaemon( true );
+        return t;
+    } );
+
+    private volatile long responseDelayMillis = 100;
+
+    private HttpAsyncServer server;
+
+    private String serverCertPem;
+
+    private int port;
+
+    public EmbeddedH2Server( final HttpVersionPolicy versionPolicy )
+    {
+        this.versionPolicy = versionPolicy;
+    }
+
+    public EmbeddedH2Server start()
+            throws Exception
+    {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance( "EC" );
+        generator.initialize( 256 );
+        KeyPair keyPair = generator.generateKeyPair();
+
+        X500Name name = new X500Name( "CN=localhost" );
+        long now = System.currentTimeMillis();
+        JcaX509v3CertificateBuilder builder =
+                new JcaX509v3CertificateBuilder( name, BigInteger.valueOf( now ), new Date( now - 60000 ),
+                                                 new Date( now + TimeUnit.DAYS.toMillis( 1 ) ), name,
+                                                 keyPair.getPublic() );
+        builder.addExtension( Extension.subjectAlternativeName, false,
+                              new GeneralNames( new GeneralName( GeneralName.dNSName, "localhost" ) ) );
+
+        X509Certificate cert = new JcaX509CertificateConverter().getCertificate(
+                builder.build( new JcaContentSignerBuilder( "SHA256withECDSA" ).build( keyPair.getPrivate() ) ) );
+
+        serverCertPem = "-----BEGIN CERTIFICATE-----\n" + Base64.getMimeEncoder( 64, new byte[] { '\n' } )
+                                                                .encodeToString( cert.getEncoded() )
+                + "\n-----END CERTIFICATE-----\n";
+
+        KeyStore keyStore = KeyStore.getInstance( "PKCS12" );
+        keyStore.load( null, null );
+        keyStore.setKeyEntry( "localhost", keyPair.getPrivate(), KEY_PASSWORD, new Certificate[] { cert } );
+        SSLContext sslContext = SSLContexts.custom().loadKeyMaterial( keyStore, KEY_PASSWORD ).build();
+
+        server = H2ServerBootstrap.bootstrap()
+                                  .setVersionPolicy( versionPolicy )
+                                  .setH2Config( H2Config.custom().setMaxConcurrentStreams( 10000 ).build() )
+                                  .setIOReactorConfig( IOReactorConfig.custom().setIoThreadCount( 2 ).build() )
+                                  .setTlsStrategy( new H2ServerTlsStrategy( sslContext ) )
+                                  .setIOSessionListener( new ConnectionCounter() )
+                                  .register( "*", new Handler() )
+                                  .create();
+        server.start();
+
+        ListenerEndpoint endpoint = server.listen( new InetSocketAddress( "localhost", 0 ), URIScheme.HTTPS ).get();
+        port = ( (InetSocketAddress) endpoint.getAddress() ).getPort();
+        return this;
+    }
+
+    public String getServerCertPem()
+    {
+        return serverCertPem;
+    }
+
+    public String formatUrl()
+    {
+        return "https://localhost:" + port;
+    }
+
+    public String formatUrl( final String path )
+    {
+        return formatUrl() + path;
+    }
+
+    /**
+     * Connections accepted since the server started.
+     */
+    public int getAcceptedConnections()
+    {
+        return accepted.get();
+    }
+
+    public int getOpenConnections()
+    {
+        return open.get();
+    }
+
+    public long getResponseDelayMillis()
+    {
+        return responseDelayMillis;
+    }
+
+    public void setResponseDelayMillis( final long responseDelayMillis )
+    {
+        this.responseDelayMillis = responseDelayMillis;
+    }
+
+    @Override
+    public void close()
+    {
+        if ( server != null )
+        {
+            server.close( CloseMode.IMMEDIATE );
+        }
+        scheduler.shutdownNow();
+    }
+
+    private final class ConnectionCounter
+            implements IOSessionListener
+    {
+        @Override
+        public void connected( final IOSession session )
+        {
+            accepted.incrementAndGet();
+            open.incrementAndGet();
+        }
+
+        @Override
+        public void startTls( final IOSession session )
+        {
+        }
+
+        @Override
+        public void disconnected( final IOSession session )
+        {
+            open.decrementAndGet();
+        }
+
+        @Override
+        public void exception( final IOSession session, final Exception ex )
+        {
+        }
+
+        @Override
+        public void inputReady( final IOSession session )
+        {
+        }
+
+        @Override
+        public void outputReady( final IOSession session )
+        {
+        }
+
+        @Override
+        public void timeout( final IOSession session )
+        {
+        }
+    }
+
+    private final class Handler
+            implements AsyncServerRequestHandler<Message<HttpRequest, String>>
+    {
+        @Override
+        public BasicRequestConsumer<String> prepare( final HttpRequest request,
+                                                     final org.apache.hc.core5.http.EntityDetails entityDetails,
+                                                     final HttpContext context )
+        {
+            return new BasicRequestConsumer<>( StringAsyncEntityConsumer::new );
+        }
+
+        @Override
+        public void handle( final Message<HttpRequest, String> message, final ResponseTrigger trigger,
+                            final HttpContext context )
+                throws HttpException, IOException
+        {
+            HttpRequest request = message.getHead();
+            String path = request.getPath();
+
+            if ( path.startsWith( SLOW ) )
+            {
+                scheduler.schedule( () -> respond( trigger, context, HttpStatus.SC_OK, "slow", null ),
+                                    responseDelayMillis, TimeUnit.MILLISECONDS );
+            }
+            else if ( path.startsWith( SECURED ) )
+            {
+                String expected = "Basic " + Base64.getEncoder()
+                                                   .encodeToString( "user:secret".getBytes( StandardCharsets.UTF_8 ) );
+                Header authorization = request.getFirstHeader( HttpHeaders.AUTHORIZATION );
+                if ( authorization != null && expected.equals( authorization.getValue() ) )
+                {
+                    respond( trigger, context, HttpStatus.SC_OK, "secured", null );
+                }
+                else
+                {
+                    respond( trigger, context, HttpStatus.SC_UNAUTHORIZED, "", "Basic realm=\"test\"" );
+                }
+            }
+            else if ( path.startsWith( AUTHORIZATION ) )
+            {
+                Header authorization = request.getFirstHeader( HttpHeaders.AUTHORIZATION );
+                respond( trigger, context, HttpStatus.SC_OK, authorization == null ? "" : authorization.getValue(),
+                         null );
+            }
+            else
+            {
+                respond( trigger, context, HttpStatus.SC_OK, "ok", null );
+            }
+        }
+
+        private void respond( final ResponseTrigger trigger, final HttpContext context, final int status,
+                              final String body, final String challenge )
+        {
+            BasicHttpResponse response = new BasicHttpResponse( status );
+            if ( challenge != null )
+            {
+                response.addHeader( HttpHeaders.WWW_AUTHENTICATE, challenge );
+            }
+
+            try
+            {
+                trigger.submitResponse(
+                        new BasicResponseProducer( response, new StringAsyncEntityProducer( body,
+                                                                                            ContentType.TEXT_PLAIN ) ),
+                        context );
+            }
+            catch ( HttpException | IOException e )
+            {
+                throw new IllegalStateException( "Failed to send response", e );
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.unit;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.commonjava.test.http.junit4.expect.ExpectationServerWrapper;
+import org.commonjava.util.jhttpc.HttpFactory;
+import org.commonjava.util.jhttpc.auth.MemoryPasswordManager;
+import org.commonjava.util.jhttpc.model.DrainReport;
+import org.commonjava.util.jhttpc.model.SiteConfig;
+import org.commonjava.util.jhttpc.model.SiteConfigBuilder;
+import org.commonjava.util.jhttpc.model.SiteDrainReport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class GracefulDrainTest
+{
+
+    @Rule
+    public ExpectationServerWrapper server = new ExpectationServerWrapper();
+
+    private HttpFactory factory;
+
+    @Before
+    public void setup()
+    {
+        factory = new HttpFactory( new MemoryPasswordManager() );
+    }
+
+    @After
+    public void teardown()
+    {
+        factory.shutdownNow();
+    }
+
+    @Test
+    public void drainFinishesWhenLastClientCloses()
+            throws Exception
+    {
+        SiteConfig busy = new SiteConfigBuilder( "busy", server.formatUrl() ).build();
+        SiteConfig idle = new SiteConfigBuilder( "idle", server.formatUrl() ).build();
+
+        CloseableHttpClient held = factory.createClient( busy );
+        IOUtils.closeQuietly( factory.createClient( idle ) );
+
+        CompletableFuture<DrainReport> drain = CompletableFuture.supplyAsync( () -> {
+            try
+            {
+                return factory.drain( 10000 );
+            }
+            catch ( InterruptedException e )
+            {
+                throw new IllegalStateException( e );
+            }
+        } );
+
+        Thread.sleep( 200 );
+        assertThat( drain.isDone(), equalTo( false ) );
+        try
+        {
+            factory.createClient( idle );
+            fail( "New clients should be refused while draining" );
+        }
+        catch ( IllegalStateException e )
+        {
+            // expected
+        }
+
+        held.close();
+
+        DrainReport report = drain.get( 5, TimeUnit.SECONDS );
+        assertThat( report.isClean(), equalTo( true ) );
+        assertTrue( "Drain waited for its full timeout: " + report, report.getElapsedMillis() < 5000 );
+        assertThat( report.getSites().size(), equalTo( 2 ) );
+        assertThat( factory.isShutdown(), equalTo( true ) );
+    }
+
+    @Test
+    public void poolsStillHeldAtDeadlineAreForcedClosed()
+            throws Exception
+    {
+        SiteConfig busy = new SiteConfigBuilder( "busy", server.formatUrl() ).build();
+
+        CloseableHttpClient held = factory.createClient( busy );
+        try
+        {
+            DrainReport report = factory.drain( 300 );
+            assertThat( report.isClean(), equalTo( false ) );
+
+            SiteDrainReport site = report.getForced().get( 0 );
+            assertThat( site.getSiteId(), equalTo( "busy" ) );
+            assertThat( site.getUsersAtStart(), equalTo( 1 ) );
+            assertThat( site.getForcedUsers(), equalTo( 1 ) );
+            assertThat( factory.isShutdown(), equalTo( true ) );
+        }
+        finally
+        {
+            IOUtils.closeQuietly( held );
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.unit;
+
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.core5.http.HttpVersion;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.commonjava.util.jhttpc.JHttpCException;
+import org.commonjava.util.jhttpc.auth.MemoryPasswordManager;
+import org.commonjava.util.jhttpc.auth.OAuth20BearerTokenAuthenticator;
+import org.commonjava.util.jhttpc.auth.PasswordType;
+import org.commonjava.util.jhttpc.h2.H2FactoryConfigBuilder;
+import org.commonjava.util.jhttpc.h2.H2HttpFactory;
+import org.commonjava.util.jhttpc.model.SiteConfig;
+import org.commonjava.util.jhttpc.model.SiteConfigBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class H2HttpFactoryTest
+{
+
+    private final MemoryPasswordManager passwords = new MemoryPasswordManager();
+
+    private EmbeddedH2Server server;
+
+    private H2HttpFactory factory;
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        server = new EmbeddedH2Server( HttpVersionPolicy.NEGOTIATE ).start();
+    }
+
+    @After
+    public void teardown()
+    {
+        if ( factory != null )
+        {
+            factory.close();
+        }
+        server.close();
+    }
+
+    private SiteConfigBuilder site( final String id )
+    {
+        return new SiteConfigBuilder( id, server.formatUrl() ).withServerCertPem( server.getServerCertPem() );
+    }
+
+    @Test
+    public void negotiatesHttp2ThroughAlpn()
+            throws Exception
+    {
+        factory = new H2HttpFactory( passwords );
+        SimpleHttpResponse response =
+                factory.execute( site( "h2" ).build(), SimpleRequestBuilder.get( server.formatUrl( "/" ) ).build() )
+                       .get( 10, TimeUnit.SECONDS );
+
+        assertThat( response.getCode(), equalTo( 200 ) );
+        assertThat( response.getVersion(), equalTo( HttpVersion.HTTP_2 ) );
+        assertThat( response.getBodyText(), equalTo( "ok" ) );
+    }
+
+    @Test
+    public void concurrentRequestsShareFewConnections()
+            throws Exception
+    {
+        factory = new H2HttpFactory( passwords, new H2FactoryConfigBuilder().withConnectionsPerSite( 2 ).build() );
+        SiteConfig config = site( "h2-multiplexed" ).build();
+
+        long start = System.nanoTime();
+        List<CompletableFuture<SimpleHttpResponse>> results = new ArrayList<>();
+        for ( int i = 0; i < 200; i++ )
+        {
+            results.add( factory.execute( config, SimpleRequestBuilder.get( server.formatUrl( EmbeddedH2Server.SLOW ) )
+                                                                      .build() ) );
+        }
+
+        for ( CompletableFuture<SimpleHttpResponse> result : results )
+        {
+            assertThat( result.get( 30, TimeUnit.SECONDS ).getCode(), equalTo( 200 ) );
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start );
+
+        // 200 responses held 100ms each; two connections used one request at a time would need 10s
+        assertThat( server.getAcceptedConnections(), equalTo( 2 ) );
+        assertTrue( "Requests weren't multiplexed; took: " + elapsed + "ms", elapsed < 5000 );
+    }
+
+    @Test
+    public void siteCredentialsAreUsed()
+            throws Exception
+    {
+        factory = new H2HttpFactory( passwords );
+        SiteConfig config = site( "h2-secured" ).withUser( "user" ).build();
+        passwords.bind( "secret", config, PasswordType.USER );
+
+        SimpleHttpResponse response =
+                factory.execute( config, SimpleRequestBuilder.get( server.formatUrl( EmbeddedH2Server.SECURED ) )
+                                                             .build() ).get( 10, TimeUnit.SECONDS );
+
+        assertThat( response.getCode(), equalTo( 200 ) );
+        assertThat( response.getBodyText(), equalTo( "secured" ) );
+    }
+
+    @Test
+    public void authenticatorHeadersAreSent()
+            throws Exception
+    {
+        factory = new H2HttpFactory( new OAuth20BearerTokenAuthenticator( "token" ) );
+        SimpleHttpResponse response = factory.execute( site( "h2-bearer" ).build(), SimpleRequestBuilder.get(
+                server.formatUrl( EmbeddedH2Server.AUTHORIZATION ) ).build() ).get( 10, TimeUnit.SECONDS );
+
+        assertThat( response.getBodyText(), equalTo( "Bearer token" ) );
+    }
+
+    @Test
+    public void changedSettingsReplaceConnectionsAfterInFlightStreams()
+            throws Exception
+    {
+        factory = new H2HttpFactory( passwords );
+
+        // rebuilding an equal SiteConfig for each request keeps the same connection
+        for ( int i = 0; i < 3; i++ )
+        {
+            assertThat( factory.execute( site( "h2-rebuilt" ).build(),
+                                         SimpleRequestBuilder.get( server.formatUrl( "/" ) ).build() )
+                               .get( 10, TimeUnit.SECONDS )
+                               .getCode(), equalTo( 200 ) );
+        }
+        assertThat( server.getAcceptedConnections(), equalTo( 1 ) );
+
+        CompletableFuture<SimpleHttpResponse> slow = factory.execute( site( "h2-rebuilt" ).build(),
+                                                                      SimpleRequestBuilder.get( server.formatUrl(
+                                                                              EmbeddedH2Server.SLOW ) ).build() );
+
+        SimpleHttpResponse changed =
+                factory.execute( site( "h2-rebuilt" ).withRequestTimeoutSeconds( 5 ).build(),
+                                 SimpleRequestBuilder.get( server.formatUrl( "/" ) ).build() )
+                       .get( 10, TimeUnit.SECONDS );
+
+        assertThat( changed.getCode(), equalTo( 200 ) );
+        assertThat( slow.get( 10, TimeUnit.SECONDS ).getCode(), equalTo( 200 ) );
+        assertThat( server.getAcceptedConnections(), equalTo( 2 ) );
+
+        // the old connection closes once its stream is done
+        long deadline = System.currentTimeMillis() + 10000;
+        while ( server.getOpenConnections() > 1 && System.currentTimeMillis() < deadline )
+        {
+            Thread.sleep( 10 );
+        }
+        assertThat( server.getOpenConnections(), equalTo( 1 ) );
+    }
+
+    @Test( expected = JHttpCException.class )
+    public void proxiedSitesAreRejected()
+            throws Exception
+    {
+        factory = new H2HttpFactory( passwords );
+        factory.execute( site( "h2-proxied" ).withProxyHost( "localhost" ).withProxyPort( 3128 ).build(),
+                         SimpleRequestBuilder.get( server.formatUrl( "/" ) ).build() );
+    }
+
+    @Test( expected = IllegalStateException.class )
+    public void closedFactoryRefusesRequests()
+            throws Exception
+    {
+        factory = new H2HttpFactory( passwords );
+        factory.close();
+        factory.execute( site( "h2-closed" ).build(), SimpleRequestBuilder.get( server.formatUrl( "/" ) ).build() );
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.unit;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.commonjava.test.http.junit4.expect.ExpectationServerWrapper;
+import org.commonjava.util.jhttpc.HttpFactory;
+import org.commonjava.util.jhttpc.auth.MemoryPasswordManager;
+import org.commonjava.util.jhttpc.model.SiteConfig;
+import org.commonjava.util.jhttpc.model.SiteConfigBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class IdleConnectionEvictionTest
+{
+
+    @Rule
+    public ExpectationServerWrapper server = new ExpectationServerWrapper();
+
+    private HttpFactory factory;
+
+    @Before
+    public void setup()
+    {
+        factory = new HttpFactory( new MemoryPasswordManager() );
+    }
+
+    @After
+    public void teardown()
+    {
+        factory.shutdownNow();
+    }
+
+    @Test
+    public void idlePooledConnectionIsEvictedInBackground()
+            throws Exception
+    {
+        final String path = "/path/to/idle";
+        server.expect( "GET", server.formatUrl( path ), 200, "idle" );
+
+        SiteConfig config =
+                new SiteConfigBuilder( "idle", server.formatUrl() ).withIdleConnectionTimeoutSeconds( 1 ).build();
+
+        CloseableHttpClient client = null;
+        try
+        {
+            client = factory.createClient( config );
+            try (CloseableHttpResponse response = client.execute( new HttpGet( server.formatUrl( path ) ) ))
+            {
+                assertThat( response.getStatusLine().getStatusCode(), equalTo( 200 ) );
+                EntityUtils.consume( response.getEntity() );
+            }
+        }
+        finally
+        {
+            IOUtils.closeQuietly( client );
+        }
+
+        long expires = System.currentTimeMillis() + 5000;
+        while ( factory.getEvictedConnectionCount() < 1 && System.currentTimeMillis() < expires )
+        {
+            Thread.sleep( 100 );
+        }
+
+        assertThat( factory.getEvictedConnectionCount(), equalTo( 1L ) );
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.unit;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+import org.commonjava.test.http.junit4.expect.ExpectationServerWrapper;
+import org.commonjava.util.jhttpc.HttpFactory;
+import org.commonjava.util.jhttpc.INTERNAL.conn.TrackedHttpClient;
+import org.commonjava.util.jhttpc.auth.MemoryPasswordManager;
+import org.commonjava.util.jhttpc.model.SiteConfig;
+import org.commonjava.util.jhttpc.model.SiteConfigBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class InFlightTrackingTest
+{
+
+    private static final String PATH = "/path/to/in-flight";
+
+    @Rule
+    public ExpectationServerWrapper server = new ExpectationServerWrapper();
+
+    private HttpFactory factory;
+
+    @Before
+    public void setup()
+    {
+        factory = new HttpFactory( new MemoryPasswordManager() );
+        server.expect( "GET", server.formatUrl( PATH ), 200, "in flight" );
+    }
+
+    @After
+    public void teardown()
+    {
+        factory.shutdownNow();
+    }
+
+    @Test
+    public void exchangesLeaveRegistryWhenClosedOrConsumed()
+            throws Exception
+    {
+        SiteConfig config = new SiteConfigBuilder( "in-flight", server.formatUrl() ).build();
+        try (TrackedHttpClient client = (TrackedHttpClient) factory.createClient( config ))
+        {
+            CloseableHttpResponse closed = client.execute( new HttpGet( server.formatUrl( PATH ) ) );
+            CloseableHttpResponse consumed = client.execute( new HttpGet( server.formatUrl( PATH ) ) );
+            CloseableHttpResponse streamed = client.execute( new HttpGet( server.formatUrl( PATH ) ) );
+            assertThat( client.getInFlightCount(), equalTo( 3 ) );
+
+            closed.close();
+            assertThat( client.getInFlightCount(), equalTo( 2 ) );
+
+            assertThat( EntityUtils.toString( consumed.getEntity() ), equalTo( "in flight" ) );
+            assertThat( client.getInFlightCount(), equalTo( 1 ) );
+
+            try (InputStream in = streamed.getEntity().getContent())
+            {
+                assertThat( IOUtils.toString( in ), equalTo( "in flight" ) );
+            }
+            assertThat( client.getInFlightCount(), equalTo( 0 ) );
+        }
+    }
+
+    @Test
+    public void closeCleansUpOnlyWhatIsStillOpen()
+            throws Exception
+    {
+        SiteConfig config = new SiteConfigBuilder( "in-flight", server.formatUrl() ).build();
+        TrackedHttpClient client = (TrackedHttpClient) factory.createClient( config );
+
+        CloseableHttpResponse done = client.execute( new HttpGet( server.formatUrl( PATH ) ) );
+        EntityUtils.consume( done.getEntity() );
+        client.execute( new HttpGet( server.formatUrl( PATH ) ) );
+        assertThat( client.getInFlightCount(), equalTo( 1 ) );
+
+        client.close();
+        assertThat( client.getInFlightCount(), equalTo( 0 ) );
+        assertThat( factory.getPoolStats( config ).getLeased(), equalTo( 0 ) );
+    }
+
+    @Test
+    public void concurrentExchangesOnOneHandle()
+            throws Exception
+    {
+        SiteConfig config = new SiteConfigBuilder( "in-flight", server.formatUrl() ).withMaxConnections( 8 ).build();
+        ExecutorService executor = Executors.newFixedThreadPool( 8 );
+        try (TrackedHttpClient client = (TrackedHttpClient) factory.createClient( config ))
+        {
+            List<Future<String>> results = new ArrayList<>();
+            for ( int i = 0; i < 200; i++ )
+            {
+                results.add( executor.submit( () -> {
+                    try (CloseableHttpResponse response = client.execute( new HttpGet( server.formatUrl( PATH ) ) ))
+                    {
+                        return EntityUtils.toString( response.getEntity() );
+                    }
+                } ) );
+            }
+
+            for ( Future<String> result : results )
+            {
+                assertThat( result.get( 30, TimeUnit.SECONDS ), equalTo( "in flight" ) );
+            }
+            assertThat( client.getInFlightCount(), equalTo( 0 ) );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.unit;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.commonjava.test.http.junit4.expect.ExpectationServerWrapper;
+import org.commonjava.util.jhttpc.HttpFactory;
+import org.commonjava.util.jhttpc.auth.MemoryPasswordManager;
+import org.commonjava.util.jhttpc.model.ConnectionLeak;
+import org.commonjava.util.jhttpc.model.HttpFactoryConfigBuilder;
+import org.commonjava.util.jhttpc.model.SiteConfig;
+import org.commonjava.util.jhttpc.model.SiteConfigBuilder;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class LeakDetectionTest
+{
+
+    private static final String PATH = "/path/to/leak";
+
+    @Rule
+    public ExpectationServerWrapper server = new ExpectationServerWrapper();
+
+    private final BlockingQueue<ConnectionLeak> leaks = new LinkedBlockingQueue<>();
+
+    private HttpFactory factory;
+
+    @After
+    public void teardown()
+    {
+        if ( factory != null )
+        {
+            factory.shutdownNow();
+        }
+    }
+
+    @Test
+    public void unclosedResponseIsReportedOnceWithAcquiringStack()
+            throws Exception
+    {
+        start( 1.0 );
+        SiteConfig config = new SiteConfigBuilder( "leaky", server.formatUrl() ).build();
+
+        try (CloseableHttpClient client = factory.createClient( config ))
+        {
+            CloseableHttpResponse closed = client.execute( new HttpGet( server.formatUrl( PATH ) ) );
+            EntityUtils.consume( closed.getEntity() );
+            closed.close();
+
+            CloseableHttpResponse leaked = client.execute( new HttpGet( server.formatUrl( PATH ) ) );
+
+            ConnectionLeak leak = leaks.poll( 10, TimeUnit.SECONDS );
+            assertThat( leak, notNullValue() );
+            assertThat( leak.getSiteId(), equalTo( "leaky" ) );
+            assertTrue( leak.getRoute(), leak.getRoute().endsWith( ":" + new URL( server.formatUrl() ).getPort() ) );
+            assertTrue( leak.getHeldMillis() >= 200 );
+            assertTrue( leak.isSampled() );
+            assertTrue( Arrays.toString( leak.getAcquisitionTrace() ),
+                        Arrays.stream( leak.getAcquisitionTrace() )
+                              .anyMatch( e -> e.getClassName().equals( getClass().getName() ) ) );
+
+            // reported once, and the properly closed response was never reported
+            assertThat( leaks.poll( 2, TimeUnit.SECONDS ), nullValue() );
+
+            leaked.close();
+        }
+    }
+
+    @Test
+    public void unsampledLeakIsStillReported()
+            throws Exception
+    {
+        start( 0.0 );
+        SiteConfig config = new SiteConfigBuilder( "leaky", server.formatUrl() ).build();
+
+        try (CloseableHttpClient client = factory.createClient( config ))
+        {
+            CloseableHttpResponse leaked = client.execute( new HttpGet( server.formatUrl( PATH ) ) );
+
+            ConnectionLeak leak = leaks.poll( 10, TimeUnit.SECONDS );
+            assertThat( leak, notNullValue() );
+            assertThat( leak.isSampled(), equalTo( false ) );
+            assertThat( leak.getAcquisitionTrace().length, equalTo( 0 ) );
+
+            leaked.close();
+        }
+    }
+
+    private void start( final double sampleRate )
+    {
+        server.expect( "GET", server.formatUrl( PATH ), 200, "leaking" );
+        factory = new HttpFactory( new MemoryPasswordManager(),
+                                   new HttpFactoryConfigBuilder().withLeakDetectionThresholdMillis( 200L )
+                                                                 .withLeakDetectionSampleRate( sampleRate )
+                                                                 .withConnectionLeakListener( leaks::add )
+                                                                 .build() );
+    }
+}
@@ -0,0 +1,273 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.unit;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.conn.ManagedHttpClientConnectionFactory;
+import org.apache.http.util.EntityUtils;
+import org.commonjava.test.http.junit4.expect.ExpectationServerWrapper;
+import org.commonjava.util.jhttpc.ConnectionPoolSaturatedException;
+import org.commonjava.util.jhttpc.HttpFactory;
+import org.commonjava.util.jhttpc.INTERNAL.conn.SitePoolingConnectionManager;
+import org.commonjava.util.jhttpc.auth.MemoryPasswordManager;
+import org.commonjava.util.jhttpc.model.SiteConfig;
+import org.commonjava.util.jhttpc.model.SiteConfigBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LeaseTimeoutTest
+{
+
+    private static final String PATH = "/path/to/lease";
+
+    private static final String GATE_FRAME = "org.commonjava.util.jhttpc.INTERNAL.conn.LeaseGate.enter";
+
+    @Rule
+    public ExpectationServerWrapper server = new ExpectationServerWrapper();
+
+    private HttpFactory factory;
+
+    @Before
+    public void setup()
+    {
+        factory = new HttpFactory( new MemoryPasswordManager() );
+        server.expect( "GET", server.formatUrl( PATH ), 200, "leased" );
+    }
+
+    @After
+    public void teardown()
+    {
+        factory.shutdownNow();
+    }
+
+    @Test
+    public void leaseWaitIsBoundedByPoolTimeoutSeconds()
+            throws Exception
+    {
+        SiteConfig config = new SiteConfigBuilder( "lease", server.formatUrl() ).withMaxConnections( 1 )
+                                                                                .withConnectionPoolTimeoutSeconds( 1 )
+                                                                                .build();
+
+        try (CloseableHttpClient client = factory.createClient( config );
+             CloseableHttpResponse held = client.execute( new HttpGet( server.formatUrl( PATH ) ) ))
+        {
+            assertTimesOut( () -> client.execute( new HttpGet( server.formatUrl( PATH ) ) ) );
+            assertTimesOut( () -> client.execute( new HttpGet( server.formatUrl( PATH ) ),
+                                                  factory.createContext( config ) ) );
+        }
+    }
+
+    @Test
+    public void saturatedPoolRejectsImmediately()
+            throws Exception
+    {
+        SiteConfig config = new SiteConfigBuilder( "lease", server.formatUrl() ).withMaxConnections( 1 )
+                                                                                .withConnectionPoolTimeoutSeconds( 30 )
+                                                                                .withMaxPendingLeases( 1 )
+                                                                                .build();
+
+        try (CloseableHttpClient client = factory.createClient( config ))
+        {
+            CloseableHttpResponse held = client.execute( new HttpGet( server.formatUrl( PATH ) ) );
+
+            CompletableFuture<String> waiting = CompletableFuture.supplyAsync( () -> {
+                try (CloseableHttpResponse response = client.execute( new HttpGet( server.formatUrl( PATH ) ) ))
+                {
+                    return EntityUtils.toString( response.getEntity() );
+                }
+                catch ( Exception e )
+                {
+                    throw new IllegalStateException( e );
+                }
+            } );
+
+            long deadline = System.currentTimeMillis() + 10000;
+            while ( factory.getPoolStats( config ).getPending() < 1 && System.currentTimeMillis() < deadline )
+            {
+                Thread.sleep( 10 );
+            }
+
+            long start = System.nanoTime();
+            try
+            {
+                client.execute( new HttpGet( server.formatUrl( PATH ) ) ).close();
+                fail( "Lease should have been rejected" );
+            }
+            catch ( ConnectionPoolSaturatedException e )
+            {
+                assertThat( e.getPendingLeases(), equalTo( 1 ) );
+            }
+            assertTrue( TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start ) < 1000 );
+            assertThat( factory.getPoolStats( config ).getRejectedLeases(), equalTo( 1L ) );
+
+            EntityUtils.consume( held.getEntity() );
+            held.close();
+            assertThat( waiting.get( 10, TimeUnit.SECONDS ), equalTo( "leased" ) );
+        }
+    }
+
+    @Test
+    public void leasesThePoolHasRoomForDontCountAsPending()
+            throws Exception
+    {
+        SitePoolingConnectionManager pool = new SitePoolingConnectionManager(
+                RegistryBuilder.<ConnectionSocketFactory>create()
+                               .register( "http", PlainConnectionSocketFactory.getSocketFactory() )
+                               .build(), ManagedHttpClientConnectionFactory.INSTANCE );
+        pool.setMaxTotal( 2 );
+        pool.setDefaultMaxPerRoute( 2 );
+        pool.setMaxPendingLeases( 1 );
+
+        HttpRoute route = new HttpRoute( new HttpHost( new URL( server.formatUrl() ).getHost(), server.getPort() ) );
+        ExecutorService executor = Executors.newFixedThreadPool( 2 );
+        try
+        {
+            for ( int i = 0; i < 50; i++ )
+            {
+                CyclicBarrier barrier = new CyclicBarrier( 2 );
+                Callable<HttpClientConnection> lease = () -> {
+                    barrier.await( 5, TimeUnit.SECONDS );
+                    return pool.requestConnection( route, null ).get( 5, TimeUnit.SECONDS );
+                };
+
+                Future<HttpClientConnection> first = executor.submit( lease );
+                Future<HttpClientConnection> second = executor.submit( lease );
+
+                // both fit in the pool, so neither waits, and neither is turned away by the pending cap
+                pool.releaseConnection( first.get( 10, TimeUnit.SECONDS ), null, 0, TimeUnit.SECONDS );
+                pool.releaseConnection( second.get( 10, TimeUnit.SECONDS ), null, 0, TimeUnit.SECONDS );
+            }
+
+            assertThat( pool.getRejectedLeases(), equalTo( 0L ) );
+            assertThat( pool.takeSample().getPeakPending(), equalTo( 0 ) );
+        }
+        finally
+        {
+            executor.shutdownNow();
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void waitingLeaseParksOutsideThePoolAndCanBeAborted()
+            throws Exception
+    {
+        SiteConfig config = new SiteConfigBuilder( "lease", server.formatUrl() ).withMaxConnections( 1 )
+                                                                                .withConnectionPoolTimeoutSeconds( 30 )
+                                                                                .build();
+
+        try (CloseableHttpClient client = factory.createClient( config );
+             CloseableHttpResponse held = client.execute( new HttpGet( server.formatUrl( PATH ) ) ))
+        {
+            HttpGet waitingGet = new HttpGet( server.formatUrl( PATH ) );
+            AtomicReference<Thread> waiter = new AtomicReference<>();
+            CompletableFuture<Void> waiting = CompletableFuture.runAsync( () -> {
+                waiter.set( Thread.currentThread() );
+                try (CloseableHttpResponse response = client.execute( waitingGet ))
+                {
+                    EntityUtils.consume( response.getEntity() );
+                }
+                catch ( IOException e )
+                {
+                    throw new UncheckedIOException( e );
+                }
+            } );
+
+            // HttpCore waits for a free connection while holding a monitor; the lease gate waits without one
+            String trace = "";
+            long deadline = System.currentTimeMillis() + 10000;
+            while ( !trace.contains( GATE_FRAME ) && System.currentTimeMillis() < deadline )
+            {
+                Thread.sleep( 10 );
+                Thread thread = waiter.get();
+                trace = thread == null ? "" : Arrays.toString( thread.getStackTrace() );
+            }
+
+            assertTrue( trace, trace.contains( GATE_FRAME ) );
+            assertFalse( trace, trace.contains( "AbstractConnPool" ) );
+
+            long start = System.nanoTime();
+            waitingGet.abort();
+            try
+            {
+                waiting.get( 10, TimeUnit.SECONDS );
+                fail( "Aborted lease should have failed" );
+            }
+            catch ( ExecutionException e )
+            {
+                long elapsed = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start );
+                assertTrue( "Waited " + elapsed + "ms", elapsed < 1000 );
+            }
+
+            EntityUtils.consume( held.getEntity() );
+        }
+
+        assertThat( factory.getPoolStats( config ).getLeased(), equalTo( 0 ) );
+    }
+
+    private void assertTimesOut( final Request request )
+            throws Exception
+    {
+        long start = System.nanoTime();
+        try
+        {
+            request.execute().close();
+            fail( "Lease should have timed out" );
+        }
+        catch ( ConnectionPoolTimeoutException e )
+        {
+            long elapsed = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start );
+            assertTrue( "Waited " + elapsed + "ms", elapsed >= 900 && elapsed < 5000 );
+        }
+    }
+
+    private interface Request
+    {
+        CloseableHttpResponse execute()
+                throws Exception;
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.unit;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.commonjava.test.http.junit4.expect.ExpectationServerWrapper;
+import org.commonjava.util.jhttpc.HttpFactory;
+import org.commonjava.util.jhttpc.INTERNAL.conn.LeaseWaitHistogram;
+import org.commonjava.util.jhttpc.auth.MemoryPasswordManager;
+import org.commonjava.util.jhttpc.model.LeaseWaitStats;
+import org.commonjava.util.jhttpc.model.SiteConfig;
+import org.commonjava.util.jhttpc.model.SiteConfigBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LeaseWaitStatsTest
+{
+
+    @Rule
+    public ExpectationServerWrapper server = new ExpectationServerWrapper();
+
+    private HttpFactory factory;
+
+    @Before
+    public void setup()
+    {
+        factory = new HttpFactory( new MemoryPasswordManager() );
+    }
+
+    @After
+    public void teardown()
+    {
+        factory.shutdownNow();
+    }
+
+    @Test
+    public void histogramPercentilesAreWithinBucketResolution()
+    {
+        LeaseWaitHistogram histogram = new LeaseWaitHistogram();
+        for ( int i = 1; i <= 100; i++ )
+        {
+            histogram.record( TimeUnit.MILLISECONDS.toNanos( i ) );
+        }
+        histogram.recordTimeout();
+
+        LeaseWaitStats stats = histogram.getStats();
+        assertThat( stats.getLeases(), equalTo( 100L ) );
+        assertThat( stats.getTimeouts(), equalTo( 1L ) );
+        assertThat( stats.getMaxMillis(), equalTo( 100.0 ) );
+        assertTrue( "p50 was: " + stats.getP50Millis(),
+                    stats.getP50Millis() >= 50.0 && stats.getP50Millis() <= 50.0 * 1.25 );
+        assertTrue( "p99 was: " + stats.getP99Millis(),
+                    stats.getP99Millis() >= 99.0 && stats.getP99Millis() <= 100.0 );
+    }
+
+    @Test
+    public void leaseTimeoutIsCountedWhenPoolIsExhausted()
+            throws Exception
+    {
+        final String path = "/path/to/busy";
+        server.expect( "GET", server.formatUrl( path ), 200, "busy" );
+
+        SiteConfig config = new SiteConfigBuilder( "busy", server.formatUrl() ).withMaxConnections( 1 ).build();
+
+        HttpClientContext ctx = HttpClientContext.create();
+        ctx.setRequestConfig( RequestConfig.custom().setConnectionRequestTimeout( 100 ).build() );
+
+        CloseableHttpClient client = null;
+        try
+        {
+            client = factory.createClient( config );
+            try (CloseableHttpResponse response = client.execute( new HttpGet( server.formatUrl( path ) ), ctx ))
+            {
+                try
+                {
+                    client.execute( new HttpGet( server.formatUrl( path ) ), ctx );
+                    fail( "Second request should not get a connection while the only one is leased" );
+                }
+                catch ( ConnectionPoolTimeoutException e )
+                {
+                    // expected
+                }
+
+                EntityUtils.consume( response.getEntity() );
+            }
+        }
+        finally
+        {
+            IOUtils.closeQuietly( client );
+        }
+
+        LeaseWaitStats stats = factory.getPoolStats( config ).getLeaseWait();
+        assertThat( stats.getLeases(), equalTo( 1L ) );
+        assertThat( stats.getTimeouts(), equalTo( 1L ) );
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.unit;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+import org.commonjava.test.http.junit4.expect.ExpectationServerWrapper;
+import org.commonjava.util.jhttpc.HttpFactory;
+import org.commonjava.util.jhttpc.auth.MemoryPasswordManager;
+import org.commonjava.util.jhttpc.model.SiteConfig;
+import org.commonjava.util.jhttpc.model.SiteConfigBuilder;
+import org.commonjava.util.jhttpc.model.SitePoolStats;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+public class ManagedExecuteTest
+{
+
+    private static final String PATH = "/path/to/managed";
+
+    private static final String CONTENT = "managed content";
+
+    @Rule
+    public ExpectationServerWrapper server = new ExpectationServerWrapper();
+
+    private HttpFactory factory;
+
+    private SiteConfig config;
+
+    @Before
+    public void setup()
+    {
+        factory = new HttpFactory( new MemoryPasswordManager() );
+        server.expect( "GET", server.formatUrl( PATH ), 200, CONTENT );
+        config = new SiteConfigBuilder( "managed", server.formatUrl() ).withMaxConnections( 2 ).build();
+    }
+
+    @After
+    public void teardown()
+    {
+        factory.shutdownNow();
+    }
+
+    @Test
+    public void handlerResultIsReturnedAndEverythingReleased()
+            throws Exception
+    {
+        String body = factory.execute( config, new HttpGet( server.formatUrl( PATH ) ),
+                                       response -> EntityUtils.toString( response.getEntity() ) );
+        assertThat( body, equalTo( CONTENT ) );
+        assertReleased();
+
+        try
+        {
+            factory.execute( config, new HttpGet( server.formatUrl( PATH ) ), response -> {
+                throw new IOException( "handler failed" );
+            } );
+            fail( "Handler failure should propagate" );
+        }
+        catch ( IOException e )
+        {
+            assertThat( e.getMessage(), equalTo( "handler failed" ) );
+        }
+        assertReleased();
+    }
+
+    @Test
+    public void streamedResponseIsReleasedAtEndOfContentOrClose()
+            throws Exception
+    {
+        try (CloseableHttpResponse response = factory.executeStreaming( config,
+                                                                       new HttpGet( server.formatUrl( PATH ) ) ))
+        {
+            assertThat( factory.getPoolStats( config ).getUsers(), equalTo( 1 ) );
+            try (InputStream in = response.getEntity().getContent())
+            {
+                assertThat( IOUtils.toString( in, StandardCharsets.UTF_8 ), equalTo( CONTENT ) );
+            }
+            assertReleased();
+        }
+        assertReleased();
+
+        CloseableHttpResponse unread = factory.executeStreaming( config, new HttpGet( server.formatUrl( PATH ) ) );
+        unread.close();
+        assertReleased();
+    }
+
+    @Test
+    public void concurrentCallsShareTheSitePool()
+            throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool( 8 );
+        try
+        {
+            List<Future<String>> results = new ArrayList<>();
+            for ( int i = 0; i < 200; i++ )
+            {
+                results.add( executor.submit(
+                        () -> factory.execute( config, new HttpGet( server.formatUrl( PATH ) ),
+                                               response -> EntityUtils.toString( response.getEntity() ) ) ) );
+            }
+
+            for ( Future<String> result : results )
+            {
+                assertThat( result.get( 30, TimeUnit.SECONDS ), equalTo( CONTENT ) );
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+        assertReleased();
+    }
+
+    private void assertReleased()
+    {
+        SitePoolStats stats = factory.getPoolStats( config );
+        assertThat( stats.getLeased(), equalTo( 0 ) );
+        assertThat( stats.getUsers(), equalTo( 0 ) );
+    }
+}
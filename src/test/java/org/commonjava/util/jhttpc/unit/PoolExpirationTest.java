@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.unit;
+
+import org.apache.commons.io.IOUtils;
+import org.commonjava.util.jhttpc.HttpFactory;
+import org.commonjava.util.jhttpc.auth.MemoryPasswordManager;
+import org.commonjava.util.jhttpc.model.HttpFactoryConfigBuilder;
+import org.commonjava.util.jhttpc.model.SiteConfig;
+import org.commonjava.util.jhttpc.model.SiteConfigBuilder;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class PoolExpirationTest
+{
+
+    private HttpFactory factory;
+
+    @After
+    public void teardown()
+    {
+        if ( factory != null )
+        {
+            factory.shutdownNow();
+        }
+    }
+
+    @Test
+    public void siteExpirationOverridesFactoryDefault()
+    {
+        factory = new HttpFactory( new MemoryPasswordManager(),
+                                   new HttpFactoryConfigBuilder().withConnectionPoolExpirationSeconds( 10 ).build() );
+
+        SiteConfig defaulted = new SiteConfigBuilder( "defaulted", "http://localhost:8080/" ).build();
+        SiteConfig explicit = new SiteConfigBuilder( "explicit", "http://localhost:8080/" ).withConnectionPoolExpirationSeconds(
+                45 ).build();
+
+        assertThat( factory.getConnectionPoolExpirationMillis( defaulted ), equalTo( 10000L ) );
+        assertThat( factory.getConnectionPoolExpirationMillis( explicit ), equalTo( 45000L ) );
+    }
+
+    @Test
+    public void adaptiveExpirationShrinksForOneShotAndStretchesForPeriodicSite()
+            throws Exception
+    {
+        factory = new HttpFactory( new MemoryPasswordManager(), new HttpFactoryConfigBuilder().withAdaptivePoolExpiration(
+                true ).withMinConnectionPoolExpirationSeconds( 1 ).withMaxConnectionPoolExpirationSeconds( 60 ).build() );
+
+        SiteConfig config = new SiteConfigBuilder( "periodic", "http://localhost:8080/" ).withConnectionPoolExpirationSeconds(
+                1 ).build();
+
+        IOUtils.closeQuietly( factory.createClient( config ) );
+        assertThat( factory.getConnectionPoolExpirationMillis( config ), equalTo( 1000L ) );
+
+        // the pool expires in between; the site's history must survive that
+        Thread.sleep( 2500 );
+        IOUtils.closeQuietly( factory.createClient( config ) );
+
+        long expiration = factory.getConnectionPoolExpirationMillis( config );
+        assertThat( "Expiration should stretch past the observed gap, was: " + expiration, expiration > 2500,
+                    equalTo( true ) );
+    }
+}
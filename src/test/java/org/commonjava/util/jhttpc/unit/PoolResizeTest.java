@@ -0,0 +1,250 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.unit;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.ssl.DefaultHostnameVerifier;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.commonjava.test.http.junit4.expect.ExpectationServerWrapper;
+import org.commonjava.util.jhttpc.HttpFactory;
+import org.commonjava.util.jhttpc.INTERNAL.conn.CloseBlockingConnectionManager;
+import org.commonjava.util.jhttpc.INTERNAL.conn.ConnectionManagerCache;
+import org.commonjava.util.jhttpc.INTERNAL.conn.ConnectionManagerTracker;
+import org.commonjava.util.jhttpc.INTERNAL.conn.PoolSample;
+import org.commonjava.util.jhttpc.INTERNAL.conn.SiteConnectionConfig;
+import org.commonjava.util.jhttpc.auth.MemoryPasswordManager;
+import org.commonjava.util.jhttpc.model.SiteConfig;
+import org.commonjava.util.jhttpc.model.SiteConfigBuilder;
+import org.commonjava.util.jhttpc.model.SitePoolStats;
+import org.commonjava.util.jhttpc.model.SiteTrustType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLContext;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class PoolResizeTest
+{
+
+    private static final String PATH = "/path/to/resize";
+
+    @Rule
+    public ExpectationServerWrapper server = new ExpectationServerWrapper();
+
+    private HttpFactory factory;
+
+    private HttpClientContext ctx;
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        factory = new HttpFactory( new MemoryPasswordManager() );
+        server.expect( "GET", server.formatUrl( PATH ), 200, "resize" );
+
+        ctx = HttpClientContext.create();
+        ctx.setRequestConfig( RequestConfig.custom().setConnectionRequestTimeout( 1000 ).build() );
+    }
+
+    @After
+    public void teardown()
+    {
+        factory.shutdownNow();
+    }
+
+    @Test
+    public void raisedLimitAppliesToLivePool()
+            throws Exception
+    {
+        SiteConfig small = new SiteConfigBuilder( "resize", server.formatUrl() ).withMaxConnections( 1 ).build();
+        SiteConfig large = new SiteConfigBuilder( "resize", server.formatUrl() ).withMaxConnections( 2 ).build();
+
+        CloseableHttpClient first = null;
+        CloseableHttpClient second = null;
+        try
+        {
+            first = factory.createClient( small );
+            try (CloseableHttpResponse held = first.execute( new HttpGet( server.formatUrl( PATH ) ), ctx ))
+            {
+                // with the old limit this lease would time out
+                second = factory.createClient( large );
+                try (CloseableHttpResponse response = second.execute( new HttpGet( server.formatUrl( PATH ) ), ctx ))
+                {
+                    assertThat( response.getStatusLine().getStatusCode(), equalTo( 200 ) );
+
+                    SitePoolStats stats = factory.getPoolStats( large );
+                    assertThat( stats.getMaxTotal(), equalTo( 2 ) );
+                    assertThat( stats.getLeased(), equalTo( 2 ) );
+                    assertThat( stats.getUsers(), equalTo( 2 ) );
+
+                    EntityUtils.consume( response.getEntity() );
+                }
+
+                EntityUtils.consume( held.getEntity() );
+            }
+        }
+        finally
+        {
+            IOUtils.closeQuietly( first );
+            IOUtils.closeQuietly( second );
+        }
+    }
+
+    @Test
+    public void changedSslSettingsSwapToNewPool()
+            throws Exception
+    {
+        SiteConfig original = new SiteConfigBuilder( "swap", server.formatUrl() ).build();
+        SiteConfig changed = new SiteConfigBuilder( "swap", server.formatUrl() ).withTrustType(
+                SiteTrustType.TRUST_SELF_SIGNED ).build();
+
+        CloseableHttpClient first = null;
+        CloseableHttpClient second = null;
+        try
+        {
+            first = factory.createClient( original );
+            try (CloseableHttpResponse held = first.execute( new HttpGet( server.formatUrl( PATH ) ), ctx ))
+            {
+                second = factory.createClient( changed );
+
+                // the new pool doesn't share the old pool's leased connection or its user
+                SitePoolStats stats = factory.getPoolStats( changed );
+                assertThat( stats.getUsers(), equalTo( 1 ) );
+                assertThat( stats.getLeased(), equalTo( 0 ) );
+
+                try (CloseableHttpResponse response = second.execute( new HttpGet( server.formatUrl( PATH ) ), ctx ))
+                {
+                    assertThat( response.getStatusLine().getStatusCode(), equalTo( 200 ) );
+                    EntityUtils.consume( response.getEntity() );
+                }
+
+                // the old pool still serves the response it leased before the swap
+                assertThat( held.getStatusLine().getStatusCode(), equalTo( 200 ) );
+                EntityUtils.consume( held.getEntity() );
+            }
+        }
+        finally
+        {
+            IOUtils.closeQuietly( first );
+            IOUtils.closeQuietly( second );
+        }
+
+        assertThat( factory.getPoolStats().size(), equalTo( 1 ) );
+    }
+
+    @Test
+    public void equalConfigLeavesLivePoolAndClientsAlone()
+            throws Exception
+    {
+        SiteConfig original = adaptiveConfig();
+        SiteConfig copy = adaptiveConfig();
+
+        ConnectionManagerCache cache = new ConnectionManagerCache();
+        try
+        {
+            ConnectionManagerTracker tracker = cache.getTrackerFor( new SiteConnectionConfig( original ) );
+            CloseBlockingConnectionManager manager = tracker.acquire();
+
+            AtomicInteger builds = new AtomicInteger();
+            ConnectionManagerTracker.ClientBuilder builder = mgr -> {
+                builds.incrementAndGet();
+                return HttpClients.custom().setConnectionManager( mgr ).build();
+            };
+            tracker.getSharedClient( null, manager, builder );
+
+            // waiting leases grow the adaptive pool past its configured size
+            long ms = TimeUnit.MILLISECONDS.toNanos( 1 );
+            tracker.adjustPoolSize( new PoolSample( 20, 30 * ms, 3, 0, 20, 20 * ms, 3, 4 ) );
+            int grown = tracker.getOwnLimit();
+            assertThat( grown > 4, equalTo( true ) );
+
+            assertThat( cache.getTrackerFor( new SiteConnectionConfig( copy ) ), sameInstance( tracker ) );
+            assertThat( tracker.getSiteConfig(), sameInstance( copy ) );
+
+            assertThat( tracker.getOwnLimit(), equalTo( grown ) );
+            tracker.getSharedClient( null, manager, builder );
+            assertThat( builds.get(), equalTo( 1 ) );
+
+            tracker.release();
+        }
+        finally
+        {
+            cache.shutdownNow();
+        }
+    }
+
+    @Test
+    public void hostnameVerificationChangeSwapsToNewPool()
+            throws Exception
+    {
+        SiteConfig verified = new SiteConfigBuilder( "verify", server.formatUrl() ).build();
+        SiteConfig unverified =
+                new SiteConfigBuilder( "verify", server.formatUrl() ).withIgnoreHostnameVerification( true ).build();
+
+        ConnectionManagerCache cache = new ConnectionManagerCache();
+        try
+        {
+            ConnectionManagerTracker first = cache.getTrackerFor( sslConnectionConfig( verified ) );
+            ConnectionManagerTracker relaxed = cache.getTrackerFor( sslConnectionConfig( unverified ) );
+            assertThat( relaxed == first, equalTo( false ) );
+
+            // turning verification back on must not keep the pool whose socket factory skips it
+            ConnectionManagerTracker restored = cache.getTrackerFor( sslConnectionConfig( verified ) );
+            assertThat( restored == relaxed, equalTo( false ) );
+            assertThat( restored.getConnectionConfig().getConfig().isIgnoreHostnameVerification(),
+                        equalTo( false ) );
+        }
+        finally
+        {
+            cache.shutdownNow();
+        }
+    }
+
+    private SiteConnectionConfig sslConnectionConfig( final SiteConfig config )
+            throws Exception
+    {
+        HostnameVerifier verifier = config.isIgnoreHostnameVerification() ?
+                NoopHostnameVerifier.INSTANCE :
+                new DefaultHostnameVerifier();
+
+        return new SiteConnectionConfig( config ).withSSLConnectionSocketFactory(
+                new SSLConnectionSocketFactory( SSLContext.getDefault(), verifier ) );
+    }
+
+    private SiteConfig adaptiveConfig()
+    {
+        return new SiteConfigBuilder( "equal", server.formatUrl() ).withMaxConnections( 4 )
+                                                                   .withAdaptivePoolMinConnections( 2 )
+                                                                   .withAdaptivePoolMaxConnections( 10 )
+                                                                   .build();
+    }
+}
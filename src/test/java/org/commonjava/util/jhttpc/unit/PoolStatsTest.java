@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.unit;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.commonjava.test.http.junit4.expect.ExpectationServerWrapper;
+import org.commonjava.util.jhttpc.HttpFactory;
+import org.commonjava.util.jhttpc.auth.MemoryPasswordManager;
+import org.commonjava.util.jhttpc.model.SiteConfig;
+import org.commonjava.util.jhttpc.model.SiteConfigBuilder;
+import org.commonjava.util.jhttpc.model.SitePoolStats;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class PoolStatsTest
+{
+
+    @Rule
+    public ExpectationServerWrapper server = new ExpectationServerWrapper();
+
+    private HttpFactory factory;
+
+    @Before
+    public void setup()
+    {
+        factory = new HttpFactory( new MemoryPasswordManager() );
+    }
+
+    @After
+    public void teardown()
+    {
+        factory.shutdownNow();
+    }
+
+    @Test
+    public void statsTrackLeasedAndAvailableConnections()
+            throws Exception
+    {
+        final String path = "/path/to/stats";
+        server.expect( "GET", server.formatUrl( path ), 200, "stats" );
+
+        SiteConfig config = new SiteConfigBuilder( "stats", server.formatUrl() ).withMaxConnections( 7 ).build();
+
+        assertThat( factory.getPoolStats( config ), nullValue() );
+
+        CloseableHttpClient client = null;
+        try
+        {
+            client = factory.createClient( config );
+            try (CloseableHttpResponse response = client.execute( new HttpGet( server.formatUrl( path ) ) ))
+            {
+                SitePoolStats stats = factory.getPoolStats( config );
+                assertThat( stats, notNullValue() );
+                assertThat( stats.getUsers(), equalTo( 1 ) );
+                assertThat( stats.getMaxTotal(), equalTo( 7 ) );
+                assertThat( stats.getLeased(), equalTo( 1 ) );
+                assertThat( stats.getPending(), equalTo( 0 ) );
+                assertThat( stats.getRoutes().size(), equalTo( 1 ) );
+
+                EntityUtils.consume( response.getEntity() );
+            }
+
+            assertThat( factory.getPoolStats( config ).getLeased(), equalTo( 0 ) );
+        }
+        finally
+        {
+            IOUtils.closeQuietly( client );
+        }
+
+        // available counts are refreshed by the background reaper
+        long expires = System.currentTimeMillis() + 5000;
+        while ( factory.getPoolStats( config ).getAvailable() < 1 && System.currentTimeMillis() < expires )
+        {
+            Thread.sleep( 100 );
+        }
+
+        SitePoolStats stats = factory.getPoolStats( config );
+        assertThat( stats.getAvailable(), equalTo( 1 ) );
+        assertThat( stats.getUsers(), equalTo( 0 ) );
+        assertThat( factory.getPoolStats().size(), equalTo( 1 ) );
+    }
+}
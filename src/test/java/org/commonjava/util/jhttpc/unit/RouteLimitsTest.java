@@ -0,0 +1,119 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.unit;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpHost;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.commonjava.test.http.junit4.expect.ExpectationServerWrapper;
+import org.commonjava.util.jhttpc.HttpFactory;
+import org.commonjava.util.jhttpc.INTERNAL.conn.RouteLimits;
+import org.commonjava.util.jhttpc.auth.MemoryPasswordManager;
+import org.commonjava.util.jhttpc.model.RoutePoolStats;
+import org.commonjava.util.jhttpc.model.SiteConfig;
+import org.commonjava.util.jhttpc.model.SiteConfigBuilder;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class RouteLimitsTest
+{
+
+    @Rule
+    public ExpectationServerWrapper server = new ExpectationServerWrapper();
+
+    private HttpFactory factory;
+
+    @After
+    public void teardown()
+    {
+        if ( factory != null )
+        {
+            factory.shutdownNow();
+        }
+    }
+
+    @Test
+    public void mostSpecificPatternWins()
+    {
+        Map<String, Integer> limits = new LinkedHashMap<>();
+        limits.put( "*", 2 );
+        limits.put( "*.example.com", 4 );
+        limits.put( "*.cdn.example.com", 40 );
+        limits.put( "origin.example.com", 8 );
+        limits.put( "origin.example.com:8443", 6 );
+
+        RouteLimits routeLimits = new RouteLimits( limits );
+
+        assertThat( routeLimits.match( route( "origin.example.com", 443 ) ).getMax(), equalTo( 8 ) );
+        assertThat( routeLimits.match( route( "origin.example.com", 8443 ) ).getMax(), equalTo( 6 ) );
+        assertThat( routeLimits.match( route( "eu.cdn.example.com", 443 ) ).getMax(), equalTo( 40 ) );
+        assertThat( routeLimits.match( route( "mirror.example.com", 443 ) ).getMax(), equalTo( 4 ) );
+        assertThat( routeLimits.match( route( "example.org", 443 ) ).getPattern(), equalTo( "*" ) );
+
+        limits.remove( "*" );
+        assertThat( new RouteLimits( limits ).match( route( "example.com", 443 ) ), nullValue() );
+    }
+
+    @Test
+    public void routeLimitIsAppliedAndReported()
+            throws Exception
+    {
+        final String path = "/path/to/route";
+        server.expect( "GET", server.formatUrl( path ), 200, "route" );
+
+        String pattern = new URL( server.formatUrl() ).getHost() + ":" + server.getPort();
+        SiteConfig config = new SiteConfigBuilder( "route", server.formatUrl() ).withMaxConnections( 10 )
+                                                                                .withRouteLimit( pattern, 3 )
+                                                                                .build();
+
+        factory = new HttpFactory( new MemoryPasswordManager() );
+        CloseableHttpClient client = null;
+        try
+        {
+            client = factory.createClient( config );
+            try (CloseableHttpResponse response = client.execute( new HttpGet( server.formatUrl( path ) ) ))
+            {
+                EntityUtils.consume( response.getEntity() );
+            }
+
+            RoutePoolStats route = factory.getPoolStats( config ).getRoutes().get( 0 );
+            assertThat( route.getMax(), equalTo( 3 ) );
+            assertThat( route.getLimitSource(), equalTo( pattern ) );
+        }
+        finally
+        {
+            IOUtils.closeQuietly( client );
+        }
+    }
+
+    private static HttpRoute route( final String host, final int port )
+    {
+        return new HttpRoute( new HttpHost( host, port, "https" ) );
+    }
+}
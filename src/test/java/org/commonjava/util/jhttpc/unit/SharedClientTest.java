@@ -0,0 +1,189 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.unit;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.Header;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.BasicResponseHandler;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.util.EntityUtils;
+import org.commonjava.test.http.junit4.expect.ExpectationServerWrapper;
+import org.commonjava.util.jhttpc.HttpFactory;
+import org.commonjava.util.jhttpc.auth.ClientAuthenticator;
+import org.commonjava.util.jhttpc.auth.MemoryPasswordManager;
+import org.commonjava.util.jhttpc.model.SiteConfig;
+import org.commonjava.util.jhttpc.model.SiteConfigBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class SharedClientTest
+{
+
+    private static final String PATH = "/path/to/shared";
+
+    @Rule
+    public ExpectationServerWrapper server = new ExpectationServerWrapper();
+
+    private HttpFactory factory;
+
+    @Before
+    public void setup()
+    {
+        factory = new HttpFactory( new MemoryPasswordManager() );
+        server.expect( "GET", server.formatUrl( PATH ), ( req, resp ) -> {
+            String tag = req.getHeader( "X-Tag" );
+            resp.setStatus( 200 );
+            resp.getOutputStream().write( ( tag == null ? "none" : tag ).getBytes() );
+        } );
+    }
+
+    @After
+    public void teardown()
+    {
+        factory.shutdownNow();
+    }
+
+    @Test
+    public void closingOneHandleLeavesOthersWorking()
+            throws Exception
+    {
+        SiteConfig config = new SiteConfigBuilder( "shared", server.formatUrl() ).build();
+
+        CloseableHttpClient first = factory.createClient( config );
+        CloseableHttpClient second = factory.createClient( config );
+        try
+        {
+            assertThat( get( first ), equalTo( "none" ) );
+            first.close();
+
+            assertThat( get( second ), equalTo( "none" ) );
+            assertThat( factory.getPoolStats( config ).getUsers(), equalTo( 1 ) );
+        }
+        finally
+        {
+            IOUtils.closeQuietly( second );
+        }
+
+        assertThat( factory.getPoolStats( config ).getUsers(), equalTo( 0 ) );
+    }
+
+    @Test
+    public void closingAHandleTwiceReleasesItOnce()
+            throws Exception
+    {
+        SiteConfig config = new SiteConfigBuilder( "double-close", server.formatUrl() ).build();
+
+        CloseableHttpClient first = factory.createClient( config );
+        CloseableHttpClient second = factory.createClient( config );
+        try
+        {
+            first.close();
+            first.close();
+
+            assertThat( factory.getPoolStats( config ).getUsers(), equalTo( 1 ) );
+            assertThat( get( second ), equalTo( "none" ) );
+        }
+        finally
+        {
+            IOUtils.closeQuietly( second );
+        }
+
+        assertThat( factory.getPoolStats( config ).getUsers(), equalTo( 0 ) );
+    }
+
+    @Test
+    public void defaultHeadersGetTheirOwnClient()
+            throws Exception
+    {
+        SiteConfig config = new SiteConfigBuilder( "headers", server.formatUrl() ).build();
+        List<Header> red = Collections.singletonList( new BasicHeader( "X-Tag", "red" ) );
+        List<Header> blue = Collections.singletonList( new BasicHeader( "X-Tag", "blue" ) );
+
+        for ( int i = 0; i < 3; i++ )
+        {
+            try (CloseableHttpClient plain = factory.createClient( config );
+                 CloseableHttpClient redClient = factory.createClient( config, red );
+                 CloseableHttpClient blueClient = factory.createClient( config, blue ))
+            {
+                assertThat( get( plain ), equalTo( "none" ) );
+                assertThat( get( redClient ), equalTo( "red" ) );
+                assertThat( get( blueClient ), equalTo( "blue" ) );
+            }
+        }
+    }
+
+    @Test
+    public void unshareableBuilderDecorationGetsAClientPerCall()
+            throws Exception
+    {
+        AtomicInteger decorations = new AtomicInteger();
+        HttpFactory perCallFactory = new HttpFactory( new ClientAuthenticator()
+        {
+            @Override
+            public HttpClientBuilder decorateClientBuilder( final HttpClientBuilder builder )
+            {
+                return builder.setDefaultHeaders( Collections.singletonList(
+                        new BasicHeader( "X-Tag", "call-" + decorations.incrementAndGet() ) ) );
+            }
+        } );
+
+        try
+        {
+            SiteConfig config = new SiteConfigBuilder( "per-call", server.formatUrl() ).build();
+
+            for ( int i = 1; i <= 3; i++ )
+            {
+                try (CloseableHttpClient client = perCallFactory.createClient( config ))
+                {
+                    assertThat( get( client ), equalTo( "call-" + i ) );
+                }
+            }
+
+            String body = perCallFactory.execute( config, new HttpGet( server.formatUrl( PATH ) ),
+                                                  new BasicResponseHandler() );
+
+            assertThat( body, equalTo( "call-4" ) );
+            assertThat( perCallFactory.getPoolStats( config ).getUsers(), equalTo( 0 ) );
+        }
+        finally
+        {
+            perCallFactory.shutdownNow();
+        }
+    }
+
+    private String get( final CloseableHttpClient client )
+            throws IOException
+    {
+        try (CloseableHttpResponse response = client.execute( new HttpGet( server.formatUrl( PATH ) ) ))
+        {
+            return EntityUtils.toString( response.getEntity() );
+        }
+    }
+}
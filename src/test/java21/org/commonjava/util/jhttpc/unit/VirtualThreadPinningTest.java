@@ -0,0 +1,193 @@
+/**
+ * Copyright (C) 2015-2024 Red Hat, Inc. (https://github.com/Commonjava/jhttpc)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.util.jhttpc.unit;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.commonjava.test.http.junit4.expect.ExpectationServerWrapper;
+import org.commonjava.util.jhttpc.HttpFactory;
+import org.commonjava.util.jhttpc.auth.MemoryPasswordManager;
+import org.commonjava.util.jhttpc.model.SiteConfig;
+import org.commonjava.util.jhttpc.model.SiteConfigBuilder;
+import org.commonjava.util.jhttpc.model.SitePoolStats;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs only on JDK 21+ (see the jdk21 profile). Thousands of requests on virtual threads share a small pool, so most
+ * of them park waiting for a connection or for the first caller to build the pool. Any virtual thread that parks while
+ * holding a monitor is reported by JFR as pinned. HttpCore 4's lease always runs inside a monitor, so a brief park on
+ * its pool lock once the lease gate has admitted a request is tolerated; waiting there for a connection is not.
+ */
+public class VirtualThreadPinningTest
+{
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    private static final String PATH = "/path/to/virtual";
+
+    private static final String CONTENT = "virtual content";
+
+    private static final int REQUESTS = 5000;
+
+    @Rule
+    public ExpectationServerWrapper server = new ExpectationServerWrapper();
+
+    private HttpFactory factory;
+
+    @Before
+    public void setup()
+    {
+        factory = new HttpFactory( new MemoryPasswordManager() );
+        server.expect( "GET", server.formatUrl( PATH ), 200, CONTENT );
+    }
+
+    @After
+    public void teardown()
+    {
+        factory.shutdownNow();
+    }
+
+    @Test
+    public void concurrentVirtualThreadRequestsDoNotPin()
+            throws Exception
+    {
+        SiteConfig managed = new SiteConfigBuilder( "virtual-managed", server.formatUrl() ).withMaxConnections( 10 )
+                                                                                            .build();
+        SiteConfig handles = new SiteConfigBuilder( "virtual-handles", server.formatUrl() ).withMaxConnections( 10 )
+                                                                                            .build();
+
+        Queue<String> pinned = new ConcurrentLinkedQueue<>();
+        try (RecordingStream recording = new RecordingStream())
+        {
+            recording.enable( PINNED_EVENT ).withThreshold( Duration.ZERO ).withStackTrace();
+            recording.onEvent( PINNED_EVENT, event -> {
+                if ( !isPoolHandoff( event ) )
+                {
+                    pinned.add( describe( event ) );
+                }
+            } );
+            recording.startAsync();
+
+            List<Future<String>> results = new ArrayList<>( REQUESTS );
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor())
+            {
+                for ( int i = 0; i < REQUESTS; i++ )
+                {
+                    if ( i % 2 == 0 )
+                    {
+                        results.add( executor.submit(
+                                () -> factory.execute( managed, new HttpGet( server.formatUrl( PATH ) ),
+                                                       response -> EntityUtils.toString( response.getEntity() ) ) ) );
+                    }
+                    else
+                    {
+                        results.add( executor.submit( () -> {
+                            try (CloseableHttpClient client = factory.createClient( handles );
+                                 CloseableHttpResponse response = client.execute(
+                                         new HttpGet( server.formatUrl( PATH ) ),
+                                         factory.createContext( handles ) ))
+                            {
+                                return EntityUtils.toString( response.getEntity() );
+                            }
+                        } ) );
+                    }
+                }
+
+                for ( Future<String> result : results )
+                {
+                    assertThat( result.get( 60, TimeUnit.SECONDS ), equalTo( CONTENT ) );
+                }
+            }
+
+            // flushes and delivers every event recorded so far
+            recording.stop();
+        }
+
+        assertTrue( pinned.size() + " virtual threads pinned their carrier:\n" + String.join( "\n", pinned ),
+                    pinned.isEmpty() );
+
+        assertReleased( managed );
+        assertReleased( handles );
+    }
+
+    private void assertReleased( final SiteConfig config )
+    {
+        SitePoolStats stats = factory.getPoolStats( config );
+        assertThat( stats.getLeased(), equalTo( 0 ) );
+        assertThat( stats.getUsers(), equalTo( 0 ) );
+    }
+
+    private static boolean isPoolHandoff( final RecordedEvent event )
+    {
+        if ( event.getStackTrace() == null )
+        {
+            return false;
+        }
+
+        boolean inPool = false;
+        for ( RecordedFrame frame : event.getStackTrace().getFrames() )
+        {
+            if ( frame.getMethod().getName().startsWith( "await" ) )
+            {
+                return false;
+            }
+
+            inPool |= frame.getMethod().getType().getName().startsWith( "org.apache.http.pool.AbstractConnPool" );
+        }
+
+        return inPool;
+    }
+
+    private static String describe( final RecordedEvent event )
+    {
+        StringBuilder sb = new StringBuilder( "Pinned for " ).append( event.getDuration().toMillis() ).append( "ms" );
+        if ( event.getStackTrace() != null )
+        {
+            for ( RecordedFrame frame : event.getStackTrace().getFrames() )
+            {
+                sb.append( "\n    at " )
+                  .append( frame.getMethod().getType().getName() )
+                  .append( '.' )
+                  .append( frame.getMethod().getName() )
+                  .append( ':' )
+                  .append( frame.getLineNumber() );
+            }
+        }
+        return sb.toString();
+    }
+}